@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.benchmark;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import de.proteinms.omxparser.util.OMSSAIdfileReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Imports the spectrum matches of the omx file with
+ * OMSSAIdfileReader.getAllSpectrumMatches, without search parameters. The
+ * MB/s and hits/s are given for the size and the MSHits of the file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OMSSAIdfileReaderBenchmark {
+
+    /**
+     * The file imported.
+     */
+    private File omxFile;
+
+    /**
+     * Selects the file imported.
+     *
+     * @param input the input of the benchmark
+     * @throws IOException if the file could not be read
+     */
+    @Setup(Level.Trial)
+    public void setUp(OmxBenchmarkInput input) throws IOException {
+        omxFile = input.getFile(false);
+    }
+
+    /**
+     * Imports the spectrum matches of the file.
+     *
+     * @param input the input of the benchmark
+     * @param counters the throughput counters
+     * @param allocation the allocation counter
+     * @return the spectrum matches
+     * @throws Exception if the file could not be imported
+     */
+    @Benchmark
+    public ArrayList<SpectrumMatch> getAllSpectrumMatches(OmxBenchmarkInput input, OmxThroughputCounters counters, OmxAllocationCounter allocation) throws Exception {
+        allocation.start();
+        OMSSAIdfileReader reader = new OMSSAIdfileReader(omxFile);
+        ArrayList<SpectrumMatch> spectrumMatches = reader.getAllSpectrumMatches(null, null, null);
+        reader.close();
+        allocation.stop(input.getHitCount());
+        counters.add(input.getMegabytes(), input.getHitCount());
+        return spectrumMatches;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.benchmark;
+
+import de.proteinms.omxparser.OmssaOmxFile;
+import de.proteinms.omxparser.util.MSHitSet;
+import de.proteinms.omxparser.util.MSPepHit;
+import de.proteinms.omxparser.util.OmxIntMap;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Queries getPeptidesToPepHit for all the proteins of the omx file, and looks
+ * up the hit sets of all the spectrum numbers in the OmxIntMap of
+ * OmssaOmxFile and in the HashMap of the MSResponse. The file is parsed, and
+ * the maps built, once per trial. The hits counted are the MSPepHit or
+ * MSHitSet returned. The building of the maps is measured by
+ * OmxIndexBuilderBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OmssaOmxFileBenchmark {
+
+    /**
+     * The parsed file with its maps.
+     */
+    private OmssaOmxFile omssaOmxFile;
+    /**
+     * The accessions of the proteins of the file.
+     */
+    private String[] accessions;
+    /**
+     * The spectrum numbers of the hit sets of the first response.
+     */
+    private int[] numbers;
+    /**
+     * The hit sets of the first response, keyed by boxed spectrum number.
+     */
+    private Map<Integer, MSHitSet> responseHitSets;
+
+    /**
+     * Parses the file and builds the maps.
+     *
+     * @param input the input of the benchmark
+     * @throws IOException if the file could not be read
+     */
+    @Setup(Level.Trial)
+    public void setUp(OmxBenchmarkInput input) throws IOException {
+        omssaOmxFile = new OmssaOmxFile(input.getFile(false).getPath(), null, null, true, true, true);
+        accessions = omssaOmxFile.getProteinToPeptideMap().keySet().toArray(new String[0]);
+        responseHitSets = omssaOmxFile.getParserResult().MSSearch_response.MSResponse.get(0).MSResponse_hitsets.MSHitSet;
+        numbers = new int[responseHitSets.size()];
+        int i = 0;
+        for (Integer number : responseHitSets.keySet()) {
+            numbers[i++] = number;
+        }
+        omssaOmxFile.getProteinToPeptideHitsMap();
+        omssaOmxFile.getNumberToHitSetMap();
+    }
+
+    /**
+     * Queries the peptides of every protein of the file. The hits counted
+     * are the MSPepHit returned.
+     *
+     * @param counters the throughput counters
+     * @param allocation the allocation counter
+     * @param blackhole the blackhole consuming the results
+     */
+    @Benchmark
+    public void getPeptidesToPepHit(OmxThroughputCounters counters, OmxAllocationCounter allocation, Blackhole blackhole) {
+        allocation.start();
+        long pepHits = 0;
+        for (String accession : accessions) {
+            HashMap<String, MSPepHit> peptides = omssaOmxFile.getPeptidesToPepHit(accession);
+            pepHits += peptides.size();
+            blackhole.consume(peptides);
+        }
+        allocation.stop(pepHits);
+        counters.add(0, pepHits);
+    }
+
+    /**
+     * Looks up the hit set of every spectrum number in the OmxIntMap of
+     * OmssaOmxFile.
+     *
+     * @param counters the throughput counters
+     * @param allocation the allocation counter
+     * @param blackhole the blackhole consuming the results
+     */
+    @Benchmark
+    public void getHitSetByNumber(OmxThroughputCounters counters, OmxAllocationCounter allocation, Blackhole blackhole) {
+        allocation.start();
+        OmxIntMap<MSHitSet> hitSets = omssaOmxFile.getNumberToHitSetMap();
+        for (int number : numbers) {
+            blackhole.consume(hitSets.get(number));
+        }
+        allocation.stop(numbers.length);
+        counters.add(0, numbers.length);
+    }
+
+    /**
+     * Looks up the hit set of every spectrum number in the HashMap of the
+     * MSResponse, the reference for getHitSetByNumber.
+     *
+     * @param counters the throughput counters
+     * @param allocation the allocation counter
+     * @param blackhole the blackhole consuming the results
+     */
+    @Benchmark
+    public void getHitSetFromResponse(OmxThroughputCounters counters, OmxAllocationCounter allocation, Blackhole blackhole) {
+        allocation.start();
+        for (int number : numbers) {
+            blackhole.consume(responseHitSets.get(number));
+        }
+        allocation.stop(numbers.length);
+        counters.add(0, numbers.length);
+    }
+}
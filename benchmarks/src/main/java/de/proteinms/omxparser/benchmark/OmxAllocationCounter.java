@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.benchmark;
+
+import java.lang.management.ManagementFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The bytes allocated per MSHit by a benchmark, measured on the benchmark
+ * thread and reported by JMH as the bytesPerHit counter of the iteration.
+ * The garbage collection profiler (-prof gc) gives the bytes allocated per
+ * operation as a cross check.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class OmxAllocationCounter {
+
+    /**
+     * The thread bean measuring the allocations, null if not supported by
+     * the virtual machine.
+     */
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+    /**
+     * The bytes allocated per MSHit in the iteration.
+     */
+    public double bytesPerHit;
+    /**
+     * The bytes allocated in the iteration.
+     */
+    private long allocatedBytes;
+    /**
+     * The MSHits processed in the iteration.
+     */
+    private long hits;
+    /**
+     * The bytes allocated by the thread at the start of the current
+     * operation.
+     */
+    private long startBytes;
+
+    /**
+     * Resets the counter at the start of an iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytesPerHit = 0;
+        allocatedBytes = 0;
+        hits = 0;
+    }
+
+    /**
+     * Called at the start of an operation.
+     */
+    public void start() {
+        startBytes = getAllocatedBytes();
+    }
+
+    /**
+     * Called at the end of an operation.
+     *
+     * @param operationHits the MSHits processed by the operation
+     */
+    public void stop(long operationHits) {
+        allocatedBytes += getAllocatedBytes() - startBytes;
+        hits += operationHits;
+        if (hits > 0) {
+            bytesPerHit = (double) allocatedBytes / hits;
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread.
+     *
+     * @return the bytes allocated, 0 if not supported
+     */
+    private static long getAllocatedBytes() {
+        if (THREAD_BEAN == null) {
+            return 0;
+        }
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns the thread bean with allocation measurement enabled.
+     *
+     * @return the thread bean, null if not supported
+     */
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (sunThreadBean.isThreadAllocatedMemorySupported()) {
+                sunThreadBean.setThreadAllocatedMemoryEnabled(true);
+                return sunThreadBean;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.benchmark;
+
+import de.proteinms.omxparser.util.MSHitSet;
+import de.proteinms.omxparser.util.MSResponse;
+import de.proteinms.omxparser.util.MSSearch;
+import de.proteinms.omxparser.tools.OmxGenerator;
+import de.proteinms.omxparser.util.OmxParser;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The omx file read by the benchmarks. The file is given by the omxFile
+ * parameter, e.g. "-p omxFile=/data/search.omx", or by the
+ * omxparser.benchmark.file system property. Without file, a synthetic file
+ * with the given number of spectra is written by OmxGenerator, e.g.
+ * "-p spectra=25000" for about 1 GB. A gzipped copy of the file is written
+ * for the benchmarks on gz input. The files written are deleted at the end
+ * of the trial.
+ */
+@State(Scope.Benchmark)
+public class OmxBenchmarkInput {
+
+    /**
+     * The path to the uncompressed omx file.
+     */
+    @Param({""})
+    public String omxFile;
+    /**
+     * The number of spectra of the synthetic file written when no file is
+     * given.
+     */
+    @Param({"2500"})
+    public int spectra;
+    /**
+     * The uncompressed omx file.
+     */
+    private File plainFile;
+    /**
+     * The synthetic omx file, null if a file is given.
+     */
+    private File syntheticFile;
+    /**
+     * The gzipped copy of the omx file, written on demand.
+     */
+    private File gzFile;
+    /**
+     * The number of MSHits of the file.
+     */
+    private long hitCount;
+
+    /**
+     * Locates or writes the omx file and counts its hits.
+     *
+     * @throws IOException if the synthetic file could not be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        String path = omxFile;
+        if (path == null || path.isEmpty()) {
+            path = System.getProperty("omxparser.benchmark.file", "");
+        }
+        if (path.isEmpty()) {
+            syntheticFile = File.createTempFile("omx-benchmark", ".omx");
+            syntheticFile.deleteOnExit();
+            OmxGenerator generator = new OmxGenerator();
+            generator.setSpectra(spectra);
+            generator.write(syntheticFile);
+            path = syntheticFile.getPath();
+        }
+        plainFile = new File(path);
+        if (!plainFile.isFile()) {
+            throw new IllegalStateException("Omx file not found: " + plainFile);
+        }
+        if (plainFile.getName().endsWith(".gz")) {
+            throw new IllegalStateException("The omx file is to be given uncompressed: " + plainFile);
+        }
+
+        OmxParser omxParser = new OmxParser(plainFile.getPath(), null, null, false, false);
+        hitCount = countHits(omxParser.parserResult);
+    }
+
+    /**
+     * Deletes the files written.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (syntheticFile != null) {
+            syntheticFile.delete();
+            syntheticFile = null;
+        }
+        if (gzFile != null) {
+            gzFile.delete();
+            gzFile = null;
+        }
+    }
+
+    /**
+     * Returns the omx file.
+     *
+     * @param gz if true the gzipped copy of the file is returned, written if
+     * needed
+     * @return the omx file
+     * @throws IOException if the gzipped copy could not be written
+     */
+    public File getFile(boolean gz) throws IOException {
+        if (!gz) {
+            return plainFile;
+        }
+        if (gzFile == null) {
+            File file = File.createTempFile("omx-benchmark", ".omx.gz");
+            file.deleteOnExit();
+            InputStream in = new FileInputStream(plainFile);
+            try {
+                OutputStream out = new GZIPOutputStream(new FileOutputStream(file), 64 * 1024);
+                try {
+                    byte[] buffer = new byte[64 * 1024];
+                    int length;
+                    while ((length = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, length);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            gzFile = file;
+        }
+        return gzFile;
+    }
+
+    /**
+     * Returns the size of the uncompressed file in megabytes, the unit of
+     * the MB/s throughputs also for the gz input.
+     *
+     * @return the size of the uncompressed file in megabytes
+     */
+    public double getMegabytes() {
+        return plainFile.length() / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Returns the number of MSHits of the file.
+     *
+     * @return the number of MSHits of the file
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Counts the MSHits of a parser result.
+     *
+     * @param msSearch the parser result
+     * @return the number of MSHits
+     */
+    public static long countHits(MSSearch msSearch) {
+        long hits = 0;
+        for (MSResponse msResponse : msSearch.MSSearch_response.MSResponse) {
+            for (MSHitSet msHitSet : msResponse.MSResponse_hitsets.MSHitSet.values()) {
+                hits += msHitSet.MSHitSet_hits.MSHits.size();
+            }
+        }
+        return hits;
+    }
+}
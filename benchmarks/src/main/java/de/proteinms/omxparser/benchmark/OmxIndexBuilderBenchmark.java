@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.benchmark;
+
+import de.proteinms.omxparser.OmssaOmxFile;
+import de.proteinms.omxparser.util.MSSearch;
+import de.proteinms.omxparser.util.OmxIndexBuilder;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the maps of OmssaOmxFile from the parsed omx file with
+ * OmxIndexBuilder: all the maps in a single pass, as done by OmssaOmxFile,
+ * or one map at a time. The file is parsed once per trial. The MB/s and
+ * hits/s are given for the size and the MSHits of the file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OmxIndexBuilderBenchmark {
+
+    /**
+     * The maps built, "ALL" or the name of an OmxIndexBuilder.Index.
+     */
+    @Param({"ALL", "SPECTRUM_TO_HIT_SET", "SPECTRUM_TO_PEPTIDE", "PEPTIDE_TO_SPECTRUM", "PEPTIDE_TO_PROTEIN", "PROTEIN_TO_PEPTIDE",
+        "PROTEIN_TO_PEPTIDE_HITS", "NUMBER_TO_SPECTRUM", "NUMBER_TO_HIT_SET"})
+    public String maps;
+    /**
+     * The parser result.
+     */
+    private MSSearch parserResult;
+    /**
+     * The builder of the maps.
+     */
+    private OmxIndexBuilder indexBuilder;
+
+    /**
+     * Parses the file.
+     *
+     * @param input the input of the benchmark
+     * @throws IOException if the file could not be read
+     */
+    @Setup(Level.Trial)
+    public void setUp(OmxBenchmarkInput input) throws IOException {
+        parserResult = new OmssaOmxFile(input.getFile(false).getPath(), null, null, true, true, false).getParserResult();
+        if (maps.equals("ALL")) {
+            indexBuilder = new OmxIndexBuilder();
+        } else {
+            indexBuilder = new OmxIndexBuilder(EnumSet.of(OmxIndexBuilder.Index.valueOf(maps)));
+        }
+    }
+
+    /**
+     * Builds the maps.
+     *
+     * @param input the input of the benchmark
+     * @param counters the throughput counters
+     * @param allocation the allocation counter
+     * @return the builder, returned to keep the maps alive
+     */
+    @Benchmark
+    public OmxIndexBuilder build(OmxBenchmarkInput input, OmxThroughputCounters counters, OmxAllocationCounter allocation) {
+        allocation.start();
+        indexBuilder.build(parserResult);
+        allocation.stop(input.getHitCount());
+        counters.add(input.getMegabytes(), input.getHitCount());
+        return indexBuilder;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.benchmark;
+
+import de.proteinms.omxparser.util.OmxParser;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses the omx file end to end with OmxParser, on plain and gz input, with
+ * and without the spectra and the id details. The MB/s are given for the
+ * uncompressed size of the file, and the hits/s and bytes per hit for the
+ * MSHits of the file, also when the id details are not imported.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OmxParserBenchmark {
+
+    /**
+     * The compression of the input, "plain" or "gz".
+     */
+    @Param({"plain", "gz"})
+    public String compression;
+    /**
+     * Indicates whether the spectra are imported.
+     */
+    @Param({"true", "false"})
+    public boolean importSpectra;
+    /**
+     * Indicates whether the id details are imported.
+     */
+    @Param({"true", "false"})
+    public boolean importIdDetails;
+    /**
+     * The file parsed.
+     */
+    private File omxFile;
+
+    /**
+     * Selects the file parsed.
+     *
+     * @param input the input of the benchmark
+     * @throws IOException if the gzipped copy of the file could not be
+     * written
+     */
+    @Setup(Level.Trial)
+    public void setUp(OmxBenchmarkInput input) throws IOException {
+        omxFile = input.getFile("gz".equals(compression));
+    }
+
+    /**
+     * Parses the file.
+     *
+     * @param input the input of the benchmark
+     * @param counters the throughput counters
+     * @param allocation the allocation counter
+     * @return the parser, returned to keep its result alive
+     */
+    @Benchmark
+    public OmxParser parse(OmxBenchmarkInput input, OmxThroughputCounters counters, OmxAllocationCounter allocation) {
+        allocation.start();
+        OmxParser omxParser = new OmxParser(omxFile.getPath(), null, null, importSpectra, importIdDetails);
+        allocation.stop(input.getHitCount());
+        counters.add(input.getMegabytes(), input.getHitCount());
+        return omxParser;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The megabytes and hits processed by a benchmark, reported by JMH as MB/s
+ * and hits/s next to the operations per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class OmxThroughputCounters {
+
+    /**
+     * The megabytes of omx file processed in the iteration.
+     */
+    public double megabytes;
+    /**
+     * The MSHits processed in the iteration.
+     */
+    public long hits;
+
+    /**
+     * Resets the counters at the start of an iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        hits = 0;
+    }
+
+    /**
+     * Records an operation.
+     *
+     * @param operationMegabytes the megabytes processed by the operation
+     * @param operationHits the MSHits processed by the operation
+     */
+    public void add(double operationMegabytes, long operationHits) {
+        megabytes += operationMegabytes;
+        hits += operationHits;
+    }
+}
@@ -20,18 +20,26 @@
  */
 package de.proteinms.omxparser;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 
 import de.proteinms.omxparser.util.MSHitSet;
-import de.proteinms.omxparser.util.MSHits;
 import de.proteinms.omxparser.util.MSPepHit;
 import de.proteinms.omxparser.util.MSSearch;
 import de.proteinms.omxparser.util.MSSpectrum;
 import de.proteinms.omxparser.util.OmssaModification;
+import de.proteinms.omxparser.util.OmxIndexBuilder;
+import de.proteinms.omxparser.util.OmxIndexBuilder.Index;
+import de.proteinms.omxparser.util.OmxIntMap;
+import de.proteinms.omxparser.util.OmxParseListener;
 import de.proteinms.omxparser.util.OmxParser;
+import de.proteinms.omxparser.util.OmxSpectrumLoader;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -40,12 +48,17 @@ import org.apache.logging.log4j.LogManager;
  * This Class manages parsing and storing of the Omx file. It provides several
  * methods to retrieve ordered information. After all it is an example how to
  * access and handle the parsed information.
+ * <br><br>
+ * The maps are built on the first call to their getter unless they are built
+ * with the parsing, see the processMaps parameter of the constructors, and
+ * can be released with releaseIndex when they are no longer needed. The
+ * getters can be called from several threads.
  *
  * @author Steffen Huber
  * <br>Modified by: Harald Barsnes (added support for extracting modification
  * details and updated the Javadoc)
  */
-public class OmssaOmxFile {
+public class OmssaOmxFile implements Closeable {
 
     /**
      * Define a static logger variable so that it references the Logger instance
@@ -55,9 +68,9 @@ public class OmssaOmxFile {
     /**
      * A HashMap where every Spectrum (key) is allocated to the corresponding
      * HitSet (value). This HashMap is a good basis for searching specific
-     * information.
+     * information. Null until built.
      */
-    private HashMap<MSSpectrum, MSHitSet> spectrumToHitSetMap = new HashMap<MSSpectrum, MSHitSet>();
+    private volatile HashMap<MSSpectrum, MSHitSet> spectrumToHitSetMap;
     /**
      * Returns a HashMap where every Spectrum (key) is allocated to the
      * corresponding found Peptides.
@@ -65,28 +78,44 @@ public class OmssaOmxFile {
      * their sequences which are stored as a HashSet of Strings. For further
      * information about the Peptide ("at what position in the corresponding
      * protein does the Peptide start/end?") you will need to search in the
-     * MSPepHit object.
+     * MSPepHit object. Null until built.
      */
-    private HashMap<MSSpectrum, HashSet<String>> spectrumToPeptideMap = new HashMap<MSSpectrum, HashSet<String>>();
+    private volatile HashMap<MSSpectrum, HashSet<String>> spectrumToPeptideMap;
     /**
      * A HashMap where every Peptide (represented by the sequence) is allocated
-     * to the corresponding Spectra.
+     * to the corresponding Spectra. Null until built.
      */
-    private HashMap<String, LinkedList<MSSpectrum>> peptideToSpectrumMap = new HashMap<String, LinkedList<MSSpectrum>>();
+    private volatile HashMap<String, LinkedList<MSSpectrum>> peptideToSpectrumMap;
     /**
      * A HashMap where every Peptide (represented by the sequence) is allocated
      * to the corresponding proteins (in most cases only one Protein).
      * <br><br>Note: In this case the Proteins are represented by a MSPepHit
      * object. This object stores among other things the position of the Peptide
-     * in the Protein.
+     * in the Protein. Null until built.
      */
-    private HashMap<String, LinkedList<MSPepHit>> peptideToProteinMap = new HashMap<String, LinkedList<MSPepHit>>();
+    private volatile HashMap<String, LinkedList<MSPepHit>> peptideToProteinMap;
     /**
      * A HashMap where every Protein (represented by its accession) is allocated
      * to the corresponding Peptides (represented by their sequence), found by
-     * the omssa algorithm.
+     * the omssa algorithm. Null until built.
+     */
+    private volatile HashMap<String, LinkedList<String>> proteinToPeptideMap;
+    /**
+     * A HashMap where every Protein (represented by its accession) is allocated
+     * to its Peptides (represented by their sequence), each allocated to the
+     * MSPepHit objects of the Protein. Null until built.
      */
-    private HashMap<String, LinkedList<String>> proteinToPeptideMap = new HashMap<String, LinkedList<String>>();
+    private volatile HashMap<String, HashMap<String, LinkedList<MSPepHit>>> proteinToPeptideHitsMap;
+    /**
+     * An OmxIntMap where every spectrum number is allocated to the
+     * corresponding Spectrum. Null until built.
+     */
+    private volatile OmxIntMap<MSSpectrum> numberToSpectrumMap;
+    /**
+     * An OmxIntMap where every spectrum number is allocated to the
+     * corresponding HitSet. Null until built.
+     */
+    private volatile OmxIntMap<MSHitSet> numberToHitSetMap;
     /**
      * The search result object.
      */
@@ -95,6 +124,10 @@ public class OmssaOmxFile {
      * A reference to the OmxParser object.
      */
     private OmxParser parser;
+    /**
+     * The loader of the spectra if they are loaded on demand, null otherwise.
+     */
+    private OmxSpectrumLoader spectrumLoader;
 
     /**
      * Returns ALL data from the original OMX file gathered by the OmxParser as
@@ -119,7 +152,16 @@ public class OmssaOmxFile {
      * corresponding HitSet (value)
      */
     public HashMap<MSSpectrum, MSHitSet> getSpectrumToHitSetMap() {
-        return spectrumToHitSetMap;
+        HashMap<MSSpectrum, MSHitSet> map = spectrumToHitSetMap;
+        if (map == null) {
+            synchronized (this) {
+                if (spectrumToHitSetMap == null) {
+                    spectrumToHitSetMap = buildIndex(Index.SPECTRUM_TO_HIT_SET).getSpectrumToHitSetMap();
+                }
+                map = spectrumToHitSetMap;
+            }
+        }
+        return map;
     }
 
     /**
@@ -135,7 +177,16 @@ public class OmssaOmxFile {
      * corresponding found Peptides
      */
     public HashMap<MSSpectrum, HashSet<String>> getSpectrumToPeptideMap() {
-        return spectrumToPeptideMap;
+        HashMap<MSSpectrum, HashSet<String>> map = spectrumToPeptideMap;
+        if (map == null) {
+            synchronized (this) {
+                if (spectrumToPeptideMap == null) {
+                    spectrumToPeptideMap = buildIndex(Index.SPECTRUM_TO_PEPTIDE).getSpectrumToPeptideMap();
+                }
+                map = spectrumToPeptideMap;
+            }
+        }
+        return map;
     }
 
     /**
@@ -146,7 +197,16 @@ public class OmssaOmxFile {
      * allocated to the corresponding Spectra
      */
     public HashMap<String, LinkedList<MSSpectrum>> getPeptideToSpectrumMap() {
-        return peptideToSpectrumMap;
+        HashMap<String, LinkedList<MSSpectrum>> map = peptideToSpectrumMap;
+        if (map == null) {
+            synchronized (this) {
+                if (peptideToSpectrumMap == null) {
+                    peptideToSpectrumMap = buildIndex(Index.PEPTIDE_TO_SPECTRUM).getPeptideToSpectrumMap();
+                }
+                map = peptideToSpectrumMap;
+            }
+        }
+        return map;
     }
 
     /**
@@ -160,7 +220,16 @@ public class OmssaOmxFile {
      * allocated to the corresponding proteins (in most cases only one Protein)
      */
     public HashMap<String, LinkedList<MSPepHit>> getPeptideToProteinMap() {
-        return peptideToProteinMap;
+        HashMap<String, LinkedList<MSPepHit>> map = peptideToProteinMap;
+        if (map == null) {
+            synchronized (this) {
+                if (peptideToProteinMap == null) {
+                    peptideToProteinMap = buildIndex(Index.PEPTIDE_TO_PROTEIN).getPeptideToProteinMap();
+                }
+                map = peptideToProteinMap;
+            }
+        }
+        return map;
     }
 
     /**
@@ -173,7 +242,223 @@ public class OmssaOmxFile {
      * found by the OMSSA algorithm
      */
     public HashMap<String, LinkedList<String>> getProteinToPeptideMap() {
-        return proteinToPeptideMap;
+        HashMap<String, LinkedList<String>> map = proteinToPeptideMap;
+        if (map == null) {
+            synchronized (this) {
+                if (proteinToPeptideMap == null) {
+                    proteinToPeptideMap = buildIndex(Index.PROTEIN_TO_PEPTIDE).getProteinToPeptideMap();
+                }
+                map = proteinToPeptideMap;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns a HashMap where every Protein (represented by its accession) is
+     * allocated to its Peptides (represented by their sequence), each
+     * allocated to the MSPepHit objects of this Protein, in the order of the
+     * hits.
+     *
+     * @return HashMap
+     */
+    public HashMap<String, HashMap<String, LinkedList<MSPepHit>>> getProteinToPeptideHitsMap() {
+        HashMap<String, HashMap<String, LinkedList<MSPepHit>>> map = proteinToPeptideHitsMap;
+        if (map == null) {
+            synchronized (this) {
+                if (proteinToPeptideHitsMap == null) {
+                    proteinToPeptideHitsMap = buildIndex(Index.PROTEIN_TO_PEPTIDE_HITS).getProteinToPeptideHitsMap();
+                }
+                map = proteinToPeptideHitsMap;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns an OmxIntMap where every spectrum number (key) is allocated to
+     * the corresponding Spectrum (value). The lookup by number needs neither
+     * boxing nor hashing. The map is not built by processMaps but on the
+     * first call.
+     *
+     * @return OmxIntMap
+     */
+    public OmxIntMap<MSSpectrum> getNumberToSpectrumMap() {
+        OmxIntMap<MSSpectrum> map = numberToSpectrumMap;
+        if (map == null) {
+            synchronized (this) {
+                if (numberToSpectrumMap == null) {
+                    numberToSpectrumMap = buildIndex(Index.NUMBER_TO_SPECTRUM).getNumberToSpectrumMap();
+                }
+                map = numberToSpectrumMap;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns an OmxIntMap where every spectrum number (key) is allocated to
+     * the corresponding HitSet (value), also when the spectra were not
+     * imported. The lookup by number needs neither boxing nor hashing. The
+     * map is not built by processMaps but on the first call.
+     *
+     * @return OmxIntMap
+     */
+    public OmxIntMap<MSHitSet> getNumberToHitSetMap() {
+        OmxIntMap<MSHitSet> map = numberToHitSetMap;
+        if (map == null) {
+            synchronized (this) {
+                if (numberToHitSetMap == null) {
+                    numberToHitSetMap = buildIndex(Index.NUMBER_TO_HIT_SET).getNumberToHitSetMap();
+                }
+                map = numberToHitSetMap;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Indicates whether the given map is built.
+     *
+     * @param index the map
+     * @return true if the map is built
+     */
+    public boolean isIndexBuilt(Index index) {
+        switch (index) {
+            case SPECTRUM_TO_HIT_SET:
+                return spectrumToHitSetMap != null;
+            case SPECTRUM_TO_PEPTIDE:
+                return spectrumToPeptideMap != null;
+            case PEPTIDE_TO_SPECTRUM:
+                return peptideToSpectrumMap != null;
+            case PEPTIDE_TO_PROTEIN:
+                return peptideToProteinMap != null;
+            case PROTEIN_TO_PEPTIDE:
+                return proteinToPeptideMap != null;
+            case PROTEIN_TO_PEPTIDE_HITS:
+                return proteinToPeptideHitsMap != null;
+            case NUMBER_TO_SPECTRUM:
+                return numberToSpectrumMap != null;
+            case NUMBER_TO_HIT_SET:
+                return numberToHitSetMap != null;
+            default:
+                throw new IllegalArgumentException("Unknown index: " + index);
+        }
+    }
+
+    /**
+     * Releases the given map. The map is not referenced by this object
+     * anymore and is built again if its getter is called later.
+     *
+     * @param index the map to release
+     */
+    public synchronized void releaseIndex(Index index) {
+        switch (index) {
+            case SPECTRUM_TO_HIT_SET:
+                spectrumToHitSetMap = null;
+                break;
+            case SPECTRUM_TO_PEPTIDE:
+                spectrumToPeptideMap = null;
+                break;
+            case PEPTIDE_TO_SPECTRUM:
+                peptideToSpectrumMap = null;
+                break;
+            case PEPTIDE_TO_PROTEIN:
+                peptideToProteinMap = null;
+                break;
+            case PROTEIN_TO_PEPTIDE:
+                proteinToPeptideMap = null;
+                break;
+            case PROTEIN_TO_PEPTIDE_HITS:
+                proteinToPeptideHitsMap = null;
+                break;
+            case NUMBER_TO_SPECTRUM:
+                numberToSpectrumMap = null;
+                break;
+            case NUMBER_TO_HIT_SET:
+                numberToHitSetMap = null;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown index: " + index);
+        }
+    }
+
+    /**
+     * Releases all the maps, see releaseIndex.
+     */
+    public synchronized void releaseIndexes() {
+        for (Index index : Index.values()) {
+            releaseIndex(index);
+        }
+    }
+
+    /**
+     * Builds the given maps which are not built yet in a single pass over the
+     * parser result. Calling it before the getters of several maps avoids a
+     * pass per map.
+     *
+     * @param first the first map to build
+     * @param rest the other maps to build
+     */
+    public synchronized void buildIndexes(Index first, Index... rest) {
+
+        EnumSet<Index> indexes = EnumSet.of(first, rest);
+        for (Index index : EnumSet.copyOf(indexes)) {
+            if (isIndexBuilt(index)) {
+                indexes.remove(index);
+            }
+        }
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        OmxIndexBuilder indexBuilder = new OmxIndexBuilder(indexes);
+        indexBuilder.build(parserResult != null ? parserResult : new MSSearch());
+
+        for (Index index : indexes) {
+            switch (index) {
+                case SPECTRUM_TO_HIT_SET:
+                    spectrumToHitSetMap = indexBuilder.getSpectrumToHitSetMap();
+                    break;
+                case SPECTRUM_TO_PEPTIDE:
+                    spectrumToPeptideMap = indexBuilder.getSpectrumToPeptideMap();
+                    break;
+                case PEPTIDE_TO_SPECTRUM:
+                    peptideToSpectrumMap = indexBuilder.getPeptideToSpectrumMap();
+                    break;
+                case PEPTIDE_TO_PROTEIN:
+                    peptideToProteinMap = indexBuilder.getPeptideToProteinMap();
+                    break;
+                case PROTEIN_TO_PEPTIDE:
+                    proteinToPeptideMap = indexBuilder.getProteinToPeptideMap();
+                    break;
+                case PROTEIN_TO_PEPTIDE_HITS:
+                    proteinToPeptideHitsMap = indexBuilder.getProteinToPeptideHitsMap();
+                    break;
+                case NUMBER_TO_SPECTRUM:
+                    numberToSpectrumMap = indexBuilder.getNumberToSpectrumMap();
+                    break;
+                case NUMBER_TO_HIT_SET:
+                    numberToHitSetMap = indexBuilder.getNumberToHitSetMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown index: " + index);
+            }
+        }
+    }
+
+    /**
+     * Builds the given maps from the parser result in a single pass. Empty
+     * maps are returned if the parsing was canceled.
+     *
+     * @param first the first map to build
+     * @param rest the other maps to build
+     * @return the builder holding the maps
+     */
+    private OmxIndexBuilder buildIndex(Index first, Index... rest) {
+        OmxIndexBuilder indexBuilder = new OmxIndexBuilder(EnumSet.of(first, rest));
+        indexBuilder.build(parserResult != null ? parserResult : new MSSearch());
+        return indexBuilder;
     }
 
     /**
@@ -216,27 +501,123 @@ public class OmssaOmxFile {
      * file will be skipped
      * @param importIdDetails if false the sections MSHits_pephits,
      * MSHits_mzhits of the omx file will be skipped
-     * @param processMaps if true the maps will be processed
+     * @param processMaps if true the maps are built with the parsing,
+     * otherwise each map is built on the first call to its getter
      */
     public OmssaOmxFile(String omxFile, String modsFile, String userModsFile, boolean importSpectra, boolean importIdDetails, boolean processMaps) {
+        this(omxFile, modsFile, userModsFile, importSpectra, importIdDetails, processMaps, null);
+    }
+
+    /**
+     * This constructor initializes the Parser with the file name of the omx
+     * file, and the file names of the two OMSSA modification files (mods.xml
+     * and usermods.xml). The progress of the parsing is reported to the given
+     * listener, which can cancel it, see isCanceled.
+     *
+     * @param omxFile the file name of the omx file to be parsed
+     * @param modsFile the file name of the mods.xml file
+     * @param userModsFile the file name of the usermods.xml file
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * file will be skipped
+     * @param importIdDetails if false the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @param processMaps if true the maps are built with the parsing,
+     * otherwise each map is built on the first call to its getter
+     * @param parseListener the listener following the parsing, null if none
+     */
+    public OmssaOmxFile(String omxFile, String modsFile, String userModsFile, boolean importSpectra, boolean importIdDetails, boolean processMaps,
+            OmxParseListener parseListener) {
 
-        parser = new OmxParser(omxFile, modsFile, userModsFile, importSpectra, importIdDetails);
+        parser = new OmxParser(omxFile, modsFile, userModsFile, importSpectra, importIdDetails, null, parseListener);
         parserResult = parser.parserResult;
 
-        logger.debug("processing information...");
+        if (processMaps && !parser.isCanceled()) {
+            processMaps();
+        }
+
+        logger.debug("parsing completed");
+    }
+
+    /**
+     * Parses the given omx file and the two OMSSA modification files
+     * (mods.xml and usermods.xml). The peaks of the spectra are not parsed but
+     * loaded from the file when used: the mz and abundance lists of the
+     * spectra are read when first accessed, see OmxSpectrumLoader, the other
+     * fields of the spectra are parsed with the file. The peak lists of the
+     * spectrumCacheSize spectra used last are kept in memory. If the file
+     * cannot be indexed, e.g., if it is compressed with plain gzip, the peaks
+     * are parsed with the file. The file stays open until close is called.
+     *
+     * @param omxFile the file name of the omx file to be parsed
+     * @param modsFile the file name of the mods.xml file
+     * @param userModsFile the file name of the usermods.xml file
+     * @param importIdDetails if false the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @param processMaps if true the maps are built with the parsing,
+     * otherwise each map is built on the first call to its getter
+     * @param spectrumCacheSize the number of spectra whose peaks are kept in
+     * memory
+     * @return the parsed file
+     */
+    public static OmssaOmxFile withSpectrumLoader(String omxFile, String modsFile, String userModsFile, boolean importIdDetails,
+            boolean processMaps, int spectrumCacheSize) {
+
+        OmxSpectrumLoader spectrumLoader = null;
+        try {
+            spectrumLoader = new OmxSpectrumLoader(new File(omxFile), spectrumCacheSize);
+        } catch (IOException e) {
+            logger.error("Error indexing the spectra of file: " + omxFile + ", the spectra are parsed with the file " + e.toString());
+            e.printStackTrace();
+        }
+
+        return new OmssaOmxFile(omxFile, modsFile, userModsFile, importIdDetails, processMaps, spectrumLoader);
+    }
+
+    /**
+     * Parses the omx file with the given loader of the spectra, see
+     * withSpectrumLoader.
+     *
+     * @param omxFile the file name of the omx file to be parsed
+     * @param modsFile the file name of the mods.xml file
+     * @param userModsFile the file name of the usermods.xml file
+     * @param importIdDetails if false the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @param processMaps if true the maps are built with the parsing,
+     * otherwise each map is built on the first call to its getter
+     * @param spectrumLoader the loader of the peaks of the spectra, null to
+     * parse the spectra with the file
+     */
+    private OmssaOmxFile(String omxFile, String modsFile, String userModsFile, boolean importIdDetails, boolean processMaps,
+            OmxSpectrumLoader spectrumLoader) {
+
+        this.spectrumLoader = spectrumLoader;
+
+        if (spectrumLoader == null) {
+            parser = new OmxParser(omxFile, modsFile, userModsFile, true, importIdDetails);
+        } else {
+            parser = OmxParser.withSpectrumLoader(omxFile, modsFile, userModsFile, importIdDetails, spectrumLoader);
+        }
+        parserResult = parser.parserResult;
 
         if (processMaps) {
-            //process Information
-            processSpectrumToHitSetMap(parserResult);
-            processSpectrumToPeptideMap(parserResult);
-            processPeptideToSpectrumMap(parserResult);
-            processPeptideToProteineMap(parserResult);
-            processProteineToPeptideMap(parserResult);
+            processMaps();
         }
 
         logger.debug("parsing completed");
     }
 
+    /**
+     * Processes the maps from the parser result.
+     */
+    private synchronized void processMaps() {
+
+        logger.debug("processing information...");
+
+        //process Information, all the maps are built in a single pass
+        buildIndexes(Index.SPECTRUM_TO_HIT_SET, Index.SPECTRUM_TO_PEPTIDE, Index.PEPTIDE_TO_SPECTRUM,
+                Index.PEPTIDE_TO_PROTEIN, Index.PROTEIN_TO_PEPTIDE, Index.PROTEIN_TO_PEPTIDE_HITS);
+    }
+
     /**
      * This constructor initializes the Parser with the file name of the omx
      * file, and the file name of one of the two OMSSA modification files
@@ -280,7 +661,8 @@ public class OmssaOmxFile {
      * imported
      * @param importIdDetails if false the sections MSHits_pephits,
      * MSHits_mzhits of the omx file will be skipped
-     * @param processMaps if true the maps will be processed
+     * @param processMaps if true the maps are built with the parsing,
+     * otherwise each map is built on the first call to its getter
      */
     public OmssaOmxFile(String omxFile, boolean importSpectra, boolean importIdDetails, boolean processMaps) {
         this(omxFile, null, null, importSpectra, importIdDetails, processMaps);
@@ -299,174 +681,64 @@ public class OmssaOmxFile {
     }
 
     /**
-     * Method, that creates a Map of Peptides and corresponding MSPepHit objects
-     * for the given Protein (param, has to be the accession of the Protein).
-     * This HashMap contains valuable information about the location of the
-     * Peptide in the Protein etc.
+     * Returns the loader of the spectra if they are loaded on demand, see
+     * withSpectrumLoader. The loader is closed with this object, see close.
      *
-     * @param protein_accession (String)
-     * @return a Map of Peptides and corresponding MSPepHit objects for the
-     * given Protein
+     * @return the loader of the spectra, null if the spectra were parsed with
+     * the file, also when the file could not be indexed
      */
-    public HashMap<String, MSPepHit> getPeptidesToPepHit(String protein_accession) {
-        HashMap<String, MSPepHit> resultMap = new HashMap<String, MSPepHit>();
-        LinkedList<String> peptides = proteinToPeptideMap.get(protein_accession);
-        Iterator<String> peptideIt = peptides.iterator();
-        while (peptideIt.hasNext()) {
-            String thisPeptide = peptideIt.next();
-            LinkedList<MSPepHit> pephits = peptideToProteinMap.get(thisPeptide);
-            Iterator<MSPepHit> pephitsIt = pephits.iterator();
-            while (pephitsIt.hasNext()) {
-                MSPepHit thisPepHit = pephitsIt.next();
-                if (thisPepHit.MSPepHit_accession.equals(protein_accession)) {
-                    resultMap.put(thisPeptide, thisPepHit);
-                }
-            }
-        }
-
-        return resultMap;
+    public OmxSpectrumLoader getSpectrumLoader() {
+        return spectrumLoader;
     }
 
     /**
-     * Processes every Request Spectrum with its corresponding HitSet into
-     * SpectrumToHitSetMap.
+     * Closes the omx file if the spectra are loaded on demand, see
+     * withSpectrumLoader. The peaks not loaded cannot be loaded anymore.
+     * Nothing is done for the files parsed in full.
      *
-     * @param result MSSearch
+     * @throws IOException if the file could not be closed
      */
-    private void processSpectrumToHitSetMap(MSSearch result) {
-
-        for (int i = 0; i < result.MSSearch_request.MSRequest.size(); i++) {
-            for (Integer key : result.MSSearch_request.MSRequest.get(i).MSRequest_spectra.MSSpectrumset.MSSpectrum.keySet()) {
-                spectrumToHitSetMap.put(result.MSSearch_request.MSRequest.get(i).MSRequest_spectra.MSSpectrumset.MSSpectrum.get(
-                        key), result.MSSearch_response.MSResponse.get(i).MSResponse_hitsets.MSHitSet.get(key));
-            }
+    @Override
+    public void close() throws IOException {
+        if (spectrumLoader != null) {
+            spectrumLoader.close();
         }
     }
 
     /**
-     * Processes every Request Spectrum with its corresponding Peptides into
-     * SpectrumToPeptideMap.
+     * Indicates whether the parsing was canceled by the parse listener. The
+     * parser result is then null and the maps are empty.
      *
-     * @param result MSSearch
+     * @return true if the parsing was canceled
      */
-    private void processSpectrumToPeptideMap(MSSearch result) {
-        HashSet<String> peptideSet = new HashSet<String>();
-        for (int i = 0; i < result.MSSearch_request.MSRequest.size(); i++) {
-            for (Integer key : result.MSSearch_request.MSRequest.get(i).MSRequest_spectra.MSSpectrumset.MSSpectrum.keySet()) {
-
-                if (result.MSSearch_response.MSResponse.get(i) != null) {
-                    if (result.MSSearch_response.MSResponse.get(i).MSResponse_hitsets.MSHitSet.get(key) != null) {
-
-                        Iterator<MSHits> itMSHits = result.MSSearch_response.MSResponse.get(i).MSResponse_hitsets.MSHitSet.get(key).MSHitSet_hits.MSHits.iterator();
-                        while (itMSHits.hasNext()) {
-                            peptideSet.add(itMSHits.next().MSHits_pepstring);
-                        }
-
-                        spectrumToPeptideMap.put(result.MSSearch_request.MSRequest.get(i).MSRequest_spectra.MSSpectrumset.MSSpectrum.get(key), peptideSet);
-                    }
-                }
-            }
-        }
+    public boolean isCanceled() {
+        return parser.isCanceled();
     }
 
     /**
-     * Processes every Peptide with its corresponding Spectra into
-     * PeptideToSpectrumMap.
+     * Method, that creates a Map of Peptides and corresponding MSPepHit objects
+     * for the given Protein (param, has to be the accession of the Protein).
+     * This HashMap contains valuable information about the location of the
+     * Peptide in the Protein etc. If a Peptide has several MSPepHit objects
+     * for the Protein, the last one is returned.
+     * <br><br>Note: The Peptides are looked up in the protein to peptide hits
+     * map, see getProteinToPeptideHitsMap.
      *
-     * @param result MSSearch
-     */
-    private void processPeptideToSpectrumMap(MSSearch result) {
-
-        Iterator<MSSpectrum> spectrumIt = spectrumToHitSetMap.keySet().iterator();
-        while (spectrumIt.hasNext()) {
-            MSSpectrum thisSpectrum = spectrumIt.next();
-            MSHitSet thisHitSet = spectrumToHitSetMap.get(thisSpectrum);
-
-            if (thisHitSet != null) {
-                Iterator<MSHits> mshitsIt = thisHitSet.MSHitSet_hits.MSHits.iterator();
-                while (mshitsIt.hasNext()) {
-                    String thisPepString = mshitsIt.next().MSHits_pepstring;
-                    if (peptideToSpectrumMap.containsKey(thisPepString)) {
-                        peptideToSpectrumMap.get(thisPepString).add(thisSpectrum);
-                    } else {
-                        LinkedList<MSSpectrum> spectrumList = new LinkedList<MSSpectrum>();
-                        spectrumList.add(thisSpectrum);
-                        peptideToSpectrumMap.put(thisPepString, spectrumList);
-                    }
-                }
-            }
+     * @param protein_accession (String)
+     * @return a Map of Peptides and corresponding MSPepHit objects for the
+     * given Protein, empty if the Protein is unknown
+     */
+    public HashMap<String, MSPepHit> getPeptidesToPepHit(String protein_accession) {
+        HashMap<String, LinkedList<MSPepHit>> peptideHits = getProteinToPeptideHitsMap().get(protein_accession);
+        if (peptideHits == null) {
+            return new HashMap<String, MSPepHit>();
         }
-    }
 
-    /**
-     * Processes every Peptide with its corresponding Protein into
-     * PeptideToProteineMap.
-     *
-     * @param result MSSearch
-     */
-    private void processPeptideToProteineMap(MSSearch result) {
-
-        for (int i = 0; i < result.MSSearch_request.MSRequest.size(); i++) {
-            for (Integer key : result.MSSearch_request.MSRequest.get(i).MSRequest_spectra.MSSpectrumset.MSSpectrum.keySet()) {
-
-                if (result.MSSearch_response.MSResponse.get(i) != null) {
-                    if (result.MSSearch_response.MSResponse.get(i).MSResponse_hitsets.MSHitSet.get(key) != null) {
-
-                        Iterator<MSHits> itMSHits = result.MSSearch_response.MSResponse.get(i).MSResponse_hitsets.MSHitSet.get(key).MSHitSet_hits.MSHits.iterator();
-                        while (itMSHits.hasNext()) {
-                            MSHits thisMSHits = itMSHits.next();
-                            String pepString = thisMSHits.MSHits_pepstring;
-                            Iterator<MSPepHit> msPepHitIt = thisMSHits.MSHits_pephits.MSPepHit.iterator();
-                            while (msPepHitIt.hasNext()) {
-                                if (peptideToProteinMap.containsKey(pepString)) {
-                                    peptideToProteinMap.get(pepString).add(msPepHitIt.next());
-                                } else {
-                                    LinkedList<MSPepHit> newList = new LinkedList<MSPepHit>();
-                                    newList.add(msPepHitIt.next());
-                                    peptideToProteinMap.put(pepString, newList);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        HashMap<String, MSPepHit> resultMap = new HashMap<String, MSPepHit>(2 * peptideHits.size());
+        for (Map.Entry<String, LinkedList<MSPepHit>> entry : peptideHits.entrySet()) {
+            resultMap.put(entry.getKey(), entry.getValue().getLast());
         }
-    }
 
-    /**
-     * Processes every Protein with its corresponding Peptides into
-     * ProteineToPeptideMap.
-     *
-     * @param result MSSearch
-     */
-    private void processProteineToPeptideMap(MSSearch result) {
-
-        for (int i = 0; i < result.MSSearch_request.MSRequest.size(); i++) {
-            for (Integer key : result.MSSearch_request.MSRequest.get(i).MSRequest_spectra.MSSpectrumset.MSSpectrum.keySet()) {
-
-                if (result.MSSearch_response.MSResponse.get(i) != null) {
-                    if (result.MSSearch_response.MSResponse.get(i).MSResponse_hitsets.MSHitSet.get(key) != null) {
-
-                        Iterator<MSHits> itMSHits = result.MSSearch_response.MSResponse.get(i).MSResponse_hitsets.MSHitSet.get(key).MSHitSet_hits.MSHits.iterator();
-                        while (itMSHits.hasNext()) {
-                            MSHits thisMSHits = itMSHits.next();
-                            String pepString = thisMSHits.MSHits_pepstring;
-                            Iterator<MSPepHit> msPepHitIt = thisMSHits.MSHits_pephits.MSPepHit.iterator();
-                            while (msPepHitIt.hasNext()) {
-                                String proteinAccession = msPepHitIt.next().MSPepHit_accession;
-                                if (proteinToPeptideMap.containsKey(proteinAccession)) {
-                                    proteinToPeptideMap.get(proteinAccession).add(pepString);
-                                } else {
-                                    LinkedList<String> newList = new LinkedList<String>();
-                                    newList.add(pepString);
-                                    proteinToPeptideMap.put(proteinAccession, newList);
-
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        return resultMap;
     }
 }
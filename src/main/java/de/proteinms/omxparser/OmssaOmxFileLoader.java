@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses several omx files in parallel. Every file is parsed by its own
+ * OmssaOmxFile on the thread pool of the loader, and the results are returned
+ * as futures in the order of the files given.
+ * <br><br>
+ * The threads created by the loader are daemon threads, they do not keep the
+ * JVM alive. The loader should still be closed when no more files are to be
+ * loaded.
+ */
+public class OmssaOmxFileLoader implements Closeable {
+
+    /**
+     * The thread pool used to parse the files.
+     */
+    private final ExecutorService executor;
+    /**
+     * Indicates whether the thread pool was created by the loader and has to
+     * be shut down by it.
+     */
+    private final boolean ownExecutor;
+
+    /**
+     * Creates a loader parsing the files on a thread pool of the given size.
+     *
+     * @param nThreads the number of files to parse in parallel
+     */
+    public OmssaOmxFileLoader(int nThreads) {
+        this.executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "omx-loader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.ownExecutor = true;
+    }
+
+    /**
+     * Creates a loader parsing the files on the given thread pool. The thread
+     * pool is not shut down by the loader.
+     *
+     * @param executor the thread pool to use
+     */
+    public OmssaOmxFileLoader(ExecutorService executor) {
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    /**
+     * Parses the given omx files in parallel.
+     *
+     * @param omxFiles the omx files to parse
+     * @param modsFile the file name of the mods.xml file, can be null
+     * @param userModsFile the file name of the usermods.xml file, can be null
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * files will be skipped
+     * @param importIdDetails if false the sections MSHits_pephits,
+     * MSHits_mzhits of the omx files will be skipped
+     * @param processMaps if true the maps are built with the parsing,
+     * otherwise each map is built on the first call to its getter
+     * @return the parsed files as futures, in the order of the files given
+     */
+    public List<Future<OmssaOmxFile>> load(List<File> omxFiles, final String modsFile, final String userModsFile,
+            final boolean importSpectra, final boolean importIdDetails, final boolean processMaps) {
+
+        ArrayList<Future<OmssaOmxFile>> result = new ArrayList<Future<OmssaOmxFile>>(omxFiles.size());
+
+        for (final File omxFile : omxFiles) {
+            result.add(executor.submit(new Callable<OmssaOmxFile>() {
+                @Override
+                public OmssaOmxFile call() {
+                    return new OmssaOmxFile(omxFile.getAbsolutePath(), modsFile, userModsFile, importSpectra, importIdDetails, processMaps);
+                }
+            }));
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses the given omx files in parallel, without modification files.
+     *
+     * @param omxFiles the omx files to parse
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * files will be skipped
+     * @param importIdDetails if false the sections MSHits_pephits,
+     * MSHits_mzhits of the omx files will be skipped
+     * @param processMaps if true the maps are built with the parsing,
+     * otherwise each map is built on the first call to its getter
+     * @return the parsed files as futures, in the order of the files given
+     */
+    public List<Future<OmssaOmxFile>> load(List<File> omxFiles, boolean importSpectra, boolean importIdDetails, boolean processMaps) {
+        return load(omxFiles, null, null, importSpectra, importIdDetails, processMaps);
+    }
+
+    /**
+     * Shuts down the thread pool if it was created by the loader. Files
+     * already submitted are still parsed.
+     */
+    public void shutdown() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Shuts down the thread pool if it was created by the loader, see
+     * shutdown.
+     */
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
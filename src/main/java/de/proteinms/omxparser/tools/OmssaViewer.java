@@ -12,6 +12,8 @@ import de.proteinms.omxparser.util.MSModHit;
 import de.proteinms.omxparser.util.MSPepHit;
 import de.proteinms.omxparser.util.MSSpectrum;
 import de.proteinms.omxparser.util.OmssaModification;
+import de.proteinms.omxparser.util.OmxIndexBuilder.Index;
+import de.proteinms.omxparser.util.OmxIntMap;
 import java.awt.Color;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
@@ -41,10 +43,10 @@ public class OmssaViewer extends javax.swing.JFrame {
     private ProgressDialog progressDialog;
     private SpectrumPanel spectrumPanel;
     private String omxFile, modsFile, userModsFile;
-    private HashMap<Integer, ArrayList<Double>> allMzValues;
-    private HashMap<Integer, ArrayList<Double>> allAbundanceValues;
+    private OmxIntMap<double[]> allMzValues;
+    private OmxIntMap<double[]> allAbundanceValues;
     private HashMap<MSSpectrum, MSHitSet> spectrumHitSetMap;
-    private HashMap<Integer, MSSpectrum> spectra;
+    private OmxIntMap<MSSpectrum> spectra;
     private Vector spectraJTableColumnToolTips;
     private Vector spectrumJTableColumnToolTips;
     private Vector identificationsJTableColumnToolTips;
@@ -478,9 +480,11 @@ public class OmssaViewer extends javax.swing.JFrame {
                 spectrumJPanel.validate();
                 spectrumJPanel.repaint();
 
-                // parses the file
+                // parses the file, closing the progress dialog cancels the parsing
+                progressDialog.setCancelable(true);
+
                 try {
-                    omssaOmxFile = new OmssaOmxFile(omxFile, modsFile, userModsFile);
+                    omssaOmxFile = new OmssaOmxFile(omxFile, modsFile, userModsFile, true, true, false, progressDialog);
                 } catch (OutOfMemoryError error) {
                     progressDialog.setVisible(false);
                     progressDialog.dispose();
@@ -495,6 +499,15 @@ public class OmssaViewer extends javax.swing.JFrame {
                     System.exit(0);
                 }
 
+                progressDialog.setCancelable(false);
+
+                if (omssaOmxFile.isCanceled()) {
+                    progressDialog.setVisible(false);
+                    progressDialog.dispose();
+                    return;
+                }
+
+                progressDialog.setIntermidiate(true);
 
                 // extract MSSearchSettings_msmstol
                 ionCoverageErrorMargin =
@@ -509,26 +522,19 @@ public class OmssaViewer extends javax.swing.JFrame {
                         omssaOmxFile.getParserResult().MSSearch_request.MSRequest.get(0).MSRequest_settings.MSSearchSettings.MSSearchSettings_ionstosearch.MSIonType;
 
                 // iterate the spectrum to hitset map
-                // extract and store details about the spectra
+                // extract and store details about the spectra, both maps built in a single pass
+                omssaOmxFile.buildIndexes(Index.SPECTRUM_TO_HIT_SET, Index.NUMBER_TO_SPECTRUM);
                 spectrumHitSetMap = omssaOmxFile.getSpectrumToHitSetMap();
-                Iterator<MSSpectrum> iterator = spectrumHitSetMap.keySet().iterator();
+                spectra = omssaOmxFile.getNumberToSpectrumMap();
 
-                allMzValues = new HashMap<Integer, ArrayList<Double>>();
-                allAbundanceValues = new HashMap<Integer, ArrayList<Double>>();
-                spectra = new HashMap<Integer, MSSpectrum>();
-
-                // iterate the spectra
-                while (iterator.hasNext()) {
-                    MSSpectrum tempSpectrum = iterator.next();
-                    spectra.put(Integer.valueOf(tempSpectrum.MSSpectrum_number), tempSpectrum);
-                }
+                allMzValues = new OmxIntMap<double[]>();
+                allAbundanceValues = new OmxIntMap<double[]>();
 
                 // add the spectra to the table
-                Object[] keys = spectra.keySet().toArray();
-                Arrays.sort(keys);
+                int[] keys = spectra.keys();
 
                 for (int i = 0; i < keys.length; i++) {
-                    MSSpectrum tempSpectrum = spectra.get((Integer) keys[i]);
+                    MSSpectrum tempSpectrum = spectra.get(keys[i]);
 
                     // OMSSA question: possible with more than one file name per spectrum??
                     String fileName;
@@ -552,21 +558,11 @@ public class OmssaViewer extends javax.swing.JFrame {
 
                     double omssaAbundanceScale = tempSpectrum.MSSpectrum_iscale;
 
-                    ArrayList<Double> currentRealMzValues = new ArrayList();
-                    ArrayList<Double> currentRealAbundanceValues = new ArrayList();
-
-                    List<Integer> currentMzValuesAsIntegers = tempSpectrum.MSSpectrum_mz.MSSpectrum_mz_E;
-                    List<Integer> currentAbundanceValuesAsIntegers = tempSpectrum.MSSpectrum_abundance.MSSpectrum_abundance_E;
+                    double[] currentRealMzValues = tempSpectrum.MSSpectrum_mz.getMzValues(omssaResponseScale);
+                    double[] currentRealAbundanceValues = tempSpectrum.MSSpectrum_abundance.getAbundanceValues(omssaAbundanceScale);
 
-                    for (int j = 0; j < currentMzValuesAsIntegers.size(); j++) {
-                        currentRealMzValues.add(currentMzValuesAsIntegers.get(j).doubleValue() / omssaResponseScale);
-                        currentRealAbundanceValues.add(currentAbundanceValuesAsIntegers.get(j).doubleValue() / omssaAbundanceScale);
-                    }
-
-                    allMzValues.put(Integer.valueOf(tempSpectrum.MSSpectrum_number),
-                            currentRealMzValues);
-                    allAbundanceValues.put(Integer.valueOf(tempSpectrum.MSSpectrum_number),
-                            currentRealAbundanceValues);
+                    allMzValues.put(tempSpectrum.MSSpectrum_number, currentRealMzValues);
+                    allAbundanceValues.put(tempSpectrum.MSSpectrum_number, currentRealAbundanceValues);
 
                     boolean identified = false;
 
@@ -1926,7 +1922,7 @@ public class OmssaViewer extends javax.swing.JFrame {
 
                             MSPepHit tempPepHit = pepHitIterator.next();
 
-                            MSSpectrum tempSpectrum = spectra.get(Integer.valueOf(msHitSet.MSHitSet_number));
+                            MSSpectrum tempSpectrum = spectra.get(msHitSet.MSHitSet_number);
                             String filename = "[no filename specified]";
                             if (!tempSpectrum.MSSpectrum_ids.MSSpectrum_ids_E.isEmpty()) {
                                 filename = tempSpectrum.MSSpectrum_ids.MSSpectrum_ids_E.get(0);
@@ -2021,8 +2017,8 @@ public class OmssaViewer extends javax.swing.JFrame {
 
             for (int j = 0; j < spectraJTable.getRowCount(); j++) {
 
-                List<Double> mzValues = allMzValues.get((Integer) spectraJTable.getValueAt(j, 0));
-                List<Double> abundanceValues = allAbundanceValues.get((Integer) spectraJTable.getValueAt(j, 0));
+                double[] mzValues = allMzValues.get((Integer) spectraJTable.getValueAt(j, 0));
+                double[] abundanceValues = allAbundanceValues.get((Integer) spectraJTable.getValueAt(j, 0));
 
                 File currentFile = new File(selectedFolder, "" + spectraJTable.getValueAt(j, 1));
 
@@ -2042,8 +2038,8 @@ public class OmssaViewer extends javax.swing.JFrame {
                     f.write(" " + precursorCharge + "\n");
 
                     // write all the m/z abundance pairs
-                    for (int i = 0; i < mzValues.size(); i++) {
-                        f.write(mzValues.get(i) + " " + abundanceValues.get(i) + "\n");
+                    for (int i = 0; i < mzValues.length; i++) {
+                        f.write(mzValues[i] + " " + abundanceValues[i] + "\n");
                     }
 
                     f.close();
@@ -2179,8 +2175,8 @@ public class OmssaViewer extends javax.swing.JFrame {
         int row = spectraJTable.getSelectedRow();
 
         if (row != -1) {
-            List<Double> mzValues = allMzValues.get((Integer) spectraJTable.getValueAt(row, 0));
-            List<Double> abundanceValues = allAbundanceValues.get((Integer) spectraJTable.getValueAt(row, 0));
+            double[] mzValues = allMzValues.get((Integer) spectraJTable.getValueAt(row, 0));
+            double[] abundanceValues = allAbundanceValues.get((Integer) spectraJTable.getValueAt(row, 0));
 
             // empty the spectrum table
             while (spectrumJTable.getRowCount() > 0) {
@@ -2195,29 +2191,22 @@ public class OmssaViewer extends javax.swing.JFrame {
                 spectrumJPanel.remove(0);
             }
 
-            // needed as input to the spectrum panel
-            double[] mzValuesAsDouble = new double[mzValues.size()];
-            double[] abundanceValuesAsDouble = new double[mzValues.size()];
-
             // insert the spectrum details in the spectrum table
-            for (int i = 0; i < mzValues.size(); i++) {
+            for (int i = 0; i < mzValues.length; i++) {
 
                 ((DefaultTableModel) spectrumJTable.getModel()).addRow(new Object[]{
                             Integer.valueOf(i + 1),
-                            mzValues.get(i),
-                            abundanceValues.get(i)
+                            mzValues[i],
+                            abundanceValues[i]
                         });
-
-                mzValuesAsDouble[i] = mzValues.get(i);
-                abundanceValuesAsDouble[i] = abundanceValues.get(i);
             }
 
             exportSelectedSpectrumJMenuItem.setEnabled(true);
 
             // updates the spectrum panel
             spectrumPanel = new SpectrumPanel(
-                    mzValuesAsDouble,
-                    abundanceValuesAsDouble,
+                    mzValues,
+                    abundanceValues,
                     ((Double) spectraJTable.getValueAt(row, 2)),
                     "" + spectraJTable.getValueAt(row, 3),
                     ((String) spectraJTable.getValueAt(row, 1)),
@@ -0,0 +1,867 @@
+package de.proteinms.omxparser.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes synthetic omx files for scale and stress testing. The files follow
+ * the OMSSA schema and are parsed by OmxParser like search results: every
+ * MSRequest has its spectra and search settings, and the MSResponse of the
+ * same index has one hit set per spectrum. The peptides are drawn from a
+ * pool of tryptic peptides, each matching the same proteins in every hit,
+ * with fragment ions and masses computed from their sequence.
+ * <br><br>
+ * The output only depends on the settings and the seed: the same settings
+ * always give the same file. Files ending with .gz are gzipped. The file is
+ * written as it is generated, so the memory needed is independent of its
+ * size.
+ * <br><br>
+ * Usage: OmxGenerator outputFile [name=value ...]
+ * <br><br>
+ * With the settings requests, spectra (per request), peaks (per spectrum),
+ * hits (per hit set), pephits (per hit), mzhits (per hit), modDensity
+ * (fraction of the modifiable residues modified), peptides (distinct
+ * peptides), proteins and seed, e.g.
+ * <pre>
+ * OmxGenerator search.omx.gz requests=2 spectra=50000 hits=5 modDensity=0.3
+ * </pre>
+ * With the default settings a spectrum with its hit set takes about 40 kB.
+ */
+public class OmxGenerator {
+
+    /**
+     * The residues of the peptides.
+     */
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+    /**
+     * The monoisotopic masses of the residues.
+     */
+    private static final double[] RESIDUE_MASSES = {
+        71.03711, 103.00919, 115.02694, 129.04259, 147.06841,
+        57.02146, 137.05891, 113.08406, 128.09496, 113.08406,
+        131.04049, 114.04293, 97.05276, 128.05858, 156.10111,
+        87.03203, 101.04768, 99.06841, 186.07931, 163.06333};
+    /**
+     * The monoisotopic mass of water.
+     */
+    private static final double WATER = 18.01056;
+    /**
+     * The mass of a proton.
+     */
+    private static final double PROTON = 1.00728;
+    /**
+     * The scale of the masses and m/z values.
+     */
+    private static final int SCALE = 1000;
+    /**
+     * The scale of the peak intensities.
+     */
+    private static final int INTENSITY_SCALE = 100;
+    /**
+     * The modifiable residues.
+     */
+    private static final String MODIFIED_RESIDUES = "MSTY";
+    /**
+     * The OMSSA modification of each modifiable residue: oxidation of M and
+     * phosphorylation of S, T and Y.
+     */
+    private static final int[] MODIFICATIONS = {1, 10, 11, 12};
+    /**
+     * The names of the modifications.
+     */
+    private static final String[] MODIFICATION_NAMES = {"oxm", "phosphorylations", "phosphorylationt", "phosphorylationy"};
+    /**
+     * The mass shifts of the modifications.
+     */
+    private static final double[] MODIFICATION_MASSES = {15.99491, 79.96633, 79.96633, 79.96633};
+    /**
+     * The number of MSRequest and MSResponse.
+     */
+    private int requests = 1;
+    /**
+     * The number of spectra per request.
+     */
+    private int spectra = 1000;
+    /**
+     * The number of peaks per spectrum.
+     */
+    private int peaks = 100;
+    /**
+     * The number of hits per hit set.
+     */
+    private int hits = 5;
+    /**
+     * The number of MSPepHit per hit.
+     */
+    private int pepHits = 2;
+    /**
+     * The number of MSMZHit per hit.
+     */
+    private int mzHits = 10;
+    /**
+     * The fraction of the modifiable residues of the hits modified.
+     */
+    private double modificationDensity = 0.2;
+    /**
+     * The number of distinct peptides.
+     */
+    private int peptides = 10000;
+    /**
+     * The number of proteins.
+     */
+    private int proteins = 2000;
+    /**
+     * The seed of the random numbers.
+     */
+    private long seed = 1;
+    /**
+     * The sequences of the peptides.
+     */
+    private String[] peptideSequences;
+    /**
+     * The proteins of each peptide.
+     */
+    private int[][] peptideProteins;
+    /**
+     * The start of each peptide in each of its proteins.
+     */
+    private int[][] peptideStarts;
+
+    /**
+     * Generates an omx file from the command line.
+     *
+     * @param args the output file and the settings
+     * @throws IOException if the file could not be written
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 1) {
+            System.out.println("Usage: OmxGenerator outputFile [requests=1] [spectra=1000] [peaks=100] [hits=5] [pephits=2]"
+                    + " [mzhits=10] [modDensity=0.2] [peptides=10000] [proteins=2000] [seed=1]");
+            return;
+        }
+
+        OmxGenerator generator = new OmxGenerator();
+        for (int i = 1; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Setting not in name=value form: " + args[i]);
+            }
+            String name = args[i].substring(0, separator);
+            String value = args[i].substring(separator + 1);
+            if (name.equals("requests")) {
+                generator.setRequests(Integer.parseInt(value));
+            } else if (name.equals("spectra")) {
+                generator.setSpectra(Integer.parseInt(value));
+            } else if (name.equals("peaks")) {
+                generator.setPeaks(Integer.parseInt(value));
+            } else if (name.equals("hits")) {
+                generator.setHits(Integer.parseInt(value));
+            } else if (name.equals("pephits")) {
+                generator.setPepHits(Integer.parseInt(value));
+            } else if (name.equals("mzhits")) {
+                generator.setMzHits(Integer.parseInt(value));
+            } else if (name.equals("modDensity")) {
+                generator.setModificationDensity(Double.parseDouble(value));
+            } else if (name.equals("peptides")) {
+                generator.setPeptides(Integer.parseInt(value));
+            } else if (name.equals("proteins")) {
+                generator.setProteins(Integer.parseInt(value));
+            } else if (name.equals("seed")) {
+                generator.setSeed(Long.parseLong(value));
+            } else {
+                throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        }
+
+        File omxFile = new File(args[0]);
+        long start = System.nanoTime();
+        generator.write(omxFile);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Written " + omxFile + " (" + Math.round(omxFile.length() / (1024.0 * 1024.0)) + " MB) in "
+                + Math.round(seconds) + " s: " + generator.getRequests() + " requests of " + generator.getSpectra()
+                + " spectra with " + generator.getHits() + " hits each");
+    }
+
+    /**
+     * Writes an omx file. Files ending with .gz are gzipped.
+     *
+     * @param omxFile the file to write
+     * @throws IOException if the file could not be written
+     */
+    public void write(File omxFile) throws IOException {
+        OutputStream outputStream = new FileOutputStream(omxFile);
+        if (omxFile.getName().endsWith(".gz")) {
+            outputStream = new GZIPOutputStream(outputStream, 64 * 1024);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"), 64 * 1024);
+        try {
+            write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes an omx document to the given writer. The writer is not closed.
+     *
+     * @param writer the writer
+     * @throws IOException if the document could not be written
+     */
+    public void write(Writer writer) throws IOException {
+
+        Random random = new Random(seed);
+        createPeptides(random);
+
+        writer.write("<?xml version=\"1.0\"?>\n");
+        writer.write("<MSSearch xmlns=\"http://www.ncbi.nlm.nih.gov\" xmlns:xs=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+
+        // the charge and peptides of the spectra are drawn again for the responses
+        int[] hitPeptides = new int[hits];
+
+        writer.write("  <MSSearch_request>\n");
+        for (int request = 0; request < requests; request++) {
+            Random hitRandom = getHitRandom(request);
+            writer.write("    <MSRequest>\n");
+            writer.write("      <MSRequest_spectra>\n");
+            writer.write("        <MSSpectrumset>\n");
+            for (int spectrum = 0; spectrum < spectra; spectrum++) {
+                int charge = drawHits(hitRandom, hitPeptides);
+                writeSpectrum(writer, random, request, spectrum, charge, hitPeptides);
+            }
+            writer.write("        </MSSpectrumset>\n");
+            writer.write("      </MSRequest_spectra>\n");
+            writeSettings(writer, request);
+            writer.write("      <MSRequest_rid>request" + request + "</MSRequest_rid>\n");
+            writer.write("    </MSRequest>\n");
+        }
+        writer.write("  </MSSearch_request>\n");
+
+        writer.write("  <MSSearch_response>\n");
+        for (int request = 0; request < requests; request++) {
+            Random hitRandom = getHitRandom(request);
+            writer.write("    <MSResponse>\n");
+            writer.write("      <MSResponse_hitsets>\n");
+            for (int spectrum = 0; spectrum < spectra; spectrum++) {
+                int charge = drawHits(hitRandom, hitPeptides);
+                writeHitSet(writer, random, request, spectrum, charge, hitPeptides);
+            }
+            writer.write("      </MSResponse_hitsets>\n");
+            writer.write("      <MSResponse_scale>" + SCALE + "</MSResponse_scale>\n");
+            writer.write("      <MSResponse_rid>request" + request + "</MSResponse_rid>\n");
+            writer.write("      <MSResponse_error>\n");
+            writer.write("        <MSResponseError value=\"none\">0</MSResponseError>\n");
+            writer.write("      </MSResponse_error>\n");
+            writer.write("      <MSResponse_version>2.1.9</MSResponse_version>\n");
+            writer.write("      <MSResponse_dbversion>" + proteins + "</MSResponse_dbversion>\n");
+            writer.write("    </MSResponse>\n");
+        }
+        writer.write("  </MSSearch_response>\n");
+        writer.write("</MSSearch>\n");
+        writer.flush();
+    }
+
+    /**
+     * Draws the pool of peptides and their proteins.
+     *
+     * @param random the random numbers
+     */
+    private void createPeptides(Random random) {
+        if (peptides < 1 || proteins < pepHits || requests < 1 || spectra < 0 || peaks < 0 || hits < 0 || pepHits < 0 || mzHits < 0) {
+            throw new IllegalArgumentException("Invalid settings: " + this);
+        }
+        peptideSequences = new String[peptides];
+        peptideProteins = new int[peptides][];
+        peptideStarts = new int[peptides][];
+        StringBuilder sequence = new StringBuilder();
+        for (int peptide = 0; peptide < peptides; peptide++) {
+            sequence.setLength(0);
+            int length = 7 + random.nextInt(14);
+            for (int i = 0; i < length - 1; i++) {
+                // no tryptic site within the peptide
+                char residue;
+                do {
+                    residue = RESIDUES.charAt(random.nextInt(RESIDUES.length()));
+                } while (residue == 'K' || residue == 'R');
+                sequence.append(residue);
+            }
+            sequence.append(random.nextBoolean() ? 'K' : 'R');
+            peptideSequences[peptide] = sequence.toString();
+            peptideProteins[peptide] = new int[pepHits];
+            peptideStarts[peptide] = new int[pepHits];
+            for (int i = 0; i < pepHits; i++) {
+                int protein;
+                boolean duplicate;
+                do {
+                    protein = random.nextInt(proteins);
+                    duplicate = false;
+                    for (int j = 0; j < i; j++) {
+                        duplicate |= peptideProteins[peptide][j] == protein;
+                    }
+                } while (duplicate);
+                peptideProteins[peptide][i] = protein;
+                peptideStarts[peptide][i] = random.nextInt(getProteinLength(protein) - length);
+            }
+        }
+    }
+
+    /**
+     * Returns the random numbers drawing the charge and peptides of the
+     * spectra of a request.
+     *
+     * @param request the index of the request
+     * @return the random numbers
+     */
+    private Random getHitRandom(int request) {
+        return new Random(seed * 31 + request + 1);
+    }
+
+    /**
+     * Draws the charge and the peptides of the hits of the next spectrum.
+     *
+     * @param hitRandom the random numbers of the request
+     * @param hitPeptides the array receiving the peptides of the hits
+     * @return the charge of the spectrum
+     */
+    private int drawHits(Random hitRandom, int[] hitPeptides) {
+        int charge = 2 + hitRandom.nextInt(2);
+        for (int i = 0; i < hitPeptides.length; i++) {
+            hitPeptides[i] = hitRandom.nextInt(peptides);
+        }
+        return charge;
+    }
+
+    /**
+     * Writes a spectrum.
+     *
+     * @param writer the writer
+     * @param random the random numbers
+     * @param request the index of the request
+     * @param number the number of the spectrum
+     * @param charge the charge of the spectrum
+     * @param hitPeptides the peptides of the hits of the spectrum
+     * @throws IOException if the spectrum could not be written
+     */
+    private void writeSpectrum(Writer writer, Random random, int request, int number, int charge, int[] hitPeptides) throws IOException {
+
+        double precursorMass = hitPeptides.length > 0 ? getMass(peptideSequences[hitPeptides[0]]) : 800 + random.nextDouble() * 2000;
+        long precursorMz = Math.round((precursorMass + charge * PROTON) / charge * SCALE);
+
+        int[] mz = new int[peaks];
+        for (int i = 0; i < peaks; i++) {
+            mz[i] = (100 + random.nextInt(1900)) * SCALE + random.nextInt(SCALE);
+        }
+        Arrays.sort(mz);
+
+        writer.write("          <MSSpectrum>\n");
+        writer.write("            <MSSpectrum_number>" + number + "</MSSpectrum_number>\n");
+        writer.write("            <MSSpectrum_charge>\n");
+        writer.write("              <MSSpectrum_charge_E>" + charge + "</MSSpectrum_charge_E>\n");
+        writer.write("            </MSSpectrum_charge>\n");
+        writer.write("            <MSSpectrum_precursormz>" + precursorMz + "</MSSpectrum_precursormz>\n");
+        writer.write("            <MSSpectrum_mz>\n");
+        for (int i = 0; i < peaks; i++) {
+            writer.write("              <MSSpectrum_mz_E>" + mz[i] + "</MSSpectrum_mz_E>\n");
+        }
+        writer.write("            </MSSpectrum_mz>\n");
+        writer.write("            <MSSpectrum_abundance>\n");
+        for (int i = 0; i < peaks; i++) {
+            writer.write("              <MSSpectrum_abundance_E>" + (1 + random.nextInt(1000000)) + "</MSSpectrum_abundance_E>\n");
+        }
+        writer.write("            </MSSpectrum_abundance>\n");
+        writer.write("            <MSSpectrum_iscale>" + INTENSITY_SCALE + "</MSSpectrum_iscale>\n");
+        writer.write("            <MSSpectrum_ids>\n");
+        writer.write("              <MSSpectrum_ids_E>" + getSpectrumTitle(request, number, charge) + "</MSSpectrum_ids_E>\n");
+        writer.write("            </MSSpectrum_ids>\n");
+        writer.write("          </MSSpectrum>\n");
+    }
+
+    /**
+     * Writes the search settings of a request.
+     *
+     * @param writer the writer
+     * @param request the index of the request
+     * @throws IOException if the settings could not be written
+     */
+    private void writeSettings(Writer writer, int request) throws IOException {
+        writer.write("      <MSRequest_settings>\n");
+        writer.write("        <MSSearchSettings>\n");
+        writer.write("          <MSSearchSettings_precursorsearchtype>\n");
+        writer.write("            <MSSearchType value=\"monoisotopic\">0</MSSearchType>\n");
+        writer.write("          </MSSearchSettings_precursorsearchtype>\n");
+        writer.write("          <MSSearchSettings_productsearchtype>\n");
+        writer.write("            <MSSearchType value=\"monoisotopic\">0</MSSearchType>\n");
+        writer.write("          </MSSearchSettings_productsearchtype>\n");
+        writer.write("          <MSSearchSettings_ionstosearch>\n");
+        writer.write("            <MSIonType value=\"b\">1</MSIonType>\n");
+        writer.write("            <MSIonType value=\"y\">4</MSIonType>\n");
+        writer.write("          </MSSearchSettings_ionstosearch>\n");
+        writer.write("          <MSSearchSettings_peptol>1</MSSearchSettings_peptol>\n");
+        writer.write("          <MSSearchSettings_msmstol>0.5</MSSearchSettings_msmstol>\n");
+        writer.write("          <MSSearchSettings_zdep>\n");
+        writer.write("            <MSZdependence value=\"independent\">0</MSZdependence>\n");
+        writer.write("          </MSSearchSettings_zdep>\n");
+        writer.write("          <MSSearchSettings_cutoff>1</MSSearchSettings_cutoff>\n");
+        writer.write("          <MSSearchSettings_cutlo>0</MSSearchSettings_cutlo>\n");
+        writer.write("          <MSSearchSettings_cuthi>0.2</MSSearchSettings_cuthi>\n");
+        writer.write("          <MSSearchSettings_cutinc>0.0005</MSSearchSettings_cutinc>\n");
+        writer.write("          <MSSearchSettings_singlewin>27</MSSearchSettings_singlewin>\n");
+        writer.write("          <MSSearchSettings_doublewin>14</MSSearchSettings_doublewin>\n");
+        writer.write("          <MSSearchSettings_singlenum>2</MSSearchSettings_singlenum>\n");
+        writer.write("          <MSSearchSettings_doublenum>2</MSSearchSettings_doublenum>\n");
+        writer.write("          <MSSearchSettings_fixed>\n");
+        writer.write("            <MSMod value=\"carbamidomethylc\">3</MSMod>\n");
+        writer.write("          </MSSearchSettings_fixed>\n");
+        writer.write("          <MSSearchSettings_variable>\n");
+        for (int i = 0; i < MODIFICATIONS.length; i++) {
+            writer.write("            <MSMod value=\"" + MODIFICATION_NAMES[i] + "\">" + MODIFICATIONS[i] + "</MSMod>\n");
+        }
+        writer.write("          </MSSearchSettings_variable>\n");
+        writer.write("          <MSSearchSettings_enzyme>\n");
+        writer.write("            <MSEnzymes value=\"trypsin\">0</MSEnzymes>\n");
+        writer.write("          </MSSearchSettings_enzyme>\n");
+        writer.write("          <MSSearchSettings_missedcleave>1</MSSearchSettings_missedcleave>\n");
+        writer.write("          <MSSearchSettings_hitlistlen>" + Math.max(hits, 1) + "</MSSearchSettings_hitlistlen>\n");
+        writer.write("          <MSSearchSettings_db>synthetic.fasta</MSSearchSettings_db>\n");
+        writer.write("          <MSSearchSettings_tophitnum>6</MSSearchSettings_tophitnum>\n");
+        writer.write("          <MSSearchSettings_minhit>2</MSSearchSettings_minhit>\n");
+        writer.write("          <MSSearchSettings_minspectra>4</MSSearchSettings_minspectra>\n");
+        writer.write("          <MSSearchSettings_scale>" + SCALE + "</MSSearchSettings_scale>\n");
+        writer.write("          <MSSearchSettings_maxmods>128</MSSearchSettings_maxmods>\n");
+        writer.write("          <MSSearchSettings_chargehandling>\n");
+        writer.write("            <MSChargeHandle>\n");
+        writer.write("              <MSChargeHandle_calcplusone>\n");
+        writer.write("                <MSCalcPlusOne value=\"calculate\">1</MSCalcPlusOne>\n");
+        writer.write("              </MSChargeHandle_calcplusone>\n");
+        writer.write("              <MSChargeHandle_calccharge>\n");
+        writer.write("                <MSCalcCharge value=\"calculate\">1</MSCalcCharge>\n");
+        writer.write("              </MSChargeHandle_calccharge>\n");
+        writer.write("              <MSChargeHandle_mincharge>2</MSChargeHandle_mincharge>\n");
+        writer.write("              <MSChargeHandle_maxcharge>3</MSChargeHandle_maxcharge>\n");
+        writer.write("              <MSChargeHandle_considermult>3</MSChargeHandle_considermult>\n");
+        writer.write("              <MSChargeHandle_plusone>0.95</MSChargeHandle_plusone>\n");
+        writer.write("              <MSChargeHandle_maxproductcharge>2</MSChargeHandle_maxproductcharge>\n");
+        writer.write("              <MSChargeHandle_prodlesspre value=\"true\"/>\n");
+        writer.write("              <MSChargeHandle_negative>1</MSChargeHandle_negative>\n");
+        writer.write("            </MSChargeHandle>\n");
+        writer.write("          </MSSearchSettings_chargehandling>\n");
+        writer.write("          <MSSearchSettings_pseudocount>1</MSSearchSettings_pseudocount>\n");
+        writer.write("          <MSSearchSettings_searchb1>1</MSSearchSettings_searchb1>\n");
+        writer.write("          <MSSearchSettings_searchctermproduct>0</MSSearchSettings_searchctermproduct>\n");
+        writer.write("          <MSSearchSettings_maxproductions>100</MSSearchSettings_maxproductions>\n");
+        writer.write("          <MSSearchSettings_minnoenzyme>4</MSSearchSettings_minnoenzyme>\n");
+        writer.write("          <MSSearchSettings_maxnoenzyme>40</MSSearchSettings_maxnoenzyme>\n");
+        writer.write("          <MSSearchSettings_exactmass>1446.94</MSSearchSettings_exactmass>\n");
+        writer.write("          <MSSearchSettings_settingid>" + request + "</MSSearchSettings_settingid>\n");
+        writer.write("          <MSSearchSettings_precursorcull>0</MSSearchSettings_precursorcull>\n");
+        writer.write("          <MSSearchSettings_infiles>\n");
+        writer.write("            <MSInFile>\n");
+        writer.write("              <MSInFile_infile>synthetic_" + request + ".mgf</MSInFile_infile>\n");
+        writer.write("              <MSInFile_infiletype>\n");
+        writer.write("                <MSSpectrumFileType value=\"mgf\">8</MSSpectrumFileType>\n");
+        writer.write("              </MSInFile_infiletype>\n");
+        writer.write("            </MSInFile>\n");
+        writer.write("          </MSSearchSettings_infiles>\n");
+        writer.write("          <MSSearchSettings_nocorrelationscore>0</MSSearchSettings_nocorrelationscore>\n");
+        writer.write("          <MSSearchSettings_probfollowingion>0.5</MSSearchSettings_probfollowingion>\n");
+        writer.write("          <MSSearchSettings_nmethionine value=\"true\"/>\n");
+        writer.write("          <MSSearchSettings_automassadjust>1</MSSearchSettings_automassadjust>\n");
+        writer.write("          <MSSearchSettings_lomasscutoff>0</MSSearchSettings_lomasscutoff>\n");
+        writer.write("          <MSSearchSettings_reversesearch value=\"false\"/>\n");
+        writer.write("          <MSSearchSettings_numisotopes>0</MSSearchSettings_numisotopes>\n");
+        writer.write("          <MSSearchSettings_pepppm value=\"false\"/>\n");
+        writer.write("          <MSSearchSettings_msmsppm value=\"false\"/>\n");
+        writer.write("          <MSSearchSettings_reportedhitcount>" + hits + "</MSSearchSettings_reportedhitcount>\n");
+        writer.write("        </MSSearchSettings>\n");
+        writer.write("      </MSRequest_settings>\n");
+    }
+
+    /**
+     * Writes the hit set of a spectrum. The hits are sorted by increasing
+     * e-value.
+     *
+     * @param writer the writer
+     * @param random the random numbers
+     * @param request the index of the request
+     * @param number the number of the spectrum
+     * @param charge the charge of the spectrum
+     * @param hitPeptides the peptides of the hits
+     * @throws IOException if the hit set could not be written
+     */
+    private void writeHitSet(Writer writer, Random random, int request, int number, int charge, int[] hitPeptides) throws IOException {
+
+        double[] evalues = new double[hitPeptides.length];
+        for (int i = 0; i < evalues.length; i++) {
+            evalues[i] = Math.pow(10, -8 + random.nextDouble() * 9);
+        }
+        Arrays.sort(evalues);
+
+        writer.write("        <MSHitSet>\n");
+        writer.write("          <MSHitSet_number>" + number + "</MSHitSet_number>\n");
+        writer.write("          <MSHitSet_error>\n");
+        writer.write("            <MSHitError value=\"none\">0</MSHitError>\n");
+        writer.write("          </MSHitSet_error>\n");
+        if (hitPeptides.length > 0) {
+            writer.write("          <MSHitSet_hits>\n");
+            for (int i = 0; i < hitPeptides.length; i++) {
+                writeHit(writer, random, hitPeptides[i], charge, evalues[i]);
+            }
+            writer.write("          </MSHitSet_hits>\n");
+        }
+        writer.write("          <MSHitSet_ids>\n");
+        writer.write("            <MSHitSet_ids_E>" + getSpectrumTitle(request, number, charge) + "</MSHitSet_ids_E>\n");
+        writer.write("          </MSHitSet_ids>\n");
+        writer.write("          <MSHitSet_settingid>" + request + "</MSHitSet_settingid>\n");
+        writer.write("        </MSHitSet>\n");
+    }
+
+    /**
+     * Writes a hit.
+     *
+     * @param writer the writer
+     * @param random the random numbers
+     * @param peptide the index of the peptide of the hit
+     * @param charge the charge of the hit
+     * @param evalue the e-value of the hit
+     * @throws IOException if the hit could not be written
+     */
+    private void writeHit(Writer writer, Random random, int peptide, int charge, double evalue) throws IOException {
+
+        String sequence = peptideSequences[peptide];
+        double mass = getMass(sequence);
+
+        // the variable modifications, drawn for every modifiable residue
+        StringBuilder mods = new StringBuilder();
+        double modifiedMass = mass;
+        for (int site = 0; site < sequence.length(); site++) {
+            int modification = MODIFIED_RESIDUES.indexOf(sequence.charAt(site));
+            if (modification >= 0 && random.nextDouble() < modificationDensity) {
+                modifiedMass += MODIFICATION_MASSES[modification];
+                mods.append("                <MSModHit>\n");
+                mods.append("                  <MSModHit_site>").append(site).append("</MSModHit_site>\n");
+                mods.append("                  <MSModHit_modtype>\n");
+                mods.append("                    <MSMod value=\"").append(MODIFICATION_NAMES[modification]).append("\">")
+                        .append(MODIFICATIONS[modification]).append("</MSMod>\n");
+                mods.append("                  </MSModHit_modtype>\n");
+                mods.append("                </MSModHit>\n");
+            }
+        }
+        long theoreticalMass = Math.round(modifiedMass * SCALE);
+        long experimentalMass = theoreticalMass + random.nextInt(SCALE) - SCALE / 2;
+
+        writer.write("            <MSHits>\n");
+        writer.write("              <MSHits_evalue>" + evalue + "</MSHits_evalue>\n");
+        writer.write("              <MSHits_pvalue>" + evalue / 1000 + "</MSHits_pvalue>\n");
+        writer.write("              <MSHits_charge>" + charge + "</MSHits_charge>\n");
+        writer.write("              <MSHits_pephits>\n");
+        for (int i = 0; i < pepHits; i++) {
+            int protein = peptideProteins[peptide][i];
+            int start = peptideStarts[peptide][i];
+            writer.write("                <MSPepHit>\n");
+            writer.write("                  <MSPepHit_start>" + start + "</MSPepHit_start>\n");
+            writer.write("                  <MSPepHit_stop>" + (start + sequence.length() - 1) + "</MSPepHit_stop>\n");
+            writer.write("                  <MSPepHit_accession>" + getAccession(protein) + "</MSPepHit_accession>\n");
+            writer.write("                  <MSPepHit_defline>" + getAccession(protein) + " Synthetic protein " + protein + "</MSPepHit_defline>\n");
+            writer.write("                  <MSPepHit_protlength>" + getProteinLength(protein) + "</MSPepHit_protlength>\n");
+            writer.write("                  <MSPepHit_oid>" + protein + "</MSPepHit_oid>\n");
+            writer.write("                  <MSPepHit_reversed value=\"false\"/>\n");
+            writer.write("                  <MSPepHit_pepstart>K</MSPepHit_pepstart>\n");
+            writer.write("                  <MSPepHit_pepstop>A</MSPepHit_pepstop>\n");
+            writer.write("                </MSPepHit>\n");
+        }
+        writer.write("              </MSHits_pephits>\n");
+        if (mzHits > 0) {
+            writer.write("              <MSHits_mzhits>\n");
+            for (int i = 0; i < mzHits; i++) {
+                boolean yIon = i % 2 == 1;
+                int ionNumber = (i / 2) % (sequence.length() - 1) + 1;
+                writer.write("                <MSMZHit>\n");
+                writer.write("                  <MSMZHit_ion>\n");
+                writer.write(yIon ? "                    <MSIonType value=\"y\">4</MSIonType>\n" : "                    <MSIonType value=\"b\">1</MSIonType>\n");
+                writer.write("                  </MSMZHit_ion>\n");
+                writer.write("                  <MSMZHit_charge>1</MSMZHit_charge>\n");
+                writer.write("                  <MSMZHit_number>" + (ionNumber - 1) + "</MSMZHit_number>\n");
+                writer.write("                  <MSMZHit_mz>" + Math.round(getFragmentMz(sequence, ionNumber, yIon) * SCALE) + "</MSMZHit_mz>\n");
+                writer.write("                </MSMZHit>\n");
+            }
+            writer.write("              </MSHits_mzhits>\n");
+        }
+        writer.write("              <MSHits_pepstring>" + sequence + "</MSHits_pepstring>\n");
+        writer.write("              <MSHits_mass>" + experimentalMass + "</MSHits_mass>\n");
+        if (mods.length() > 0) {
+            writer.write("              <MSHits_mods>\n");
+            writer.write(mods.toString());
+            writer.write("              </MSHits_mods>\n");
+        }
+        writer.write("              <MSHits_pepstart>K</MSHits_pepstart>\n");
+        writer.write("              <MSHits_pepstop>A</MSHits_pepstop>\n");
+        writer.write("              <MSHits_protlength>" + getProteinLength(peptideProteins[peptide].length > 0 ? peptideProteins[peptide][0] : 0) + "</MSHits_protlength>\n");
+        writer.write("              <MSHits_theomass>" + theoreticalMass + "</MSHits_theomass>\n");
+        writer.write("              <MSHits_oid>" + peptide + "</MSHits_oid>\n");
+        writer.write("            </MSHits>\n");
+    }
+
+    /**
+     * Returns the monoisotopic mass of a peptide.
+     *
+     * @param sequence the sequence of the peptide
+     * @return the mass of the peptide
+     */
+    private static double getMass(String sequence) {
+        double mass = WATER;
+        for (int i = 0; i < sequence.length(); i++) {
+            mass += RESIDUE_MASSES[RESIDUES.indexOf(sequence.charAt(i))];
+        }
+        return mass;
+    }
+
+    /**
+     * Returns the m/z of a singly charged b or y ion of a peptide.
+     *
+     * @param sequence the sequence of the peptide
+     * @param ionNumber the number of residues of the ion
+     * @param yIon if true the y ion is returned, the b ion otherwise
+     * @return the m/z of the ion
+     */
+    private static double getFragmentMz(String sequence, int ionNumber, boolean yIon) {
+        double mz = PROTON;
+        for (int i = 0; i < ionNumber; i++) {
+            int position = yIon ? sequence.length() - 1 - i : i;
+            mz += RESIDUE_MASSES[RESIDUES.indexOf(sequence.charAt(position))];
+        }
+        if (yIon) {
+            mz += WATER;
+        }
+        return mz;
+    }
+
+    /**
+     * Returns the accession of a protein.
+     *
+     * @param protein the index of the protein
+     * @return the accession of the protein
+     */
+    private static String getAccession(int protein) {
+        return "SYN" + (100000 + protein);
+    }
+
+    /**
+     * Returns the length of a protein, between 100 and 1099 residues.
+     *
+     * @param protein the index of the protein
+     * @return the length of the protein
+     */
+    private static int getProteinLength(int protein) {
+        return 100 + (int) ((protein * 7919L) % 1000);
+    }
+
+    /**
+     * Returns the title of a spectrum.
+     *
+     * @param request the index of the request
+     * @param number the number of the spectrum
+     * @param charge the charge of the spectrum
+     * @return the title of the spectrum
+     */
+    private static String getSpectrumTitle(int request, int number, int charge) {
+        return "synthetic_" + request + "." + number + "." + number + "." + charge + ".dta";
+    }
+
+    /**
+     * Returns the number of MSRequest and MSResponse.
+     *
+     * @return the number of requests
+     */
+    public int getRequests() {
+        return requests;
+    }
+
+    /**
+     * Sets the number of MSRequest and MSResponse.
+     *
+     * @param requests the number of requests
+     */
+    public void setRequests(int requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * Returns the number of spectra per request.
+     *
+     * @return the number of spectra per request
+     */
+    public int getSpectra() {
+        return spectra;
+    }
+
+    /**
+     * Sets the number of spectra per request.
+     *
+     * @param spectra the number of spectra per request
+     */
+    public void setSpectra(int spectra) {
+        this.spectra = spectra;
+    }
+
+    /**
+     * Returns the number of peaks per spectrum.
+     *
+     * @return the number of peaks per spectrum
+     */
+    public int getPeaks() {
+        return peaks;
+    }
+
+    /**
+     * Sets the number of peaks per spectrum.
+     *
+     * @param peaks the number of peaks per spectrum
+     */
+    public void setPeaks(int peaks) {
+        this.peaks = peaks;
+    }
+
+    /**
+     * Returns the number of hits per hit set.
+     *
+     * @return the number of hits per hit set
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Sets the number of hits per hit set.
+     *
+     * @param hits the number of hits per hit set
+     */
+    public void setHits(int hits) {
+        this.hits = hits;
+    }
+
+    /**
+     * Returns the number of MSPepHit per hit.
+     *
+     * @return the number of MSPepHit per hit
+     */
+    public int getPepHits() {
+        return pepHits;
+    }
+
+    /**
+     * Sets the number of MSPepHit per hit.
+     *
+     * @param pepHits the number of MSPepHit per hit
+     */
+    public void setPepHits(int pepHits) {
+        this.pepHits = pepHits;
+    }
+
+    /**
+     * Returns the number of MSMZHit per hit.
+     *
+     * @return the number of MSMZHit per hit
+     */
+    public int getMzHits() {
+        return mzHits;
+    }
+
+    /**
+     * Sets the number of MSMZHit per hit.
+     *
+     * @param mzHits the number of MSMZHit per hit
+     */
+    public void setMzHits(int mzHits) {
+        this.mzHits = mzHits;
+    }
+
+    /**
+     * Returns the fraction of the modifiable residues (M, S, T and Y) of the
+     * hits carrying a variable modification.
+     *
+     * @return the modification density
+     */
+    public double getModificationDensity() {
+        return modificationDensity;
+    }
+
+    /**
+     * Sets the fraction of the modifiable residues (M, S, T and Y) of the
+     * hits carrying a variable modification.
+     *
+     * @param modificationDensity the modification density, between 0 and 1
+     */
+    public void setModificationDensity(double modificationDensity) {
+        this.modificationDensity = modificationDensity;
+    }
+
+    /**
+     * Returns the number of distinct peptides of the hits.
+     *
+     * @return the number of distinct peptides
+     */
+    public int getPeptides() {
+        return peptides;
+    }
+
+    /**
+     * Sets the number of distinct peptides of the hits.
+     *
+     * @param peptides the number of distinct peptides
+     */
+    public void setPeptides(int peptides) {
+        this.peptides = peptides;
+    }
+
+    /**
+     * Returns the number of proteins matched by the peptides.
+     *
+     * @return the number of proteins
+     */
+    public int getProteins() {
+        return proteins;
+    }
+
+    /**
+     * Sets the number of proteins matched by the peptides.
+     *
+     * @param proteins the number of proteins
+     */
+    public void setProteins(int proteins) {
+        this.proteins = proteins;
+    }
+
+    /**
+     * Returns the seed of the random numbers.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the random numbers.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public String toString() {
+        return "OmxGenerator[requests=" + requests + ", spectra=" + spectra + ", peaks=" + peaks + ", hits=" + hits
+                + ", pephits=" + pepHits + ", mzhits=" + mzHits + ", modDensity=" + modificationDensity
+                + ", peptides=" + peptides + ", proteins=" + proteins + ", seed=" + seed + "]";
+    }
+}
@@ -1,16 +1,19 @@
 package de.proteinms.omxparser.tools;
 
+import de.proteinms.omxparser.util.OmxParseListener;
+import de.proteinms.omxparser.util.OmxParseProgress;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
 /**
- * A dialog for showing information about progress.
+ * A dialog for showing information about progress. Also follows the parsing
+ * of omx files, and lets the user cancel it if set cancelable.
  *
  * @author  Harald Barsnes
  * 
  * Created March 2008
  */
-public class ProgressDialog extends javax.swing.JDialog {
+public class ProgressDialog extends javax.swing.JDialog implements OmxParseListener {
 
     /**
      * If set to true the progress dialog ignores all closing attempts. This
@@ -18,6 +21,15 @@ public class ProgressDialog extends javax.swing.JDialog {
      * to stop.
      */
     private boolean doNothingOnClose = false;
+    /**
+     * If set to true closing the dialog cancels the parsing followed instead
+     * of closing OMSSA Viewer.
+     */
+    private volatile boolean cancelable = false;
+    /**
+     * Set to true when the user canceled the parsing.
+     */
+    private volatile boolean canceled = false;
 
     /**
      * Opens a new ProgressDialog with a Frame as a parent
@@ -114,6 +126,47 @@ public class ProgressDialog extends javax.swing.JDialog {
         });
     }
 
+    /**
+     * Makes closing the dialog cancel the parsing followed, see isCanceled.
+     *
+     * @param cancelable if closing the dialog cancels the parsing
+     */
+    public void setCancelable(boolean cancelable) {
+        this.cancelable = cancelable;
+    }
+
+    /**
+     * Shows the progress of the parsing of an omx file.
+     *
+     * @param progress the progress of the parsing
+     */
+    @Override
+    public void parseProgress(final OmxParseProgress progress) {
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if (progress.getFraction() >= 0) {
+                    progressBar.setIndeterminate(false);
+                    progressBar.setMaximum(1000);
+                    progressBar.setValue((int) (progress.getFraction() * 1000));
+                }
+                progressBar.setStringPainted(true);
+                progressBar.setString(String.format("%d spectra, %d hit sets (%.1f MB/s)",
+                        progress.getSpectra(), progress.getHitSets(), progress.getMegabytesPerSecond()));
+            }
+        });
+    }
+
+    /**
+     * Returns true if the user canceled the parsing.
+     *
+     * @return true if the parsing is canceled
+     */
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
     /**
      * This method makes it impossible to close the dialog. Used when 
      * the method monitored by the progres bar can not be stopped.
@@ -170,7 +223,16 @@ public class ProgressDialog extends javax.swing.JDialog {
      * @param evt
      */
     private void formWindowClosing(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowClosing
-        if (!doNothingOnClose) {
+        if (cancelable) {
+            int option = JOptionPane.showConfirmDialog(this,
+                    "Cancel the parsing of the file?",
+                    "Cancel Parsing?",
+                    JOptionPane.YES_NO_OPTION);
+
+            if (option == JOptionPane.YES_OPTION) {
+                canceled = true;
+            }
+        } else if (!doNothingOnClose) {
             int option = JOptionPane.showConfirmDialog(this.getParent(),
                     "Closing the progress bar will close OMSSA Viewer.\n" +
                     "Close the progress bar?",
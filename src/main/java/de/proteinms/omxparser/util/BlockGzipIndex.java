@@ -0,0 +1,327 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Index of the blocks of a block compressed gzip file, see
+ * BlockGzipOutputStream. For every block, the index gives the offset of the
+ * block in the compressed file and the offset of its content in the
+ * uncompressed data.
+ * <br><br>
+ * The index can be stored next to the compressed file in the .gzi format of
+ * bgzip, or rebuilt by reading the block headers, which does not require any
+ * inflation.
+ */
+public class BlockGzipIndex {
+
+    /**
+     * Define a static logger variable so that it references the Logger instance
+     * named "BlockGzipIndex".
+     */
+    private static Logger logger = LogManager.getLogger(BlockGzipIndex.class);
+    /**
+     * The extension appended to the compressed file name for the index file.
+     */
+    public static final String INDEX_FILE_EXTENSION = ".gzi";
+    /**
+     * The length of the gzip header of a block.
+     */
+    static final int HEADER_LENGTH = 18;
+    /**
+     * The length of the gzip trailer of a block, CRC32 and ISIZE.
+     */
+    static final int TRAILER_LENGTH = 8;
+    /**
+     * The offsets of the blocks in the compressed file.
+     */
+    private final long[] compressedOffsets;
+    /**
+     * The offsets of the content of the blocks in the uncompressed data.
+     */
+    private final long[] uncompressedOffsets;
+
+    /**
+     * Constructor.
+     *
+     * @param compressedOffsets the offsets of the blocks in the compressed
+     * file
+     * @param uncompressedOffsets the offsets of the content of the blocks in
+     * the uncompressed data
+     */
+    BlockGzipIndex(long[] compressedOffsets, long[] uncompressedOffsets) {
+        this.compressedOffsets = compressedOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+    }
+
+    /**
+     * Indicates whether the given file is block compressed, i.e., whether its
+     * first gzip header carries the block size.
+     *
+     * @param file the file
+     * @return true if the file is block compressed
+     * @throws IOException if the file could not be read
+     */
+    public static boolean isBlockGzip(File file) throws IOException {
+        if (file.length() < HEADER_LENGTH) {
+            return false;
+        }
+        byte[] header = new byte[HEADER_LENGTH];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(header);
+        } finally {
+            in.close();
+        }
+        return getBlockSize(header) > 0;
+    }
+
+    /**
+     * Returns the total size of the block with the given header, -1 if the
+     * header is not the header of a block.
+     *
+     * @param header the first HEADER_LENGTH bytes of the block
+     * @return the total size of the block in bytes, -1 if not a block
+     */
+    static int getBlockSize(byte[] header) {
+        if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8 || (header[3] & 4) == 0
+                || header[10] != 6 || header[11] != 0 || header[12] != 'B' || header[13] != 'C'
+                || header[14] != 2 || header[15] != 0) {
+            return -1;
+        }
+        return ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+    }
+
+    /**
+     * Returns the index of the given block compressed file. The .gzi file is
+     * used if present and not older than the compressed file, otherwise the
+     * index is built from the block headers.
+     *
+     * @param file the block compressed file
+     * @return the index of the file
+     * @throws IOException if the file is not block compressed or could not be
+     * read
+     */
+    public static BlockGzipIndex getIndex(File file) throws IOException {
+        File indexFile = getIndexFile(file);
+        if (indexFile.exists() && indexFile.lastModified() >= file.lastModified()) {
+            try {
+                return read(indexFile);
+            } catch (IOException e) {
+                logger.warn("Could not read index " + indexFile + ", rebuilding.", e);
+            }
+        }
+        return build(file);
+    }
+
+    /**
+     * Returns the index file of the given block compressed file.
+     *
+     * @param file the block compressed file
+     * @return the index file
+     */
+    public static File getIndexFile(File file) {
+        return new File(file.getPath() + INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Builds the index of the given block compressed file from the block
+     * headers.
+     *
+     * @param file the block compressed file
+     * @return the index of the file
+     * @throws IOException if the file is not block compressed or could not be
+     * read
+     */
+    public static BlockGzipIndex build(File file) throws IOException {
+
+        long[] compressed = new long[1024];
+        long[] uncompressed = new long[1024];
+        int size = 0;
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            long fileLength = randomAccessFile.length();
+            byte[] header = new byte[HEADER_LENGTH];
+            long compressedOffset = 0;
+            long uncompressedOffset = 0;
+            while (compressedOffset < fileLength) {
+                randomAccessFile.seek(compressedOffset);
+                randomAccessFile.readFully(header);
+                int blockSize = getBlockSize(header);
+                if (blockSize < HEADER_LENGTH + TRAILER_LENGTH) {
+                    throw new IOException("Invalid block at offset " + compressedOffset + " of " + file + ".");
+                }
+                randomAccessFile.seek(compressedOffset + blockSize - 4);
+                int inputSize = Integer.reverseBytes(randomAccessFile.readInt());
+                if (size == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * size);
+                    uncompressed = Arrays.copyOf(uncompressed, 2 * size);
+                }
+                compressed[size] = compressedOffset;
+                uncompressed[size] = uncompressedOffset;
+                size++;
+                compressedOffset += blockSize;
+                uncompressedOffset += inputSize;
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return new BlockGzipIndex(Arrays.copyOf(compressed, size), Arrays.copyOf(uncompressed, size));
+    }
+
+    /**
+     * Reads an index file in the .gzi format: the number of entries followed
+     * by the compressed and uncompressed offsets of every block but the first,
+     * as little endian unsigned 64 bit integers.
+     *
+     * @param indexFile the index file
+     * @return the index
+     * @throws IOException if the file could not be read
+     */
+    public static BlockGzipIndex read(File indexFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(indexFile));
+        try {
+            long count = readLong(in);
+            if (count < 0 || count >= Integer.MAX_VALUE || 16 * count + 8 != indexFile.length()) {
+                throw new IOException("Invalid index file " + indexFile + ".");
+            }
+            int size = (int) count + 1;
+            long[] compressed = new long[size];
+            long[] uncompressed = new long[size];
+            for (int i = 1; i < size; i++) {
+                compressed[i] = readLong(in);
+                uncompressed[i] = readLong(in);
+            }
+            return new BlockGzipIndex(compressed, uncompressed);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index in the .gzi format.
+     *
+     * @param indexFile the index file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File indexFile) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile));
+        try {
+            writeLong(out, compressedOffsets.length - 1);
+            for (int i = 1; i < compressedOffsets.length; i++) {
+                writeLong(out, compressedOffsets[i]);
+                writeLong(out, uncompressedOffsets[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a little endian long.
+     *
+     * @param in the stream
+     * @return the long read
+     * @throws IOException if the stream could not be read
+     */
+    private static long readLong(InputStream in) throws IOException {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of index file.");
+            }
+            result |= (long) b << (8 * i);
+        }
+        return result;
+    }
+
+    /**
+     * Writes a little endian long.
+     *
+     * @param out the stream
+     * @param value the long to write
+     * @throws IOException if the stream could not be written
+     */
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    /**
+     * Returns the number of blocks.
+     *
+     * @return the number of blocks
+     */
+    public int size() {
+        return compressedOffsets.length;
+    }
+
+    /**
+     * Returns the index of the block containing the given uncompressed
+     * offset.
+     *
+     * @param uncompressedOffset the offset in the uncompressed data
+     * @return the index of the block
+     */
+    public int findBlock(long uncompressedOffset) {
+        int i = Arrays.binarySearch(uncompressedOffsets, uncompressedOffset);
+        if (i < 0) {
+            i = -i - 2;
+        } else {
+            // skip empty blocks starting at the same offset
+            while (i + 1 < uncompressedOffsets.length && uncompressedOffsets[i + 1] == uncompressedOffset) {
+                i++;
+            }
+        }
+        return Math.max(i, 0);
+    }
+
+    /**
+     * Returns the offset of the given block in the compressed file.
+     *
+     * @param block the index of the block
+     * @return the offset of the block in the compressed file
+     */
+    public long getCompressedOffset(int block) {
+        return compressedOffsets[block];
+    }
+
+    /**
+     * Returns the offset of the content of the given block in the
+     * uncompressed data.
+     *
+     * @param block the index of the block
+     * @return the offset of the content of the block in the uncompressed data
+     */
+    public long getUncompressedOffset(int block) {
+        return uncompressedOffsets[block];
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads block compressed gzip files, see BlockGzipOutputStream. The stream
+ * can be positioned at any uncompressed offset without inflating the
+ * preceding data, see seek. If an executor is given, the next blocks are
+ * inflated ahead in parallel.
+ */
+public class BlockGzipInputStream extends InputStream {
+
+    /**
+     * The compressed file.
+     */
+    private final File file;
+    /**
+     * The compressed file opened for random access.
+     */
+    private final RandomAccessFile randomAccessFile;
+    /**
+     * The block index of the file.
+     */
+    private final BlockGzipIndex index;
+    /**
+     * The executor inflating the blocks ahead, null to inflate on the reading
+     * thread.
+     */
+    private final ExecutorService executor;
+    /**
+     * The number of blocks inflated ahead.
+     */
+    private final int readAhead;
+    /**
+     * The blocks being inflated ahead, in order.
+     */
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    /**
+     * The index of the next block to submit for inflation.
+     */
+    private int nextBlock = 0;
+    /**
+     * The index of the block following the current block.
+     */
+    private int followingBlock = 0;
+    /**
+     * The current uncompressed block.
+     */
+    private byte[] current = new byte[0];
+    /**
+     * The position in the current block.
+     */
+    private int position = 0;
+
+    /**
+     * Opens a stream on the given block compressed file, inflating on the
+     * reading thread.
+     *
+     * @param file the block compressed file
+     * @throws IOException if the file is not block compressed or could not be
+     * opened
+     */
+    public BlockGzipInputStream(File file) throws IOException {
+        this(file, BlockGzipIndex.getIndex(file), null, 0);
+    }
+
+    /**
+     * Opens a stream on the given block compressed file.
+     *
+     * @param file the block compressed file
+     * @param index the block index of the file
+     * @param executor the executor inflating the blocks ahead, null to inflate
+     * on the reading thread
+     * @param readAhead the number of blocks inflated ahead by the executor
+     * @throws IOException if the file could not be opened
+     */
+    public BlockGzipInputStream(File file, BlockGzipIndex index, ExecutorService executor, int readAhead) throws IOException {
+        this.file = file;
+        this.index = index;
+        this.executor = executor;
+        this.readAhead = Math.max(readAhead, 1);
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+    }
+
+    /**
+     * Opens a stream on the given block compressed file, inflating the next
+     * blocks ahead on the common ForkJoinPool. The index of the file is read
+     * or built, see BlockGzipIndex.getIndex.
+     *
+     * @param file the block compressed file
+     * @return a stream on the file
+     * @throws IOException if the file is not block compressed or could not be
+     * opened
+     */
+    public static BlockGzipInputStream openParallel(File file) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        return new BlockGzipInputStream(file, BlockGzipIndex.getIndex(file), pool, 2 * pool.getParallelism());
+    }
+
+    /**
+     * Returns the offset in the compressed file of the end of the block being
+     * read, the length of the file once all blocks are read.
+     *
+     * @return the offset in the compressed file of the end of the current
+     * block
+     */
+    public long getCompressedPosition() {
+        if (followingBlock < index.size()) {
+            return index.getCompressedOffset(followingBlock);
+        }
+        return file.length();
+    }
+
+    /**
+     * Positions the stream at the given offset of the uncompressed data. Only
+     * the block containing the offset is inflated.
+     *
+     * @param uncompressedOffset the offset in the uncompressed data
+     * @throws IOException if the block could not be read
+     */
+    public void seek(long uncompressedOffset) throws IOException {
+        cancelPending();
+        int block = index.findBlock(uncompressedOffset);
+        nextBlock = block;
+        followingBlock = block;
+        current = new byte[0];
+        position = 0;
+        if (block < index.size()) {
+            long skip = uncompressedOffset - index.getUncompressedOffset(block);
+            if (nextBlock() && skip > 0) {
+                position = (int) Math.min(skip, current.length);
+            }
+        }
+    }
+
+    /**
+     * Moves to the next non empty block.
+     *
+     * @return false if the end of the file was reached
+     * @throws IOException if the block could not be read
+     */
+    private boolean nextBlock() throws IOException {
+        while (position == current.length) {
+            if (executor != null) {
+                while (pending.size() < readAhead && nextBlock < index.size()) {
+                    final byte[] compressed = readBlock(nextBlock++);
+                    pending.add(executor.submit(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws IOException {
+                            return inflate(compressed);
+                        }
+                    }));
+                }
+                if (pending.isEmpty()) {
+                    return false;
+                }
+                try {
+                    current = pending.poll().get();
+                    followingBlock++;
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Reading of " + file + " interrupted.");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Error inflating " + file + ".", e.getCause());
+                }
+            } else {
+                if (nextBlock >= index.size()) {
+                    return false;
+                }
+                current = inflate(readBlock(nextBlock++));
+                followingBlock = nextBlock;
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the compressed bytes of the given block.
+     *
+     * @param block the index of the block
+     * @return the compressed block including header and trailer
+     * @throws IOException if the block could not be read
+     */
+    private byte[] readBlock(int block) throws IOException {
+        byte[] header = new byte[BlockGzipIndex.HEADER_LENGTH];
+        randomAccessFile.seek(index.getCompressedOffset(block));
+        randomAccessFile.readFully(header);
+        int blockSize = BlockGzipIndex.getBlockSize(header);
+        if (blockSize < BlockGzipIndex.HEADER_LENGTH + BlockGzipIndex.TRAILER_LENGTH) {
+            throw new IOException("Invalid block at offset " + index.getCompressedOffset(block) + " of " + file + ".");
+        }
+        byte[] compressed = new byte[blockSize];
+        System.arraycopy(header, 0, compressed, 0, header.length);
+        randomAccessFile.readFully(compressed, header.length, blockSize - header.length);
+        return compressed;
+    }
+
+    /**
+     * Inflates a block and checks its checksum.
+     *
+     * @param compressed the compressed block including header and trailer
+     * @return the uncompressed content of the block
+     * @throws IOException if the block is corrupt
+     */
+    static byte[] inflate(byte[] compressed) throws IOException {
+        OmxEvents.InflateEvent event = OmxEvents.inflateStarted(compressed.length);
+        int trailer = compressed.length - BlockGzipIndex.TRAILER_LENGTH;
+        int expectedCrc = readIntLE(compressed, trailer);
+        byte[] content = new byte[readIntLE(compressed, trailer + 4)];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed, BlockGzipIndex.HEADER_LENGTH, trailer - BlockGzipIndex.HEADER_LENGTH);
+            int length = 0;
+            while (length < content.length) {
+                int n = inflater.inflate(content, length, content.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated block.");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block.", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Checksum error in block.");
+        }
+        OmxEvents.inflateFinished(event, content.length);
+        return content;
+    }
+
+    /**
+     * Reads a little endian int.
+     *
+     * @param buffer the buffer
+     * @param offset the offset in the buffer
+     * @return the int read
+     */
+    private static int readIntLE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8
+                | (buffer[offset + 2] & 0xff) << 16 | (buffer[offset + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int length = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    /**
+     * Cancels the blocks being inflated ahead.
+     */
+    private void cancelPending() {
+        for (Future<byte[]> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancelPending();
+        randomAccessFile.close();
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes block compressed gzip files in the BGZF format: the data is cut in
+ * blocks of at most 65280 bytes, each compressed as a separate gzip member
+ * with the size of the compressed block in an extra field of its header. The
+ * files are thus ordinary multi-member gzip files, readable by gzip and
+ * GZIPInputStream, while the blocks can be located without inflating and
+ * inflated independently, see BlockGzipInputStream.
+ * <br><br>
+ * The block index is written next to the file in the .gzi format when the
+ * stream is closed, see BlockGzipIndex.
+ */
+public class BlockGzipOutputStream extends OutputStream {
+
+    /**
+     * The maximal size of the uncompressed content of a block.
+     */
+    public static final int MAX_BLOCK_CONTENT = 0xff00;
+    /**
+     * The maximal size of a compressed block.
+     */
+    private static final int MAX_BLOCK_SIZE = 0x10000;
+    /**
+     * The empty block marking the end of a BGZF file.
+     */
+    private static final byte[] EOF_BLOCK = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+        0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+    /**
+     * The compressed file.
+     */
+    private final File file;
+    /**
+     * The stream on the compressed file.
+     */
+    private final OutputStream out;
+    /**
+     * The content of the current block.
+     */
+    private final byte[] content = new byte[MAX_BLOCK_CONTENT];
+    /**
+     * The number of bytes in the current block.
+     */
+    private int length = 0;
+    /**
+     * The buffer of the compressed block.
+     */
+    private final byte[] block = new byte[MAX_BLOCK_SIZE];
+    /**
+     * The deflater.
+     */
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    /**
+     * The checksum of the blocks.
+     */
+    private final CRC32 crc = new CRC32();
+    /**
+     * The offsets of the blocks written in the compressed file.
+     */
+    private long[] compressedOffsets = new long[1024];
+    /**
+     * The offsets of the content of the blocks written in the uncompressed
+     * data.
+     */
+    private long[] uncompressedOffsets = new long[1024];
+    /**
+     * The number of blocks written.
+     */
+    private int blockCount = 0;
+    /**
+     * The number of compressed bytes written.
+     */
+    private long compressedOffset = 0;
+    /**
+     * The number of uncompressed bytes written.
+     */
+    private long uncompressedOffset = 0;
+    /**
+     * Indicates whether the stream is closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Opens a block compressed stream to the given file.
+     *
+     * @param file the compressed file
+     * @throws IOException if the file could not be opened
+     */
+    public BlockGzipOutputStream(File file) throws IOException {
+        this.file = file;
+        this.out = new BufferedOutputStream(new FileOutputStream(file));
+    }
+
+    /**
+     * Compresses the given file, decompressing it first if it ends with .gz.
+     *
+     * @param source the file to compress
+     * @param target the block compressed file
+     * @throws IOException if the files could not be read or written
+     */
+    public static void compress(File source, File target) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            if (source.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in, MAX_BLOCK_SIZE);
+            }
+            BlockGzipOutputStream blockOut = new BlockGzipOutputStream(target);
+            try {
+                byte[] buffer = new byte[MAX_BLOCK_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    blockOut.write(buffer, 0, read);
+                }
+            } finally {
+                blockOut.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == content.length) {
+            writeBlock();
+        }
+        content[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == content.length) {
+                writeBlock();
+            }
+            int n = Math.min(len, content.length - length);
+            System.arraycopy(b, off, content, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compresses and writes the current block.
+     *
+     * @throws IOException if the block could not be written
+     */
+    private void writeBlock() throws IOException {
+
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+
+        int compressedLength = deflate(deflater);
+        if (compressedLength < 0) {
+            // incompressible data, stored blocks always fit
+            Deflater storer = new Deflater(Deflater.NO_COMPRESSION, true);
+            try {
+                compressedLength = deflate(storer);
+            } finally {
+                storer.end();
+            }
+        }
+
+        int blockSize = BlockGzipIndex.HEADER_LENGTH + compressedLength + BlockGzipIndex.TRAILER_LENGTH;
+
+        // header
+        block[0] = 0x1f;
+        block[1] = (byte) 0x8b;
+        block[2] = 8;
+        block[3] = 4;
+        block[4] = 0;
+        block[5] = 0;
+        block[6] = 0;
+        block[7] = 0;
+        block[8] = 0;
+        block[9] = (byte) 0xff;
+        block[10] = 6;
+        block[11] = 0;
+        block[12] = 'B';
+        block[13] = 'C';
+        block[14] = 2;
+        block[15] = 0;
+        block[16] = (byte) (blockSize - 1);
+        block[17] = (byte) ((blockSize - 1) >> 8);
+
+        // trailer
+        crc.reset();
+        crc.update(content, 0, length);
+        int trailer = BlockGzipIndex.HEADER_LENGTH + compressedLength;
+        writeIntLE(block, trailer, (int) crc.getValue());
+        writeIntLE(block, trailer + 4, length);
+
+        out.write(block, 0, blockSize);
+
+        if (blockCount == compressedOffsets.length) {
+            compressedOffsets = Arrays.copyOf(compressedOffsets, 2 * blockCount);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, 2 * blockCount);
+        }
+        compressedOffsets[blockCount] = compressedOffset;
+        uncompressedOffsets[blockCount] = uncompressedOffset;
+        blockCount++;
+
+        compressedOffset += blockSize;
+        uncompressedOffset += length;
+        length = 0;
+    }
+
+    /**
+     * Deflates the current block content into the block buffer after the
+     * header.
+     *
+     * @param blockDeflater the deflater to use
+     * @return the compressed length, -1 if the compressed data does not fit
+     * in a block
+     */
+    private int deflate(Deflater blockDeflater) {
+        blockDeflater.reset();
+        blockDeflater.setInput(content, 0, length);
+        blockDeflater.finish();
+        int capacity = MAX_BLOCK_SIZE - BlockGzipIndex.HEADER_LENGTH - BlockGzipIndex.TRAILER_LENGTH;
+        int compressedLength = 0;
+        while (!blockDeflater.finished()) {
+            if (compressedLength == capacity) {
+                return -1;
+            }
+            compressedLength += blockDeflater.deflate(block, BlockGzipIndex.HEADER_LENGTH + compressedLength, capacity - compressedLength);
+        }
+        return compressedLength;
+    }
+
+    /**
+     * Writes a little endian int.
+     *
+     * @param buffer the buffer
+     * @param offset the offset in the buffer
+     * @param value the value to write
+     */
+    private static void writeIntLE(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    /**
+     * Writes the current block. Note that blocks are independent, flushing
+     * thus reduces the compression ratio.
+     *
+     * @throws IOException if the block could not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the last block, the end of file marker and the index file, and
+     * closes the stream.
+     *
+     * @throws IOException if the file or the index file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (length > 0) {
+                writeBlock();
+            }
+            out.write(EOF_BLOCK);
+        } finally {
+            closed = true;
+            deflater.end();
+            out.close();
+        }
+        new BlockGzipIndex(Arrays.copyOf(compressedOffsets, blockCount), Arrays.copyOf(uncompressedOffsets, blockCount))
+                .write(BlockGzipIndex.getIndexFile(file));
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable list of ints backed by a primitive array. The values are only
+ * boxed when accessed through the List interface, use getInt and toIntArray
+ * to avoid it.
+ */
+public class IntList extends AbstractList<Integer> implements RandomAccess, Serializable {
+
+    /**
+     * The empty array shared by empty lists.
+     */
+    private static final int[] EMPTY = new int[0];
+    /**
+     * The values, only the first size are used.
+     */
+    private int[] values = EMPTY;
+    /**
+     * The number of values.
+     */
+    private int size = 0;
+
+    /**
+     * Creates an empty list.
+     */
+    public IntList() {
+    }
+
+    /**
+     * Creates a list containing the given values.
+     *
+     * @param values the values
+     */
+    public IntList(int[] values) {
+        this.values = values.length == 0 ? EMPTY : values.clone();
+        this.size = values.length;
+    }
+
+    /**
+     * Returns the values of the given list as an array, without boxing if it
+     * is an IntList.
+     *
+     * @param values the values
+     * @return a copy of the values
+     */
+    public static int[] valuesOf(List<Integer> values) {
+        if (values instanceof IntList) {
+            return ((IntList) values).toIntArray();
+        }
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (Integer value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of the given list divided by the given scale, without
+     * boxing if it is an IntList.
+     *
+     * @param values the values
+     * @param scale the scale
+     * @return the scaled values
+     */
+    public static double[] scaledValuesOf(List<Integer> values, double scale) {
+        if (values instanceof IntList) {
+            return ((IntList) values).toScaledArray(scale);
+        }
+        double[] result = new double[values.size()];
+        int i = 0;
+        for (Integer value : values) {
+            result[i++] = value / scale;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list backed by the given array, without copying it.
+     *
+     * @param values the values
+     * @return the list
+     */
+    static IntList wrap(int[] values) {
+        IntList intList = new IntList();
+        intList.setValues(values);
+        return intList;
+    }
+
+    /**
+     * Replaces the values by the given array, without copying it.
+     *
+     * @param values the values
+     */
+    void setValues(int[] values) {
+        this.values = values.length == 0 ? EMPTY : values;
+        this.size = values.length;
+        modCount++;
+    }
+
+    /**
+     * Appends a value.
+     *
+     * @param value the value to append
+     */
+    public void addInt(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(16, size + (size >> 1)));
+        }
+        values[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * Returns the value at the given index.
+     *
+     * @param index the index
+     * @return the value at the given index
+     */
+    public int getInt(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * Returns a copy of the values.
+     *
+     * @return a copy of the values
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Returns the values divided by the given scale.
+     *
+     * @param scale the scale
+     * @return the scaled values
+     */
+    public double[] toScaledArray(double scale) {
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = values[i] / scale;
+        }
+        return result;
+    }
+
+    /**
+     * Shrinks the backing array to the number of values.
+     */
+    public void trimToSize() {
+        if (values.length > size) {
+            values = size == 0 ? EMPTY : Arrays.copyOf(values, size);
+        }
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer element) {
+        int previous = getInt(index);
+        values[index] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Integer element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index == size) {
+            addInt(element);
+            return;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(16, size + (size >> 1)));
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = element;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        int previous = getInt(index);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -88,11 +88,15 @@ public class MSSpectrum implements Serializable {
     }
 
     /**
-     * Sets the MSSpectrum_mz value.
+     * Sets the MSSpectrum_mz value. The list of values is compacted as the
+     * element is complete when the parser sets it.
      *
      * @param s the MSSpectrum_mz
      */
     public void setMSSpectrum_mz(MSSpectrum_mz s) {
+        if (s.MSSpectrum_mz_E instanceof IntList) {
+            ((IntList) s.MSSpectrum_mz_E).trimToSize();
+        }
         this.MSSpectrum_mz = s;
     }
 
@@ -106,11 +110,15 @@ public class MSSpectrum implements Serializable {
     }
 
     /**
-     * Sets the MSSpectrum_abundance value.
+     * Sets the MSSpectrum_abundance value. The list of values is compacted as
+     * the element is complete when the parser sets it.
      *
      * @param s the MSSpectrum_abundance
      */
     public void setMSSpectrum_abundance(MSSpectrum_abundance s) {
+        if (s.MSSpectrum_abundance_E instanceof IntList) {
+            ((IntList) s.MSSpectrum_abundance_E).trimToSize();
+        }
         this.MSSpectrum_abundance = s;
     }
 
@@ -140,4 +148,25 @@ public class MSSpectrum implements Serializable {
     public void setMSSpectrum_namevalue(MSSpectrum_namevalue s) {
         this.MSSpectrum_namevalue = s;
     }
+
+    /**
+     * Returns the real mz values of the peaks.
+     *
+     * @param responseScale the MSResponse_scale of the response
+     * @return the real mz values
+     */
+    public double[] getMzValues(int responseScale) {
+        return MSSpectrum_mz.getMzValues(responseScale);
+    }
+
+    /**
+     * Returns the real abundance values of the peaks, scaled by
+     * MSSpectrum_iscale. The values are returned unscaled if MSSpectrum_iscale
+     * is not set.
+     *
+     * @return the real abundance values
+     */
+    public double[] getAbundanceValues() {
+        return MSSpectrum_abundance.getAbundanceValues(MSSpectrum_iscale == null ? 1 : MSSpectrum_iscale);
+    }
 }
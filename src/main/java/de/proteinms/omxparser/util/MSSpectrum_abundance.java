@@ -21,9 +21,8 @@
  */
 package de.proteinms.omxparser.util;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Scaled product abundance.
@@ -40,10 +39,11 @@ public class MSSpectrum_abundance implements Serializable {
     /**
      * The list of MSSpectrum_abundance_E values from the omx file.
      *
-     * Note that this value has to be divided by MSResponse_scale to get the
-     * real abundance value.
+     * Note that this value has to be divided by MSSpectrum_iscale to get the
+     * real abundance value, see getAbundanceValues. The list is an IntList,
+     * unless replaced by the user.
      */
-    public List<Integer> MSSpectrum_abundance_E = new LinkedList<Integer>();
+    public List<Integer> MSSpectrum_abundance_E = new IntList();
 
     /**
      * Adds an element to the MSSpectrum_abundance_E list.
@@ -51,6 +51,43 @@ public class MSSpectrum_abundance implements Serializable {
      * @param s the element to add as a String
      */
     public void setMSSpectrum_abundance_E(String s) {
-        MSSpectrum_abundance_E.add(Integer.valueOf(s));
+        if (MSSpectrum_abundance_E instanceof IntList) {
+            ((IntList) MSSpectrum_abundance_E).addInt(Integer.parseInt(s));
+        } else {
+            MSSpectrum_abundance_E.add(Integer.valueOf(s));
+        }
+    }
+
+    /**
+     * Returns the number of MSSpectrum_abundance_E values.
+     *
+     * @return the number of MSSpectrum_abundance_E values
+     */
+    public int size() {
+        return MSSpectrum_abundance_E.size();
+    }
+
+    /**
+     * Returns the scaled abundance value at the given index.
+     *
+     * @param index the index of the value
+     * @return the scaled abundance value
+     */
+    public int getAbundance(int index) {
+        if (MSSpectrum_abundance_E instanceof IntList) {
+            return ((IntList) MSSpectrum_abundance_E).getInt(index);
+        }
+        return MSSpectrum_abundance_E.get(index);
+    }
+
+    /**
+     * Returns the real abundance values, i.e., the MSSpectrum_abundance_E
+     * values divided by the given scale.
+     *
+     * @param iscale the MSSpectrum_iscale
+     * @return the real abundance values
+     */
+    public double[] getAbundanceValues(double iscale) {
+        return IntList.scaledValuesOf(MSSpectrum_abundance_E, iscale);
     }
 }
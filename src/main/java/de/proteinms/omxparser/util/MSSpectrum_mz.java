@@ -21,9 +21,8 @@
  */
 package de.proteinms.omxparser.util;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Scaled product m/z.
@@ -41,9 +40,10 @@ public class MSSpectrum_mz implements Serializable {
      * The list of MSSpectrum_mz_E values from the omx file.
      *
      * Note that this value has to be divided by MSResponse_scale to get the
-     * real mz value.
+     * real mz value, see getMzValues. The list is an IntList, unless replaced
+     * by the user.
      */
-    public List<Integer> MSSpectrum_mz_E = new LinkedList<Integer>();
+    public List<Integer> MSSpectrum_mz_E = new IntList();
 
     /**
      * Adds an element to the MSSpectrum_mz_E list.
@@ -51,6 +51,43 @@ public class MSSpectrum_mz implements Serializable {
      * @param s the element to add as a String
      */
     public void setMSSpectrum_mz_E(String s) {
-        MSSpectrum_mz_E.add(Integer.valueOf(s));
+        if (MSSpectrum_mz_E instanceof IntList) {
+            ((IntList) MSSpectrum_mz_E).addInt(Integer.parseInt(s));
+        } else {
+            MSSpectrum_mz_E.add(Integer.valueOf(s));
+        }
+    }
+
+    /**
+     * Returns the number of MSSpectrum_mz_E values.
+     *
+     * @return the number of MSSpectrum_mz_E values
+     */
+    public int size() {
+        return MSSpectrum_mz_E.size();
+    }
+
+    /**
+     * Returns the scaled mz value at the given index.
+     *
+     * @param index the index of the value
+     * @return the scaled mz value
+     */
+    public int getMz(int index) {
+        if (MSSpectrum_mz_E instanceof IntList) {
+            return ((IntList) MSSpectrum_mz_E).getInt(index);
+        }
+        return MSSpectrum_mz_E.get(index);
+    }
+
+    /**
+     * Returns the real mz values, i.e., the MSSpectrum_mz_E values divided by
+     * the given scale.
+     *
+     * @param responseScale the MSResponse_scale
+     * @return the real mz values
+     */
+    public double[] getMzValues(int responseScale) {
+        return IntList.scaledValuesOf(MSSpectrum_mz_E, responseScale);
     }
 }
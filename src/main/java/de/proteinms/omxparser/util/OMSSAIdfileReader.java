@@ -13,7 +13,6 @@ import com.compomics.util.io.IoUtil;
 import com.compomics.util.parameters.identification.advanced.SequenceMatchingParameters;
 import com.compomics.util.parameters.identification.search.SearchParameters;
 import com.compomics.util.waiting.WaitingHandler;
-import de.proteinms.omxparser.OmssaOmxFile;
 
 import java.io.File;
 import java.io.IOException;
@@ -25,8 +24,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
 import javax.xml.bind.JAXBException;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * This reader import identifications from an OMSSA omx result file to the
@@ -41,10 +41,6 @@ public class OMSSAIdfileReader extends ExperimentObject implements IdfileReader
      * The inspected OMSSA omx file.
      */
     private File identificationFile;
-    /**
-     * The instance of the inspected omx file.
-     */
-    private OmssaOmxFile omxFile;
 
     /**
      * Constructor for the reader.
@@ -53,13 +49,13 @@ public class OMSSAIdfileReader extends ExperimentObject implements IdfileReader
     }
 
     /**
-     * Constructor for the reader.
+     * Constructor for the reader. The file is parsed when the spectrum
+     * matches are requested.
      *
      * @param idFile the inspected file
      */
     public OMSSAIdfileReader(File idFile) {
         this.identificationFile = idFile;
-        omxFile = new OmssaOmxFile(idFile.getPath(), false, false, false);
     }
 
     /**
@@ -105,24 +101,36 @@ public class OMSSAIdfileReader extends ExperimentObject implements IdfileReader
 
         ArrayList<SpectrumMatch> result = new ArrayList<>();
 
-        List<MSResponse> msSearchResponse = omxFile.getParserResult().MSSearch_response.MSResponse;
-        List<MSRequest> msRequest = omxFile.getParserResult().MSSearch_request.MSRequest;
-        int spectrumMatchCounter = 0;
-
-        for (int i = 0; i < msSearchResponse.size(); i++) {
-
-            String msFile = msRequest.get(i).MSRequest_settings.MSSearchSettings.MSSearchSettings_infiles.MSInFile.MSInFile_infile;
+        // the progress is the fraction of the file parsed, in per mille
+        OmxParseListener parseListener = null;
+
+        if (waitingHandler != null) {
+            waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(1000);
+            parseListener = new OmxParseListener() {
+                @Override
+                public void parseProgress(OmxParseProgress progress) {
+                    if (progress.getFraction() >= 0) {
+                        waitingHandler.setSecondaryProgressCounter((int) (progress.getFraction() * 1000));
+                    }
+                }
 
-            Map<Integer, MSHitSet> msHitSetMap = msSearchResponse.get(i).MSResponse_hitsets.MSHitSet;
+                @Override
+                public boolean isCanceled() {
+                    return waitingHandler.isRunCanceled();
+                }
+            };
+        }
 
-            if (waitingHandler != null) {
-                waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                waitingHandler.setMaxSecondaryProgressCounter(msHitSetMap.size());
-            }
+        // the hit sets are converted while the file is parsed
+        try (OmxHitSetReader omxHitSetReader = new OmxHitSetReader(identificationFile, false, false, parseListener)) {
 
-            for (int spectrumIndex : msHitSetMap.keySet()) {
+            while (omxHitSetReader.hasNext()) {
 
-                MSHitSet msHitSet = msHitSetMap.get(spectrumIndex);
+                MSHitSet msHitSet = omxHitSetReader.next();
+                MSSearchSettings msSearchSettings = omxHitSetReader.getSearchSettings();
+                String msFile = msSearchSettings == null ? null : msSearchSettings.MSSearchSettings_infiles.MSInFile.MSInFile_infile;
                 List<MSHits> hitSet = msHitSet.MSHitSet_hits.MSHits;
 
                 if (hitSet.size() > 0) {
@@ -188,13 +196,14 @@ public class OMSSAIdfileReader extends ExperimentObject implements IdfileReader
                     result.add(currentMatch);
                 }
 
-                if (waitingHandler != null) {
-                    if (waitingHandler.isRunCanceled()) {
-                        break;
-                    }
-                    waitingHandler.setSecondaryProgressCounter(++spectrumMatchCounter);
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                    break;
                 }
             }
+        } catch (CancellationException e) {
+            // canceled by the waiting handler, return the matches found so far
+        } catch (XmlPullParserException e) {
+            throw new IOException("Error parsing file: " + identificationFile, e);
         }
 
         return result;
@@ -268,7 +277,6 @@ public class OMSSAIdfileReader extends ExperimentObject implements IdfileReader
 
     @Override
     public void close() throws IOException {
-        omxFile = null;
     }
 
     @Override
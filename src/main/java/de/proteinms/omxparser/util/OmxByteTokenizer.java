@@ -0,0 +1,1079 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Tokenizer specialized for omx files, working directly on the UTF-8 bytes of
+ * the file. The omx files are flat, attribute light and very regular, which
+ * allows a much simpler scanner than a generic XML parser:
+ * <ul>
+ * <li>element and attribute names are looked up by hash in a table of the
+ * names already seen, so every name is only decoded once and the same String
+ * instance is returned for every occurrence,</li>
+ * <li>text is decoded lazily: white space between elements and the text of
+ * skipped elements never become Strings,</li>
+ * <li>namespace declarations are ignored and prefixes are removed from the
+ * element and attribute names, like XmlPullParser does with namespace
+ * processing.</li>
+ * </ul>
+ * Like XmlPullParser.next, CDATA sections are returned as text, coalesced with
+ * the surrounding text, and comments and processing instructions are skipped.
+ * The document type declaration is skipped, except for the general entities
+ * declared in its internal subset with a literal value, which are expanded.
+ * References to other entities throw an XmlPullParserException. Only UTF-8
+ * encoded documents are supported, see isSupported.
+ */
+public class OmxByteTokenizer implements OmxTokenizer {
+
+    /**
+     * The size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * The number of bytes inspected by isSupported.
+     */
+    private static final int PROLOG_LENGTH = 4096;
+    /**
+     * The maximal number of names kept in the name table.
+     */
+    private static final int MAX_NAMES = 4096;
+    /**
+     * The start of a CDATA section.
+     */
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The start of a comment.
+     */
+    private static final byte[] COMMENT_START = "<!--".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The start of a processing instruction.
+     */
+    private static final byte[] PI_START = "<?".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The keyword of a document type declaration, after the "&lt;!".
+     */
+    private static final byte[] DOCTYPE_KEYWORD = "DOCTYPE".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The keyword of an entity declaration, after the "&lt;!".
+     */
+    private static final byte[] ENTITY_KEYWORD = "ENTITY".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The stream read.
+     */
+    private final InputStream in;
+    /**
+     * The read buffer.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * The position in the buffer.
+     */
+    private int position = 0;
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    private int limit = 0;
+    /**
+     * The name table: names by hash, open addressing.
+     */
+    private String[] tableNames = new String[1024];
+    /**
+     * The bytes of the names of the table.
+     */
+    private byte[][] tableBytes = new byte[1024][];
+    /**
+     * The number of names in the table.
+     */
+    private int tableSize = 0;
+    /**
+     * The bytes of the name being read.
+     */
+    private byte[] nameBytes = new byte[64];
+    /**
+     * The hash of the name being read.
+     */
+    private int nameHash;
+    /**
+     * The number of bytes of the name being read.
+     */
+    private int nameLength;
+    /**
+     * The chars of the current text or attribute value.
+     */
+    private char[] text = new char[256];
+    /**
+     * The number of chars of the current text.
+     */
+    private int textLength;
+    /**
+     * Indicates whether the current text only contains white space.
+     */
+    private boolean whitespace;
+    /**
+     * The current text as String, null if not created yet.
+     */
+    private String textString;
+    /**
+     * The type of the current token.
+     */
+    private int eventType = XmlPullParser.START_DOCUMENT;
+    /**
+     * The name of the current element.
+     */
+    private String name;
+    /**
+     * The qualified names of the open elements.
+     */
+    private String[] elementStack = new String[32];
+    /**
+     * The number of open elements.
+     */
+    private int depth = 0;
+    /**
+     * Indicates whether the current start tag is an empty element, i.e., the
+     * end tag is to be reported next.
+     */
+    private boolean emptyElement = false;
+    /**
+     * The names of the attributes of the current start tag.
+     */
+    private String[] attributeNames = new String[4];
+    /**
+     * The values of the attributes of the current start tag.
+     */
+    private String[] attributeValues = new String[4];
+    /**
+     * The number of attributes of the current start tag.
+     */
+    private int attributeCount = 0;
+    /**
+     * The replacement texts of the general entities declared in the document
+     * type declaration, null for the entities whose value is not supported.
+     */
+    private final HashMap<String, String> entities = new HashMap<String, String>();
+
+    /**
+     * Creates a tokenizer on the given stream. The stream should be checked
+     * with isSupported first.
+     *
+     * @param in the UTF-8 encoded omx document
+     */
+    public OmxByteTokenizer(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Indicates whether the encoding of the document is supported by this
+     * tokenizer, i.e., whether the XML declaration declares no encoding or
+     * UTF-8. The stream is reset to its current position.
+     *
+     * @param in the stream, positioned at the start of the document
+     * @return true if the encoding is supported
+     * @throws IOException if the stream could not be read
+     */
+    public static boolean isSupported(BufferedInputStream in) throws IOException {
+
+        in.mark(PROLOG_LENGTH);
+        byte[] prolog = new byte[PROLOG_LENGTH];
+        int length = 0;
+        int read;
+        while (length < prolog.length && (read = in.read(prolog, length, prolog.length - length)) != -1) {
+            length += read;
+        }
+        in.reset();
+
+        String start = new String(prolog, 0, length, StandardCharsets.ISO_8859_1);
+        int i = start.startsWith("\u00ef\u00bb\u00bf") ? 3 : 0;
+
+        // the XML declaration, if any, is at the very start of the document
+        int end = start.indexOf("?>", i);
+        if (!start.startsWith("<?xml", i) || end < 0) {
+            return true;
+        }
+        String declaration = start.substring(i, end).toLowerCase(Locale.ENGLISH);
+        return !declaration.contains("encoding")
+                || declaration.matches("(?s).*encoding\\s*=\\s*[\"'](utf-8|us-ascii|ascii)[\"'].*");
+    }
+
+    /**
+     * Fills the buffer.
+     *
+     * @return false if the end of the stream was reached
+     * @throws IOException if the stream could not be read
+     */
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            position = 0;
+            limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return the next byte, -1 at the end of the stream
+     * @throws IOException if the stream could not be read
+     */
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Returns the next byte without consuming it.
+     *
+     * @return the next byte, -1 at the end of the stream
+     * @throws IOException if the stream could not be read
+     */
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xff;
+    }
+
+    /**
+     * Makes sure that the given number of bytes is available in the buffer
+     * after the current position, moving the remaining bytes to the start of
+     * the buffer if needed.
+     *
+     * @param count the number of bytes, at most the size of the buffer
+     * @return false if the end of the stream is reached before
+     * @throws IOException if the stream could not be read
+     */
+    private boolean ensure(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < count) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether the stream continues with the given bytes, without
+     * consuming them.
+     *
+     * @param marker the bytes
+     * @return true if the stream continues with the bytes
+     * @throws IOException if the stream could not be read
+     */
+    private boolean startsWith(byte[] marker) throws IOException {
+        if (!ensure(marker.length)) {
+            return false;
+        }
+        for (int i = 0; i < marker.length; i++) {
+            if (buffer[position + i] != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next byte, failing at the end of the stream.
+     *
+     * @return the next byte
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException at the end of the stream
+     */
+    private int readRequired() throws IOException, XmlPullParserException {
+        int b = read();
+        if (b < 0) {
+            throw new XmlPullParserException("Unexpected end of document.");
+        }
+        return b;
+    }
+
+    @Override
+    public int next() throws IOException, XmlPullParserException {
+
+        textString = null;
+
+        if (emptyElement) {
+            emptyElement = false;
+            depth--;
+            attributeCount = 0;
+            eventType = XmlPullParser.END_TAG;
+            return eventType;
+        }
+
+        while (true) {
+
+            int b = peek();
+
+            if (b < 0) {
+                if (depth > 0) {
+                    throw new XmlPullParserException("Unexpected end of document in element " + elementStack[depth - 1] + ".");
+                }
+                eventType = XmlPullParser.END_DOCUMENT;
+                return eventType;
+            }
+
+            // CDATA sections are read as text
+            if (b == '<' && !startsWith(CDATA_START)) {
+                position++;
+                int c = readRequired();
+                if (c == '/') {
+                    readEndTag();
+                    eventType = XmlPullParser.END_TAG;
+                    return eventType;
+                } else if (c == '?') {
+                    skipUntil("?>");
+                } else if (c == '!') {
+                    if (startsWith(DOCTYPE_KEYWORD)) {
+                        position += DOCTYPE_KEYWORD.length;
+                        readDoctype();
+                    } else if (readRequired() == '-' && readRequired() == '-') {
+                        skipUntil("-->");
+                    } else {
+                        throw new XmlPullParserException("Malformed markup declaration.");
+                    }
+                } else {
+                    readStartTag(c);
+                    eventType = XmlPullParser.START_TAG;
+                    return eventType;
+                }
+            } else {
+                readText();
+                if (depth > 0) {
+                    eventType = XmlPullParser.TEXT;
+                    return eventType;
+                } else if (!whitespace) {
+                    throw new XmlPullParserException("Text outside of the root element.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips the stream until after the given marker.
+     *
+     * @param marker the marker
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the marker is not found
+     */
+    private void skipUntil(String marker) throws IOException, XmlPullParserException {
+        int matched = 0;
+        while (matched < marker.length()) {
+            int b = readRequired();
+            if (b == marker.charAt(matched)) {
+                matched++;
+            } else {
+                matched = b == marker.charAt(0) ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * Reads a start tag after its first name byte.
+     *
+     * @param first the first byte of the name
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the tag is malformed or unsupported
+     */
+    private void readStartTag(int first) throws IOException, XmlPullParserException {
+
+        String qualifiedName = readName(first);
+        name = localName(qualifiedName);
+        attributeCount = 0;
+
+        while (true) {
+            int b = skipWhitespace();
+            if (b == '>') {
+                break;
+            } else if (b == '/') {
+                if (readRequired() != '>') {
+                    throw new XmlPullParserException("Expected '>' after '/' in element " + name + ".");
+                }
+                emptyElement = true;
+                break;
+            }
+            String attributeName = readName(b);
+            if (skipWhitespace() != '=') {
+                throw new XmlPullParserException("Expected '=' after attribute " + attributeName + " in element " + name + ".");
+            }
+            int quote = skipWhitespace();
+            if (quote != '"' && quote != '\'') {
+                throw new XmlPullParserException("Expected quote for attribute " + attributeName + " in element " + name + ".");
+            }
+            String value = readAttributeValue(quote);
+            if (attributeName.equals("xmlns") || attributeName.startsWith("xmlns:")) {
+                continue;
+            }
+            attributeName = localName(attributeName);
+            if (attributeCount == attributeNames.length) {
+                attributeNames = Arrays.copyOf(attributeNames, 2 * attributeCount);
+                attributeValues = Arrays.copyOf(attributeValues, 2 * attributeCount);
+            }
+            attributeNames[attributeCount] = attributeName;
+            attributeValues[attributeCount] = value;
+            attributeCount++;
+        }
+
+        if (depth == elementStack.length) {
+            elementStack = Arrays.copyOf(elementStack, 2 * depth);
+        }
+        elementStack[depth++] = qualifiedName;
+    }
+
+    /**
+     * Returns the given name without its prefix.
+     *
+     * @param qualifiedName the name, possibly prefixed
+     * @return the local name
+     */
+    private static String localName(String qualifiedName) {
+        int colon = qualifiedName.indexOf(':');
+        return colon < 0 ? qualifiedName : qualifiedName.substring(colon + 1);
+    }
+
+    /**
+     * Reads an end tag after the "&lt;/".
+     *
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the tag is malformed or does not match
+     * the open element
+     */
+    private void readEndTag() throws IOException, XmlPullParserException {
+        String qualifiedName = readName(readRequired());
+        if (skipWhitespace() != '>') {
+            throw new XmlPullParserException("Expected '>' at the end of element " + qualifiedName + ".");
+        }
+        if (depth == 0 || !qualifiedName.equals(elementStack[depth - 1])) {
+            throw new XmlPullParserException("Unexpected end tag " + qualifiedName + ".");
+        }
+        name = localName(qualifiedName);
+        depth--;
+        attributeCount = 0;
+    }
+
+    /**
+     * Skips white space.
+     *
+     * @return the first byte after the white space
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException at the end of the stream
+     */
+    private int skipWhitespace() throws IOException, XmlPullParserException {
+        int b;
+        do {
+            b = readRequired();
+        } while (b == ' ' || b == '\n' || b == '\t' || b == '\r');
+        return b;
+    }
+
+    /**
+     * Reads a name and returns its String from the name table. The name ends
+     * before the first white space, '=', '/' or '&gt;', which is not consumed.
+     *
+     * @param first the first byte of the name
+     * @return the name
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the name is empty or incomplete
+     */
+    private String readName(int first) throws IOException, XmlPullParserException {
+
+        nameLength = 0;
+        nameHash = 0;
+        int b = first;
+
+        while (true) {
+            if (b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '=' || b == '/' || b == '>') {
+                position--;
+                break;
+            }
+            if (b == '<' || b == '"' || b == '\'') {
+                throw new XmlPullParserException("Invalid character in name.");
+            }
+            if (nameLength == nameBytes.length) {
+                nameBytes = Arrays.copyOf(nameBytes, 2 * nameLength);
+            }
+            nameBytes[nameLength++] = (byte) b;
+            nameHash = 31 * nameHash + b;
+            b = readRequired();
+        }
+
+        if (nameLength == 0) {
+            throw new XmlPullParserException("Empty name.");
+        }
+
+        return lookupName();
+    }
+
+    /**
+     * Returns the String of the name just read, adding it to the name table if
+     * needed.
+     *
+     * @return the name
+     */
+    private String lookupName() {
+
+        int mask = tableNames.length - 1;
+        int slot = (nameHash ^ (nameHash >>> 16)) & mask;
+
+        while (tableNames[slot] != null) {
+            byte[] candidate = tableBytes[slot];
+            if (candidate.length == nameLength && equals(candidate, nameBytes, nameLength)) {
+                return tableNames[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String result = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+
+        if (tableSize < MAX_NAMES) {
+            tableNames[slot] = result;
+            tableBytes[slot] = Arrays.copyOf(nameBytes, nameLength);
+            tableSize++;
+            if (2 * tableSize > tableNames.length) {
+                rehash();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Compares the first bytes of two arrays.
+     *
+     * @param a the first array
+     * @param b the second array
+     * @param length the number of bytes to compare
+     * @return true if the bytes are equal
+     */
+    private static boolean equals(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the size of the name table.
+     */
+    private void rehash() {
+        String[] oldNames = tableNames;
+        byte[][] oldBytes = tableBytes;
+        tableNames = new String[2 * oldNames.length];
+        tableBytes = new byte[2 * oldNames.length][];
+        int mask = tableNames.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int hash = 0;
+                for (byte b : oldBytes[i]) {
+                    hash = 31 * hash + (b & 0xff);
+                }
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (tableNames[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                tableNames[slot] = oldNames[i];
+                tableBytes[slot] = oldBytes[i];
+            }
+        }
+    }
+
+    /**
+     * Reads text until the next '&lt;' or the end of the stream, decoding the
+     * bytes into the text buffer.
+     *
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the text is malformed
+     */
+    private void readText() throws IOException, XmlPullParserException {
+
+        textLength = 0;
+        whitespace = true;
+
+        while (true) {
+
+            if (position == limit && !fill()) {
+                return;
+            }
+
+            // fast path for ASCII
+            byte[] bytes = buffer;
+            int i = position;
+            int end = limit;
+            char[] chars = text;
+            int length = textLength;
+            boolean onlyWhitespace = whitespace;
+
+            while (i < end) {
+                byte b = bytes[i];
+                if (b == '<' || b == '&' || b == '\r' || b < 0) {
+                    break;
+                }
+                if (length == chars.length) {
+                    chars = text = Arrays.copyOf(chars, 2 * length);
+                }
+                chars[length++] = (char) b;
+                if (onlyWhitespace && b != ' ' && b != '\n' && b != '\t') {
+                    onlyWhitespace = false;
+                }
+                i++;
+            }
+
+            position = i;
+            textLength = length;
+            whitespace = onlyWhitespace;
+
+            if (i == end) {
+                continue;
+            }
+
+            int b = buffer[position] & 0xff;
+            if (b == '<') {
+                // CDATA sections are added to the text, comments and
+                // processing instructions are skipped, like XmlPullParser.next
+                if (!ensure(2) || (buffer[position + 1] != '!' && buffer[position + 1] != '?')) {
+                    return;
+                } else if (startsWith(CDATA_START)) {
+                    position += CDATA_START.length;
+                    readCData();
+                } else if (startsWith(COMMENT_START)) {
+                    position += COMMENT_START.length;
+                    skipUntil("-->");
+                } else if (startsWith(PI_START)) {
+                    position += PI_START.length;
+                    skipUntil("?>");
+                } else {
+                    return;
+                }
+                continue;
+            }
+            position++;
+            if (b == '&') {
+                readEntity();
+            } else if (b == '\r') {
+                // line ends are normalized to '\n'
+                if (peek() == '\n') {
+                    position++;
+                }
+                appendCodePoint('\n');
+            } else {
+                appendCodePoint(readUtf8(b));
+            }
+        }
+    }
+
+    /**
+     * Reads a CDATA section after the "&lt;![CDATA[", adding its content to the
+     * text buffer.
+     *
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the section is not terminated
+     */
+    private void readCData() throws IOException, XmlPullParserException {
+        while (true) {
+            int b = readRequired();
+            if (b == ']' && ensure(2) && buffer[position] == ']' && buffer[position + 1] == '>') {
+                position += 2;
+                return;
+            } else if (b == '\r') {
+                if (peek() == '\n') {
+                    position++;
+                }
+                appendCodePoint('\n');
+            } else if (b < 0x80) {
+                appendCodePoint(b);
+            } else {
+                appendCodePoint(readUtf8(b));
+            }
+        }
+    }
+
+    /**
+     * Reads a document type declaration after the "&lt;!DOCTYPE". The general
+     * entities declared in the internal subset are added to the entities.
+     *
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the declaration is malformed
+     */
+    private void readDoctype() throws IOException, XmlPullParserException {
+        int quote = 0;
+        while (true) {
+            int b = readRequired();
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '[') {
+                readInternalSubset();
+            } else if (b == '>') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the internal subset of the document type declaration after the
+     * '['. Only the entity declarations are interpreted, the other markup
+     * declarations are skipped.
+     *
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the internal subset is malformed
+     */
+    private void readInternalSubset() throws IOException, XmlPullParserException {
+        while (true) {
+            int b = skipWhitespace();
+            if (b == ']') {
+                return;
+            } else if (b == '%') {
+                // parameter entity reference
+                skipUntil(";");
+            } else if (b != '<') {
+                throw new XmlPullParserException("Malformed document type declaration.");
+            } else if (peek() == '?') {
+                skipUntil("?>");
+            } else if (readRequired() != '!') {
+                throw new XmlPullParserException("Malformed document type declaration.");
+            } else if (startsWith(ENTITY_KEYWORD)) {
+                position += ENTITY_KEYWORD.length;
+                readEntityDeclaration();
+            } else if (peek() == '-') {
+                skipUntil("-->");
+            } else {
+                skipDeclaration(readRequired());
+            }
+        }
+    }
+
+    /**
+     * Reads an entity declaration after the "&lt;!ENTITY". General entities
+     * with a literal value are added to the entities; the value of external
+     * entities and of entities containing markup or entity references is not
+     * supported.
+     *
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the declaration is malformed
+     */
+    private void readEntityDeclaration() throws IOException, XmlPullParserException {
+
+        int b = skipWhitespace();
+        boolean parameterEntity = b == '%';
+        if (parameterEntity) {
+            b = skipWhitespace();
+        }
+        String entityName = readName(b);
+
+        b = skipWhitespace();
+        String value = null;
+        if (b == '"' || b == '\'') {
+            value = readEntityValue(b);
+            b = readRequired();
+        }
+        skipDeclaration(b);
+
+        // the first declaration of an entity is binding
+        if (!parameterEntity && !entities.containsKey(entityName)) {
+            entities.put(entityName, value);
+        }
+    }
+
+    /**
+     * Reads the literal value of an entity declaration until the closing
+     * quote. Character references are replaced.
+     *
+     * @param quote the quote character
+     * @return the value, null if it contains markup or entity references
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the value is malformed
+     */
+    private String readEntityValue(int quote) throws IOException, XmlPullParserException {
+        textLength = 0;
+        boolean supported = true;
+        int b;
+        while ((b = readRequired()) != quote) {
+            if (b == '&') {
+                String reference = readReference();
+                if (reference.startsWith("#")) {
+                    appendCodePoint(parseCharacterReference(reference));
+                } else {
+                    supported = false;
+                }
+            } else if (b == '<' || b == '%') {
+                supported = false;
+            } else if (b < 0x80) {
+                appendCodePoint(b);
+            } else {
+                appendCodePoint(readUtf8(b));
+            }
+        }
+        return supported ? new String(text, 0, textLength) : null;
+    }
+
+    /**
+     * Skips a markup declaration until its closing '&gt;', ignoring the '&gt;'
+     * in quoted literals.
+     *
+     * @param first the first byte of the rest of the declaration
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the declaration is not terminated
+     */
+    private void skipDeclaration(int first) throws IOException, XmlPullParserException {
+        int quote = 0;
+        int b = first;
+        while (quote != 0 || b != '>') {
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            }
+            b = readRequired();
+        }
+    }
+
+    /**
+     * Reads an attribute value until the closing quote.
+     *
+     * @param quote the quote character
+     * @return the value
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the value is malformed
+     */
+    private String readAttributeValue(int quote) throws IOException, XmlPullParserException {
+        textLength = 0;
+        int b;
+        while ((b = readRequired()) != quote) {
+            if (b == '&') {
+                readEntity();
+            } else if (b == '<') {
+                throw new XmlPullParserException("Invalid character '<' in attribute value.");
+            } else if (b == '\r' || b == '\n' || b == '\t') {
+                // attribute value normalization
+                if (b == '\r' && peek() == '\n') {
+                    position++;
+                }
+                appendCodePoint(' ');
+            } else if (b < 0x80) {
+                appendCodePoint(b);
+            } else {
+                appendCodePoint(readUtf8(b));
+            }
+        }
+        return new String(text, 0, textLength);
+    }
+
+    /**
+     * Appends a code point to the text buffer.
+     *
+     * @param codePoint the code point
+     */
+    private void appendCodePoint(int codePoint) {
+        if (textLength + 2 > text.length) {
+            text = Arrays.copyOf(text, 2 * text.length);
+        }
+        if (whitespace && codePoint != ' ' && codePoint != '\n' && codePoint != '\t' && codePoint != '\r') {
+            whitespace = false;
+        }
+        textLength += Character.toChars(codePoint, text, textLength);
+    }
+
+    /**
+     * Decodes a multi byte UTF-8 sequence.
+     *
+     * @param first the first byte of the sequence
+     * @return the code point, U+FFFD for malformed sequences
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException at the end of the stream
+     */
+    private int readUtf8(int first) throws IOException, XmlPullParserException {
+        int count;
+        int codePoint;
+        if ((first & 0xe0) == 0xc0) {
+            count = 1;
+            codePoint = first & 0x1f;
+        } else if ((first & 0xf0) == 0xe0) {
+            count = 2;
+            codePoint = first & 0x0f;
+        } else if ((first & 0xf8) == 0xf0) {
+            count = 3;
+            codePoint = first & 0x07;
+        } else {
+            return 0xfffd;
+        }
+        for (int i = 0; i < count; i++) {
+            int b = peek();
+            if (b < 0 || (b & 0xc0) != 0x80) {
+                return 0xfffd;
+            }
+            position++;
+            codePoint = codePoint << 6 | (b & 0x3f);
+        }
+        if (codePoint > Character.MAX_CODE_POINT || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+            return 0xfffd;
+        }
+        return codePoint;
+    }
+
+    /**
+     * Reads an entity reference after the '&amp;' and adds its replacement
+     * text to the text buffer.
+     *
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the entity is malformed, undeclared or
+     * not supported
+     */
+    private void readEntity() throws IOException, XmlPullParserException {
+
+        String reference = readReference();
+        if (reference.equals("lt")) {
+            appendCodePoint('<');
+        } else if (reference.equals("gt")) {
+            appendCodePoint('>');
+        } else if (reference.equals("amp")) {
+            appendCodePoint('&');
+        } else if (reference.equals("quot")) {
+            appendCodePoint('"');
+        } else if (reference.equals("apos")) {
+            appendCodePoint('\'');
+        } else if (reference.startsWith("#")) {
+            appendCodePoint(parseCharacterReference(reference));
+        } else if (!entities.containsKey(reference)) {
+            throw new XmlPullParserException("Undeclared entity &" + reference + ";.");
+        } else {
+            String value = entities.get(reference);
+            if (value == null) {
+                throw new XmlPullParserException("Entity &" + reference + "; is not supported.");
+            }
+            for (int i = 0; i < value.length(); i++) {
+                appendCodePoint(value.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Reads the name of an entity reference after the '&amp;' until the ';'.
+     *
+     * @return the name of the entity
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the reference is malformed
+     */
+    private String readReference() throws IOException, XmlPullParserException {
+        StringBuilder entity = new StringBuilder(8);
+        int b;
+        while ((b = readRequired()) != ';') {
+            if (entity.length() > 64 || b == '<' || b == '&' || b == ' ' || b == '\n' || b == '\t' || b == '\r') {
+                throw new XmlPullParserException("Malformed entity reference &" + entity + ".");
+            }
+            entity.append((char) b);
+        }
+        return entity.toString();
+    }
+
+    /**
+     * Returns the code point of a character reference.
+     *
+     * @param reference the reference, without the '&amp;' and ';'
+     * @return the code point
+     * @throws XmlPullParserException if the reference is malformed or not a
+     * valid character
+     */
+    private static int parseCharacterReference(String reference) throws XmlPullParserException {
+        boolean hexadecimal = reference.startsWith("#x");
+        String digits = reference.substring(hexadecimal ? 2 : 1);
+        int codePoint = -1;
+        if (!digits.isEmpty() && digits.length() <= 8 && Character.digit(digits.charAt(0), hexadecimal ? 16 : 10) >= 0) {
+            try {
+                codePoint = Integer.parseInt(digits, hexadecimal ? 16 : 10);
+            } catch (NumberFormatException e) {
+                codePoint = -1;
+            }
+        }
+        if (codePoint <= 0 || codePoint > Character.MAX_CODE_POINT || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+            throw new XmlPullParserException("Invalid character reference &" + reference + ";.");
+        }
+        return codePoint;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return eventType == XmlPullParser.START_TAG ? attributeCount : -1;
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        return attributeNames[index];
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        return attributeValues[index];
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        if (eventType != XmlPullParser.TEXT) {
+            throw new XmlPullParserException("The current token is not text.");
+        }
+        return whitespace;
+    }
+
+    @Override
+    public String getText() {
+        if (eventType != XmlPullParser.TEXT) {
+            return null;
+        }
+        if (textString == null) {
+            textString = new String(text, 0, textLength);
+        }
+        return textString;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
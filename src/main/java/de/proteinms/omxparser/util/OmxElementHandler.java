@@ -0,0 +1,246 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The dispatch table entry for one of the MS* classes of the omx model. It
+ * holds a precompiled factory for new instances of the class and one
+ * precompiled setter per "setX" method, keyed by the name of the XML element
+ * X. The reflective lookups are done once per class when the handler is
+ * created, the OmxParser then only does HashMap lookups per parsing event.
+ */
+public final class OmxElementHandler {
+
+    /**
+     * The handlers already created, one per class.
+     */
+    private static final ConcurrentHashMap<Class<?>, OmxElementHandler> handlers = new ConcurrentHashMap<Class<?>, OmxElementHandler>();
+    /**
+     * The lookup used to create the setters and factories. The model classes
+     * are all public members of this package.
+     */
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    /**
+     * The class handled.
+     */
+    private final Class<?> type;
+    /**
+     * The factory for new instances of the class.
+     */
+    private final Supplier<Object> factory;
+    /**
+     * The properties of the class, keyed by element name.
+     */
+    private final Map<String, Property> properties;
+
+    /**
+     * A precompiled setter.
+     */
+    public interface Setter {
+
+        /**
+         * Sets the given value on the given target.
+         *
+         * @param target the object to set the value on
+         * @param value the value to set
+         */
+        void set(Object target, Object value);
+    }
+
+    /**
+     * A settable property of a model class, i.e., a "setX" method.
+     */
+    public static final class Property {
+
+        /**
+         * The parameter type of the setter.
+         */
+        private final Class<?> valueType;
+        /**
+         * The setter.
+         */
+        private final Setter setter;
+
+        /**
+         * Constructor.
+         *
+         * @param valueType the parameter type of the setter
+         * @param setter the setter
+         */
+        private Property(Class<?> valueType, Setter setter) {
+            this.valueType = valueType;
+            this.setter = setter;
+        }
+
+        /**
+         * Returns the parameter type of the setter.
+         *
+         * @return the parameter type of the setter
+         */
+        public Class<?> getValueType() {
+            return valueType;
+        }
+
+        /**
+         * Indicates whether the setter takes the given value. As for
+         * Class.getDeclaredMethod, the class of the value has to match the
+         * parameter type exactly.
+         *
+         * @param value the value
+         * @return true if the setter takes the given value
+         */
+        public boolean accepts(Object value) {
+            return value != null && value.getClass() == valueType;
+        }
+
+        /**
+         * Sets the given value on the given target.
+         *
+         * @param target the object to set the value on
+         * @param value the value to set
+         */
+        public void set(Object target, Object value) {
+            setter.set(target, value);
+        }
+    }
+
+    /**
+     * Returns the handler for the given class, creating it the first time the
+     * class is requested.
+     *
+     * @param type the class
+     * @return the handler for the given class
+     */
+    public static OmxElementHandler getHandler(Class<?> type) {
+        OmxElementHandler handler = handlers.get(type);
+        if (handler == null) {
+            handler = new OmxElementHandler(type);
+            OmxElementHandler previous = handlers.putIfAbsent(type, handler);
+            if (previous != null) {
+                handler = previous;
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param type the class to handle
+     */
+    private OmxElementHandler(Class<?> type) {
+        this.type = type;
+        this.factory = createFactory(type);
+        HashMap<String, Property> tempProperties = new HashMap<String, Property>();
+        for (Method method : type.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers())
+                    && !Modifier.isStatic(method.getModifiers())
+                    && method.getName().startsWith("set")
+                    && method.getName().length() > 3
+                    && method.getParameterTypes().length == 1) {
+                Class<?> valueType = method.getParameterTypes()[0];
+                tempProperties.put(method.getName().substring(3), new Property(valueType, createSetter(method)));
+            }
+        }
+        this.properties = Collections.unmodifiableMap(tempProperties);
+    }
+
+    /**
+     * Returns the class handled.
+     *
+     * @return the class handled
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Returns a new instance of the class handled.
+     *
+     * @return a new instance of the class handled
+     */
+    public Object newInstance() {
+        return factory.get();
+    }
+
+    /**
+     * Returns the property corresponding to the given element name, null if
+     * the class has no setter for this element.
+     *
+     * @param elementName the element name
+     * @return the property corresponding to the given element name
+     */
+    public Property getProperty(String elementName) {
+        return properties.get(elementName);
+    }
+
+    /**
+     * Creates a factory calling the public no-argument constructor of the
+     * given class.
+     *
+     * @param type the class
+     * @return the factory
+     */
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> createFactory(Class<?> type) {
+        try {
+            MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+            CallSite callSite = LambdaMetafactory.metafactory(
+                    lookup,
+                    "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(type));
+            return (Supplier<Object>) callSite.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Cannot create a factory for " + type.getName() + ".", e);
+        }
+    }
+
+    /**
+     * Creates a setter invoking the given method.
+     *
+     * @param method the method
+     * @return the setter
+     */
+    private static Setter createSetter(Method method) {
+        try {
+            MethodHandle methodHandle = lookup.unreflect(method);
+            CallSite callSite = LambdaMetafactory.metafactory(
+                    lookup,
+                    "set",
+                    MethodType.methodType(Setter.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    methodHandle,
+                    MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]));
+            return (Setter) callSite.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Cannot create a setter for " + method + ".", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The immutable set of XML Tags parsed into objects by an OmxParser, with the
+ * element handler of each tag. XML Tags which are not registered are skipped
+ * by the parser. A registry never changes once created and can therefore be
+ * shared by parsers running in parallel.
+ */
+public final class OmxElementRegistry {
+
+    /**
+     * The registries for the four combinations of import flags, indexed by
+     * getIndex.
+     */
+    private static final OmxElementRegistry[] instances = new OmxElementRegistry[4];
+
+    static {
+        instances[getIndex(false, false)] = new OmxElementRegistry(false, false);
+        instances[getIndex(false, true)] = new OmxElementRegistry(false, true);
+        instances[getIndex(true, false)] = new OmxElementRegistry(true, false);
+        instances[getIndex(true, true)] = new OmxElementRegistry(true, true);
+    }
+
+    /**
+     * The element handlers indexed by XML Tag.
+     */
+    private final Map<String, OmxElementHandler> handlers;
+    /**
+     * Indicates whether the MSSpectrumset section is parsed.
+     */
+    private final boolean importSpectra;
+    /**
+     * Indicates whether the id details are parsed.
+     */
+    private final boolean importIdDetails;
+
+    /**
+     * Returns the registry for the given import flags.
+     *
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @return the registry for the given import flags
+     */
+    public static OmxElementRegistry getInstance(boolean importSpectra, boolean importIdDetails) {
+        return instances[getIndex(importSpectra, importIdDetails)];
+    }
+
+    /**
+     * Returns the index of the registry for the given import flags.
+     *
+     * @param importSpectra if the spectra are imported
+     * @param importIdDetails if the id details are imported
+     * @return the index of the registry
+     */
+    private static int getIndex(boolean importSpectra, boolean importIdDetails) {
+        return (importSpectra ? 2 : 0) + (importIdDetails ? 1 : 0);
+    }
+
+    /**
+     * Constructor. If a Class should be parsed by OmxParser, it has to be
+     * registered here.
+     *
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     */
+    private OmxElementRegistry(boolean importSpectra, boolean importIdDetails) {
+
+        this.importSpectra = importSpectra;
+        this.importIdDetails = importIdDetails;
+
+        HashMap<String, OmxElementHandler> classes = new HashMap<String, OmxElementHandler>();
+
+        register(classes, "MSChargeHandle_calccharge", MSChargeHandle_calccharge.class);
+        register(classes, "MSChargeHandle_calcplusone", MSChargeHandle_calcplusone.class);
+        register(classes, "MSChargeHandle", MSChargeHandle.class);
+        register(classes, "MSHits_mods", MSHits_mods.class);
+        register(classes, "MSHits_scores", MSHits_scores.class);
+        register(classes, "MSHits", MSHits.class);
+        register(classes, "MSHitSet_error", MSHitSet_error.class);
+        register(classes, "MSHitSet_hits", MSHitSet_hits.class);
+        register(classes, "MSHitSet_ids", MSHitSet_ids.class);
+        register(classes, "MSHitSet_namevalue", MSHitSet_namevalue.class);
+        register(classes, "MSHitSet_userannotation", MSHitSet_userannotation.class);
+        register(classes, "MSHitSet", MSHitSet.class);
+        register(classes, "MSImmonium", MSImmonium.class);
+        register(classes, "MSInFile_infiletype", MSInFile_infiletype.class);
+        register(classes, "MSInFile", MSInFile.class);
+        register(classes, "MSIon_immonium", MSIon_immonium.class);
+        register(classes, "MSIon_isotope", MSIon_isotope.class);
+        register(classes, "MSIon_neutralloss", MSIon_neutralloss.class);
+        register(classes, "MSIon", MSIon.class);
+        register(classes, "MSIonAnnot", MSIonAnnot.class);
+        register(classes, "MSIterativeSettings", MSIterativeSettings.class);
+        register(classes, "MSLibrarySettings_libnames", MSLibrarySettings_libnames.class);
+        register(classes, "MSLibrarySettings", MSLibrarySettings.class);
+        register(classes, "MSMassSet", MSMassSet.class);
+        register(classes, "MSModHit_modtype", MSModHit_modtype.class);
+        register(classes, "MSModHit", MSModHit.class);
+        register(classes, "MSModSpec_mod", MSModSpec_mod.class);
+        register(classes, "MSModSpec_neutralloss", MSModSpec_neutralloss.class);
+        register(classes, "MSModSpec_residues", MSModSpec_residues.class);
+        register(classes, "MSModSpec", MSModSpec.class);
+        register(classes, "MSModSpecSet", MSModSpecSet.class);
+        register(classes, "MSOutFile_outfiletype", MSOutFile_outfiletype.class);
+        register(classes, "MSOutFile", MSOutFile.class);
+        register(classes, "MSRequest_modset", MSRequest_modset.class);
+        register(classes, "MSRequest_moresettings", MSRequest_moresettings.class);
+        register(classes, "MSRequest_settings", MSRequest_settings.class);
+        register(classes, "MSRequest", MSRequest.class);
+        register(classes, "MSResponse_error", MSResponse_error.class);
+        register(classes, "MSResponse_hitsets", MSResponse_hitsets.class);
+        register(classes, "MSResponse", MSResponse.class);
+        register(classes, "MSScoreSet", MSScoreSet.class);
+        register(classes, "MSSearch_request", MSSearch_request.class);
+        register(classes, "MSSearch_response", MSSearch_response.class);
+        register(classes, "MSSearch", MSSearch.class);
+        register(classes, "MSSearchSettings_chargehandling", MSSearchSettings_chargehandling.class);
+        register(classes, "MSSearchSettings_enzyme", MSSearchSettings_enzyme.class);
+        register(classes, "MSSearchSettings_fixed", MSSearchSettings_fixed.class);
+        register(classes, "MSSearchSettings_infiles", MSSearchSettings_infiles.class);
+        register(classes, "MSSearchSettings_ionstosearch", MSSearchSettings_ionstosearch.class);
+        register(classes, "MSSearchSettings_iterativesettings", MSSearchSettings_iterativesettings.class);
+        register(classes, "MSSearchSettings_libsearchsettings", MSSearchSettings_libsearchsettings.class);
+        register(classes, "MSSearchSettings_noprolineions", MSSearchSettings_noprolineions.class);
+        register(classes, "MSSearchSettings_othersettings", MSSearchSettings_othersettings.class);
+        register(classes, "MSSearchSettings_outfiles", MSSearchSettings_outfiles.class);
+        register(classes, "MSSearchSettings_precursorsearchtype", MSSearchSettings_precursorsearchtype.class);
+        register(classes, "MSSearchSettings_productsearchtype", MSSearchSettings_productsearchtype.class);
+        register(classes, "MSSearchSettings_taxids", MSSearchSettings_taxids.class);
+        register(classes, "MSSearchSettings_usermods", MSSearchSettings_usermods.class);
+        register(classes, "MSSearchSettings_variable", MSSearchSettings_variable.class);
+        register(classes, "MSSearchSettings_zdep", MSSearchSettings_zdep.class);
+        register(classes, "MSSearchSettings", MSSearchSettings.class);
+        register(classes, "MSSearchSettingsSet", MSSearchSettingsSet.class);
+        register(classes, "MSSpectrum_namevalue", MSSpectrum_namevalue.class);
+        register(classes, "NameValue", NameValue.class);
+        if (importSpectra) {
+            register(classes, "MSRequest_spectra", MSRequest_spectra.class);
+            register(classes, "MSSpectrumset", MSSpectrumset.class);
+            register(classes, "MSSpectrum", MSSpectrum.class);
+            register(classes, "MSSpectrum_charge", MSSpectrum_charge.class);
+            register(classes, "MSSpectrum_mz", MSSpectrum_mz.class);
+            register(classes, "MSSpectrum_abundance", MSSpectrum_abundance.class);
+            register(classes, "MSSpectrum_ids", MSSpectrum_ids.class);
+        }
+        if (importIdDetails) {
+            register(classes, "MSHits_pephits", MSHits_pephits.class);
+            register(classes, "MSPepHit", MSPepHit.class);
+            register(classes, "MSHits_mzhits", MSHits_mzhits.class);
+            register(classes, "MSMZHit_annotation", MSMZHit_annotation.class);
+            register(classes, "MSMZHit_ion", MSMZHit_ion.class);
+            register(classes, "MSMZHit_moreion", MSMZHit_moreion.class);
+            register(classes, "MSMZHit", MSMZHit.class);
+        }
+
+        handlers = Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * Registers the element handler of the given class for the given XML Tag.
+     *
+     * @param classes the map to register the handler in
+     * @param elementName the name of the XML Tag
+     * @param c the class representing the XML Tag
+     */
+    private static void register(HashMap<String, OmxElementHandler> classes, String elementName, Class<?> c) {
+        classes.put(elementName, OmxElementHandler.getHandler(c));
+    }
+
+    /**
+     * Returns the element handler of the given XML Tag, null if the tag is not
+     * registered.
+     *
+     * @param elementName the name of the XML Tag
+     * @return the element handler of the given XML Tag
+     */
+    public OmxElementHandler getHandler(String elementName) {
+        return handlers.get(elementName);
+    }
+
+    /**
+     * Indicates whether the given XML Tag is registered.
+     *
+     * @param elementName the name of the XML Tag
+     * @return true if the given XML Tag is registered
+     */
+    public boolean contains(String elementName) {
+        return handlers.containsKey(elementName);
+    }
+
+    /**
+     * Indicates whether the MSSpectrumset section is parsed.
+     *
+     * @return true if the MSSpectrumset section is parsed
+     */
+    public boolean isImportSpectra() {
+        return importSpectra;
+    }
+
+    /**
+     * Indicates whether the id details are parsed.
+     *
+     * @return true if the id details are parsed
+     */
+    public boolean isImportIdDetails() {
+        return importIdDetails;
+    }
+}
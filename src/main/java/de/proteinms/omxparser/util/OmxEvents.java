@@ -0,0 +1,342 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.File;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of the parsing of omx files: file open, block
+ * decompression, document parse, map building and modification file parse.
+ * The events are created through the static methods of this class, which
+ * return null when the Flight Recorder is not available in the running JVM
+ * or when the event is not enabled in any recording, so that the cost is a
+ * test of a null reference when nothing is recorded.
+ * <br><br>
+ * Example:
+ * <pre>
+ * java -XX:StartFlightRecording=filename=omx.jfr ...
+ * jfr print --categories "OMSSA Parser" omx.jfr
+ * </pre>
+ */
+public final class OmxEvents {
+
+    /**
+     * The category of the events.
+     */
+    private static final String CATEGORY = "OMSSA Parser";
+    /**
+     * Indicates whether the Flight Recorder classes are available.
+     */
+    private static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * Empty default constructor.
+     */
+    private OmxEvents() {
+    }
+
+    /**
+     * Indicates whether the Flight Recorder classes are available in the
+     * running JVM.
+     *
+     * @return true if the Flight Recorder classes are available
+     */
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts a file open event.
+     *
+     * @param file the file opened
+     * @return the event, null if not recorded
+     */
+    public static FileOpenEvent fileOpenStarted(File file) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        FileOpenEvent event = new FileOpenEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.file = file.getPath();
+        event.bytes = file.length();
+        event.compressed = file.getName().endsWith(".gz");
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a file open event.
+     *
+     * @param event the event, null if not recorded
+     * @param tokenizer the tokenizer opened on the file
+     */
+    public static void fileOpenFinished(FileOpenEvent event, OmxTokenizer tokenizer) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.tokenizer = tokenizer.getClass().getSimpleName();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts a block inflate event.
+     *
+     * @param compressedBytes the size of the compressed block
+     * @return the event, null if not recorded
+     */
+    public static InflateEvent inflateStarted(long compressedBytes) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        InflateEvent event = new InflateEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.compressedBytes = compressedBytes;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a block inflate event.
+     *
+     * @param event the event, null if not recorded
+     * @param uncompressedBytes the size of the inflated block
+     */
+    public static void inflateFinished(InflateEvent event, long uncompressedBytes) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.uncompressedBytes = uncompressedBytes;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts a document parse event.
+     *
+     * @param file the file parsed
+     * @return the event, null if not recorded
+     */
+    public static ParseEvent parseStarted(File file) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.file = file.getPath();
+        event.bytes = file.length();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a document parse event.
+     *
+     * @param event the event, null if not recorded
+     * @param elements the number of elements parsed
+     */
+    public static void parseFinished(ParseEvent event, long elements) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.elements = elements;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts a map building event.
+     *
+     * @param map the names of the maps built, separated by commas
+     * @return the event, null if not recorded
+     */
+    public static MapBuildEvent mapBuildStarted(String map) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        MapBuildEvent event = new MapBuildEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.map = map;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a map building event.
+     *
+     * @param event the event, null if not recorded
+     * @param entries the number of entries of the maps
+     */
+    public static void mapBuildFinished(MapBuildEvent event, long entries) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.entries = entries;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts a modification file parse event.
+     *
+     * @param file the modification file
+     * @return the event, null if not recorded
+     */
+    public static ModificationFileEvent modificationFileStarted(File file) {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ModificationFileEvent event = new ModificationFileEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.file = file.getPath();
+        event.bytes = file.length();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a modification file parse event.
+     *
+     * @param event the event, null if not recorded
+     * @param modifications the number of modifications parsed
+     */
+    public static void modificationFileFinished(ModificationFileEvent event, long modifications) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.modifications = modifications;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The opening of an omx file, including the detection of its prolog.
+     */
+    @Name("de.proteinms.omxparser.FileOpen")
+    @Label("OMX File Open")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class FileOpenEvent extends Event {
+
+        @Label("File")
+        private String file;
+        @Label("File Size")
+        @DataAmount
+        private long bytes;
+        @Label("Compressed")
+        private boolean compressed;
+        @Label("Tokenizer")
+        private String tokenizer;
+    }
+
+    /**
+     * The decompression of a block of a block compressed file, see
+     * BlockGzipInputStream.
+     */
+    @Name("de.proteinms.omxparser.Inflate")
+    @Label("OMX Block Inflate")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class InflateEvent extends Event {
+
+        @Label("Compressed Size")
+        @DataAmount
+        private long compressedBytes;
+        @Label("Uncompressed Size")
+        @DataAmount
+        private long uncompressedBytes;
+    }
+
+    /**
+     * The parsing of an omx document by OmxParser.
+     */
+    @Name("de.proteinms.omxparser.Parse")
+    @Label("OMX Document Parse")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class ParseEvent extends Event {
+
+        @Label("File")
+        private String file;
+        @Label("File Size")
+        @DataAmount
+        private long bytes;
+        @Label("Elements")
+        @Description("The number of XML elements parsed")
+        private long elements;
+    }
+
+    /**
+     * The building of maps of OmssaOmxFile, in a single pass, see
+     * OmxIndexBuilder.
+     */
+    @Name("de.proteinms.omxparser.MapBuild")
+    @Label("OMX Map Build")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class MapBuildEvent extends Event {
+
+        @Label("Map")
+        private String map;
+        @Label("Entries")
+        private long entries;
+    }
+
+    /**
+     * The parsing of a mods.xml or usermods.xml file.
+     */
+    @Name("de.proteinms.omxparser.ModificationFile")
+    @Label("OMSSA Modification File Parse")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class ModificationFileEvent extends Event {
+
+        @Label("File")
+        private String file;
+        @Label("File Size")
+        @DataAmount
+        private long bytes;
+        @Label("Modifications")
+        private long modifications;
+    }
+}
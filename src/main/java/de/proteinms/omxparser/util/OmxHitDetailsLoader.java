@@ -0,0 +1,405 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Loads the MSHits_pephits and MSHits_mzhits of the hits of an omx file on
+ * demand. When given to an OmxParser, the parser skips these sections and
+ * the MSPepHit and MSMZHit lists of every MSHits are replaced by lists
+ * reading the hit set of the hit from the file, see OmxIndexedReader, the
+ * first time they are accessed. Both lists of all the hits of the hit set are
+ * filled by a single read.
+ * <br><br>
+ * To read the details of many hits, pass them to load: the hit sets are then
+ * read in the order of the file in a single pass.
+ * <br><br>
+ * Example:
+ * <pre>
+ * OmxHitDetailsLoader loader = new OmxHitDetailsLoader(omxFile);
+ * OmxParser omxParser = OmxParser.withHitDetailsLoader(omxFile.getPath(), null, null, false, loader);
+ * ...
+ * loader.load(confidentHits);
+ * ...
+ * loader.close();
+ * </pre>
+ * A loader is to be used by a single parser.
+ */
+public class OmxHitDetailsLoader implements Closeable {
+
+    /**
+     * The omx file.
+     */
+    private final File omxFile;
+    /**
+     * The reader of the file.
+     */
+    private final OmxIndexedReader reader;
+    /**
+     * The hit set currently parsed.
+     */
+    private DeferredHitSet currentHitSet;
+
+    /**
+     * Creates a loader for the given file. The file is opened and its byte
+     * offset index read or built, see OmxIndex.getIndex, before parsing. If
+     * the index cannot be written next to the file, e.g., in a read-only
+     * directory, it is only kept in memory.
+     *
+     * @param omxFile the uncompressed or block compressed omx file
+     * @throws IOException if the file or its index could not be read, e.g.,
+     * for a file compressed with plain gzip
+     */
+    public OmxHitDetailsLoader(File omxFile) throws IOException {
+        this.omxFile = omxFile;
+        this.reader = new OmxIndexedReader(omxFile, true);
+    }
+
+    /**
+     * Called by the parser when a hit set starts.
+     *
+     * @param msHitSet the new hit set
+     * @param responseIndex the index of the MSResponse of the hit set
+     */
+    void hitSetStarted(MSHitSet msHitSet, int responseIndex) {
+        currentHitSet = new DeferredHitSet(msHitSet, responseIndex);
+    }
+
+    /**
+     * Called by the parser when a hit starts, replaces the MSPepHit and
+     * MSMZHit lists of the hit by deferred lists.
+     *
+     * @param msHits the new hit
+     */
+    void hitStarted(MSHits msHits) {
+        if (currentHitSet == null) {
+            return;
+        }
+        DeferredHit deferredHit = new DeferredHit(currentHitSet, currentHitSet.hits.size());
+        currentHitSet.hits.add(deferredHit);
+        deferredHit.pepHits = new DeferredList<MSPepHit>(deferredHit);
+        deferredHit.mzHits = new DeferredList<MSMZHit>(deferredHit);
+        msHits.MSHits_pephits.MSPepHit = deferredHit.pepHits;
+        msHits.MSHits_mzhits.MSMZHit = deferredHit.mzHits;
+    }
+
+    /**
+     * Indicates whether the details of the given hit are in memory.
+     *
+     * @param msHits the hit
+     * @return true if the details of the hit are loaded or were not deferred
+     */
+    public boolean isLoaded(MSHits msHits) {
+        DeferredHitSet hitSet = getDeferredHitSet(msHits);
+        return hitSet == null || hitSet.loaded;
+    }
+
+    /**
+     * Loads the details of the given hits which are not loaded yet. The hit
+     * sets of the hits are read in the order of the file.
+     *
+     * @param hits the hits
+     * @throws UncheckedIOException if the file could not be read
+     */
+    public synchronized void load(Collection<MSHits> hits) {
+
+        LinkedHashSet<DeferredHitSet> hitSets = new LinkedHashSet<DeferredHitSet>();
+        for (MSHits msHits : hits) {
+            DeferredHitSet hitSet = getDeferredHitSet(msHits);
+            if (hitSet != null && !hitSet.loaded) {
+                hitSets.add(hitSet);
+            }
+        }
+        if (hitSets.isEmpty()) {
+            return;
+        }
+
+        final OmxIndex index = reader.getIndex();
+        ArrayList<DeferredHitSet> sortedHitSets = new ArrayList<DeferredHitSet>(hitSets);
+        Collections.sort(sortedHitSets, new Comparator<DeferredHitSet>() {
+            @Override
+            public int compare(DeferredHitSet o1, DeferredHitSet o2) {
+                return Long.compare(getOffset(index, o1), getOffset(index, o2));
+            }
+        });
+
+        for (DeferredHitSet hitSet : sortedHitSets) {
+            read(hitSet);
+        }
+    }
+
+    /**
+     * Returns the offset of a hit set in the file, -1 if not indexed.
+     *
+     * @param index the index of the file
+     * @param hitSet the hit set
+     * @return the offset of the hit set
+     */
+    private static long getOffset(OmxIndex index, DeferredHitSet hitSet) {
+        int position = index.find(true, hitSet.responseIndex, hitSet.msHitSet.MSHitSet_number);
+        return position < 0 ? -1 : index.getOffset(position);
+    }
+
+    /**
+     * Returns the deferred hit set of a hit.
+     *
+     * @param msHits the hit
+     * @return the deferred hit set, null if the details of the hit were not
+     * deferred by this loader
+     */
+    private DeferredHitSet getDeferredHitSet(MSHits msHits) {
+        if (msHits.MSHits_pephits.MSPepHit instanceof DeferredList) {
+            DeferredHit deferredHit = ((DeferredList<?>) msHits.MSHits_pephits.MSPepHit).hit;
+            if (deferredHit.hitSet.getLoader() == this) {
+                return deferredHit.hitSet;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a hit set from the file and fills the details of its hits.
+     *
+     * @param hitSet the deferred hit set
+     */
+    private synchronized void read(DeferredHitSet hitSet) {
+
+        if (hitSet.loaded) {
+            return;
+        }
+
+        MSHitSet msHitSet;
+        try {
+            msHitSet = reader.getHitSet(hitSet.responseIndex, hitSet.msHitSet.MSHitSet_number);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading file: " + omxFile, e);
+        } catch (XmlPullParserException e) {
+            throw new IllegalStateException("Error parsing file: " + omxFile, e);
+        }
+        if (msHitSet == null) {
+            throw new IllegalStateException("Hit set " + hitSet.msHitSet.MSHitSet_number + " not found in " + omxFile);
+        }
+
+        ArrayList<MSHits> fileHits = new ArrayList<MSHits>(msHitSet.MSHitSet_hits.MSHits);
+        for (DeferredHit deferredHit : hitSet.hits) {
+            if (deferredHit.hitIndex < fileHits.size()) {
+                MSHits fileHit = fileHits.get(deferredHit.hitIndex);
+                deferredHit.pepHits.target = new ArrayList<MSPepHit>(fileHit.MSHits_pephits.MSPepHit);
+                deferredHit.mzHits.target = new ArrayList<MSMZHit>(fileHit.MSHits_mzhits.MSMZHit);
+            } else {
+                deferredHit.pepHits.target = new ArrayList<MSPepHit>();
+                deferredHit.mzHits.target = new ArrayList<MSMZHit>();
+            }
+        }
+        hitSet.loaded = true;
+    }
+
+    /**
+     * Returns the file read.
+     *
+     * @return the omx file
+     */
+    public File getOmxFile() {
+        return omxFile;
+    }
+
+    /**
+     * Closes the file. The details not loaded cannot be loaded anymore.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * A hit set whose hit details are deferred.
+     */
+    private class DeferredHitSet {
+
+        /**
+         * The parsed hit set.
+         */
+        private final MSHitSet msHitSet;
+        /**
+         * The index of the MSResponse of the hit set.
+         */
+        private final int responseIndex;
+        /**
+         * The hits of the hit set, in the order of the file.
+         */
+        private final ArrayList<DeferredHit> hits = new ArrayList<DeferredHit>();
+        /**
+         * Indicates whether the details of the hits are loaded.
+         */
+        private volatile boolean loaded = false;
+
+        /**
+         * Constructor.
+         *
+         * @param msHitSet the parsed hit set
+         * @param responseIndex the index of the MSResponse of the hit set
+         */
+        DeferredHitSet(MSHitSet msHitSet, int responseIndex) {
+            this.msHitSet = msHitSet;
+            this.responseIndex = responseIndex;
+        }
+
+        /**
+         * Returns the loader of the hit set.
+         *
+         * @return the loader
+         */
+        OmxHitDetailsLoader getLoader() {
+            return OmxHitDetailsLoader.this;
+        }
+
+        /**
+         * Loads the details of the hits if needed.
+         */
+        void ensureLoaded() {
+            if (!loaded) {
+                read(this);
+            }
+        }
+    }
+
+    /**
+     * A hit whose details are deferred.
+     */
+    private static class DeferredHit {
+
+        /**
+         * The hit set of the hit.
+         */
+        private final DeferredHitSet hitSet;
+        /**
+         * The index of the hit in its hit set in the file.
+         */
+        private final int hitIndex;
+        /**
+         * The MSPepHit list of the hit.
+         */
+        private DeferredList<MSPepHit> pepHits;
+        /**
+         * The MSMZHit list of the hit.
+         */
+        private DeferredList<MSMZHit> mzHits;
+
+        /**
+         * Constructor.
+         *
+         * @param hitSet the hit set of the hit
+         * @param hitIndex the index of the hit in its hit set in the file
+         */
+        DeferredHit(DeferredHitSet hitSet, int hitIndex) {
+            this.hitSet = hitSet;
+            this.hitIndex = hitIndex;
+        }
+    }
+
+    /**
+     * List loading the details of its hit when accessed.
+     *
+     * @param <E> the type of the elements
+     */
+    private static class DeferredList<E> extends AbstractList<E> implements Serializable {
+
+        /**
+         * The hit of the list.
+         */
+        private final DeferredHit hit;
+        /**
+         * The elements, null until loaded.
+         */
+        private volatile List<E> target;
+
+        /**
+         * Constructor.
+         *
+         * @param hit the hit of the list
+         */
+        DeferredList(DeferredHit hit) {
+            this.hit = hit;
+        }
+
+        /**
+         * Returns the elements, loading them if needed.
+         *
+         * @return the elements
+         */
+        private List<E> target() {
+            if (target == null) {
+                hit.hitSet.ensureLoaded();
+            }
+            return target;
+        }
+
+        @Override
+        public E get(int index) {
+            return target().get(index);
+        }
+
+        @Override
+        public E set(int index, E element) {
+            return target().set(index, element);
+        }
+
+        @Override
+        public void add(int index, E element) {
+            target().add(index, element);
+            modCount++;
+        }
+
+        @Override
+        public E remove(int index) {
+            modCount++;
+            return target().remove(index);
+        }
+
+        @Override
+        public int size() {
+            return target().size();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return target().iterator();
+        }
+
+        /**
+         * Replaces the list by an ArrayList of the elements when serialized.
+         *
+         * @return the elements
+         */
+        private Object writeReplace() {
+            return new ArrayList<E>(target());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects the MSHits kept by an OmxParser. A filter declares the elements of
+ * the MSHits it reads: the parser evaluates it as soon as these elements are
+ * parsed, and skips the rest of the MSHits if it is rejected, without
+ * creating its remaining objects. Filters whose elements are missing from a
+ * hit are evaluated when the hit ends. The hit sets left without hits are
+ * dropped.
+ * <br><br>
+ * Example:
+ * <pre>
+ * OmxHitFilter filter = OmxHitFilter.and(
+ *         OmxHitFilter.maxEvalue(0.05),
+ *         OmxHitFilter.charges(2, 3));
+ * OmxParser omxParser = new OmxParser(omxFile, null, null, false, filter);
+ * </pre>
+ */
+public abstract class OmxHitFilter {
+
+    /**
+     * The elements of the MSHits read by the filter.
+     */
+    private final Set<String> elements;
+
+    /**
+     * Creates a filter reading the given elements of the MSHits.
+     *
+     * @param elements the XML Tags of the child elements of the MSHits read
+     * by the filter, e.g. "MSHits_evalue"
+     */
+    protected OmxHitFilter(String... elements) {
+        this.elements = Collections.unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(elements)));
+    }
+
+    /**
+     * Indicates whether the given hit is kept.
+     *
+     * @param msHits the hit, with at least the elements of the filter parsed
+     * @return true if the hit is kept
+     */
+    public abstract boolean accept(MSHits msHits);
+
+    /**
+     * Returns the elements of the MSHits read by the filter.
+     *
+     * @return the XML Tags of the elements read by the filter
+     */
+    public Set<String> getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the filters to evaluate one by one, the filter itself unless it
+     * combines other filters.
+     *
+     * @return the filters to evaluate
+     */
+    List<OmxHitFilter> getComponents() {
+        return Collections.singletonList(this);
+    }
+
+    /**
+     * Returns a filter keeping the hits with an e-value lower than or equal
+     * to the given threshold.
+     *
+     * @param maxEvalue the maximal e-value
+     * @return the filter
+     */
+    public static OmxHitFilter maxEvalue(final double maxEvalue) {
+        return new OmxHitFilter("MSHits_evalue") {
+            @Override
+            public boolean accept(MSHits msHits) {
+                return msHits.MSHits_evalue <= maxEvalue;
+            }
+        };
+    }
+
+    /**
+     * Returns a filter keeping the hits with a p-value lower than or equal to
+     * the given threshold.
+     *
+     * @param maxPvalue the maximal p-value
+     * @return the filter
+     */
+    public static OmxHitFilter maxPvalue(final double maxPvalue) {
+        return new OmxHitFilter("MSHits_pvalue") {
+            @Override
+            public boolean accept(MSHits msHits) {
+                return msHits.MSHits_pvalue <= maxPvalue;
+            }
+        };
+    }
+
+    /**
+     * Returns a filter keeping the hits with one of the given charges.
+     *
+     * @param charges the charges
+     * @return the filter
+     */
+    public static OmxHitFilter charges(final int... charges) {
+        return new OmxHitFilter("MSHits_charge") {
+            @Override
+            public boolean accept(MSHits msHits) {
+                for (int charge : charges) {
+                    if (msHits.MSHits_charge == charge) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a filter keeping the hits with a peptide length within the
+     * given range.
+     *
+     * @param minLength the minimal peptide length
+     * @param maxLength the maximal peptide length
+     * @return the filter
+     */
+    public static OmxHitFilter peptideLength(final int minLength, final int maxLength) {
+        return new OmxHitFilter("MSHits_pepstring") {
+            @Override
+            public boolean accept(MSHits msHits) {
+                int length = msHits.MSHits_pepstring == null ? 0 : msHits.MSHits_pepstring.length();
+                return length >= minLength && length <= maxLength;
+            }
+        };
+    }
+
+    /**
+     * Returns a filter keeping the hits matching at least one protein with an
+     * accession starting with one of the given prefixes, e.g. to drop the
+     * decoy hits.
+     *
+     * @param prefixes the accession prefixes
+     * @return the filter
+     */
+    public static OmxHitFilter accessionPrefix(final String... prefixes) {
+        return new OmxHitFilter("MSHits_pephits") {
+            @Override
+            public boolean accept(MSHits msHits) {
+                for (MSPepHit msPepHit : msHits.MSHits_pephits.MSPepHit) {
+                    if (msPepHit.MSPepHit_accession != null) {
+                        for (String prefix : prefixes) {
+                            if (msPepHit.MSPepHit_accession.startsWith(prefix)) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a filter keeping the hits rejected by the given filter.
+     *
+     * @param filter the filter
+     * @return the filter
+     */
+    public static OmxHitFilter not(final OmxHitFilter filter) {
+        return new OmxHitFilter(filter.getElements().toArray(new String[0])) {
+            @Override
+            public boolean accept(MSHits msHits) {
+                return !filter.accept(msHits);
+            }
+        };
+    }
+
+    /**
+     * Returns a filter keeping the hits kept by all the given filters. The
+     * filters are evaluated one by one, each as soon as its own elements are
+     * parsed.
+     *
+     * @param filters the filters
+     * @return the filter
+     */
+    public static OmxHitFilter and(OmxHitFilter... filters) {
+        final ArrayList<OmxHitFilter> components = new ArrayList<OmxHitFilter>();
+        LinkedHashSet<String> elements = new LinkedHashSet<String>();
+        for (OmxHitFilter filter : filters) {
+            components.addAll(filter.getComponents());
+            elements.addAll(filter.getElements());
+        }
+        return new OmxHitFilter(elements.toArray(new String[0])) {
+            @Override
+            public boolean accept(MSHits msHits) {
+                for (OmxHitFilter component : components) {
+                    if (!component.accept(msHits)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            List<OmxHitFilter> getComponents() {
+                return components;
+            }
+        };
+    }
+}
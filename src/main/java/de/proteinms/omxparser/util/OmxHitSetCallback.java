@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+/**
+ * Callback receiving the hit sets of an omx file one at a time while the file
+ * is parsed, see OmxParser. The hit sets are not kept by the parser, so that
+ * files of any size can be processed in constant memory.
+ */
+public interface OmxHitSetCallback {
+
+    /**
+     * Called by the parser every time an MSHitSet has been parsed, i.e., when
+     * its closing tag is reached.
+     *
+     * @param msHitSet the hit set
+     * @param msSearchSettings the search settings of the MSRequest
+     * corresponding to the MSResponse of the hit set, null if not found
+     * @param responseIndex the index of the MSResponse of the hit set in the
+     * MSSearch_response section
+     */
+    public void hitSetParsed(MSHitSet msHitSet, MSSearchSettings msSearchSettings, int responseIndex);
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Pull reader returning the hit sets of an omx file one at a time. The
+ * underlying tokenizer is only advanced until the next MSHitSet is
+ * complete, so the hit sets can be processed while the file is parsed and
+ * only one hit set is held in memory at a time.
+ * <br><br>
+ * Example:
+ * <pre>
+ * try (OmxHitSetReader reader = new OmxHitSetReader(omxFile, false, false)) {
+ *     while (reader.hasNext()) {
+ *         MSHitSet msHitSet = reader.next();
+ *         String inFile = reader.getSearchSettings().MSSearchSettings_infiles.MSInFile.MSInFile_infile;
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class OmxHitSetReader implements Iterator<MSHitSet>, Closeable {
+
+    /**
+     * The file read.
+     */
+    private final File omxFile;
+    /**
+     * The tokenizer on the file.
+     */
+    private final OmxTokenizer tokenizer;
+    /**
+     * The parser building the objects.
+     */
+    private final OmxParser omxParser;
+    /**
+     * Indicates whether the MSRequest_spectra section is skipped.
+     */
+    private final boolean skipSpectra;
+    /**
+     * Indicates whether the MSHits_pephits and MSHits_mzhits sections are
+     * skipped.
+     */
+    private final boolean skipPeptideDetails;
+    /**
+     * The next hit set, null if not parsed yet.
+     */
+    private MSHitSet nextHitSet = null;
+    /**
+     * The search settings of the next hit set.
+     */
+    private MSSearchSettings nextSearchSettings = null;
+    /**
+     * The response index of the next hit set.
+     */
+    private int nextResponseIndex = -1;
+    /**
+     * The search settings of the hit set last returned.
+     */
+    private MSSearchSettings searchSettings = null;
+    /**
+     * The response index of the hit set last returned.
+     */
+    private int responseIndex = -1;
+    /**
+     * Indicates whether the end of the document was reached.
+     */
+    private boolean endOfDocument = false;
+
+    /**
+     * Opens a reader on the given omx file.
+     *
+     * @param omxFile the omx file, files ending with .gz are decompressed
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * file will be skipped
+     * @param importIdDetails if false the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @throws IOException if the file could not be opened
+     * @throws XmlPullParserException if the tokenizer could not be created
+     */
+    public OmxHitSetReader(File omxFile, boolean importSpectra, boolean importIdDetails) throws IOException, XmlPullParserException {
+        this(omxFile, importSpectra, importIdDetails, null);
+    }
+
+    /**
+     * Opens a reader on the given omx file, reporting the progress of the
+     * parsing to the given listener. If the listener cancels the parsing,
+     * hasNext and next throw a java.util.concurrent.CancellationException.
+     *
+     * @param omxFile the omx file, files ending with .gz are decompressed
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * file will be skipped
+     * @param importIdDetails if false the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @param parseListener the listener following the parsing, null if none
+     * @throws IOException if the file could not be opened
+     * @throws XmlPullParserException if the tokenizer could not be created
+     */
+    public OmxHitSetReader(File omxFile, boolean importSpectra, boolean importIdDetails, OmxParseListener parseListener)
+            throws IOException, XmlPullParserException {
+        this.omxFile = omxFile;
+        this.skipSpectra = !importSpectra;
+        this.skipPeptideDetails = !importIdDetails;
+        this.omxParser = new OmxParser(importSpectra, importIdDetails, new OmxHitSetCallback() {
+            @Override
+            public void hitSetParsed(MSHitSet msHitSet, MSSearchSettings msSearchSettings, int responseIndex) {
+                nextHitSet = msHitSet;
+                nextSearchSettings = msSearchSettings;
+                nextResponseIndex = responseIndex;
+            }
+        });
+        if (parseListener == null) {
+            this.tokenizer = OmxParser.createTokenizer(omxFile);
+        } else {
+            omxParser.progressMonitor = new OmxProgressMonitor(parseListener, omxFile);
+            this.tokenizer = OmxParser.createTokenizer(omxFile, omxParser.progressMonitor);
+        }
+    }
+
+    /**
+     * Advances the parser until the next hit set is complete or the end of the
+     * document is reached.
+     *
+     * @throws IOException if an IOException occurs while reading the file
+     * @throws XmlPullParserException if the file could not be parsed
+     */
+    private void advance() throws IOException, XmlPullParserException {
+        while (nextHitSet == null && !endOfDocument) {
+            int eventType = tokenizer.next();
+            if (eventType == XmlPullParser.END_DOCUMENT) {
+                endOfDocument = true;
+                if (omxParser.progressMonitor != null) {
+                    omxParser.progressMonitor.finished();
+                }
+            } else {
+                omxParser.processEvent(tokenizer, eventType, skipSpectra, skipPeptideDetails);
+                if (omxParser.progressMonitor != null) {
+                    omxParser.progressMonitor.tokenParsed();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            advance();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading file: " + omxFile, e);
+        } catch (XmlPullParserException e) {
+            throw new IllegalStateException("Error parsing file: " + omxFile, e);
+        }
+        return nextHitSet != null;
+    }
+
+    @Override
+    public MSHitSet next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        MSHitSet result = nextHitSet;
+        searchSettings = nextSearchSettings;
+        responseIndex = nextResponseIndex;
+        nextHitSet = null;
+        nextSearchSettings = null;
+        return result;
+    }
+
+    /**
+     * Returns the search settings of the MSRequest corresponding to the hit
+     * set last returned by next(), null if not found.
+     *
+     * @return the search settings of the hit set last returned
+     */
+    public MSSearchSettings getSearchSettings() {
+        return searchSettings;
+    }
+
+    /**
+     * Returns the index of the MSResponse of the hit set last returned by
+     * next().
+     *
+     * @return the index of the MSResponse of the hit set last returned
+     */
+    public int getResponseIndex() {
+        return responseIndex;
+    }
+
+    /**
+     * Returns the MSSearch object without the hit sets, available once all
+     * hit sets were read.
+     *
+     * @return the MSSearch object, null if the end of the document was not
+     * reached yet
+     */
+    public MSSearch getParserResult() {
+        return omxParser.parserResult;
+    }
+
+    /**
+     * Returns the remaining hit sets as a sequential stream. Closing the
+     * stream closes the reader.
+     *
+     * @return the remaining hit sets as a stream
+     */
+    public Stream<MSHitSet> stream() {
+        Spliterator<MSHitSet> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        tokenizer.close();
+    }
+}
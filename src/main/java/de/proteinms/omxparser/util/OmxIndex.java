@@ -0,0 +1,622 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Byte offset index of the MSSpectrum and MSHitSet elements of an
+ * uncompressed or block compressed omx file. The spectra are indexed by
+ * MSRequest index and MSSpectrum_number, the hit sets by MSResponse index and
+ * MSHitSet_number. For block compressed files, see BlockGzipOutputStream, the
+ * offsets are offsets in the uncompressed data.
+ * <br><br>
+ * The index is built by scanning the file with OmxTagScanner and can be saved
+ * next to the omx file as a sidecar file, see getIndex. The sidecar file
+ * stores the length and modification date of the omx file and is rebuilt when
+ * the omx file changes. See OmxIndexedReader to read single elements using
+ * the index.
+ */
+public class OmxIndex {
+
+    /**
+     * Define a static logger variable so that it references the Logger instance
+     * named "OmxIndex".
+     */
+    private static Logger logger = LogManager.getLogger(OmxIndex.class);
+    /**
+     * The extension appended to the omx file name for the sidecar file.
+     */
+    public static final String INDEX_FILE_EXTENSION = ".oidx";
+    /**
+     * The first bytes of a sidecar file, "OIDX".
+     */
+    private static final int MAGIC_NUMBER = 0x4f494458;
+    /**
+     * The version of the sidecar file format. Version 2 stores the numbers
+     * with their sign bit flipped, see getKey; version 1 files are rebuilt.
+     */
+    private static final int VERSION = 2;
+    /**
+     * The bit flipped in the numbers of the keys so that the keys sort in the
+     * signed order of the numbers.
+     */
+    private static final int SIGN_BIT = 0x80000000;
+    /**
+     * The tags scanned, see the TAG_* indexes.
+     */
+    private static final String[] TAGS = {"<MSRequest>", "<MSSpectrum>", "<MSSpectrum_number>", "</MSSpectrum>",
+        "<MSResponse>", "<MSHitSet>", "<MSHitSet_number>", "</MSHitSet>"};
+    private static final int TAG_REQUEST = 0;
+    private static final int TAG_SPECTRUM_START = 1;
+    private static final int TAG_SPECTRUM_NUMBER = 2;
+    private static final int TAG_SPECTRUM_END = 3;
+    private static final int TAG_RESPONSE = 4;
+    private static final int TAG_HITSET_START = 5;
+    private static final int TAG_HITSET_NUMBER = 6;
+    private static final int TAG_HITSET_END = 7;
+    /**
+     * The bit of the keys set for hit sets.
+     */
+    private static final long HITSET_BIT = 1L << 62;
+    /**
+     * The length of the indexed omx file.
+     */
+    private final long fileLength;
+    /**
+     * The last modification date of the indexed omx file.
+     */
+    private final long lastModified;
+    /**
+     * The number of elements indexed.
+     */
+    private final int size;
+    /**
+     * The sorted keys of the elements, see getKey.
+     */
+    private final long[] keys;
+    /**
+     * The byte offsets of the elements, in the order of the keys.
+     */
+    private final long[] offsets;
+    /**
+     * The lengths in bytes of the elements, in the order of the keys.
+     */
+    private final int[] lengths;
+
+    /**
+     * Constructor.
+     *
+     * @param fileLength the length of the indexed omx file
+     * @param lastModified the last modification date of the indexed omx file
+     * @param size the number of elements indexed
+     * @param keys the keys of the elements, sorted
+     * @param offsets the byte offsets of the elements
+     * @param lengths the lengths in bytes of the elements
+     */
+    private OmxIndex(long fileLength, long lastModified, int size, long[] keys, long[] offsets, int[] lengths) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.size = size;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Returns the index of the given omx file. The sidecar file is used if up
+     * to date, otherwise the index is built and the sidecar file written.
+     *
+     * @param omxFile the uncompressed or block compressed omx file
+     * @return the index of the file
+     * @throws IOException if the file could not be indexed
+     */
+    public static OmxIndex getIndex(File omxFile) throws IOException {
+
+        File indexFile = getIndexFile(omxFile);
+
+        if (indexFile.exists()) {
+            try {
+                OmxIndex index = read(indexFile);
+                if (index.isValidFor(omxFile)) {
+                    return index;
+                }
+                logger.debug("Index " + indexFile + " out of date, rebuilding.");
+            } catch (IOException e) {
+                logger.warn("Could not read index " + indexFile + ", rebuilding.", e);
+            }
+        }
+
+        OmxIndex index = build(omxFile);
+
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            logger.warn("Could not write index " + indexFile + ".", e);
+            indexFile.delete();
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the sidecar file of the given omx file.
+     *
+     * @param omxFile the omx file
+     * @return the sidecar file
+     */
+    public static File getIndexFile(File omxFile) {
+        return new File(omxFile.getPath() + INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Builds the index of the given omx file.
+     *
+     * @param omxFile the uncompressed or block compressed omx file
+     * @return the index of the file
+     * @throws IOException if the file could not be read or is compressed but
+     * not block compressed
+     */
+    public static OmxIndex build(File omxFile) throws IOException {
+
+        boolean blockGzip = false;
+        if (omxFile.getName().endsWith(".gz")) {
+            blockGzip = BlockGzipIndex.isBlockGzip(omxFile);
+            if (!blockGzip) {
+                throw new IOException("Only block compressed files can be indexed: " + omxFile + ".");
+            }
+        }
+
+        long t1 = System.currentTimeMillis();
+        long fileLength = omxFile.length();
+        long lastModified = omxFile.lastModified();
+
+        final OmxTagScanner scanner = new OmxTagScanner(TAGS);
+        IndexBuilder builder = new IndexBuilder(scanner);
+        if (blockGzip) {
+            InputStream inputStream = new BlockGzipInputStream(omxFile);
+            try {
+                scanner.scan(inputStream, builder);
+            } finally {
+                inputStream.close();
+            }
+        } else {
+            scanner.scan(omxFile, builder);
+        }
+
+        OmxIndex index = builder.getIndex(fileLength, lastModified);
+        logger.debug("Indexed " + index.size + " elements of " + omxFile + " in " + (System.currentTimeMillis() - t1) + " ms");
+
+        return index;
+    }
+
+    /**
+     * Listener collecting the elements found by the scanner.
+     */
+    private static class IndexBuilder implements OmxTagScanner.TagListener {
+
+        /**
+         * The scanner, used to read the element numbers.
+         */
+        private final OmxTagScanner scanner;
+        /**
+         * The index of the current MSRequest.
+         */
+        private int requestIndex = -1;
+        /**
+         * The index of the current MSResponse.
+         */
+        private int responseIndex = -1;
+        /**
+         * The offset of the current element, -1 if none.
+         */
+        private long elementStart = -1;
+        /**
+         * The number of the current element.
+         */
+        private int elementNumber;
+        /**
+         * Indicates whether the number of the current element was found.
+         */
+        private boolean elementNumberFound = false;
+        /**
+         * The number of elements found.
+         */
+        private int size = 0;
+        /**
+         * The keys of the elements found.
+         */
+        private long[] keys = new long[1024];
+        /**
+         * The offsets of the elements found.
+         */
+        private long[] offsets = new long[1024];
+        /**
+         * The lengths of the elements found.
+         */
+        private int[] lengths = new int[1024];
+
+        /**
+         * Constructor.
+         *
+         * @param scanner the scanner notifying the builder
+         */
+        private IndexBuilder(OmxTagScanner scanner) {
+            this.scanner = scanner;
+        }
+
+        @Override
+        public void tagFound(int tagIndex, long offset) throws IOException {
+            switch (tagIndex) {
+                case TAG_REQUEST:
+                    requestIndex++;
+                    break;
+                case TAG_RESPONSE:
+                    responseIndex++;
+                    break;
+                case TAG_SPECTRUM_START:
+                case TAG_HITSET_START:
+                    elementStart = offset;
+                    elementNumberFound = false;
+                    break;
+                case TAG_SPECTRUM_NUMBER:
+                case TAG_HITSET_NUMBER:
+                    if (elementStart >= 0 && !elementNumberFound) {
+                        try {
+                            elementNumber = scanner.readInt();
+                            elementNumberFound = true;
+                        } catch (NumberFormatException e) {
+                            throw new IOException("Invalid element number at offset " + offset + ".", e);
+                        }
+                    }
+                    break;
+                case TAG_SPECTRUM_END:
+                case TAG_HITSET_END:
+                    if (elementStart >= 0) {
+                        boolean hitSet = tagIndex == TAG_HITSET_END;
+                        long elementEnd = offset + TAGS[tagIndex].length();
+                        if (!elementNumberFound) {
+                            logger.warn("No number found for the element at offset " + elementStart + ", not indexed.");
+                        } else if (elementEnd - elementStart > Integer.MAX_VALUE) {
+                            throw new IOException("Element at offset " + elementStart + " too large to be indexed.");
+                        } else {
+                            add(getKey(hitSet, hitSet ? responseIndex : requestIndex, elementNumber), elementStart, (int) (elementEnd - elementStart));
+                        }
+                        elementStart = -1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Adds an element.
+         *
+         * @param key the key of the element
+         * @param offset the offset of the element
+         * @param length the length of the element
+         */
+        private void add(long key, long offset, int length) {
+            if (size == keys.length) {
+                int newLength = 2 * size;
+                keys = Arrays.copyOf(keys, newLength);
+                offsets = Arrays.copyOf(offsets, newLength);
+                lengths = Arrays.copyOf(lengths, newLength);
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+
+        /**
+         * Returns the index of the elements found.
+         *
+         * @param fileLength the length of the indexed omx file
+         * @param lastModified the last modification date of the indexed omx
+         * file
+         * @return the index
+         */
+        private OmxIndex getIndex(long fileLength, long lastModified) {
+            sort(keys, offsets, lengths, size);
+            return new OmxIndex(fileLength, lastModified, size, keys, offsets, lengths);
+        }
+    }
+
+    /**
+     * Returns the key of an element: the hit set bit, the index of the
+     * MSRequest or MSResponse in the upper bits, the number with its sign bit
+     * flipped in the lower 32 bits, so that negative numbers sort before the
+     * positive ones. See getNumber.
+     *
+     * @param hitSet true for a hit set, false for a spectrum
+     * @param parentIndex the index of the MSRequest or MSResponse
+     * @param number the number of the element
+     * @return the key of the element
+     */
+    private static long getKey(boolean hitSet, int parentIndex, int number) {
+        return (hitSet ? HITSET_BIT : 0L) | ((long) parentIndex << 32) | ((number ^ SIGN_BIT) & 0xffffffffL);
+    }
+
+    /**
+     * Returns the number of the element of a key.
+     *
+     * @param key the key, see getKey
+     * @return the number of the element
+     */
+    private static int getNumber(long key) {
+        return (int) key ^ SIGN_BIT;
+    }
+
+    /**
+     * Sorts the elements by key. The elements are usually already sorted, in
+     * which case nothing is done, otherwise they are heap sorted.
+     *
+     * @param keys the keys
+     * @param offsets the offsets
+     * @param lengths the lengths
+     * @param size the number of elements
+     */
+    private static void sort(long[] keys, long[] offsets, int[] lengths, int size) {
+
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = keys[i - 1] <= keys[i];
+        }
+        if (sorted) {
+            return;
+        }
+
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(keys, offsets, lengths, i, size);
+        }
+        for (int end = size - 1; end > 0; end--) {
+            swap(keys, offsets, lengths, 0, end);
+            siftDown(keys, offsets, lengths, 0, end);
+        }
+    }
+
+    /**
+     * Sifts down the element at the given position of the heap.
+     *
+     * @param keys the keys
+     * @param offsets the offsets
+     * @param lengths the lengths
+     * @param position the position of the element
+     * @param size the size of the heap
+     */
+    private static void siftDown(long[] keys, long[] offsets, int[] lengths, int position, int size) {
+        while (2 * position + 1 < size) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && keys[child + 1] > keys[child]) {
+                child++;
+            }
+            if (keys[position] >= keys[child]) {
+                return;
+            }
+            swap(keys, offsets, lengths, position, child);
+            position = child;
+        }
+    }
+
+    /**
+     * Swaps two elements.
+     *
+     * @param keys the keys
+     * @param offsets the offsets
+     * @param lengths the lengths
+     * @param i the position of the first element
+     * @param j the position of the second element
+     */
+    private static void swap(long[] keys, long[] offsets, int[] lengths, int i, int j) {
+        long tempKey = keys[i];
+        keys[i] = keys[j];
+        keys[j] = tempKey;
+        long tempOffset = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = tempOffset;
+        int tempLength = lengths[i];
+        lengths[i] = lengths[j];
+        lengths[j] = tempLength;
+    }
+
+    /**
+     * Reads an index from a sidecar file.
+     *
+     * @param indexFile the sidecar file
+     * @return the index
+     * @throws IOException if the file could not be read or is not an index
+     */
+    public static OmxIndex read(File indexFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != MAGIC_NUMBER) {
+                throw new IOException(indexFile + " is not an omx index file.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of omx index file " + indexFile + ".");
+            }
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            int size = in.readInt();
+            long[] keys = new long[size];
+            long[] offsets = new long[size];
+            int[] lengths = new int[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = in.readLong();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+            }
+            return new OmxIndex(fileLength, lastModified, size, keys, offsets, lengths);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index to a sidecar file.
+     *
+     * @param indexFile the sidecar file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File indexFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(MAGIC_NUMBER);
+            out.writeInt(VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Indicates whether the index matches the length and modification date of
+     * the given omx file.
+     *
+     * @param omxFile the omx file
+     * @return true if the index is up to date for the given file
+     */
+    public boolean isValidFor(File omxFile) {
+        return omxFile.length() == fileLength && omxFile.lastModified() == lastModified;
+    }
+
+    /**
+     * Returns the position of the given element in the arrays, a negative
+     * value if not indexed.
+     *
+     * @param hitSet true for a hit set, false for a spectrum
+     * @param parentIndex the index of the MSRequest or MSResponse
+     * @param number the number of the element
+     * @return the position of the element
+     */
+    int find(boolean hitSet, int parentIndex, int number) {
+        return Arrays.binarySearch(keys, 0, size, getKey(hitSet, parentIndex, number));
+    }
+
+    /**
+     * Returns the byte offset of the element at the given position.
+     *
+     * @param position the position as returned by find
+     * @return the byte offset of the element
+     */
+    long getOffset(int position) {
+        return offsets[position];
+    }
+
+    /**
+     * Returns the length in bytes of the element at the given position.
+     *
+     * @param position the position as returned by find
+     * @return the length in bytes of the element
+     */
+    int getLength(int position) {
+        return lengths[position];
+    }
+
+    /**
+     * Indicates whether the given spectrum is indexed.
+     *
+     * @param requestIndex the index of the MSRequest
+     * @param spectrumNumber the MSSpectrum_number
+     * @return true if the spectrum is indexed
+     */
+    public boolean containsSpectrum(int requestIndex, int spectrumNumber) {
+        return find(false, requestIndex, spectrumNumber) >= 0;
+    }
+
+    /**
+     * Indicates whether the given hit set is indexed.
+     *
+     * @param responseIndex the index of the MSResponse
+     * @param hitSetNumber the MSHitSet_number
+     * @return true if the hit set is indexed
+     */
+    public boolean containsHitSet(int responseIndex, int hitSetNumber) {
+        return find(true, responseIndex, hitSetNumber) >= 0;
+    }
+
+    /**
+     * Returns the numbers of the spectra of the given MSRequest, sorted.
+     *
+     * @param requestIndex the index of the MSRequest
+     * @return the numbers of the spectra
+     */
+    public int[] getSpectrumNumbers(int requestIndex) {
+        return getNumbers(false, requestIndex);
+    }
+
+    /**
+     * Returns the numbers of the hit sets of the given MSResponse, sorted.
+     *
+     * @param responseIndex the index of the MSResponse
+     * @return the numbers of the hit sets
+     */
+    public int[] getHitSetNumbers(int responseIndex) {
+        return getNumbers(true, responseIndex);
+    }
+
+    /**
+     * Returns the numbers of the elements of the given parent, sorted.
+     *
+     * @param hitSet true for hit sets, false for spectra
+     * @param parentIndex the index of the MSRequest or MSResponse
+     * @return the numbers of the elements
+     */
+    private int[] getNumbers(boolean hitSet, int parentIndex) {
+        long firstKey = getKey(hitSet, parentIndex, 0) & ~0xffffffffL;
+        int start = Arrays.binarySearch(keys, 0, size, firstKey);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        int end = start;
+        while (end < size && (keys[end] & ~0xffffffffL) == firstKey) {
+            end++;
+        }
+        int[] result = new int[end - start];
+        for (int i = start; i < end; i++) {
+            result[i - start] = getNumber(keys[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of elements indexed.
+     *
+     * @return the number of elements indexed
+     */
+    public int size() {
+        return size;
+    }
+}
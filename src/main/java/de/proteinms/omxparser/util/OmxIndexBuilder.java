@@ -0,0 +1,388 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the maps of OmssaOmxFile from a parser result in a single pass over
+ * the requests, spectra and hits. Only the maps asked for are built.
+ * <br><br>
+ * The spectra of every MSRequest are paired with the hit sets of the
+ * MSResponse of the same index, spectra without hit set are only added to
+ * the spectrum to hit set map. The lists of the maps follow the order of the
+ * spectra in their request, and of the hits in their hit set.
+ * <br><br>
+ * The spectrum number maps are OmxIntMaps, looked up by MSSpectrum_number
+ * without boxing. If several requests have a spectrum with the same number,
+ * these maps keep the spectrum and hit set of the last request. The hit sets
+ * are mapped also when the spectra were not imported.
+ */
+public class OmxIndexBuilder {
+
+    /**
+     * The maps built by the builder.
+     */
+    public enum Index {
+
+        /**
+         * Every spectrum allocated to its hit set.
+         */
+        SPECTRUM_TO_HIT_SET("spectrumToHitSet"),
+        /**
+         * Every spectrum allocated to the sequences of its hits.
+         */
+        SPECTRUM_TO_PEPTIDE("spectrumToPeptide"),
+        /**
+         * Every peptide sequence allocated to the spectra of its hits.
+         */
+        PEPTIDE_TO_SPECTRUM("peptideToSpectrum"),
+        /**
+         * Every peptide sequence allocated to the MSPepHit of its hits.
+         */
+        PEPTIDE_TO_PROTEIN("peptideToProtein"),
+        /**
+         * Every protein accession allocated to the peptide sequences of its
+         * MSPepHit.
+         */
+        PROTEIN_TO_PEPTIDE("proteinToPeptide"),
+        /**
+         * Every protein accession allocated to the peptide sequences of its
+         * MSPepHit, each allocated to the MSPepHit of the protein.
+         */
+        PROTEIN_TO_PEPTIDE_HITS("proteinToPeptideHits"),
+        /**
+         * Every spectrum number allocated to its spectrum.
+         */
+        NUMBER_TO_SPECTRUM("numberToSpectrum"),
+        /**
+         * Every spectrum number allocated to its hit set.
+         */
+        NUMBER_TO_HIT_SET("numberToHitSet");
+        /**
+         * The name of the map.
+         */
+        private final String name;
+
+        /**
+         * Constructor.
+         *
+         * @param name the name of the map
+         */
+        private Index(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the name of the map, e.g. "spectrumToHitSet".
+         *
+         * @return the name of the map
+         */
+        public String getName() {
+            return name;
+        }
+    }
+    /**
+     * The maps to build.
+     */
+    private final EnumSet<Index> indexes;
+    /**
+     * The spectrum to hit set map, null if not built.
+     */
+    private HashMap<MSSpectrum, MSHitSet> spectrumToHitSetMap;
+    /**
+     * The spectrum to peptide map, null if not built.
+     */
+    private HashMap<MSSpectrum, HashSet<String>> spectrumToPeptideMap;
+    /**
+     * The peptide to spectrum map, null if not built.
+     */
+    private HashMap<String, LinkedList<MSSpectrum>> peptideToSpectrumMap;
+    /**
+     * The peptide to protein map, null if not built.
+     */
+    private HashMap<String, LinkedList<MSPepHit>> peptideToProteinMap;
+    /**
+     * The protein to peptide map, null if not built.
+     */
+    private HashMap<String, LinkedList<String>> proteinToPeptideMap;
+    /**
+     * The protein to peptide hits map, null if not built.
+     */
+    private HashMap<String, HashMap<String, LinkedList<MSPepHit>>> proteinToPeptideHitsMap;
+    /**
+     * The spectrum number to spectrum map, null if not built.
+     */
+    private OmxIntMap<MSSpectrum> numberToSpectrumMap;
+    /**
+     * The spectrum number to hit set map, null if not built.
+     */
+    private OmxIntMap<MSHitSet> numberToHitSetMap;
+
+    /**
+     * Creates a builder of all the maps.
+     */
+    public OmxIndexBuilder() {
+        this(EnumSet.allOf(Index.class));
+    }
+
+    /**
+     * Creates a builder of the given maps.
+     *
+     * @param indexes the maps to build
+     */
+    public OmxIndexBuilder(Set<Index> indexes) {
+        this.indexes = indexes.isEmpty() ? EnumSet.noneOf(Index.class) : EnumSet.copyOf(indexes);
+    }
+
+    /**
+     * Builds the maps from the given parser result, replacing the maps built
+     * before. The pass is recorded as an OmxEvents.MapBuildEvent.
+     *
+     * @param result the parser result
+     */
+    public void build(MSSearch result) {
+
+        StringBuilder names = new StringBuilder();
+        for (Index index : indexes) {
+            if (names.length() > 0) {
+                names.append(',');
+            }
+            names.append(index.getName());
+        }
+        OmxEvents.MapBuildEvent event = OmxEvents.mapBuildStarted(names.toString());
+
+        spectrumToHitSetMap = indexes.contains(Index.SPECTRUM_TO_HIT_SET) ? new HashMap<MSSpectrum, MSHitSet>() : null;
+        spectrumToPeptideMap = indexes.contains(Index.SPECTRUM_TO_PEPTIDE) ? new HashMap<MSSpectrum, HashSet<String>>() : null;
+        peptideToSpectrumMap = indexes.contains(Index.PEPTIDE_TO_SPECTRUM) ? new HashMap<String, LinkedList<MSSpectrum>>() : null;
+        peptideToProteinMap = indexes.contains(Index.PEPTIDE_TO_PROTEIN) ? new HashMap<String, LinkedList<MSPepHit>>() : null;
+        proteinToPeptideMap = indexes.contains(Index.PROTEIN_TO_PEPTIDE) ? new HashMap<String, LinkedList<String>>() : null;
+        proteinToPeptideHitsMap = indexes.contains(Index.PROTEIN_TO_PEPTIDE_HITS)
+                ? new HashMap<String, HashMap<String, LinkedList<MSPepHit>>>() : null;
+        numberToSpectrumMap = indexes.contains(Index.NUMBER_TO_SPECTRUM) ? new OmxIntMap<MSSpectrum>() : null;
+        numberToHitSetMap = indexes.contains(Index.NUMBER_TO_HIT_SET) ? new OmxIntMap<MSHitSet>() : null;
+        boolean spectraNeeded = spectrumToHitSetMap != null || numberToSpectrumMap != null;
+        boolean pepHitsNeeded = peptideToProteinMap != null || proteinToPeptideMap != null
+                || proteinToPeptideHitsMap != null;
+        boolean hitsNeeded = spectrumToPeptideMap != null || peptideToSpectrumMap != null || pepHitsNeeded;
+
+        Iterator<MSResponse> responseIt = result.MSSearch_response.MSResponse.iterator();
+
+        for (MSRequest msRequest : result.MSSearch_request.MSRequest) {
+
+            Map<Integer, MSHitSet> hitSets = null;
+            if (responseIt.hasNext()) {
+                MSResponse msResponse = responseIt.next();
+                if (msResponse != null) {
+                    hitSets = msResponse.MSResponse_hitsets.MSHitSet;
+                }
+            }
+
+            if (numberToHitSetMap != null && hitSets != null) {
+                for (MSHitSet msHitSet : hitSets.values()) {
+                    numberToHitSetMap.put(msHitSet.MSHitSet_number, msHitSet);
+                }
+            }
+
+            if (!spectraNeeded && !hitsNeeded) {
+                continue;
+            }
+
+            for (Map.Entry<Integer, MSSpectrum> entry : msRequest.MSRequest_spectra.MSSpectrumset.MSSpectrum.entrySet()) {
+
+                MSSpectrum msSpectrum = entry.getValue();
+                MSHitSet msHitSet = hitSets == null ? null : hitSets.get(entry.getKey());
+
+                if (spectrumToHitSetMap != null) {
+                    spectrumToHitSetMap.put(msSpectrum, msHitSet);
+                }
+                if (numberToSpectrumMap != null) {
+                    numberToSpectrumMap.put(msSpectrum.MSSpectrum_number, msSpectrum);
+                }
+
+                if (msHitSet == null || !hitsNeeded) {
+                    continue;
+                }
+
+                HashSet<String> peptideSet = spectrumToPeptideMap == null ? null : new HashSet<String>();
+
+                for (MSHits msHits : msHitSet.MSHitSet_hits.MSHits) {
+
+                    String pepString = msHits.MSHits_pepstring;
+
+                    if (peptideSet != null) {
+                        peptideSet.add(pepString);
+                    }
+                    if (peptideToSpectrumMap != null) {
+                        add(peptideToSpectrumMap, pepString, msSpectrum);
+                    }
+
+                    if (pepHitsNeeded) {
+                        for (MSPepHit msPepHit : msHits.MSHits_pephits.MSPepHit) {
+                            if (peptideToProteinMap != null) {
+                                add(peptideToProteinMap, pepString, msPepHit);
+                            }
+                            if (proteinToPeptideMap != null) {
+                                add(proteinToPeptideMap, msPepHit.MSPepHit_accession, pepString);
+                            }
+                            if (proteinToPeptideHitsMap != null) {
+                                HashMap<String, LinkedList<MSPepHit>> peptideHits = proteinToPeptideHitsMap.get(msPepHit.MSPepHit_accession);
+                                if (peptideHits == null) {
+                                    peptideHits = new HashMap<String, LinkedList<MSPepHit>>();
+                                    proteinToPeptideHitsMap.put(msPepHit.MSPepHit_accession, peptideHits);
+                                }
+                                add(peptideHits, pepString, msPepHit);
+                            }
+                        }
+                    }
+                }
+
+                if (peptideSet != null) {
+                    spectrumToPeptideMap.put(msSpectrum, peptideSet);
+                }
+            }
+        }
+
+        OmxEvents.mapBuildFinished(event, getEntryCount());
+    }
+
+    /**
+     * Returns the number of entries of the maps built.
+     *
+     * @return the number of entries of the maps built
+     */
+    private long getEntryCount() {
+        long entries = 0;
+        for (Map<?, ?> map : new Map<?, ?>[]{spectrumToHitSetMap, spectrumToPeptideMap, peptideToSpectrumMap, peptideToProteinMap, proteinToPeptideMap,
+            proteinToPeptideHitsMap}) {
+            if (map != null) {
+                entries += map.size();
+            }
+        }
+        if (numberToSpectrumMap != null) {
+            entries += numberToSpectrumMap.size();
+        }
+        if (numberToHitSetMap != null) {
+            entries += numberToHitSetMap.size();
+        }
+        return entries;
+    }
+
+    /**
+     * Adds a value to the list of a key, creating the list if needed.
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @param map the map
+     * @param key the key
+     * @param value the value
+     */
+    private static <K, V> void add(HashMap<K, LinkedList<V>> map, K key, V value) {
+        LinkedList<V> list = map.get(key);
+        if (list == null) {
+            list = new LinkedList<V>();
+            map.put(key, list);
+        }
+        list.add(value);
+    }
+
+    /**
+     * Returns the maps built by the builder.
+     *
+     * @return the maps built by the builder
+     */
+    public Set<Index> getIndexes() {
+        return EnumSet.copyOf(indexes);
+    }
+
+    /**
+     * Returns the spectrum to hit set map.
+     *
+     * @return the spectrum to hit set map, null if not built
+     */
+    public HashMap<MSSpectrum, MSHitSet> getSpectrumToHitSetMap() {
+        return spectrumToHitSetMap;
+    }
+
+    /**
+     * Returns the spectrum to peptide map. Every spectrum has its own set of
+     * peptide sequences.
+     *
+     * @return the spectrum to peptide map, null if not built
+     */
+    public HashMap<MSSpectrum, HashSet<String>> getSpectrumToPeptideMap() {
+        return spectrumToPeptideMap;
+    }
+
+    /**
+     * Returns the peptide to spectrum map.
+     *
+     * @return the peptide to spectrum map, null if not built
+     */
+    public HashMap<String, LinkedList<MSSpectrum>> getPeptideToSpectrumMap() {
+        return peptideToSpectrumMap;
+    }
+
+    /**
+     * Returns the peptide to protein map.
+     *
+     * @return the peptide to protein map, null if not built
+     */
+    public HashMap<String, LinkedList<MSPepHit>> getPeptideToProteinMap() {
+        return peptideToProteinMap;
+    }
+
+    /**
+     * Returns the protein to peptide map.
+     *
+     * @return the protein to peptide map, null if not built
+     */
+    public HashMap<String, LinkedList<String>> getProteinToPeptideMap() {
+        return proteinToPeptideMap;
+    }
+
+    /**
+     * Returns the protein to peptide hits map. The MSPepHit of a peptide
+     * follow the order of the hits.
+     *
+     * @return the protein to peptide hits map, null if not built
+     */
+    public HashMap<String, HashMap<String, LinkedList<MSPepHit>>> getProteinToPeptideHitsMap() {
+        return proteinToPeptideHitsMap;
+    }
+
+    /**
+     * Returns the spectrum number to spectrum map.
+     *
+     * @return the spectrum number to spectrum map, null if not built
+     */
+    public OmxIntMap<MSSpectrum> getNumberToSpectrumMap() {
+        return numberToSpectrumMap;
+    }
+
+    /**
+     * Returns the spectrum number to hit set map.
+     *
+     * @return the spectrum number to hit set map, null if not built
+     */
+    public OmxIntMap<MSHitSet> getNumberToHitSetMap() {
+        return numberToHitSetMap;
+    }
+}
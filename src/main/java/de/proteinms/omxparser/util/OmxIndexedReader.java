@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Random access reader for single spectra and hit sets of an uncompressed or
+ * block compressed omx file, see BlockGzipOutputStream. The elements are located using an OmxIndex, read from the file and
+ * parsed on their own, without parsing the rest of the file.
+ * <br><br>
+ * Example:
+ * <pre>
+ * try (OmxIndexedReader reader = new OmxIndexedReader(omxFile, true)) {
+ *     MSSpectrum msSpectrum = reader.getSpectrum(0, spectrumNumber);
+ *     MSHitSet msHitSet = reader.getHitSet(0, spectrumNumber);
+ *     ...
+ * }
+ * </pre>
+ */
+public class OmxIndexedReader implements Closeable {
+
+    /**
+     * The omx file.
+     */
+    private final File omxFile;
+    /**
+     * The index of the file.
+     */
+    private final OmxIndex index;
+    /**
+     * If false, only peptide sequence, modifications and e-values of the hit
+     * sets will be imported.
+     */
+    private final boolean importIdDetails;
+    /**
+     * The uncompressed file opened for random access, null for block
+     * compressed files.
+     */
+    private final RandomAccessFile randomAccessFile;
+    /**
+     * The block compressed file opened for random access, null for
+     * uncompressed files.
+     */
+    private final BlockGzipInputStream blockGzipStream;
+
+    /**
+     * Opens a reader on the given omx file. The sidecar index is used if up
+     * to date, built otherwise, see OmxIndex.getIndex.
+     *
+     * @param omxFile the uncompressed or block compressed omx file
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values of the hit sets will be imported
+     * @throws IOException if the file could not be indexed or opened
+     */
+    public OmxIndexedReader(File omxFile, boolean importIdDetails) throws IOException {
+        this(omxFile, OmxIndex.getIndex(omxFile), importIdDetails);
+    }
+
+    /**
+     * Opens a reader on the given omx file using the given index.
+     *
+     * @param omxFile the uncompressed or block compressed omx file
+     * @param index the index of the file
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values of the hit sets will be imported
+     * @throws IOException if the index does not match the file or the file
+     * could not be opened
+     */
+    public OmxIndexedReader(File omxFile, OmxIndex index, boolean importIdDetails) throws IOException {
+        if (!index.isValidFor(omxFile)) {
+            throw new IOException("The index does not match the file " + omxFile + ".");
+        }
+        this.omxFile = omxFile;
+        this.index = index;
+        this.importIdDetails = importIdDetails;
+        if (omxFile.getName().endsWith(".gz")) {
+            this.randomAccessFile = null;
+            this.blockGzipStream = new BlockGzipInputStream(omxFile);
+        } else {
+            this.randomAccessFile = new RandomAccessFile(omxFile, "r");
+            this.blockGzipStream = null;
+        }
+    }
+
+    /**
+     * Returns the index used by the reader.
+     *
+     * @return the index used by the reader
+     */
+    public OmxIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Reads the given spectrum.
+     *
+     * @param requestIndex the index of the MSRequest
+     * @param spectrumNumber the MSSpectrum_number
+     * @return the spectrum, null if not found
+     * @throws IOException if the file could not be read
+     * @throws XmlPullParserException if the spectrum could not be parsed
+     */
+    public MSSpectrum getSpectrum(int requestIndex, int spectrumNumber) throws IOException, XmlPullParserException {
+
+        int position = index.find(false, requestIndex, spectrumNumber);
+        if (position < 0) {
+            return null;
+        }
+
+        MSSearch msSearch = OmxParallelParser.parseFragment(read(position), true, true, true);
+
+        if (msSearch == null || msSearch.MSSearch_request.MSRequest.isEmpty()) {
+            return null;
+        }
+        return msSearch.MSSearch_request.MSRequest.get(0).MSRequest_spectra.MSSpectrumset.MSSpectrum.get(spectrumNumber);
+    }
+
+    /**
+     * Reads the given hit set.
+     *
+     * @param responseIndex the index of the MSResponse
+     * @param hitSetNumber the MSHitSet_number
+     * @return the hit set, null if not found
+     * @throws IOException if the file could not be read
+     * @throws XmlPullParserException if the hit set could not be parsed
+     */
+    public MSHitSet getHitSet(int responseIndex, int hitSetNumber) throws IOException, XmlPullParserException {
+
+        int position = index.find(true, responseIndex, hitSetNumber);
+        if (position < 0) {
+            return null;
+        }
+
+        MSSearch msSearch = OmxParallelParser.parseFragment(read(position), false, false, importIdDetails);
+
+        if (msSearch == null || msSearch.MSSearch_response.MSResponse.isEmpty()) {
+            return null;
+        }
+        Map<Integer, MSHitSet> hitSets = msSearch.MSSearch_response.MSResponse.get(0).MSResponse_hitsets.MSHitSet;
+        return hitSets.get(hitSetNumber);
+    }
+
+    /**
+     * Reads the bytes of the element at the given position of the index.
+     *
+     * @param position the position of the element in the index
+     * @return the bytes of the element
+     * @throws IOException if the file could not be read
+     */
+    private synchronized byte[] read(int position) throws IOException {
+        byte[] content = new byte[index.getLength(position)];
+        if (randomAccessFile != null) {
+            randomAccessFile.seek(index.getOffset(position));
+            randomAccessFile.readFully(content);
+        } else {
+            blockGzipStream.seek(index.getOffset(position));
+            int length = 0;
+            while (length < content.length) {
+                int read = blockGzipStream.read(content, length, content.length - length);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of file: " + omxFile + ".");
+                }
+                length += read;
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Returns the omx file read.
+     *
+     * @return the omx file read
+     */
+    public File getOmxFile() {
+        return omxFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+        } else {
+            blockGzipStream.close();
+        }
+    }
+}
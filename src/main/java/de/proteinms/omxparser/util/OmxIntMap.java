@@ -0,0 +1,338 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.Arrays;
+
+/**
+ * Map with int keys, looked up without boxing nor hashing for the dense keys.
+ * The non-negative keys are kept in an array indexed by the key as long as
+ * the array stays at least half full, e.g. the spectrum numbers which start
+ * at 0. The other keys are kept in an open addressing table with linear
+ * probing. No object is created by get, containsKey or put of a dense key.
+ * <br><br>
+ * Null values are not allowed. The map is not thread safe.
+ *
+ * @param <V> the type of the values
+ */
+public class OmxIntMap<V> {
+
+    /**
+     * The minimal length of the dense array.
+     */
+    private static final int MIN_DENSE_LENGTH = 16;
+    /**
+     * The minimal length of the open addressing table, a power of two.
+     */
+    private static final int MIN_SPARSE_LENGTH = 8;
+    /**
+     * The values of the dense keys, indexed by key.
+     */
+    private Object[] denseValues = new Object[0];
+    /**
+     * The number of values in the dense array.
+     */
+    private int denseSize = 0;
+    /**
+     * The keys of the open addressing table.
+     */
+    private int[] sparseKeys = new int[0];
+    /**
+     * The values of the open addressing table, null for the free slots.
+     */
+    private Object[] sparseValues = new Object[0];
+    /**
+     * The number of values in the open addressing table.
+     */
+    private int sparseSize = 0;
+
+    /**
+     * Creates an empty map.
+     */
+    public OmxIntMap() {
+    }
+
+    /**
+     * Creates an empty map with room for the keys from 0 to the given
+     * capacity excluded in the dense array.
+     *
+     * @param capacity the number of dense keys expected
+     */
+    public OmxIntMap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity cannot be negative: " + capacity);
+        }
+        denseValues = new Object[capacity];
+    }
+
+    /**
+     * Returns the value of the given key.
+     *
+     * @param key the key
+     * @return the value, null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key >= 0 && key < denseValues.length) {
+            return (V) denseValues[key];
+        }
+        if (sparseSize == 0) {
+            return null;
+        }
+        return (V) sparseValues[findSlot(key)];
+    }
+
+    /**
+     * Indicates whether the given key is in the map.
+     *
+     * @param key the key
+     * @return true if the key is in the map
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the given key to the given value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the previous value of the key, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed, key: " + key);
+        }
+
+        if (key >= 0 && key >= denseValues.length && key < 2 * (denseSize + 1) + MIN_DENSE_LENGTH) {
+            growDense(key + 1);
+        }
+
+        if (key >= 0 && key < denseValues.length) {
+            V previous = (V) denseValues[key];
+            denseValues[key] = value;
+            if (previous == null) {
+                denseSize++;
+            }
+            return previous;
+        }
+
+        if (2 * (sparseSize + 1) > sparseValues.length) {
+            rehash(Math.max(MIN_SPARSE_LENGTH, 2 * sparseValues.length));
+        }
+        int slot = findSlot(key);
+        V previous = (V) sparseValues[slot];
+        sparseKeys[slot] = key;
+        sparseValues[slot] = value;
+        if (previous == null) {
+            sparseSize++;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the given key from the map.
+     *
+     * @param key the key
+     * @return the value of the key, null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+
+        if (key >= 0 && key < denseValues.length) {
+            V previous = (V) denseValues[key];
+            if (previous != null) {
+                denseValues[key] = null;
+                denseSize--;
+            }
+            return previous;
+        }
+
+        if (sparseSize == 0) {
+            return null;
+        }
+        int slot = findSlot(key);
+        V previous = (V) sparseValues[slot];
+        if (previous == null) {
+            return null;
+        }
+        sparseValues[slot] = null;
+        sparseSize--;
+
+        // shift back the following keys of the probe sequence into the free slot
+        int mask = sparseValues.length - 1;
+        int free = slot;
+        int next = (slot + 1) & mask;
+        while (sparseValues[next] != null) {
+            int home = hash(sparseKeys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                sparseKeys[free] = sparseKeys[next];
+                sparseValues[free] = sparseValues[next];
+                sparseValues[next] = null;
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     *
+     * @return the number of keys in the map
+     */
+    public int size() {
+        return denseSize + sparseSize;
+    }
+
+    /**
+     * Indicates whether the map is empty.
+     *
+     * @return true if the map is empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all the keys and releases the arrays.
+     */
+    public void clear() {
+        denseValues = new Object[0];
+        denseSize = 0;
+        sparseKeys = new int[0];
+        sparseValues = new Object[0];
+        sparseSize = 0;
+    }
+
+    /**
+     * Returns the keys of the map in ascending order.
+     *
+     * @return the keys of the map in ascending order
+     */
+    public int[] keys() {
+        int[] keys = new int[size()];
+        int count = 0;
+        for (int i = 0; i < sparseValues.length; i++) {
+            if (sparseValues[i] != null && sparseKeys[i] < 0) {
+                keys[count++] = sparseKeys[i];
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        for (int key = 0; key < denseValues.length; key++) {
+            if (denseValues[key] != null) {
+                keys[count++] = key;
+            }
+        }
+        int start = count;
+        for (int i = 0; i < sparseValues.length; i++) {
+            if (sparseValues[i] != null && sparseKeys[i] >= 0) {
+                keys[count++] = sparseKeys[i];
+            }
+        }
+        Arrays.sort(keys, start, count);
+        return keys;
+    }
+
+    /**
+     * Grows the dense array to the given length at least, and moves the keys
+     * of the open addressing table which fall in the array.
+     *
+     * @param length the minimal length
+     */
+    private void growDense(int length) {
+
+        denseValues = Arrays.copyOf(denseValues, Math.max(length, Math.max(MIN_DENSE_LENGTH, denseValues.length + (denseValues.length >> 1))));
+
+        if (sparseSize > 0) {
+            int[] oldKeys = sparseKeys;
+            Object[] oldValues = sparseValues;
+            sparseKeys = new int[oldKeys.length];
+            sparseValues = new Object[oldValues.length];
+            sparseSize = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int key = oldKeys[i];
+                    if (key >= 0 && key < denseValues.length) {
+                        denseValues[key] = oldValues[i];
+                        denseSize++;
+                    } else {
+                        insertSparse(key, oldValues[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Resizes the open addressing table.
+     *
+     * @param length the new length, a power of two
+     */
+    private void rehash(int length) {
+        int[] oldKeys = sparseKeys;
+        Object[] oldValues = sparseValues;
+        sparseKeys = new int[length];
+        sparseValues = new Object[length];
+        sparseSize = 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                insertSparse(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Inserts a key missing from the open addressing table, which has a free
+     * slot.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    private void insertSparse(int key, Object value) {
+        int slot = findSlot(key);
+        sparseKeys[slot] = key;
+        sparseValues[slot] = value;
+        sparseSize++;
+    }
+
+    /**
+     * Returns the slot of the given key in the open addressing table, or the
+     * free slot where it would be inserted. The table must have a free slot.
+     *
+     * @param key the key
+     * @return the slot of the key
+     */
+    private int findSlot(int key) {
+        int mask = sparseValues.length - 1;
+        int slot = hash(key) & mask;
+        while (sparseValues[slot] != null && sparseKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Spreads the bits of a key.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
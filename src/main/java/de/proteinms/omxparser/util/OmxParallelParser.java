@@ -0,0 +1,558 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Parses a single uncompressed omx file on several cores.
+ * <br><br>
+ * <b>Unsupported:</b> this parser is not used by OmxParser or OmssaOmxFile
+ * and its scaling over the sequential parser has not been measured, see the
+ * benchmarks module. It may change or be removed in any release, use
+ * OmxParser or OmssaOmxFile instead. It is called directly and returns the
+ * MSSearch only. Compared to OmxParser it has the following limits:
+ * <ul>
+ * <li>no parse listener, hit set callback, hit filter, projection or
+ * deferred hit details,</li>
+ * <li>the file must be UTF-8 (or ASCII) encoded, the chunks being decoded
+ * independently of the prolog of the document,</li>
+ * <li>the MSSpectrum and MSHitSet start and end tags must be written without
+ * attributes nor white space, as OMSSA does, other elements are parsed with
+ * the rest of the document,</li>
+ * <li>the spectra are not put in an OmxSpectrumStore.</li>
+ * </ul>
+ * The modification files are parsed like in OmxParser, see
+ * getOmssaModificationDetails.
+ * <br><br>
+ * The file is first scanned for the byte offsets of the MSHitSet and
+ * MSSpectrum elements, see OmxTagScanner. Consecutive elements are grouped in
+ * chunks of about chunkSize bytes which are parsed independently on a fork-join
+ * pool, while the rest of the document, i.e., the requests and responses
+ * without their spectra and hit sets, is parsed in parallel by another task.
+ * The hit sets and spectra of the chunks are then merged into the
+ * MSResponse_hitsets and MSSpectrumset of the corresponding MSResponse and
+ * MSRequest, keyed by number as done by OmxParser.
+ * <br><br>
+ * Compressed files cannot be split and are parsed sequentially, block
+ * compressed files being inflated ahead in parallel, see
+ * OmxParser.openStream.
+ */
+public class OmxParallelParser {
+
+    /**
+     * Define a static logger variable so that it references the Logger instance
+     * named "OmxParallelParser".
+     */
+    private static Logger logger = LogManager.getLogger(OmxParallelParser.class);
+    /**
+     * The default size of the chunks in bytes.
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    /**
+     * The tags scanned, see the TAG_* indexes.
+     */
+    private static final String[] TAGS = {"<MSRequest>", "<MSSpectrum>", "</MSSpectrum>", "<MSResponse>", "<MSHitSet>", "</MSHitSet>"};
+    private static final int TAG_REQUEST = 0;
+    private static final int TAG_SPECTRUM_START = 1;
+    private static final int TAG_SPECTRUM_END = 2;
+    private static final int TAG_RESPONSE = 3;
+    private static final int TAG_HITSET_START = 4;
+    private static final int TAG_HITSET_END = 5;
+    /**
+     * The XML wrapped around the spectrum chunks.
+     */
+    private static final String SPECTRUM_PREFIX = "<MSSearch><MSSearch_request><MSRequest><MSRequest_spectra><MSSpectrumset>";
+    private static final String SPECTRUM_SUFFIX = "</MSSpectrumset></MSRequest_spectra></MSRequest></MSSearch_request></MSSearch>";
+    /**
+     * The XML wrapped around the hit set chunks.
+     */
+    private static final String HITSET_PREFIX = "<MSSearch><MSSearch_response><MSResponse><MSResponse_hitsets>";
+    private static final String HITSET_SUFFIX = "</MSResponse_hitsets></MSResponse></MSSearch_response></MSSearch>";
+    /**
+     * The omx file.
+     */
+    private final File omxFile;
+    /**
+     * If false, the MSRequest_spectra section of the omx file will be skipped.
+     */
+    private final boolean importSpectra;
+    /**
+     * If false, only peptide sequence, modifications and e-values will be
+     * imported.
+     */
+    private final boolean importIdDetails;
+    /**
+     * The pool used to parse the chunks.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * The target size of the chunks in bytes.
+     */
+    private final long chunkSize;
+    /**
+     * The mods.xml file, null if none.
+     */
+    private final File modsFile;
+    /**
+     * The usermods.xml file, null if none.
+     */
+    private final File userModsFile;
+    /**
+     * The modification details, null until the file is parsed.
+     */
+    private HashMap<Integer, OmssaModification> omssaModificationDetails;
+
+    /**
+     * A range of consecutive MSSpectrum or MSHitSet elements of the same
+     * MSRequest or MSResponse.
+     */
+    private static class Chunk {
+
+        /**
+         * True for spectra, false for hit sets.
+         */
+        private final boolean spectra;
+        /**
+         * The index of the MSRequest or MSResponse.
+         */
+        private final int parentIndex;
+        /**
+         * The offset of the first byte of the chunk.
+         */
+        private final long start;
+        /**
+         * The offset after the last byte of the chunk.
+         */
+        private long end;
+
+        /**
+         * Constructor.
+         *
+         * @param spectra true for spectra, false for hit sets
+         * @param parentIndex the index of the MSRequest or MSResponse
+         * @param start the offset of the first byte of the chunk
+         * @param end the offset after the last byte of the chunk
+         */
+        private Chunk(boolean spectra, int parentIndex, long start, long end) {
+            this.spectra = spectra;
+            this.parentIndex = parentIndex;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Creates a parallel parser using the common fork-join pool and the
+     * default chunk size.
+     *
+     * @param omxFile the omx file
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * file will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     */
+    public OmxParallelParser(File omxFile, boolean importSpectra, boolean importIdDetails) {
+        this(omxFile, importSpectra, importIdDetails, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a parallel parser.
+     *
+     * @param omxFile the omx file
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * file will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @param pool the pool used to parse the chunks
+     * @param chunkSize the target size of the chunks in bytes
+     */
+    public OmxParallelParser(File omxFile, boolean importSpectra, boolean importIdDetails, ForkJoinPool pool, long chunkSize) {
+        this(omxFile, null, null, importSpectra, importIdDetails, pool, chunkSize);
+    }
+
+    /**
+     * Creates a parallel parser also parsing the given modification files,
+     * see getOmssaModificationDetails.
+     *
+     * @param omxFile the omx file
+     * @param modsFile the mods.xml file, can be null
+     * @param userModsFile the usermods.xml file, can be null
+     * @param importSpectra if false, the MSRequest_spectra section of the omx
+     * file will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @param pool the pool used to parse the chunks
+     * @param chunkSize the target size of the chunks in bytes
+     */
+    public OmxParallelParser(File omxFile, File modsFile, File userModsFile, boolean importSpectra, boolean importIdDetails,
+            ForkJoinPool pool, long chunkSize) {
+        this.omxFile = omxFile;
+        this.modsFile = modsFile;
+        this.userModsFile = userModsFile;
+        this.importSpectra = importSpectra;
+        this.importIdDetails = importIdDetails;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parses the file.
+     *
+     * @return the search object as returned by OmxParser
+     * @throws IOException if the file could not be read
+     * @throws XmlPullParserException if the file could not be parsed
+     */
+    public MSSearch parse() throws IOException, XmlPullParserException {
+
+        omssaModificationDetails = OmxParser.parseModificationFiles(modsFile, userModsFile);
+
+        if (omxFile.getName().endsWith(".gz")) {
+            OmxParser omxParser = new OmxParser(importSpectra, importIdDetails, null);
+            omxParser.storeSpectra = false;
+            parse(omxParser, OmxParser.openStream(omxFile), importSpectra, importIdDetails);
+            return omxParser.parserResult;
+        }
+
+        long t1 = System.currentTimeMillis();
+        final List<Chunk> chunks = scanChunks();
+        logger.debug("Found " + chunks.size() + " chunks in " + omxFile + " after " + (System.currentTimeMillis() - t1) + " ms");
+
+        // parse the document without the chunks
+        final OmxParser skeletonParser = new OmxParser(importSpectra, importIdDetails, null);
+        // the spectra of the chunks are merged into the map of the skeleton
+        skeletonParser.storeSpectra = false;
+        ArrayList<Callable<MSSearch>> tasks = new ArrayList<Callable<MSSearch>>(chunks.size() + 1);
+        tasks.add(new Callable<MSSearch>() {
+            @Override
+            public MSSearch call() throws Exception {
+                InputStream inputStream = new ChunkExcludingInputStream(new FileInputStream(omxFile), chunks);
+                parse(skeletonParser, inputStream, importSpectra, importIdDetails);
+                return skeletonParser.parserResult;
+            }
+        });
+
+        // parse the chunks
+        for (final Chunk chunk : chunks) {
+            if (chunk.spectra && !importSpectra) {
+                continue;
+            }
+            tasks.add(new Callable<MSSearch>() {
+                @Override
+                public MSSearch call() throws Exception {
+                    return parseChunk(chunk);
+                }
+            });
+        }
+
+        List<Future<MSSearch>> results = pool.invokeAll(tasks);
+
+        // merge
+        MSSearch msSearch;
+        try {
+            msSearch = results.get(0).get();
+            if (msSearch == null) {
+                return null;
+            }
+            int taskIndex = 1;
+            for (Chunk chunk : chunks) {
+                if (chunk.spectra && !importSpectra) {
+                    continue;
+                }
+                MSSearch chunkResult = results.get(taskIndex++).get();
+                if (chunkResult == null) {
+                    continue;
+                }
+                if (chunk.spectra) {
+                    MSSpectrumset source = chunkResult.MSSearch_request.MSRequest.isEmpty() ? null
+                            : chunkResult.MSSearch_request.MSRequest.get(0).MSRequest_spectra.MSSpectrumset;
+                    if (source != null && !source.MSSpectrum.isEmpty()) {
+                        msSearch.MSSearch_request.MSRequest.get(chunk.parentIndex).MSRequest_spectra.MSSpectrumset.MSSpectrum.putAll(source.MSSpectrum);
+                    }
+                } else {
+                    MSResponse_hitsets source = chunkResult.MSSearch_response.MSResponse.isEmpty() ? null
+                            : chunkResult.MSSearch_response.MSResponse.get(0).MSResponse_hitsets;
+                    if (source != null && !source.MSHitSet.isEmpty()) {
+                        msSearch.MSSearch_response.MSResponse.get(chunk.parentIndex).MSResponse_hitsets.MSHitSet.putAll(source.MSHitSet);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Parsing of " + omxFile + " interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof XmlPullParserException) {
+                throw (XmlPullParserException) cause;
+            }
+            throw new IOException("Error parsing file: " + omxFile, cause);
+        }
+
+        logger.debug("finished after " + (System.currentTimeMillis() - t1) + " ms");
+
+        return msSearch;
+    }
+
+    /**
+     * Returns a HashMap of the modification details where the keys are the
+     * modification numbers and the elements are OmssaModification-objects,
+     * like OmxParser.getOmssaModificationDetails.
+     *
+     * @return the omssa modification details, null if the file was not
+     * parsed yet
+     */
+    public HashMap<Integer, OmssaModification> getOmssaModificationDetails() {
+        return omssaModificationDetails;
+    }
+
+    /**
+     * Runs the given parser on the given stream and closes the stream.
+     *
+     * @param omxParser the parser
+     * @param inputStream the stream
+     * @param importSpectra if false, the MSRequest_spectra section is skipped
+     * @param importIdDetails if false, the MSHits_pephits and MSHits_mzhits
+     * sections are skipped
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the document could not be parsed
+     */
+    private static void parse(OmxParser omxParser, InputStream inputStream, boolean importSpectra, boolean importIdDetails) throws IOException, XmlPullParserException {
+        OmxTokenizer tokenizer = OmxParser.createTokenizer(inputStream);
+        try {
+            int eventType;
+            while ((eventType = tokenizer.next()) != XmlPullParser.END_DOCUMENT) {
+                omxParser.processEvent(tokenizer, eventType, !importSpectra, !importIdDetails);
+            }
+        } finally {
+            tokenizer.close();
+        }
+    }
+
+    /**
+     * Parses a chunk wrapped in its ancestor elements.
+     *
+     * @param chunk the chunk
+     * @return the search object containing the elements of the chunk
+     * @throws IOException if the file could not be read
+     * @throws XmlPullParserException if the chunk could not be parsed
+     */
+    private MSSearch parseChunk(Chunk chunk) throws IOException, XmlPullParserException {
+
+        byte[] content = new byte[(int) (chunk.end - chunk.start)];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(omxFile, "r");
+        try {
+            randomAccessFile.seek(chunk.start);
+            randomAccessFile.readFully(content);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return parseFragment(content, chunk.spectra, importSpectra, importIdDetails);
+    }
+
+    /**
+     * Parses consecutive MSSpectrum or MSHitSet elements wrapped in their
+     * ancestor elements. The elements are returned in the first MSRequest or
+     * MSResponse of the search object.
+     *
+     * @param content the bytes of the elements
+     * @param spectra true for MSSpectrum elements, false for MSHitSet elements
+     * @param importSpectra if false, the spectra are skipped
+     * @param importIdDetails if false, the MSHits_pephits and MSHits_mzhits
+     * sections are skipped
+     * @return the search object containing the elements
+     * @throws IOException if the content could not be read
+     * @throws XmlPullParserException if the content could not be parsed
+     */
+    static MSSearch parseFragment(byte[] content, boolean spectra, boolean importSpectra, boolean importIdDetails) throws IOException, XmlPullParserException {
+
+        String prefix = spectra ? SPECTRUM_PREFIX : HITSET_PREFIX;
+        String suffix = spectra ? SPECTRUM_SUFFIX : HITSET_SUFFIX;
+        InputStream inputStream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(prefix.getBytes(StandardCharsets.US_ASCII)),
+                new ByteArrayInputStream(content),
+                new ByteArrayInputStream(suffix.getBytes(StandardCharsets.US_ASCII)))));
+
+        OmxParser omxParser = new OmxParser(importSpectra, importIdDetails, null);
+        // the spectra of the fragment are moved to the map of the file
+        omxParser.storeSpectra = false;
+        parse(omxParser, inputStream, importSpectra, importIdDetails);
+        return omxParser.parserResult;
+    }
+
+    /**
+     * Scans the file for the MSSpectrum and MSHitSet elements and groups them
+     * in chunks.
+     *
+     * @return the chunks in the order of the file
+     * @throws IOException if the file could not be read
+     */
+    private List<Chunk> scanChunks() throws IOException {
+
+        final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+
+        new OmxTagScanner(TAGS).scan(omxFile, new OmxTagScanner.TagListener() {
+
+            private int requestIndex = -1;
+            private int responseIndex = -1;
+            private long elementStart = -1;
+            private Chunk currentChunk = null;
+
+            @Override
+            public void tagFound(int tagIndex, long offset) {
+                switch (tagIndex) {
+                    case TAG_REQUEST:
+                        requestIndex++;
+                        currentChunk = null;
+                        break;
+                    case TAG_RESPONSE:
+                        responseIndex++;
+                        currentChunk = null;
+                        break;
+                    case TAG_SPECTRUM_START:
+                    case TAG_HITSET_START:
+                        elementStart = offset;
+                        break;
+                    case TAG_SPECTRUM_END:
+                    case TAG_HITSET_END:
+                        if (elementStart >= 0) {
+                            boolean spectra = tagIndex == TAG_SPECTRUM_END;
+                            long elementEnd = offset + TAGS[tagIndex].length();
+                            int parentIndex = spectra ? requestIndex : responseIndex;
+                            if (currentChunk != null && currentChunk.spectra == spectra && currentChunk.parentIndex == parentIndex
+                                    && currentChunk.end - currentChunk.start < chunkSize) {
+                                currentChunk.end = elementEnd;
+                            } else {
+                                currentChunk = new Chunk(spectra, parentIndex, elementStart, elementEnd);
+                                chunks.add(currentChunk);
+                            }
+                            elementStart = -1;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        return chunks;
+    }
+
+    /**
+     * Input stream leaving out the bytes of the given chunks.
+     */
+    private static class ChunkExcludingInputStream extends FilterInputStream {
+
+        /**
+         * The chunks to leave out, in the order of the file.
+         */
+        private final List<Chunk> chunks;
+        /**
+         * The index of the next chunk to leave out.
+         */
+        private int chunkIndex = 0;
+        /**
+         * The current position in the underlying stream.
+         */
+        private long position = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param in the underlying stream
+         * @param chunks the chunks to leave out, in the order of the file
+         */
+        private ChunkExcludingInputStream(InputStream in, List<Chunk> chunks) {
+            super(in);
+            this.chunks = chunks;
+        }
+
+        /**
+         * Skips the chunk starting at the current position, if any.
+         *
+         * @throws IOException if the underlying stream could not be skipped
+         */
+        private void skipChunk() throws IOException {
+            while (chunkIndex < chunks.size() && chunks.get(chunkIndex).start == position) {
+                long end = chunks.get(chunkIndex).end;
+                while (position < end) {
+                    long skipped = in.skip(end - position);
+                    if (skipped <= 0) {
+                        if (in.read() < 0) {
+                            return;
+                        }
+                        skipped = 1;
+                    }
+                    position += skipped;
+                }
+                chunkIndex++;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            skipChunk();
+            int result = in.read();
+            if (result >= 0) {
+                position++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            skipChunk();
+            if (chunkIndex < chunks.size()) {
+                len = (int) Math.min(len, chunks.get(chunkIndex).start - position);
+            }
+            int result = in.read(b, off, len);
+            if (result > 0) {
+                position += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("Skip not supported.");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
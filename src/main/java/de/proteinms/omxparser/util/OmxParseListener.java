@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+/**
+ * Listener following the parsing of an omx file, see OmxParser and
+ * OmxHitSetReader. The listener is called by the parsing thread, and can
+ * cancel the parsing: the parser then stops and throws a
+ * java.util.concurrent.CancellationException, which OmxParser catches, see
+ * OmxParser.isCanceled.
+ */
+public interface OmxParseListener {
+
+    /**
+     * Called periodically while the file is parsed, and once when the end of
+     * the document is reached.
+     *
+     * @param progress the progress of the parsing
+     */
+    public void parseProgress(OmxParseProgress progress);
+
+    /**
+     * Indicates whether the parsing shall be canceled. Called periodically
+     * while the file is parsed.
+     *
+     * @return true if the parsing shall be canceled
+     */
+    public boolean isCanceled();
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+/**
+ * The progress of the parsing of an omx file at a given time, see
+ * OmxParseListener.
+ */
+public class OmxParseProgress {
+
+    /**
+     * The number of bytes of the file read.
+     */
+    private final long bytesRead;
+    /**
+     * The size of the file in bytes, -1 if unknown.
+     */
+    private final long totalBytes;
+    /**
+     * The number of hit sets parsed.
+     */
+    private final int hitSets;
+    /**
+     * The number of spectra parsed.
+     */
+    private final int spectra;
+    /**
+     * The time since the parsing started in nanoseconds.
+     */
+    private final long elapsedNanos;
+    /**
+     * Indicates whether the end of the document was reached.
+     */
+    private final boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param bytesRead the number of bytes of the file read
+     * @param totalBytes the size of the file in bytes, -1 if unknown
+     * @param hitSets the number of hit sets parsed
+     * @param spectra the number of spectra parsed
+     * @param elapsedNanos the time since the parsing started in nanoseconds
+     * @param finished true if the end of the document was reached
+     */
+    public OmxParseProgress(long bytesRead, long totalBytes, int hitSets, int spectra, long elapsedNanos, boolean finished) {
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.hitSets = hitSets;
+        this.spectra = spectra;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    /**
+     * Returns the number of bytes of the file read. For compressed files the
+     * compressed bytes are counted.
+     *
+     * @return the number of bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the size of the file in bytes.
+     *
+     * @return the size of the file, -1 if unknown
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the fraction of the file read.
+     *
+     * @return the fraction of the file read between 0 and 1, -1 if the size
+     * of the file is unknown
+     */
+    public double getFraction() {
+        if (totalBytes <= 0) {
+            return finished ? 1 : -1;
+        }
+        return Math.min(1, (double) bytesRead / totalBytes);
+    }
+
+    /**
+     * Returns the number of hit sets parsed.
+     *
+     * @return the number of hit sets parsed
+     */
+    public int getHitSets() {
+        return hitSets;
+    }
+
+    /**
+     * Returns the number of spectra parsed.
+     *
+     * @return the number of spectra parsed
+     */
+    public int getSpectra() {
+        return spectra;
+    }
+
+    /**
+     * Returns the time since the parsing started.
+     *
+     * @return the time since the parsing started in milliseconds
+     */
+    public long getElapsedTime() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * Returns the mean throughput since the parsing started.
+     *
+     * @return the throughput in MB (2^20 bytes) per second
+     */
+    public double getMegabytesPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return bytesRead / (1024.0 * 1024.0) / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Indicates whether the end of the document was reached.
+     *
+     * @return true if the end of the document was reached
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f of %s MB, %d hit sets, %d spectra, %.1f MB/s",
+                bytesRead / (1024.0 * 1024.0),
+                totalBytes < 0 ? "?" : String.format("%.1f", totalBytes / (1024.0 * 1024.0)),
+                hitSets, spectra, getMegabytesPerSecond());
+    }
+}
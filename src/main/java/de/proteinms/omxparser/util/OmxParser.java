@@ -21,20 +21,19 @@
  */
 package de.proteinms.omxparser.util;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EmptyStackException;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import java.util.Stack;
+import java.util.concurrent.CancellationException;
 
 import java.util.Vector;
 import java.util.zip.GZIPInputStream;
@@ -70,6 +69,20 @@ public class OmxParser {
      * Default encoding, cf the second rule.
      */
     public static final String ENCODING = "UTF-8";
+    /**
+     * The system property selecting the tokenizer: "xpp" to always use the
+     * XPP3 pull parser, see XppOmxTokenizer. By default OmxByteTokenizer is
+     * used, with XPP3 as fallback for files not encoded in UTF-8.
+     */
+    public static final String TOKENIZER_PROPERTY = "omxparser.tokenizer";
+    /**
+     * The system property enabling the spectrum store: if "true", the spectra
+     * are packed outside of the heap in an OmxSpectrumStore used as the
+     * MSSpectrum map of the MSSpectrumsets. The spectra of the map are then
+     * read-only views unpacked on access: modifications of a spectrum are not
+     * written back, put a modified spectrum in the map to replace it.
+     */
+    public static final String SPECTRUM_STORE_PROPERTY = "omxparser.spectrumstore";
     /**
      * Define a static logger variable so that it references the Logger instance
      * named "OmxParser".
@@ -81,10 +94,81 @@ public class OmxParser {
     //to avoid error while parsing unknown XML-subtree/branch like <MSResponse_bioseqs> (not implemented in OMXParser)
     private Stack<Boolean> lockStack = new Stack<Boolean>();
     /**
-     * Classes is used by the Parser to lookup classtypes from XML Tags<br>
-     * avoiding the use of slow Reflection methods like class.forName()
+     * The element handlers of the objects on the objectStack.
+     */
+    private Stack<OmxElementHandler> handlerStack = new Stack<OmxElementHandler>();
+    /**
+     * Classes is used by the Parser to lookup the element handlers from XML
+     * Tags<br> avoiding the use of slow Reflection methods like
+     * class.forName() and class.getDeclaredMethod()
+     */
+    private OmxElementRegistry classes;
+    /**
+     * The callback receiving the hit sets, null if the hit sets are to be
+     * stored in the parserResult.
+     */
+    private OmxHitSetCallback hitSetCallback;
+    /**
+     * The loader of the MSHits_pephits and MSHits_mzhits, null if they are
+     * parsed with the file.
+     */
+    private OmxHitDetailsLoader hitDetailsLoader;
+    /**
+     * The loader of the MSSpectrum_mz and MSSpectrum_abundance, null if they
+     * are parsed with the file.
+     */
+    private OmxSpectrumLoader spectrumLoader;
+    /**
+     * The elements to parse, null to parse the elements selected by the
+     * importSpectra and importIdDetails flags.
+     */
+    private OmxProjection projection;
+    /**
+     * The projection nodes of the elements currently parsed.
+     */
+    private Stack<OmxProjection.Node> projectionStack = new Stack<OmxProjection.Node>();
+    /**
+     * The filters of the MSHits, null to keep all the hits.
+     */
+    private OmxHitFilter[] hitFilters;
+    /**
+     * Indicates which filters were evaluated on the current hit.
+     */
+    private boolean[] hitFiltersEvaluated;
+    /**
+     * The filter keeping the best hits of each hit set, null to keep all the
+     * hits.
+     */
+    private OmxTopHitsFilter topHitsFilter;
+    /**
+     * If true the hit sets without hits are dropped.
+     */
+    private boolean pruneHitSets = false;
+    /**
+     * The number of filters evaluated on the current hit.
      */
-    private static HashMap<String, Class<?>> classes = new HashMap<String, Class<?>>();
+    private int hitFiltersEvaluatedCount;
+    /**
+     * The child elements of the current hit parsed so far.
+     */
+    private HashSet<String> hitElements = new HashSet<String>();
+    /**
+     * The MSHits currently parsed, null if there is none or if it passed all
+     * the filters.
+     */
+    private MSHits currentHit;
+    /**
+     * The depth of the current hit in the nameStack.
+     */
+    private int currentHitDepth;
+    /**
+     * The MSRequests parsed so far, in the order of the file.
+     */
+    private ArrayList<MSRequest> msRequests = new ArrayList<MSRequest>();
+    /**
+     * The index of the MSResponse currently parsed.
+     */
+    private int responseIndex = -1;
     /**
      * Contains all Data from the original Omx File gathered by the OmxParser
      */
@@ -96,100 +180,39 @@ public class OmxParser {
      * numbers and the elements are OmssaModification-objects
      */
     private HashMap<Integer, OmssaModification> omssaModificationDetails;
+    /**
+     * If true the spectra are put in an OmxSpectrumStore, see
+     * SPECTRUM_STORE_PROPERTY.
+     */
+    boolean storeSpectra = Boolean.getBoolean(SPECTRUM_STORE_PROPERTY);
+    /**
+     * The monitor reporting the progress of the parsing, null if there is no
+     * listener.
+     */
+    OmxProgressMonitor progressMonitor;
+    /**
+     * Indicates whether the parsing was canceled by the listener.
+     */
+    private boolean canceled = false;
+    /**
+     * The number of elements parsed, see OmxEvents.
+     */
+    private long elementCount = 0;
 
     /**
-     * If a Class should be parsed by OmxParser, it has to be initialzed by<br>
-     * writing it into the HashMap classes
+     * Previously registered the classes to be parsed by all OmxParser
+     * instances. The classes are now registered per parser, see
+     * OmxElementRegistry, and this method has no effect.
      *
      * @param importSpectra if false, the MSSpectrumset section of the omx file
      * will be skipped
      * @param importIdDetails if false only peptide sequence, modifications and
      * e-values will be imported
+     * @deprecated the element classes are set per parser, see
+     * OmxElementRegistry
      */
+    @Deprecated
     public static void initializeClasses(boolean importSpectra, boolean importIdDetails) {
-
-        classes.put("MSChargeHandle_calccharge", MSChargeHandle_calccharge.class);
-        classes.put("MSChargeHandle_calcplusone", MSChargeHandle_calcplusone.class);
-        classes.put("MSChargeHandle", MSChargeHandle.class);
-        classes.put("MSHits_mods", MSHits_mods.class);
-        classes.put("MSHits_scores", MSHits_scores.class);
-        classes.put("MSHits", MSHits.class);
-        classes.put("MSHitSet_error", MSHitSet_error.class);
-        classes.put("MSHitSet_hits", MSHitSet_hits.class);
-        classes.put("MSHitSet_ids", MSHitSet_ids.class);
-        classes.put("MSHitSet_namevalue", MSHitSet_namevalue.class);
-        classes.put("MSHitSet_userannotation", MSHitSet_userannotation.class);
-        classes.put("MSHitSet", MSHitSet.class);
-        classes.put("MSImmonium", MSImmonium.class);
-        classes.put("MSInFile_infiletype", MSInFile_infiletype.class);
-        classes.put("MSInFile", MSInFile.class);
-        classes.put("MSIon_immonium", MSIon_immonium.class);
-        classes.put("MSIon_isotope", MSIon_isotope.class);
-        classes.put("MSIon_neutralloss", MSIon_neutralloss.class);
-        classes.put("MSIon", MSIon.class);
-        classes.put("MSIonAnnot", MSIonAnnot.class);
-        classes.put("MSIterativeSettings", MSIterativeSettings.class);
-        classes.put("MSLibrarySettings_libnames", MSLibrarySettings_libnames.class);
-        classes.put("MSLibrarySettings", MSLibrarySettings.class);
-        classes.put("MSMassSet", MSMassSet.class);
-        classes.put("MSModHit_modtype", MSModHit_modtype.class);
-        classes.put("MSModHit", MSModHit.class);
-        classes.put("MSModSpec_mod", MSModSpec_mod.class);
-        classes.put("MSModSpec_neutralloss", MSModSpec_neutralloss.class);
-        classes.put("MSModSpec_residues", MSModSpec_residues.class);
-        classes.put("MSModSpec", MSModSpec.class);
-        classes.put("MSModSpecSet", MSModSpecSet.class);
-        classes.put("MSOutFile_outfiletype", MSOutFile_outfiletype.class);
-        classes.put("MSOutFile", MSOutFile.class);
-        classes.put("MSRequest_modset", MSRequest_modset.class);
-        classes.put("MSRequest_moresettings", MSRequest_moresettings.class);
-        classes.put("MSRequest_settings", MSRequest_settings.class);
-        classes.put("MSRequest", MSRequest.class);
-        classes.put("MSResponse_error", MSResponse_error.class);
-        classes.put("MSResponse_hitsets", MSResponse_hitsets.class);
-        classes.put("MSResponse", MSResponse.class);
-        classes.put("MSScoreSet", MSScoreSet.class);
-        classes.put("MSSearch_request", MSSearch_request.class);
-        classes.put("MSSearch_response", MSSearch_response.class);
-        classes.put("MSSearch", MSSearch.class);
-        classes.put("MSSearchSettings_chargehandling", MSSearchSettings_chargehandling.class);
-        classes.put("MSSearchSettings_enzyme", MSSearchSettings_enzyme.class);
-        classes.put("MSSearchSettings_fixed", MSSearchSettings_fixed.class);
-        classes.put("MSSearchSettings_infiles", MSSearchSettings_infiles.class);
-        classes.put("MSSearchSettings_ionstosearch", MSSearchSettings_ionstosearch.class);
-        classes.put("MSSearchSettings_iterativesettings", MSSearchSettings_iterativesettings.class);
-        classes.put("MSSearchSettings_libsearchsettings", MSSearchSettings_libsearchsettings.class);
-        classes.put("MSSearchSettings_noprolineions", MSSearchSettings_noprolineions.class);
-        classes.put("MSSearchSettings_othersettings", MSSearchSettings_othersettings.class);
-        classes.put("MSSearchSettings_outfiles", MSSearchSettings_outfiles.class);
-        classes.put("MSSearchSettings_precursorsearchtype", MSSearchSettings_precursorsearchtype.class);
-        classes.put("MSSearchSettings_productsearchtype", MSSearchSettings_productsearchtype.class);
-        classes.put("MSSearchSettings_taxids", MSSearchSettings_taxids.class);
-        classes.put("MSSearchSettings_usermods", MSSearchSettings_usermods.class);
-        classes.put("MSSearchSettings_variable", MSSearchSettings_variable.class);
-        classes.put("MSSearchSettings_zdep", MSSearchSettings_zdep.class);
-        classes.put("MSSearchSettings", MSSearchSettings.class);
-        classes.put("MSSearchSettingsSet", MSSearchSettingsSet.class);
-        classes.put("MSSpectrum_namevalue", MSSpectrum_namevalue.class);
-        classes.put("NameValue", NameValue.class);
-        if (importSpectra) {
-            classes.put("MSRequest_spectra", MSRequest_spectra.class);
-            classes.put("MSSpectrumset", MSSpectrumset.class);
-            classes.put("MSSpectrum", MSSpectrum.class);
-            classes.put("MSSpectrum_charge", MSSpectrum_charge.class);
-            classes.put("MSSpectrum_mz", MSSpectrum_mz.class);
-            classes.put("MSSpectrum_abundance", MSSpectrum_abundance.class);
-            classes.put("MSSpectrum_ids", MSSpectrum_ids.class);
-        }
-        if (importIdDetails) {
-            classes.put("MSHits_pephits", MSHits_pephits.class);
-            classes.put("MSPepHit", MSPepHit.class);
-            classes.put("MSHits_mzhits", MSHits_mzhits.class);
-            classes.put("MSMZHit_annotation", MSMZHit_annotation.class);
-            classes.put("MSMZHit_ion", MSMZHit_ion.class);
-            classes.put("MSMZHit_moreion", MSMZHit_moreion.class);
-            classes.put("MSMZHit", MSMZHit.class);
-        }
     }
 
     /**
@@ -249,6 +272,251 @@ public class OmxParser {
             boolean importSpectra,
             boolean importIdDetails
     ) {
+        this(omxFilePath, modsFilePath, userModsFilePath, importSpectra, importIdDetails, null);
+    }
+
+    /**
+     * Initializes the parser and parses the omx file. Also parses the
+     * modification files (if any).
+     * <br><br>
+     * If a hit set callback is given, every MSHitSet is passed to the callback
+     * as soon as it is parsed and is not stored in the parserResult. The
+     * MSResponse_hitsets of the parserResult then stay empty, and the memory
+     * needed is independent of the number of hit sets in the file.
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @param hitSetCallback the callback receiving the hit sets, null to store
+     * the hit sets in the parserResult
+     */
+    public OmxParser(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            boolean importSpectra,
+            boolean importIdDetails,
+            OmxHitSetCallback hitSetCallback
+    ) {
+        this(omxFilePath, modsFilePath, userModsFilePath, importSpectra, importIdDetails, hitSetCallback, null, null, null, null, 0, null);
+    }
+
+    /**
+     * Initializes the parser and parses the omx file, reporting the progress
+     * to the given listener, see OmxParseListener. If the listener cancels the
+     * parsing, the parserResult stays null and isCanceled returns true. Also
+     * parses the modification files (if any).
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @param hitSetCallback the callback receiving the hit sets, null to store
+     * the hit sets in the parserResult
+     * @param parseListener the listener following the parsing
+     */
+    public OmxParser(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            boolean importSpectra,
+            boolean importIdDetails,
+            OmxHitSetCallback hitSetCallback,
+            OmxParseListener parseListener
+    ) {
+        this(omxFilePath, modsFilePath, userModsFilePath, importSpectra, importIdDetails, hitSetCallback, null, null, null, null, 0, parseListener);
+    }
+
+    /**
+     * Creates a parser and parses the omx file with all id details, except
+     * the MSHits_pephits and MSHits_mzhits sections which are skipped and
+     * loaded on demand by the given loader, see OmxHitDetailsLoader. Also
+     * parses the modification files (if any).
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param hitDetailsLoader the loader of the MSHits_pephits and
+     * MSHits_mzhits, created for the same omx file
+     * @return the parser
+     */
+    public static OmxParser withHitDetailsLoader(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            boolean importSpectra,
+            OmxHitDetailsLoader hitDetailsLoader
+    ) {
+        return new OmxParser(omxFilePath, modsFilePath, userModsFilePath, importSpectra, true, null, hitDetailsLoader, null, null, null, 0, null);
+    }
+
+    /**
+     * Creates a parser and parses the omx file with its spectra, except the
+     * MSSpectrum_mz and MSSpectrum_abundance sections which are skipped and
+     * loaded on demand by the given loader, see OmxSpectrumLoader. Also
+     * parses the modification files (if any).
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @param spectrumLoader the loader of the peaks, created for the same omx
+     * file
+     * @return the parser
+     */
+    public static OmxParser withSpectrumLoader(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            boolean importIdDetails,
+            OmxSpectrumLoader spectrumLoader
+    ) {
+        return new OmxParser(omxFilePath, modsFilePath, userModsFilePath, true, importIdDetails, null, null, spectrumLoader, null, null, 0, null);
+    }
+
+    /**
+     * Initializes the parser and parses the omx file, keeping only the hits
+     * accepted by the given filter, see OmxHitFilter. The rest of a rejected
+     * hit is skipped as soon as the filter rejects it, and the hit sets left
+     * without hits are dropped. Also parses the modification files (if any).
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param hitFilter the filter of the hits
+     */
+    public OmxParser(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            boolean importSpectra,
+            OmxHitFilter hitFilter
+    ) {
+        this(omxFilePath, modsFilePath, userModsFilePath, importSpectra, true, null, null, null, null, hitFilter, 0, null);
+    }
+
+    /**
+     * Initializes the parser and parses the omx file, keeping in each hit set
+     * only the given number of hits with the lowest e-values among the hits
+     * accepted by the given filter, the first hits of the file for equal
+     * e-values. A hit is skipped as soon as its e-value shows that it cannot
+     * be among the best hits, before its child objects are created. The hits
+     * kept stay in the order of the file. Also parses the modification files
+     * (if any).
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param hitFilter the filter of the hits, null to keep the best hits
+     * whatever their content
+     * @param maxHitsPerHitSet the maximal number of hits kept per hit set
+     */
+    public OmxParser(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            boolean importSpectra,
+            OmxHitFilter hitFilter,
+            int maxHitsPerHitSet
+    ) {
+        this(omxFilePath, modsFilePath, userModsFilePath, importSpectra, true, null, null, null, null, hitFilter, maxHitsPerHitSet, null);
+    }
+
+    /**
+     * Initializes the parser and parses the elements of the omx file selected
+     * by the given projection, all other elements are skipped without
+     * creating any object, see OmxProjection. Also parses the modification
+     * files (if any).
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param projection the elements to parse, e.g.
+     * OmxProjection.ACCESSION_EVALUE
+     */
+    public OmxParser(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            OmxProjection projection
+    ) {
+        this(omxFilePath, modsFilePath, userModsFilePath, true, true, null, null, null, projection, null, 0, null);
+    }
+
+    /**
+     * Initializes the parser and parses the omx file. Also parses the
+     * modification files (if any).
+     *
+     * @param omxFilePath path to the omx file
+     * @param modsFilePath path to the mods.xml file
+     * @param userModsFilePath path to the usermods.xml file
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @param hitSetCallback the callback receiving the hit sets, null to store
+     * the hit sets in the parserResult
+     * @param hitDetailsLoader the loader of the MSHits_pephits and
+     * MSHits_mzhits, null to parse them with the file
+     * @param spectrumLoader the loader of the MSSpectrum_mz and
+     * MSSpectrum_abundance, null to parse them with the file
+     * @param projection the elements to parse, null to parse the elements
+     * selected by importSpectra and importIdDetails
+     * @param hitFilter the filter of the hits, null to keep all the hits
+     * @param maxHitsPerHitSet the maximal number of hits kept per hit set, 0
+     * to keep all the hits
+     * @param parseListener the listener following the parsing, null if none
+     */
+    private OmxParser(
+            String omxFilePath,
+            String modsFilePath,
+            String userModsFilePath,
+            boolean importSpectra,
+            boolean importIdDetails,
+            OmxHitSetCallback hitSetCallback,
+            OmxHitDetailsLoader hitDetailsLoader,
+            OmxSpectrumLoader spectrumLoader,
+            OmxProjection projection,
+            OmxHitFilter hitFilter,
+            int maxHitsPerHitSet,
+            OmxParseListener parseListener
+    ) {
+
+        this.hitSetCallback = hitSetCallback;
+        this.hitDetailsLoader = hitDetailsLoader;
+        this.spectrumLoader = spectrumLoader;
+        if (spectrumLoader != null) {
+            // the peaks are loaded from the file, packing them would read them all
+            storeSpectra = false;
+        }
+        this.projection = projection;
+        ArrayList<OmxHitFilter> filters = new ArrayList<OmxHitFilter>();
+        if (hitFilter != null) {
+            filters.addAll(hitFilter.getComponents());
+            pruneHitSets = true;
+        }
+        if (maxHitsPerHitSet > 0) {
+            topHitsFilter = new OmxTopHitsFilter(maxHitsPerHitSet);
+            filters.add(topHitsFilter);
+        }
+        if (!filters.isEmpty()) {
+            hitFilters = filters.toArray(new OmxHitFilter[0]);
+            hitFiltersEvaluated = new boolean[hitFilters.length];
+        }
 
         File omxFile = null;
         File modsFile = null;
@@ -262,51 +530,37 @@ public class OmxParser {
         if (userModsFilePath != null) {
             userModsFile = new File(userModsFilePath);
         }
-        omssaModificationDetails = new HashMap();
-
         // parse modification files
-        if (modsFile != null && modsFile.getAbsolutePath().endsWith(".xml")) {
-            parseModificationFile(modsFile);
-        }
-
-        if (userModsFile != null && userModsFile.getAbsolutePath().endsWith(".xml")) {
-            parseModificationFile(userModsFile);
-        }
+        omssaModificationDetails = parseModificationFiles(modsFile, userModsFile);
 
         try {
-            XmlPullParserFactory factory = XmlPullParserFactory.newInstance(
-                    System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-            //factory.setNamespaceAware(true);
-            factory.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
-
-            XmlPullParser xpp = factory.newPullParser();
-
-            //write every class from which objects should be created into the hashmap classes
-            initializeClasses(importSpectra, importIdDetails);
+            //get the classes from which objects should be created
+            classes = OmxElementRegistry.getInstance(importSpectra, importIdDetails);
 
             logger.debug("Parsing file: " + omxFile);
 
-            Reader reader;
-            if (omxFile.getName().endsWith(".gz")) {
-
-                InputStream fileStream = new FileInputStream(omxFile);
-                InputStream gzipStream = new GZIPInputStream(fileStream);
-                Reader decoder = new InputStreamReader(gzipStream, ENCODING);
-
-                reader = new BufferedReader(decoder);
-
+            long t1 = System.currentTimeMillis();
+            OmxEvents.ParseEvent parseEvent = OmxEvents.parseStarted(omxFile);
+            OmxTokenizer tokenizer;
+            if (parseListener == null) {
+                tokenizer = createTokenizer(omxFile);
             } else {
-
-                reader = new BufferedReader(new FileReader(omxFile));
-
+                progressMonitor = new OmxProgressMonitor(parseListener, omxFile);
+                tokenizer = createTokenizer(omxFile, progressMonitor);
+            }
+            try {
+                processDocument(tokenizer, !importSpectra, !importIdDetails);
+            } finally {
+                tokenizer.close();
+                OmxEvents.parseFinished(parseEvent, elementCount);
             }
-
-            xpp.setInput(reader);
-            long t1 = System.currentTimeMillis();
-            processDocument(xpp, !importSpectra, !importIdDetails);
             long t2 = System.currentTimeMillis();
             long t3 = (t2 - t1) / 1000;
             logger.debug("finished after " + t3 + " seconds");
+        } catch (CancellationException e) {
+            logger.debug(e.getMessage());
+            reset();
+            canceled = true;
         } catch (XmlPullParserException e) {
             logger.error("Error parsing file: " + omxFile + " " + e.toString());
             e.printStackTrace();
@@ -316,6 +570,26 @@ public class OmxParser {
         }
     }
 
+    /**
+     * Initializes the parser without parsing any file. The events of the
+     * document are then given one at a time to processEvent, see
+     * OmxHitSetReader.
+     *
+     * @param importSpectra if false, the MSSpectrumset section of the omx file
+     * will be skipped
+     * @param importIdDetails if false only peptide sequence, modifications and
+     * e-values will be imported
+     * @param hitSetCallback the callback receiving the hit sets, null to store
+     * the hit sets in the parserResult
+     */
+    OmxParser(boolean importSpectra, boolean importIdDetails, OmxHitSetCallback hitSetCallback) {
+        this.hitSetCallback = hitSetCallback;
+        omssaModificationDetails = new HashMap<Integer, OmssaModification>();
+        classes = OmxElementRegistry.getInstance(importSpectra, importIdDetails);
+        // initialize lockStack:
+        lockStack.add(false);
+    }
+
     /**
      * Initializes the parser and parses the omx file. Also parses the
      * modification files (if any).
@@ -329,12 +603,144 @@ public class OmxParser {
     }
 
     /**
-     * Parses a mod.xml or usermod.xml file and builds a HashMap containing the
-     * modification details.
+     * Returns a new pull parser for omx files.
+     *
+     * @return a new pull parser for omx files
+     * @throws XmlPullParserException if the parser could not be created
+     */
+    static XmlPullParser createPullParser() throws XmlPullParserException {
+        XmlPullParserFactory factory = XmlPullParserFactory.newInstance(
+                System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+        //factory.setNamespaceAware(true);
+        factory.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        return factory.newPullParser();
+    }
+
+    /**
+     * Opens a tokenizer on the given omx file, see TOKENIZER_PROPERTY and
+     * createTokenizer(InputStream). Files ending with .gz are decompressed,
+     * see openStream.
+     *
+     * @param omxFile the omx file
+     * @return a tokenizer on the omx file
+     * @throws IOException if the file could not be opened
+     * @throws XmlPullParserException if the pull parser could not be created
+     */
+    static OmxTokenizer createTokenizer(File omxFile) throws IOException, XmlPullParserException {
+        return createTokenizer(omxFile, null);
+    }
+
+    /**
+     * Opens a tokenizer on the given omx file, read through the given
+     * progress monitor, see createTokenizer(File).
+     *
+     * @param omxFile the omx file
+     * @param progressMonitor the progress monitor of the file, null to read
+     * the file directly
+     * @return a tokenizer on the omx file
+     * @throws IOException if the file could not be opened
+     * @throws XmlPullParserException if the pull parser could not be created
+     */
+    static OmxTokenizer createTokenizer(File omxFile, OmxProgressMonitor progressMonitor) throws IOException, XmlPullParserException {
+        OmxEvents.FileOpenEvent event = OmxEvents.fileOpenStarted(omxFile);
+        OmxTokenizer tokenizer = createTokenizer(progressMonitor == null ? openStream(omxFile) : progressMonitor.open());
+        OmxEvents.fileOpenFinished(event, tokenizer);
+        return tokenizer;
+    }
+
+    /**
+     * Opens a stream on the content of the given omx file. Block compressed
+     * files ending with .gz, see BlockGzipOutputStream, are inflated ahead in
+     * parallel, other files ending with .gz are decompressed sequentially.
+     *
+     * @param omxFile the omx file
+     * @return a stream on the content of the file
+     * @throws IOException if the file could not be opened
+     */
+    static InputStream openStream(File omxFile) throws IOException {
+        if (omxFile.getName().endsWith(".gz")) {
+            if (BlockGzipIndex.isBlockGzip(omxFile)) {
+                return BlockGzipInputStream.openParallel(omxFile);
+            }
+            return new GZIPInputStream(new FileInputStream(omxFile), 64 * 1024);
+        }
+        return new FileInputStream(omxFile);
+    }
+
+    /**
+     * Opens a tokenizer on the given omx document. The XPP3 pull parser is used
+     * if selected by TOKENIZER_PROPERTY or if the encoding of the document is
+     * not supported by OmxByteTokenizer, see OmxByteTokenizer.isSupported, and
+     * then decodes the document with its declared encoding. This is decided
+     * before the first event, so a parse never has to restart with another
+     * tokenizer.
+     *
+     * @param inputStream the stream on the omx document
+     * @return a tokenizer on the omx document
+     * @throws IOException if the stream could not be read
+     * @throws XmlPullParserException if the pull parser could not be created
+     */
+    static OmxTokenizer createTokenizer(InputStream inputStream) throws IOException, XmlPullParserException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
+        if (!"xpp".equals(System.getProperty(TOKENIZER_PROPERTY)) && OmxByteTokenizer.isSupported(bufferedStream)) {
+            return new OmxByteTokenizer(bufferedStream);
+        }
+        return new XppOmxTokenizer(bufferedStream);
+    }
+
+    /**
+     * Clears the parsing state before parsing the document again.
+     */
+    private void reset() {
+        objectStack.clear();
+        handlerStack.clear();
+        nameStack.clear();
+        lockStack.clear();
+        projectionStack.clear();
+        currentHit = null;
+        if (topHitsFilter != null) {
+            topHitsFilter.clear();
+        }
+        msRequests.clear();
+        responseIndex = -1;
+        parserResult = null;
+    }
+
+    /**
+     * Parses the mods.xml and usermods.xml files and builds a HashMap
+     * containing the modification details. Files not ending with .xml are
+     * ignored.
+     *
+     * @param modsFile the mods.xml file, can be null
+     * @param userModsFile the usermods.xml file, can be null
+     * @return the modification details indexed by modification number
+     */
+    static HashMap<Integer, OmssaModification> parseModificationFiles(File modsFile, File userModsFile) {
+
+        HashMap<Integer, OmssaModification> omssaModificationDetails = new HashMap<Integer, OmssaModification>();
+
+        if (modsFile != null && modsFile.getAbsolutePath().endsWith(".xml")) {
+            parseModificationFile(modsFile, omssaModificationDetails);
+        }
+
+        if (userModsFile != null && userModsFile.getAbsolutePath().endsWith(".xml")) {
+            parseModificationFile(userModsFile, omssaModificationDetails);
+        }
+
+        return omssaModificationDetails;
+    }
+
+    /**
+     * Parses a mod.xml or usermod.xml file and adds the modification details
+     * to the given HashMap.
      *
      * @param modsFile the path to the mods.xml or usermods.xml file
+     * @param omssaModificationDetails the modification details
      */
-    private void parseModificationFile(File modsFile) {
+    private static void parseModificationFile(File modsFile, HashMap<Integer, OmssaModification> omssaModificationDetails) {
+
+        OmxEvents.ModificationFileEvent event = OmxEvents.modificationFileStarted(modsFile);
+        int modificationCount = 0;
 
         try {
             //get the factory
@@ -415,11 +821,14 @@ public class OmxParser {
                     omssaModificationDetails.put(modNumber,
                             new OmssaModification(modNumber, modName,
                                     modMonoMass, modResidues, modType));
+                    modificationCount++;
                 }
             }
         } catch (Exception e) {
             logger.error("Error parsing the modification file: " + e.toString());
             e.printStackTrace();
+        } finally {
+            OmxEvents.modificationFileFinished(event, modificationCount);
         }
     }
 
@@ -437,37 +846,230 @@ public class OmxParser {
      */
     public void processDocument(XmlPullParser xpp, boolean skipMSRequest_spectra, boolean skipPeptideDetails)
             throws XmlPullParserException, IOException {
+        processDocument(new XppOmxTokenizer(xpp), skipMSRequest_spectra, skipPeptideDetails);
+    }
+
+    /**
+     * Process the document given by the tokenizer.
+     *
+     * @param tokenizer the tokenizer
+     * @param skipMSRequest_spectra if true, the MSRequest_spectra section of
+     * the omx file will be skipped
+     * @param skipPeptideDetails if true, the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @throws org.xmlpull.v1.XmlPullParserException if an
+     * XmlPullParserException is thrown
+     * @throws java.io.IOException if an IOException is thrown
+     */
+    public void processDocument(OmxTokenizer tokenizer, boolean skipMSRequest_spectra, boolean skipPeptideDetails)
+            throws XmlPullParserException, IOException {
 
         // initialize lockStack:
         lockStack.add(false);
+        if (projection != null) {
+            projectionStack.push(projection.getRoot());
+        }
 
         int eventType;
 
-        while ((eventType = xpp.next()) != XmlPullParser.END_DOCUMENT) {
+        while ((eventType = tokenizer.next()) != XmlPullParser.END_DOCUMENT) {
             if (eventType == XmlPullParser.START_TAG) {
-                String name = xpp.getName();
-                if (skipMSRequest_spectra && name.equals("MSRequest_spectra")) {
-                    while (!(eventType == XmlPullParser.END_TAG && name.equals("MSRequest_spectra"))) {
-                        eventType = xpp.next();
-                        name = xpp.getName();
-                    }
-                } else if (skipPeptideDetails && name.equals("MSHits_pephits")) {
-                    while (!(eventType == XmlPullParser.END_TAG && name.equals("MSHits_pephits"))) {
-                        eventType = xpp.next();
-                        name = xpp.getName();
+                elementCount++;
+            }
+            processEvent(tokenizer, eventType, skipMSRequest_spectra, skipPeptideDetails);
+            if (progressMonitor != null) {
+                progressMonitor.tokenParsed();
+            }
+        }
+
+        if (progressMonitor != null) {
+            progressMonitor.finished();
+        }
+    }
+
+    /**
+     * Process the current event of the XmlPullParser.
+     *
+     * @param xpp the XML parser
+     * @param eventType the type of the current event
+     * @param skipMSRequest_spectra if true, the MSRequest_spectra section of
+     * the omx file will be skipped
+     * @param skipPeptideDetails if true, the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @throws org.xmlpull.v1.XmlPullParserException if an
+     * XmlPullParserException is thrown
+     * @throws java.io.IOException if an IOException is thrown
+     */
+    public void processEvent(XmlPullParser xpp, int eventType, boolean skipMSRequest_spectra, boolean skipPeptideDetails)
+            throws XmlPullParserException, IOException {
+        processEvent(new XppOmxTokenizer(xpp), eventType, skipMSRequest_spectra, skipPeptideDetails);
+    }
+
+    /**
+     * Process the current token of the tokenizer. White space text is ignored
+     * without creating a String.
+     *
+     * @param tokenizer the tokenizer
+     * @param eventType the type of the current token
+     * @param skipMSRequest_spectra if true, the MSRequest_spectra section of
+     * the omx file will be skipped
+     * @param skipPeptideDetails if true, the sections MSHits_pephits,
+     * MSHits_mzhits of the omx file will be skipped
+     * @throws org.xmlpull.v1.XmlPullParserException if an
+     * XmlPullParserException is thrown
+     * @throws java.io.IOException if an IOException is thrown
+     */
+    public void processEvent(OmxTokenizer tokenizer, int eventType, boolean skipMSRequest_spectra, boolean skipPeptideDetails)
+            throws XmlPullParserException, IOException {
+
+        if (eventType == XmlPullParser.START_TAG) {
+            String name = tokenizer.getName();
+            if (projection != null) {
+                OmxProjection.Node node = projectionStack.peek().getChild(name);
+                if (node == null) {
+                    skipElement(tokenizer);
+                    return;
+                }
+                projectionStack.push(node);
+            }
+            if (skipMSRequest_spectra && name.equals("MSRequest_spectra")) {
+                while (!(eventType == XmlPullParser.END_TAG && name.equals("MSRequest_spectra"))) {
+                    eventType = tokenizer.next();
+                    name = tokenizer.getName();
+                }
+            } else if ((skipPeptideDetails || hitDetailsLoader != null) && name.equals("MSHits_pephits")) {
+                while (!(eventType == XmlPullParser.END_TAG && name.equals("MSHits_pephits"))) {
+                    eventType = tokenizer.next();
+                    name = tokenizer.getName();
+                }
+            } else if ((skipPeptideDetails || hitDetailsLoader != null) && name.equals("MSHits_mzhits")) {
+                while (!(eventType == XmlPullParser.END_TAG && name.equals("MSHits_mzhits"))) {
+                    eventType = tokenizer.next();
+                    name = tokenizer.getName();
+                }
+            } else if (spectrumLoader != null && (name.equals("MSSpectrum_mz") || name.equals("MSSpectrum_abundance"))) {
+                String skippedName = name;
+                while (!(eventType == XmlPullParser.END_TAG && name.equals(skippedName))) {
+                    eventType = tokenizer.next();
+                    name = tokenizer.getName();
+                }
+            } else if (tokenizer.getAttributeCount() > 0) {
+                processStartElement(name, tokenizer.getAttributeName(0), tokenizer.getAttributeValue(0), !skipPeptideDetails);
+            } else {
+                processStartElement(name, null, null, !skipPeptideDetails);
+            }
+            if (hitFilters != null && name.equals("MSHits")) {
+                hitStarted();
+            }
+        } else if (eventType == XmlPullParser.END_TAG) {
+            if (projection != null) {
+                projectionStack.pop();
+            }
+            if (hitFilters != null && !lockStack.peek() && !objectStack.isEmpty()) {
+                Object peek = objectStack.peek();
+                if (peek == currentHit) {
+                    currentHit = null;
+                    if (!acceptHit(true)) {
+                        discardElement();
+                        return;
                     }
-                } else if (skipPeptideDetails && name.equals("MSHits_mzhits")) {
-                    while (!(eventType == XmlPullParser.END_TAG && name.equals("MSHits_mzhits"))) {
-                        eventType = xpp.next();
-                        name = xpp.getName();
+                }
+                if (topHitsFilter != null && peek.getClass() == MSHits.class) {
+                    discardElement();
+                    topHitsFilter.offer((MSHits) peek);
+                    return;
+                } else if (topHitsFilter != null && peek.getClass() == MSHitSet_hits.class) {
+                    topHitsFilter.drainTo(((MSHitSet_hits) peek).MSHits);
+                } else if (pruneHitSets && peek.getClass() == MSHitSet.class && ((MSHitSet) peek).MSHitSet_hits.MSHits.isEmpty()) {
+                    discardElement();
+                    return;
+                }
+            }
+            processEndElement(!skipPeptideDetails);
+            if (currentHit != null && nameStack.size() == currentHitDepth) {
+                hitElements.add(tokenizer.getName());
+                if (!acceptHit(false)) {
+                    currentHit = null;
+                    skipElement(tokenizer);
+                    if (projection != null) {
+                        projectionStack.pop();
                     }
-                } else {
-                    processStartElement(xpp, !skipPeptideDetails);
+                    discardElement();
+                }
+            }
+        } else if (eventType == XmlPullParser.TEXT && !tokenizer.isWhitespace()) {
+            processText(tokenizer.getText(), !skipPeptideDetails);
+        }
+    }
+
+    /**
+     * Starts the evaluation of the hit filters on the MSHits just started.
+     */
+    private void hitStarted() {
+        if (!lockStack.peek() && objectStack.peek().getClass() == MSHits.class) {
+            currentHit = (MSHits) objectStack.peek();
+            currentHitDepth = nameStack.size();
+            Arrays.fill(hitFiltersEvaluated, false);
+            hitFiltersEvaluatedCount = 0;
+            hitElements.clear();
+        }
+    }
+
+    /**
+     * Evaluates the hit filters not evaluated yet on the current hit. Once
+     * all the filters accepted the hit, it is not followed anymore.
+     *
+     * @param end if true all the filters are evaluated, otherwise only the
+     * filters whose elements are parsed
+     * @return false if the current hit is rejected
+     */
+    private boolean acceptHit(boolean end) {
+        MSHits msHits = currentHit;
+        for (int i = 0; i < hitFilters.length; i++) {
+            if (!hitFiltersEvaluated[i] && (end || hitElements.containsAll(hitFilters[i].getElements()))) {
+                hitFiltersEvaluated[i] = true;
+                hitFiltersEvaluatedCount++;
+                if (!hitFilters[i].accept(msHits)) {
+                    return false;
                 }
+            }
+        }
+        if (hitFiltersEvaluatedCount == hitFilters.length) {
+            currentHit = null;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the element on top of the stacks, its object is not set in its
+     * parent.
+     */
+    private void discardElement() {
+        objectStack.pop();
+        handlerStack.pop();
+        lockStack.pop();
+        nameStack.pop();
+    }
+
+    /**
+     * Skips the element started by the current token of the tokenizer, up to
+     * and including its end tag.
+     *
+     * @param tokenizer the tokenizer
+     * @throws org.xmlpull.v1.XmlPullParserException if the document ends
+     * before the element
+     * @throws java.io.IOException if an IOException is thrown
+     */
+    private static void skipElement(OmxTokenizer tokenizer) throws XmlPullParserException, IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int eventType = tokenizer.next();
+            if (eventType == XmlPullParser.START_TAG) {
+                depth++;
             } else if (eventType == XmlPullParser.END_TAG) {
-                processEndElement(xpp, !skipPeptideDetails);
-            } else if (eventType == XmlPullParser.TEXT) {
-                processText(xpp, !skipPeptideDetails);
+                depth--;
+            } else if (eventType == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of document in " + tokenizer.getName());
             }
         }
     }
@@ -479,34 +1081,43 @@ public class OmxParser {
      * @param importDetails if true the details will be imported
      */
     public void processEndElement(XmlPullParser xpp, boolean importDetails) {
+        processEndElement(importDetails);
+    }
+
+    /**
+     * Process the end of the current element.
+     *
+     * @param importDetails if true the details will be imported
+     */
+    void processEndElement(boolean importDetails) {
 
         if (!objectStack.isEmpty() && (!lockStack.peek())) {
 
             Object pop = objectStack.pop();
+            handlerStack.pop();
 
             if (!objectStack.isEmpty()) {
 
                 try {
                     Object peek = objectStack.peek();
-                    Class<?> c = peek.getClass();
-                    String method = "set" + nameStack.peek();
-                    if (importDetails || shallExecute(c, method, pop)) {
-                        Method setX = c.getDeclaredMethod(method, pop.getClass());
-                        setX.invoke(peek, pop);
+                    OmxElementHandler handler = handlerStack.peek();
+                    String name = nameStack.peek();
+                    if (hitSetCallback != null && pop.getClass() == MSHitSet.class) {
+                        if (importDetails || shallExecute(handler.getType(), name, pop)) {
+                            hitSetCallback.hitSetParsed((MSHitSet) pop, getSearchSettings(responseIndex), responseIndex);
+                        }
+                    } else if (importDetails || shallExecute(handler.getType(), name, pop)) {
+                        OmxElementHandler.Property property = handler.getProperty(name);
+                        if (property == null || !property.accepts(pop)) {
+                            logger.error("Error processing the end element: no setter for " + name + " in " + handler.getType().getName());
+                        } else {
+                            property.set(peek, pop);
+                        }
                     }
                 } catch (EmptyStackException e) {
                     logger.error("Error processing the end element: " + e.toString());
                     e.printStackTrace();
-                } catch (NoSuchMethodException e) {
-                    logger.error("Error processing the end element: " + e.toString());
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    logger.error("Error processing the end element: " + e.toString());
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    logger.error("Error processing the end element: " + e.toString());
-                    e.printStackTrace();
-                } catch (ClassCastException e) {
+                } catch (RuntimeException e) {
                     logger.error("Error processing the end element: " + e.toString());
                     e.printStackTrace();
                 }
@@ -514,6 +1125,12 @@ public class OmxParser {
 
             if (pop.getClass().equals(MSSearch.class)) {
                 parserResult = (MSSearch) pop;
+            } else if (pop.getClass() == MSRequest.class) {
+                msRequests.add((MSRequest) pop);
+            } else if (progressMonitor != null && pop.getClass() == MSHitSet.class) {
+                progressMonitor.hitSetParsed();
+            } else if (progressMonitor != null && pop.getClass() == MSSpectrum.class) {
+                progressMonitor.spectrumParsed();
             }
         }
 
@@ -528,53 +1145,78 @@ public class OmxParser {
      * @param importDetails if true the details will be imported
      */
     public void processStartElement(XmlPullParser xpp, boolean importDetails) {
+        if (xpp.getAttributeCount() > 0) {
+            processStartElement(xpp.getName(), xpp.getAttributeName(0), xpp.getAttributeValue(0), importDetails);
+        } else {
+            processStartElement(xpp.getName(), null, null, importDetails);
+        }
+    }
 
-        nameStack.push(xpp.getName());
-
-        try {
-            if (!classes.containsKey(nameStack.peek())) {
-                lockStack.add(true);
-            } else {
-                Class<?> c = classes.get(nameStack.peek());
-                Object neu = c.newInstance();
+    /**
+     * Process the start of an element.
+     *
+     * @param name the name of the element
+     * @param attributeName the name of the first attribute of the element,
+     * null if none
+     * @param attributeValue the value of the first attribute of the element,
+     * null if none
+     * @param importDetails if true the details will be imported
+     */
+    void processStartElement(String name, String attributeName, String attributeValue, boolean importDetails) {
+
+        nameStack.push(name);
+
+        OmxElementHandler handler = classes.getHandler(name);
+
+        if (handler == null) {
+            lockStack.add(true);
+        } else {
+            try {
+                Object neu = handler.newInstance();
+                if (neu.getClass() == MSResponse.class) {
+                    responseIndex++;
+                } else if (storeSpectra && neu.getClass() == MSSpectrumset.class) {
+                    ((MSSpectrumset) neu).MSSpectrum = new OmxSpectrumStore();
+                } else if (hitDetailsLoader != null && neu.getClass() == MSHitSet.class) {
+                    hitDetailsLoader.hitSetStarted((MSHitSet) neu, responseIndex);
+                } else if (hitDetailsLoader != null && neu.getClass() == MSHits.class) {
+                    hitDetailsLoader.hitStarted((MSHits) neu);
+                } else if (spectrumLoader != null && neu.getClass() == MSSpectrum.class) {
+                    spectrumLoader.spectrumStarted((MSSpectrum) neu, msRequests.size());
+                }
                 objectStack.push(neu);
+                handlerStack.push(handler);
                 lockStack.add(false);
+            } catch (RuntimeException e) {
+                logger.error("Error processing the start element: " + e.toString());
+                e.printStackTrace();
             }
-        } catch (InstantiationException e) {
-            logger.error("Error processing the start element: " + e.toString());
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            logger.error("Error processing the start element: " + e.toString());
-            e.printStackTrace();
         }
 
         if (!lockStack.peek()) {
 
-            if (xpp.getAttributeCount() > 0) {
-                attribute = xpp.getAttributeName(0);
+            if (attributeName != null) {
+                attribute = attributeName;
                 if (attribute.equals("value")) {
-                    value = xpp.getAttributeValue(0);
+                    value = attributeValue;
 
                     try {
                         Object peek = objectStack.peek();
-                        Class<?> c = peek.getClass();
-                        String method = "set" + nameStack.peek();
-                        if (importDetails || shallExecute(c, method, peek)) {
-                            Method setX = c.getDeclaredMethod(method, String.class);
-                            setX.invoke(peek, value);
-                            attribute = "";
-                            value = "";
+                        OmxElementHandler peekHandler = handlerStack.peek();
+                        if (importDetails || shallExecute(peekHandler.getType(), name, peek)) {
+                            OmxElementHandler.Property property = peekHandler.getProperty(name);
+                            if (property == null || property.getValueType() != String.class) {
+                                logger.error("Error processing the start element: no setter for " + name + " in " + peekHandler.getType().getName());
+                            } else {
+                                property.set(peek, value);
+                                attribute = "";
+                                value = "";
+                            }
                         }
                     } catch (EmptyStackException e) {
                         logger.error("Error processing the start element: " + e.toString());
                         e.printStackTrace();
-                    } catch (IllegalAccessException e) {
-                        logger.error("Error processing the start element: " + e.toString());
-                        e.printStackTrace();
-                    } catch (NoSuchMethodException e) {
-                        logger.error("Error processing the start element: " + e.toString());
-                        e.printStackTrace();
-                    } catch (InvocationTargetException e) {
+                    } catch (RuntimeException e) {
                         logger.error("Error processing the start element: " + e.toString());
                         e.printStackTrace();
                     }
@@ -592,31 +1234,39 @@ public class OmxParser {
      * XmlPullParserException is thrown
      */
     public void processText(XmlPullParser xpp, boolean importDetails) throws XmlPullParserException {
+        processText(xpp.getText(), importDetails);
+    }
+
+    /**
+     * Process the text of the current element.
+     *
+     * @param rawText the text, including surrounding white space
+     * @param importDetails if true the details will be imported
+     */
+    void processText(String rawText, boolean importDetails) {
 
         Boolean lockStackBuffer = lockStack.pop();
         if (!lockStack.peek()) {
 
-            String text = xpp.getText().trim();
+            String text = rawText.trim();
 
             if (!text.equals("")) {
                 try {
                     Object peek = objectStack.peek();
-                    Class<?> c = peek.getClass();
-                    String method = "set" + nameStack.peek();
-                    if (importDetails || shallExecute(c, method, peek)) {
-                        Method setX = c.getDeclaredMethod(method, String.class);
-                        setX.invoke(peek, text);
+                    OmxElementHandler handler = handlerStack.peek();
+                    String name = nameStack.peek();
+                    if (importDetails || shallExecute(handler.getType(), name, peek)) {
+                        OmxElementHandler.Property property = handler.getProperty(name);
+                        if (property == null || property.getValueType() != String.class) {
+                            logger.error("Error processing the text element: no setter for " + name + " in " + handler.getType().getName());
+                        } else {
+                            property.set(peek, text);
+                        }
                     }
                 } catch (EmptyStackException e) {
                     logger.error("Error processing the text element: " + e.toString());
                     e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    logger.error("Error processing the text element: " + e.toString());
-                    e.printStackTrace();
-                } catch (NoSuchMethodException e) {
-                    logger.error("Error processing the text element: " + e.toString());
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
+                } catch (RuntimeException e) {
                     logger.error("Error processing the text element: " + e.toString());
                     e.printStackTrace();
                 }
@@ -626,6 +1276,22 @@ public class OmxParser {
         lockStack.push(lockStackBuffer);
     }
 
+    /**
+     * Returns the search settings of the MSRequest with the given index, null
+     * if not found. The MSSearch_request section precedes the
+     * MSSearch_response section in the omx file, the settings are therefore
+     * known when the hit sets of the corresponding MSResponse are parsed.
+     *
+     * @param requestIndex the index of the MSRequest
+     * @return the search settings of the MSRequest
+     */
+    private MSSearchSettings getSearchSettings(int requestIndex) {
+        if (requestIndex < 0 || requestIndex >= msRequests.size()) {
+            return null;
+        }
+        return msRequests.get(requestIndex).MSRequest_settings.MSSearchSettings;
+    }
+
     /**
      * Returns a HashMap of the modification details where the keys are the
      * modification numbers and the elements are OmssaModification-objects.
@@ -637,91 +1303,102 @@ public class OmxParser {
     }
 
     /**
-     * Indicates whether the given method shall be executed when not importing
-     * id details.
+     * Indicates whether the parsing was canceled by the parse listener.
+     *
+     * @return true if the parsing was canceled
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Indicates whether the setter for the given element shall be executed
+     * when not importing id details. OmxProjection.ID_SUMMARY selects the
+     * same elements, but skips the others without creating any object and
+     * keeps the hit sets without hits.
      *
      * @param c the class being imported
-     * @param method the method to execute
+     * @param name the name of the element to set
      * @param object the object to be stored
-     * @return true if method shall be executed
+     * @return true if the setter shall be executed
      */
-    private boolean shallExecute(Class<?> c, String method, Object object) {
+    private boolean shallExecute(Class<?> c, String name, Object object) {
         // save the file name
-        if (c == MSSearch.class && method.equals("setMSSearch_request")) {
+        if (c == MSSearch.class && name.equals("MSSearch_request")) {
             return true;
         }
-        if (c == MSSearch_request.class && method.equals("setMSRequest")) {
+        if (c == MSSearch_request.class && name.equals("MSRequest")) {
             return true;
         }
-        if (c == MSRequest.class && method.equals("setMSRequest_settings")) {
+        if (c == MSRequest.class && name.equals("MSRequest_settings")) {
             return true;
         }
-        if (c == MSRequest_settings.class && method.equals("setMSSearchSettings")) {
+        if (c == MSRequest_settings.class && name.equals("MSSearchSettings")) {
             return true;
         }
-        if (c == MSSearchSettings.class && method.equals("setMSSearchSettings_infiles")) {
+        if (c == MSSearchSettings.class && name.equals("MSSearchSettings_infiles")) {
             return true;
         }
-        if (c == MSSearchSettings_infiles.class && method.equals("setMSSearchSettings_infiles")) {
+        if (c == MSSearchSettings_infiles.class && name.equals("MSSearchSettings_infiles")) {
             return true;
         }
-        if (c == MSSearchSettings_infiles.class && method.equals("setMSInFile")) {
+        if (c == MSSearchSettings_infiles.class && name.equals("MSInFile")) {
             return true;
         }
-        if (c == MSInFile.class && method.equals("setMSInFile_infile")) {
+        if (c == MSInFile.class && name.equals("MSInFile_infile")) {
             return true;
         }
         // save the peptide sequence, modification and e-value
-        if (c == MSSearch.class && method.equals("setMSSearch_response")) {
+        if (c == MSSearch.class && name.equals("MSSearch_response")) {
             return true;
         }
-        if (c == MSSearch_response.class && method.equals("setMSResponse")) {
+        if (c == MSSearch_response.class && name.equals("MSResponse")) {
             return true;
         }
-        if (c == MSResponse.class && method.equals("setMSResponse_hitsets")) {
+        if (c == MSResponse.class && name.equals("MSResponse_hitsets")) {
             return true;
         }
-        if (c == MSResponse_hitsets.class && method.equals("setMSHitSet")) {
+        if (c == MSResponse_hitsets.class && name.equals("MSHitSet")) {
             MSHitSet msHitSet = (MSHitSet) object;
             return !msHitSet.MSHitSet_hits.MSHits.isEmpty();
         }
-        if (c == MSHitSet.class && method.equals("setMSHitSet_number")) {
+        if (c == MSHitSet.class && name.equals("MSHitSet_number")) {
             return true;
         }
-        if (c == MSHitSet.class && method.equals("setMSHitSet_hits")) {
+        if (c == MSHitSet.class && name.equals("MSHitSet_hits")) {
             return true;
         }
-        if (c == MSHitSet_hits.class && method.equals("setMSHits")) {
+        if (c == MSHitSet_hits.class && name.equals("MSHits")) {
             return true;
         }
-        if (c == MSHitSet.class && method.equals("setMSHitSet_ids")) {
+        if (c == MSHitSet.class && name.equals("MSHitSet_ids")) {
             return true;
         }
-        if (c == MSHits.class && method.equals("setMSHits_evalue")) {
+        if (c == MSHits.class && name.equals("MSHits_evalue")) {
             return true;
         }
-        if (c == MSHits.class && method.equals("setMSHits_charge")) {
+        if (c == MSHits.class && name.equals("MSHits_charge")) {
             return true;
         }
-        if (c == MSHits.class && method.equals("setMSHits_pepstring")) {
+        if (c == MSHits.class && name.equals("MSHits_pepstring")) {
             return true;
         }
-        if (c == MSHits.class && method.equals("setMSHits_mods")) {
+        if (c == MSHits.class && name.equals("MSHits_mods")) {
             return true;
         }
-        if (c == MSHits_mods.class && method.equals("setMSModHit")) {
+        if (c == MSHits_mods.class && name.equals("MSModHit")) {
             return true;
         }
-        if (c == MSModHit.class && method.equals("setMSModHit_site")) {
+        if (c == MSModHit.class && name.equals("MSModHit_site")) {
             return true;
         }
-        if (c == MSModHit.class && method.equals("setMSModHit_modtype")) {
+        if (c == MSModHit.class && name.equals("MSModHit_modtype")) {
             return true;
         }
-        if (c == MSModHit_modtype.class && method.equals("setMSMod")) {
+        if (c == MSModHit_modtype.class && name.equals("MSMod")) {
             return true;
         }
-        if (c == MSHitSet_ids.class && method.equals("setMSHitSet_ids_E")) {
+        if (c == MSHitSet_ids.class && name.equals("MSHitSet_ids_E")) {
             return true;
         }
         return false;
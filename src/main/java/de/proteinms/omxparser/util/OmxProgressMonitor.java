@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Counts the bytes read and the objects parsed from an omx file, and reports
+ * them to an OmxParseListener. The listener is called at most every
+ * REPORT_INTERVAL, and asked whether to cancel every CHECK_INTERVAL tokens.
+ */
+class OmxProgressMonitor {
+
+    /**
+     * The minimal time between two reports in nanoseconds.
+     */
+    private static final long REPORT_INTERVAL = 200000000L;
+    /**
+     * The number of tokens between two checks, a power of two.
+     */
+    private static final int CHECK_INTERVAL = 4096;
+    /**
+     * The listener.
+     */
+    private final OmxParseListener listener;
+    /**
+     * The omx file.
+     */
+    private final File omxFile;
+    /**
+     * The size of the file.
+     */
+    private final long totalBytes;
+    /**
+     * The stream counting the bytes read from the file, null for block
+     * compressed files.
+     */
+    private CountingInputStream countingStream;
+    /**
+     * The stream on a block compressed file, null for other files.
+     */
+    private BlockGzipInputStream blockGzipStream;
+    /**
+     * The time the parsing started.
+     */
+    private long startTime;
+    /**
+     * The time of the last report.
+     */
+    private long lastReport;
+    /**
+     * The number of tokens parsed.
+     */
+    private int tokens;
+    /**
+     * The number of hit sets parsed.
+     */
+    private int hitSets;
+    /**
+     * The number of spectra parsed.
+     */
+    private int spectra;
+
+    /**
+     * Constructor.
+     *
+     * @param listener the listener
+     * @param omxFile the omx file
+     */
+    OmxProgressMonitor(OmxParseListener listener, File omxFile) {
+        this.listener = listener;
+        this.omxFile = omxFile;
+        this.totalBytes = omxFile.length();
+    }
+
+    /**
+     * Opens a stream on the content of the file, decompressed if the file
+     * ends with .gz, see OmxParser.openStream, and starts counting from zero.
+     *
+     * @return a stream on the content of the file
+     * @throws IOException if the file could not be opened
+     */
+    InputStream open() throws IOException {
+        countingStream = null;
+        blockGzipStream = null;
+        startTime = System.nanoTime();
+        lastReport = startTime;
+        tokens = 0;
+        hitSets = 0;
+        spectra = 0;
+        if (omxFile.getName().endsWith(".gz")) {
+            if (BlockGzipIndex.isBlockGzip(omxFile)) {
+                blockGzipStream = BlockGzipInputStream.openParallel(omxFile);
+                return blockGzipStream;
+            }
+            countingStream = new CountingInputStream(new FileInputStream(omxFile));
+            return new GZIPInputStream(countingStream, 64 * 1024);
+        }
+        countingStream = new CountingInputStream(new FileInputStream(omxFile));
+        return countingStream;
+    }
+
+    /**
+     * Called by the parser after every token.
+     *
+     * @throws CancellationException if the listener canceled the parsing
+     */
+    void tokenParsed() {
+        if ((++tokens & (CHECK_INTERVAL - 1)) == 0) {
+            long now = System.nanoTime();
+            if (now - lastReport >= REPORT_INTERVAL) {
+                lastReport = now;
+                listener.parseProgress(getProgress(now, false));
+            }
+            if (listener.isCanceled()) {
+                throw new CancellationException("Parsing canceled: " + omxFile);
+            }
+        }
+    }
+
+    /**
+     * Called by the parser when a hit set was parsed.
+     */
+    void hitSetParsed() {
+        hitSets++;
+    }
+
+    /**
+     * Called by the parser when a spectrum was parsed.
+     */
+    void spectrumParsed() {
+        spectra++;
+    }
+
+    /**
+     * Called by the parser when the end of the document is reached.
+     */
+    void finished() {
+        listener.parseProgress(getProgress(System.nanoTime(), true));
+    }
+
+    /**
+     * Returns the current progress.
+     *
+     * @param now the current time
+     * @param finished true if the end of the document is reached
+     * @return the current progress
+     */
+    private OmxParseProgress getProgress(long now, boolean finished) {
+        long bytesRead = 0;
+        if (countingStream != null) {
+            bytesRead = countingStream.count;
+        } else if (blockGzipStream != null) {
+            bytesRead = blockGzipStream.getCompressedPosition();
+        }
+        return new OmxParseProgress(bytesRead, totalBytes, hitSets, spectra, now - startTime, finished);
+    }
+
+    /**
+     * Stream counting the bytes read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * The number of bytes read.
+         */
+        private long count = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param in the stream read
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result >= 0) {
+                count++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                count += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            count += result;
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The elements of an omx file to materialize, given as paths of XML Tags
+ * from the root, e.g.
+ * "MSSearch/MSSearch_response/MSResponse/MSResponse_hitsets/MSHitSet/MSHitSet_hits/MSHits/MSHits_evalue".
+ * An element is parsed if it is on one of the paths, its whole subtree is
+ * parsed if it ends one of the paths. All other elements are skipped by the
+ * parser without creating any object, see OmxParser.
+ * <br><br>
+ * The MSSpectrum_number and MSHitSet_number, used as keys of the spectra and
+ * hit sets, are always parsed with the MSSpectrum and MSHitSet.
+ * <br><br>
+ * A projection is immutable and can be shared by parsers running in
+ * parallel.
+ */
+public class OmxProjection {
+
+    /**
+     * The path of the MSHits.
+     */
+    private static final String HITS = "MSSearch/MSSearch_response/MSResponse/MSResponse_hitsets/MSHitSet/MSHitSet_hits/MSHits";
+    /**
+     * The path of the MSSpectrum.
+     */
+    private static final String SPECTRUM = "MSSearch/MSSearch_request/MSRequest/MSRequest_spectra/MSSpectrumset/MSSpectrum";
+    /**
+     * The path of the MSSearchSettings.
+     */
+    private static final String SETTINGS = "MSSearch/MSSearch_request/MSRequest/MSRequest_settings/MSSearchSettings";
+    /**
+     * The element parsed with a parent element, indexed by parent.
+     */
+    private static final String[][] KEYS = {
+        {"MSSpectrum", "MSSpectrum_number"},
+        {"MSHitSet", "MSHitSet_number"}};
+    /**
+     * The elements parsed when the id details are not imported, see
+     * OmxParser: the input file names, and the ids, peptide sequence,
+     * modifications, charge and e-value of the hits.
+     */
+    public static final OmxProjection ID_SUMMARY = new OmxProjection(
+            SETTINGS + "/MSSearchSettings_infiles",
+            "MSSearch/MSSearch_response/MSResponse/MSResponse_hitsets/MSHitSet/MSHitSet_ids",
+            HITS + "/MSHits_evalue",
+            HITS + "/MSHits_charge",
+            HITS + "/MSHits_pepstring",
+            HITS + "/MSHits_mods");
+    /**
+     * The accessions of the proteins and the e-value of the hits.
+     */
+    public static final OmxProjection ACCESSION_EVALUE = new OmxProjection(
+            HITS + "/MSHits_evalue",
+            HITS + "/MSHits_pephits/MSPepHit/MSPepHit_accession");
+    /**
+     * The peptide identifications without the fragment annotations: the
+     * hits with their proteins, modifications and scores, but without the
+     * MSHits_mzhits.
+     */
+    public static final OmxProjection PEPTIDES = new OmxProjection(
+            SETTINGS + "/MSSearchSettings_infiles",
+            "MSSearch/MSSearch_response/MSResponse/MSResponse_scale",
+            "MSSearch/MSSearch_response/MSResponse/MSResponse_hitsets/MSHitSet/MSHitSet_ids",
+            HITS + "/MSHits_evalue",
+            HITS + "/MSHits_pvalue",
+            HITS + "/MSHits_charge",
+            HITS + "/MSHits_pepstring",
+            HITS + "/MSHits_mass",
+            HITS + "/MSHits_theomass",
+            HITS + "/MSHits_pepstart",
+            HITS + "/MSHits_pepstop",
+            HITS + "/MSHits_protlength",
+            HITS + "/MSHits_oid",
+            HITS + "/MSHits_mods",
+            HITS + "/MSHits_pephits",
+            HITS + "/MSHits_scores");
+    /**
+     * The ids, precursor mz and charges of the spectra, without the peaks.
+     */
+    public static final OmxProjection SPECTRUM_IDS_PRECURSOR = new OmxProjection(
+            "MSSearch/MSSearch_response/MSResponse/MSResponse_scale",
+            SPECTRUM + "/MSSpectrum_ids",
+            SPECTRUM + "/MSSpectrum_precursormz",
+            SPECTRUM + "/MSSpectrum_charge");
+    /**
+     * The search settings of the requests.
+     */
+    public static final OmxProjection SEARCH_SETTINGS = new OmxProjection(
+            "MSSearch/MSSearch_request/MSRequest/MSRequest_settings");
+    /**
+     * The paths of the projection.
+     */
+    private final Set<String> paths;
+    /**
+     * The root of the tree of the elements parsed.
+     */
+    private final Node root = new Node();
+
+    /**
+     * Creates a projection on the given paths.
+     *
+     * @param paths the paths of the elements to parse, XML Tags separated by
+     * '/'
+     */
+    public OmxProjection(String... paths) {
+        this(Arrays.asList(paths));
+    }
+
+    /**
+     * Creates a projection on the given paths.
+     *
+     * @param paths the paths of the elements to parse, XML Tags separated by
+     * '/'
+     */
+    public OmxProjection(Collection<String> paths) {
+        LinkedHashSet<String> pathSet = new LinkedHashSet<String>();
+        for (String path : paths) {
+            String[] names = path.split("/");
+            Node node = root;
+            StringBuilder normalizedPath = new StringBuilder();
+            for (String name : names) {
+                if (name.isEmpty()) {
+                    continue;
+                }
+                if (normalizedPath.length() > 0) {
+                    normalizedPath.append('/');
+                }
+                normalizedPath.append(name);
+                node = node.add(name);
+                for (String[] key : KEYS) {
+                    if (key[0].equals(name)) {
+                        node.add(key[1]).all = true;
+                    }
+                }
+            }
+            if (node == root) {
+                throw new IllegalArgumentException("Empty path in projection.");
+            }
+            node.all = true;
+            pathSet.add(normalizedPath.toString());
+        }
+        this.paths = Collections.unmodifiableSet(pathSet);
+    }
+
+    /**
+     * Returns a projection on the paths of this projection and of the given
+     * projection.
+     *
+     * @param other the other projection
+     * @return the union of the projections
+     */
+    public OmxProjection union(OmxProjection other) {
+        LinkedHashSet<String> union = new LinkedHashSet<String>(paths);
+        union.addAll(other.paths);
+        return new OmxProjection(union);
+    }
+
+    /**
+     * Returns the paths of the projection.
+     *
+     * @return the paths of the projection
+     */
+    public Set<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Indicates whether the element at the given path is parsed.
+     *
+     * @param path the path of the element, XML Tags separated by '/'
+     * @return true if the element is parsed
+     */
+    public boolean includes(String path) {
+        Node node = root;
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) {
+                node = node.getChild(name);
+                if (node == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the node above the root element.
+     *
+     * @return the node above the root element
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return "OmxProjection" + paths;
+    }
+
+    /**
+     * An element parsed, with the elements parsed below it.
+     */
+    static class Node {
+
+        /**
+         * The child elements parsed, indexed by XML Tag.
+         */
+        private final HashMap<String, Node> children = new HashMap<String, Node>();
+        /**
+         * Indicates whether the whole subtree is parsed.
+         */
+        private boolean all = false;
+
+        /**
+         * Returns the child element with the given name, adding it if needed.
+         *
+         * @param name the XML Tag of the child
+         * @return the child
+         */
+        private Node add(String name) {
+            Node child = children.get(name);
+            if (child == null) {
+                child = new Node();
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        /**
+         * Returns the node of the given child element.
+         *
+         * @param name the XML Tag of the child
+         * @return the node of the child, null if the child is skipped
+         */
+        Node getChild(String name) {
+            return all ? this : children.get(name);
+        }
+    }
+}
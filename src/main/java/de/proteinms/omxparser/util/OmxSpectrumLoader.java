@@ -0,0 +1,362 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Loads the peaks of the spectra of an omx file on demand. When given to an
+ * OmxParser, the parser skips the MSSpectrum_mz and MSSpectrum_abundance
+ * sections: the spectra are parsed with all their other fields, and their mz
+ * and abundance lists are replaced by lists reading the spectrum from the
+ * file, see OmxIndexedReader, when first accessed or when load is called.
+ * The peak lists of the spectra loaded are kept in a cache of limited size,
+ * the lists of the least recently used spectra are released and read again
+ * when needed. Changes made to the peak lists are thus lost when the spectrum
+ * is released.
+ * <br><br>
+ * A spectrum counts as used when it is loaded or given to load. Iterating
+ * over its peaks does not update the cache, so spectra whose peaks are read
+ * by several threads should be given to load first.
+ * <br><br>
+ * Example:
+ * <pre>
+ * OmxSpectrumLoader loader = new OmxSpectrumLoader(omxFile, 1000);
+ * OmxParser omxParser = OmxParser.withSpectrumLoader(omxFile.getPath(), null, null, true, loader);
+ * ...
+ * loader.close();
+ * </pre>
+ * A loader is to be used by a single parser.
+ */
+public class OmxSpectrumLoader implements Closeable {
+
+    /**
+     * The default number of spectra kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    /**
+     * The reader of the file.
+     */
+    private final OmxIndexedReader reader;
+    /**
+     * The spectra whose peaks are loaded, in the order of use.
+     */
+    private final LinkedHashMap<DeferredPeaks, Boolean> cache;
+
+    /**
+     * Creates a loader on the given file. The file is opened and its byte
+     * offset index read or built, see OmxIndex.getIndex, before parsing. If
+     * the index cannot be written next to the file, e.g., in a read-only
+     * directory, it is only kept in memory.
+     *
+     * @param omxFile the uncompressed or block compressed omx file
+     * @param cacheSize the maximal number of spectra whose peaks are kept
+     * @throws IOException if the file or its index could not be read, e.g.,
+     * for a file compressed with plain gzip
+     */
+    public OmxSpectrumLoader(File omxFile, final int cacheSize) throws IOException {
+        this.reader = new OmxIndexedReader(omxFile, true);
+        this.cache = new LinkedHashMap<DeferredPeaks, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DeferredPeaks, Boolean> eldest) {
+                if (size() > Math.max(cacheSize, 1)) {
+                    eldest.getKey().release();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Called by the parser when a spectrum starts, replaces the mz and
+     * abundance lists of the spectrum by deferred lists.
+     *
+     * @param msSpectrum the new spectrum
+     * @param requestIndex the index of the MSRequest of the spectrum
+     */
+    void spectrumStarted(MSSpectrum msSpectrum, int requestIndex) {
+        DeferredPeaks peaks = new DeferredPeaks(msSpectrum, requestIndex);
+        msSpectrum.MSSpectrum_mz.MSSpectrum_mz_E = peaks.mzValues;
+        msSpectrum.MSSpectrum_abundance.MSSpectrum_abundance_E = peaks.abundanceValues;
+    }
+
+    /**
+     * Returns the deferred peaks of the given spectrum.
+     *
+     * @param spectrum the spectrum
+     * @return the deferred peaks, null if the peaks of the spectrum are not
+     * loaded by this loader
+     */
+    private DeferredPeaks getDeferredPeaks(MSSpectrum spectrum) {
+        Object mzValues = spectrum.MSSpectrum_mz.MSSpectrum_mz_E;
+        if (mzValues instanceof DeferredIntList && ((DeferredIntList) mzValues).peaks.getLoader() == this) {
+            return ((DeferredIntList) mzValues).peaks;
+        }
+        return null;
+    }
+
+    /**
+     * Loads the peaks of the given spectrum if needed, and marks it as used.
+     * Spectra whose peaks are not loaded by this loader are ignored.
+     *
+     * @param spectrum the spectrum
+     * @throws UncheckedIOException if the spectrum could not be read
+     */
+    public synchronized void load(MSSpectrum spectrum) {
+        DeferredPeaks peaks = getDeferredPeaks(spectrum);
+        if (peaks != null) {
+            if (peaks.loaded) {
+                cache.get(peaks);
+            } else {
+                read(peaks);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the peaks of the given spectrum are loaded.
+     *
+     * @param spectrum the spectrum
+     * @return true if the peaks of the spectrum are in memory or were not
+     * deferred
+     */
+    public boolean isLoaded(MSSpectrum spectrum) {
+        DeferredPeaks peaks = getDeferredPeaks(spectrum);
+        return peaks == null || peaks.loaded;
+    }
+
+    /**
+     * Reads the peaks of a spectrum from the file.
+     *
+     * @param peaks the deferred peaks
+     */
+    private synchronized void read(DeferredPeaks peaks) {
+
+        if (peaks.loaded) {
+            return;
+        }
+
+        int spectrumNumber = peaks.spectrum.MSSpectrum_number;
+        MSSpectrum msSpectrum;
+        try {
+            msSpectrum = reader.getSpectrum(peaks.requestIndex, spectrumNumber);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading file: " + reader.getOmxFile(), e);
+        } catch (XmlPullParserException e) {
+            throw new IllegalStateException("Error parsing file: " + reader.getOmxFile(), e);
+        }
+        if (msSpectrum == null) {
+            throw new IllegalStateException("Spectrum " + spectrumNumber + " not found in " + reader.getOmxFile());
+        }
+
+        peaks.mzValues.setValues(IntList.valuesOf(msSpectrum.MSSpectrum_mz.MSSpectrum_mz_E));
+        peaks.abundanceValues.setValues(IntList.valuesOf(msSpectrum.MSSpectrum_abundance.MSSpectrum_abundance_E));
+        peaks.loaded = true;
+
+        cache.put(peaks, Boolean.TRUE);
+    }
+
+    /**
+     * Releases the peaks of all spectra.
+     */
+    public synchronized void clearCache() {
+        for (DeferredPeaks peaks : cache.keySet()) {
+            peaks.release();
+        }
+        cache.clear();
+    }
+
+    /**
+     * Returns the number of spectra whose peaks are loaded.
+     *
+     * @return the number of spectra whose peaks are loaded
+     */
+    public synchronized int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the file read.
+     *
+     * @return the omx file
+     */
+    public File getOmxFile() {
+        return reader.getOmxFile();
+    }
+
+    /**
+     * Closes the file. The peaks not loaded cannot be loaded anymore.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * The peaks of a spectrum, read from the file on demand.
+     */
+    private class DeferredPeaks {
+
+        /**
+         * The spectrum.
+         */
+        private final MSSpectrum spectrum;
+        /**
+         * The index of the MSRequest of the spectrum.
+         */
+        private final int requestIndex;
+        /**
+         * The mz values.
+         */
+        private final DeferredIntList mzValues = new DeferredIntList(this);
+        /**
+         * The abundance values.
+         */
+        private final DeferredIntList abundanceValues = new DeferredIntList(this);
+        /**
+         * Indicates whether the peaks are loaded.
+         */
+        private volatile boolean loaded = false;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrum the spectrum
+         * @param requestIndex the index of the MSRequest of the spectrum
+         */
+        DeferredPeaks(MSSpectrum spectrum, int requestIndex) {
+            this.spectrum = spectrum;
+            this.requestIndex = requestIndex;
+        }
+
+        /**
+         * Returns the loader of the peaks.
+         *
+         * @return the loader
+         */
+        OmxSpectrumLoader getLoader() {
+            return OmxSpectrumLoader.this;
+        }
+
+        /**
+         * Loads the peaks if needed.
+         */
+        void ensureLoaded() {
+            if (!loaded) {
+                read(this);
+            }
+        }
+
+        /**
+         * Releases the peaks.
+         */
+        void release() {
+            loaded = false;
+            mzValues.setValues(new int[0]);
+            abundanceValues.setValues(new int[0]);
+        }
+    }
+
+    /**
+     * Peak list loading the peaks of its spectrum when accessed.
+     */
+    private static class DeferredIntList extends IntList {
+
+        /**
+         * The peaks of the list.
+         */
+        private final transient DeferredPeaks peaks;
+
+        /**
+         * Constructor.
+         *
+         * @param peaks the peaks of the list
+         */
+        DeferredIntList(DeferredPeaks peaks) {
+            this.peaks = peaks;
+        }
+
+        /**
+         * Replaces the list by a loaded copy when serialized.
+         *
+         * @return a copy of the list
+         */
+        private Object writeReplace() {
+            return new IntList(toIntArray());
+        }
+
+        @Override
+        public void addInt(int value) {
+            peaks.ensureLoaded();
+            super.addInt(value);
+        }
+
+        @Override
+        public int getInt(int index) {
+            peaks.ensureLoaded();
+            return super.getInt(index);
+        }
+
+        @Override
+        public int[] toIntArray() {
+            peaks.ensureLoaded();
+            return super.toIntArray();
+        }
+
+        @Override
+        public double[] toScaledArray(double scale) {
+            peaks.ensureLoaded();
+            return super.toScaledArray(scale);
+        }
+
+        @Override
+        public void trimToSize() {
+            peaks.ensureLoaded();
+            super.trimToSize();
+        }
+
+        @Override
+        public void add(int index, Integer element) {
+            peaks.ensureLoaded();
+            super.add(index, element);
+        }
+
+        @Override
+        public Integer remove(int index) {
+            peaks.ensureLoaded();
+            return super.remove(index);
+        }
+
+        @Override
+        public void clear() {
+            peaks.ensureLoaded();
+            super.clear();
+        }
+
+        @Override
+        public int size() {
+            peaks.ensureLoaded();
+            return super.size();
+        }
+    }
+}
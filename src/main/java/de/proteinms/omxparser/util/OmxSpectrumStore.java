@@ -0,0 +1,861 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of spectra keeping the spectra outside of the Java heap. Every spectrum
+ * put in the map is packed in contiguous direct buffers, one column for the
+ * mz values, the abundances, the charges, the ids and the name values of all
+ * spectra, plus a fixed size record per spectrum with its number, precursor mz, iscale and
+ * the offsets of its values in the columns. The records are found through an
+ * offset table indexed by MSSpectrum_number. The heap use is thus independent
+ * of the number of spectra, the direct memory available is set by
+ * -XX:MaxDirectMemorySize.
+ * <br><br>
+ * The MSSpectrum returned by get is a view unpacked from the buffers. As long
+ * as it is referenced, the same view is returned for the same number, so
+ * views can be used as keys of identity based maps. Modifications of a view
+ * are not written back to the store.
+ * <br><br>
+ * The store is used for the MSSpectrumset of the parsed files when the
+ * omxparser.spectrumstore system property is set to true, see
+ * OmxParser.SPECTRUM_STORE_PROPERTY.
+ */
+public class OmxSpectrumStore extends AbstractMap<Integer, MSSpectrum> implements Serializable {
+
+    /**
+     * The length of a spectrum record in bytes. The fields take the bytes 0
+     * to 75, the bytes 76 to 79 pad the record to a multiple of eight so
+     * that the longs of every record are aligned.
+     */
+    private static final int RECORD_LENGTH = 80;
+    /**
+     * The offset of the MSSpectrum_number in a record.
+     */
+    private static final int NUMBER = 0;
+    /**
+     * The offset of the MSSpectrum_precursormz in a record.
+     */
+    private static final int PRECURSOR_MZ = 4;
+    /**
+     * The offset of the MSSpectrum_iscale in a record, NaN if not set.
+     */
+    private static final int ISCALE = 8;
+    /**
+     * The offset of the position of the mz values in a record.
+     */
+    private static final int MZ_START = 16;
+    /**
+     * The offset of the position of the abundance values in a record.
+     */
+    private static final int ABUNDANCE_START = 24;
+    /**
+     * The offset of the position of the charges in a record.
+     */
+    private static final int CHARGE_START = 32;
+    /**
+     * The offset of the position of the ids in a record.
+     */
+    private static final int IDS_START = 40;
+    /**
+     * The offset of the number of mz values in a record.
+     */
+    private static final int MZ_COUNT = 48;
+    /**
+     * The offset of the number of abundance values in a record.
+     */
+    private static final int ABUNDANCE_COUNT = 52;
+    /**
+     * The offset of the number of charges in a record.
+     */
+    private static final int CHARGE_COUNT = 56;
+    /**
+     * The offset of the length of the packed ids in a record.
+     */
+    private static final int IDS_LENGTH = 60;
+    /**
+     * The offset of the position of the name values in a record.
+     */
+    private static final int NAME_VALUES_START = 64;
+    /**
+     * The offset of the length of the packed name values in a record.
+     */
+    private static final int NAME_VALUES_LENGTH = 72;
+    /**
+     * The spectrum numbers above this limit are looked up in the sparse map
+     * instead of the offset table.
+     */
+    private static final int MAX_TABLE_NUMBER = 1 << 24;
+    /**
+     * The spectrum records.
+     */
+    private transient Column records = new Column();
+    /**
+     * The mz values of all spectra.
+     */
+    private transient Column mzValues = new Column();
+    /**
+     * The abundance values of all spectra.
+     */
+    private transient Column abundanceValues = new Column();
+    /**
+     * The charges of all spectra.
+     */
+    private transient Column charges = new Column();
+    /**
+     * The packed ids of all spectra.
+     */
+    private transient Column ids = new Column();
+    /**
+     * The packed name values of all spectra.
+     */
+    private transient Column nameValues = new Column();
+    /**
+     * The offset table: for every spectrum number the index of its record
+     * plus one, zero if the number is not in the store.
+     */
+    private transient Column table = new Column();
+    /**
+     * The record indexes of the numbers which are negative or too large for
+     * the offset table.
+     */
+    private transient HashMap<Integer, Integer> sparseTable = new HashMap<Integer, Integer>();
+    /**
+     * The number of records, including the records of the spectra replaced
+     * or removed.
+     */
+    private transient int recordCount = 0;
+    /**
+     * The number of spectra in the store.
+     */
+    private int size = 0;
+    /**
+     * The views handed out and still referenced.
+     */
+    private transient HashMap<Integer, View> views = new HashMap<Integer, View>();
+    /**
+     * The queue of the views no longer referenced.
+     */
+    private transient ReferenceQueue<MSSpectrum> releasedViews = new ReferenceQueue<MSSpectrum>();
+
+    /**
+     * Creates an empty store.
+     */
+    public OmxSpectrumStore() {
+    }
+
+    /**
+     * Packs the given spectrum in the store. The spectrum itself is not kept.
+     *
+     * @param key the MSSpectrum_number of the spectrum
+     * @param spectrum the spectrum
+     * @return the view of the spectrum previously stored with this number,
+     * null if none
+     */
+    @Override
+    public synchronized MSSpectrum put(Integer key, MSSpectrum spectrum) {
+
+        MSSpectrum previous = get(key);
+
+        long record = (long) recordCount * RECORD_LENGTH;
+        records.putInt(record + NUMBER, key);
+        records.putInt(record + PRECURSOR_MZ, spectrum.MSSpectrum_precursormz);
+        records.putDouble(record + ISCALE, spectrum.MSSpectrum_iscale == null ? Double.NaN : spectrum.MSSpectrum_iscale);
+        records.putLong(record + MZ_START, mzValues.length());
+        records.putLong(record + ABUNDANCE_START, abundanceValues.length());
+        records.putLong(record + CHARGE_START, charges.length());
+        records.putLong(record + IDS_START, ids.length());
+        records.putInt(record + MZ_COUNT, appendInts(mzValues, spectrum.MSSpectrum_mz.MSSpectrum_mz_E));
+        records.putInt(record + ABUNDANCE_COUNT, appendInts(abundanceValues, spectrum.MSSpectrum_abundance.MSSpectrum_abundance_E));
+        records.putInt(record + CHARGE_COUNT, appendInts(charges, spectrum.MSSpectrum_charge.MSSpectrum_charge_E));
+        byte[] packedIds = packIds(spectrum.MSSpectrum_ids.MSSpectrum_ids_E);
+        ids.append(packedIds);
+        records.putInt(record + IDS_LENGTH, packedIds.length);
+        byte[] packedNameValues = packNameValues(spectrum.MSSpectrum_namevalue.nameValue);
+        records.putLong(record + NAME_VALUES_START, nameValues.length());
+        nameValues.append(packedNameValues);
+        records.putInt(record + NAME_VALUES_LENGTH, packedNameValues.length);
+
+        if (previous == null) {
+            size++;
+        } else {
+            views.remove(key);
+        }
+        setRecord(key, recordCount++);
+
+        return previous;
+    }
+
+    /**
+     * Appends the given values to a column.
+     *
+     * @param column the column
+     * @param values the values
+     * @return the number of values
+     */
+    private static int appendInts(Column column, List<Integer> values) {
+        if (values instanceof IntList) {
+            IntList intList = (IntList) values;
+            for (int i = 0; i < intList.size(); i++) {
+                column.appendInt(intList.getInt(i));
+            }
+        } else {
+            for (Integer value : values) {
+                column.appendInt(value);
+            }
+        }
+        return values.size();
+    }
+
+    /**
+     * Packs the ids of a spectrum.
+     *
+     * @param idList the ids
+     * @return the packed ids
+     */
+    private static byte[] packIds(List<String> idList) {
+        if (idList.isEmpty()) {
+            return new byte[0];
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(idList.size());
+            for (String id : idList) {
+                out.writeUTF(id);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Unpacks the ids of a spectrum.
+     *
+     * @param packedIds the packed ids
+     * @param idList the list to add the ids to
+     */
+    private static void unpackIds(byte[] packedIds, List<String> idList) {
+        if (packedIds.length == 0) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(packedIds));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                idList.add(in.readUTF());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Packs the name values of a spectrum.
+     *
+     * @param nameValueList the name values
+     * @return the packed name values
+     */
+    private static byte[] packNameValues(List<NameValue> nameValueList) {
+        if (nameValueList.isEmpty()) {
+            return new byte[0];
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(nameValueList.size());
+            for (NameValue nameValue : nameValueList) {
+                writeNullableUTF(out, nameValue.NameValue_name);
+                writeNullableUTF(out, nameValue.NameValue_value);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Unpacks the name values of a spectrum.
+     *
+     * @param packedNameValues the packed name values
+     * @param nameValueList the list to add the name values to
+     */
+    private static void unpackNameValues(byte[] packedNameValues, List<NameValue> nameValueList) {
+        if (packedNameValues.length == 0) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(packedNameValues));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                NameValue nameValue = new NameValue();
+                nameValue.NameValue_name = readNullableUTF(in);
+                nameValue.NameValue_value = readNullableUTF(in);
+                nameValueList.add(nameValue);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a String which may be null.
+     *
+     * @param out the output
+     * @param s the String, can be null
+     * @throws IOException if the String could not be written
+     */
+    private static void writeNullableUTF(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    /**
+     * Reads a String written by writeNullableUTF.
+     *
+     * @param in the input
+     * @return the String, can be null
+     * @throws IOException if the String could not be read
+     */
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Returns the index of the record of the given number.
+     *
+     * @param number the spectrum number
+     * @return the index of the record, -1 if not found
+     */
+    private int getRecord(int number) {
+        if (number < 0 || number >= MAX_TABLE_NUMBER) {
+            Integer record = sparseTable.get(number);
+            return record == null ? -1 : record;
+        }
+        long position = 4L * number;
+        if (position >= table.length()) {
+            return -1;
+        }
+        return table.getInt(position) - 1;
+    }
+
+    /**
+     * Sets the index of the record of the given number.
+     *
+     * @param number the spectrum number
+     * @param record the index of the record, -1 to remove the number
+     */
+    private void setRecord(int number, int record) {
+        if (number < 0 || number >= MAX_TABLE_NUMBER) {
+            if (record < 0) {
+                sparseTable.remove(number);
+            } else {
+                sparseTable.put(number, record);
+            }
+        } else {
+            table.putInt(4L * number, record + 1);
+        }
+    }
+
+    /**
+     * Returns the view of the spectrum with the given number.
+     *
+     * @param key the spectrum number
+     * @return the spectrum, null if not in the store
+     */
+    @Override
+    public synchronized MSSpectrum get(Object key) {
+
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int number = (Integer) key;
+        int record = getRecord(number);
+        if (record < 0) {
+            return null;
+        }
+
+        expungeReleasedViews();
+        View view = views.get(number);
+        MSSpectrum spectrum = view == null ? null : view.get();
+        if (spectrum == null) {
+            spectrum = unpack((long) record * RECORD_LENGTH);
+            views.put(number, new View(number, spectrum, releasedViews));
+        }
+        return spectrum;
+    }
+
+    /**
+     * Unpacks a spectrum from the buffers.
+     *
+     * @param record the position of the record of the spectrum
+     * @return the spectrum
+     */
+    private MSSpectrum unpack(long record) {
+        MSSpectrum spectrum = new MSSpectrum();
+        spectrum.MSSpectrum_number = records.getInt(record + NUMBER);
+        spectrum.MSSpectrum_precursormz = records.getInt(record + PRECURSOR_MZ);
+        double iscale = records.getDouble(record + ISCALE);
+        spectrum.MSSpectrum_iscale = Double.isNaN(iscale) ? null : iscale;
+        spectrum.MSSpectrum_mz.MSSpectrum_mz_E = IntList.wrap(
+                mzValues.getInts(records.getLong(record + MZ_START), records.getInt(record + MZ_COUNT)));
+        spectrum.MSSpectrum_abundance.MSSpectrum_abundance_E = IntList.wrap(
+                abundanceValues.getInts(records.getLong(record + ABUNDANCE_START), records.getInt(record + ABUNDANCE_COUNT)));
+        long chargeStart = records.getLong(record + CHARGE_START);
+        int chargeCount = records.getInt(record + CHARGE_COUNT);
+        for (int i = 0; i < chargeCount; i++) {
+            spectrum.MSSpectrum_charge.MSSpectrum_charge_E.add(charges.getInt(chargeStart + 4L * i));
+        }
+        byte[] packedIds = new byte[records.getInt(record + IDS_LENGTH)];
+        ids.get(records.getLong(record + IDS_START), packedIds);
+        unpackIds(packedIds, spectrum.MSSpectrum_ids.MSSpectrum_ids_E);
+        byte[] packedNameValues = new byte[records.getInt(record + NAME_VALUES_LENGTH)];
+        nameValues.get(records.getLong(record + NAME_VALUES_START), packedNameValues);
+        unpackNameValues(packedNameValues, spectrum.MSSpectrum_namevalue.nameValue);
+        return spectrum;
+    }
+
+    /**
+     * Removes the views no longer referenced.
+     */
+    private void expungeReleasedViews() {
+        View view;
+        while ((view = (View) releasedViews.poll()) != null) {
+            if (views.get(view.number) == view) {
+                views.remove(view.number);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return key instanceof Integer && getRecord((Integer) key) >= 0;
+    }
+
+    @Override
+    public synchronized MSSpectrum remove(Object key) {
+        MSSpectrum previous = get(key);
+        if (previous != null) {
+            setRecord((Integer) key, -1);
+            views.remove(key);
+            size--;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes all spectra and releases the buffers.
+     */
+    @Override
+    public synchronized void clear() {
+        records = new Column();
+        mzValues = new Column();
+        abundanceValues = new Column();
+        charges = new Column();
+        ids = new Column();
+        nameValues = new Column();
+        table = new Column();
+        sparseTable.clear();
+        recordCount = 0;
+        views.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes used outside of the heap.
+     *
+     * @return the number of bytes allocated in direct buffers
+     */
+    public synchronized long getOffHeapSize() {
+        return records.capacity() + mzValues.capacity() + abundanceValues.capacity()
+                + charges.capacity() + ids.capacity() + nameValues.capacity() + table.capacity();
+    }
+
+    /**
+     * Returns the spectrum numbers, in the order the spectra were stored,
+     * without unpacking the spectra.
+     *
+     * @return the spectrum numbers
+     */
+    @Override
+    public Set<Integer> keySet() {
+        return new AbstractSet<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new NumberIterator();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return OmxSpectrumStore.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, MSSpectrum>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, MSSpectrum>>() {
+            @Override
+            public Iterator<Map.Entry<Integer, MSSpectrum>> iterator() {
+                final NumberIterator numbers = new NumberIterator();
+                return new Iterator<Map.Entry<Integer, MSSpectrum>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return numbers.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<Integer, MSSpectrum> next() {
+                        Integer number = numbers.next();
+                        return new AbstractMap.SimpleImmutableEntry<Integer, MSSpectrum>(number, get(number));
+                    }
+
+                    @Override
+                    public void remove() {
+                        numbers.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OmxSpectrumStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Replaces the store by a HashMap of the spectra when serialized.
+     *
+     * @return a HashMap of the spectra
+     */
+    private Object writeReplace() {
+        return new HashMap<Integer, MSSpectrum>(this);
+    }
+
+    /**
+     * Iterator on the numbers of the current records, in the order of the
+     * records.
+     */
+    private class NumberIterator implements Iterator<Integer> {
+
+        /**
+         * The index of the next record to check.
+         */
+        private int nextRecord = 0;
+        /**
+         * The next number, null if not found yet.
+         */
+        private Integer next = null;
+        /**
+         * The last number returned.
+         */
+        private Integer last = null;
+
+        @Override
+        public boolean hasNext() {
+            synchronized (OmxSpectrumStore.this) {
+                while (next == null && nextRecord < recordCount) {
+                    int number = records.getInt((long) nextRecord * RECORD_LENGTH + NUMBER);
+                    // skip the records replaced or removed
+                    if (getRecord(number) == nextRecord) {
+                        next = number;
+                    }
+                    nextRecord++;
+                }
+                return next != null;
+            }
+        }
+
+        @Override
+        public Integer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            OmxSpectrumStore.this.remove(last);
+            last = null;
+        }
+    }
+
+    /**
+     * Weak reference to a view handed out.
+     */
+    private static class View extends WeakReference<MSSpectrum> {
+
+        /**
+         * The number of the spectrum.
+         */
+        private final int number;
+
+        /**
+         * Constructor.
+         *
+         * @param number the number of the spectrum
+         * @param spectrum the view
+         * @param queue the queue of the released views
+         */
+        View(int number, MSSpectrum spectrum, ReferenceQueue<MSSpectrum> queue) {
+            super(spectrum, queue);
+            this.number = number;
+        }
+    }
+
+    /**
+     * Growable sequence of bytes in direct buffers of SEGMENT_SIZE bytes.
+     * Primitive values must be aligned on their size, so that they never
+     * span two segments. The segments are allocated when first written, the
+     * segments never written read as zeros.
+     */
+    private static class Column {
+
+        /**
+         * The log2 of the segment size.
+         */
+        private static final int SEGMENT_SHIFT = 22;
+        /**
+         * The size of a segment in bytes.
+         */
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+        /**
+         * The mask of the position in a segment.
+         */
+        private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+        /**
+         * The segments.
+         */
+        private final ArrayList<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+        /**
+         * The number of bytes written.
+         */
+        private long length = 0;
+        /**
+         * The number of bytes allocated.
+         */
+        private long capacity = 0;
+
+        /**
+         * Returns the number of bytes written.
+         *
+         * @return the number of bytes written
+         */
+        long length() {
+            return length;
+        }
+
+        /**
+         * Returns the number of bytes allocated.
+         *
+         * @return the number of bytes allocated
+         */
+        long capacity() {
+            return capacity;
+        }
+
+        /**
+         * Returns the segment of the given position, allocating the segments
+         * up to it if needed.
+         *
+         * @param position the position
+         * @return the segment
+         */
+        private ByteBuffer segmentFor(long position) {
+            int segment = (int) (position >>> SEGMENT_SHIFT);
+            while (segments.size() <= segment) {
+                segments.add(null);
+            }
+            ByteBuffer buffer = segments.get(segment);
+            if (buffer == null) {
+                buffer = ByteBuffer.allocateDirect(SEGMENT_SIZE).order(ByteOrder.nativeOrder());
+                segments.set(segment, buffer);
+                capacity += SEGMENT_SIZE;
+            }
+            return buffer;
+        }
+
+        /**
+         * Writes an int at the given position, extending the column if needed.
+         *
+         * @param position the position, a multiple of four
+         * @param value the value
+         */
+        void putInt(long position, int value) {
+            segmentFor(position).putInt((int) (position & SEGMENT_MASK), value);
+            length = Math.max(length, position + 4);
+        }
+
+        /**
+         * Writes a long at the given position, extending the column if needed.
+         *
+         * @param position the position, a multiple of eight
+         * @param value the value
+         */
+        void putLong(long position, long value) {
+            segmentFor(position).putLong((int) (position & SEGMENT_MASK), value);
+            length = Math.max(length, position + 8);
+        }
+
+        /**
+         * Writes a double at the given position, extending the column if
+         * needed.
+         *
+         * @param position the position, a multiple of eight
+         * @param value the value
+         */
+        void putDouble(long position, double value) {
+            putLong(position, Double.doubleToRawLongBits(value));
+        }
+
+        /**
+         * Appends an int.
+         *
+         * @param value the value
+         */
+        void appendInt(int value) {
+            putInt(length, value);
+        }
+
+        /**
+         * Appends the given bytes.
+         *
+         * @param bytes the bytes
+         */
+        void append(byte[] bytes) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ByteBuffer segment = segmentFor(length).duplicate();
+                segment.position((int) (length & SEGMENT_MASK));
+                int n = Math.min(bytes.length - offset, segment.remaining());
+                segment.put(bytes, offset, n);
+                offset += n;
+                length += n;
+            }
+        }
+
+        /**
+         * Returns the int at the given position.
+         *
+         * @param position the position, a multiple of four
+         * @return the int
+         */
+        int getInt(long position) {
+            ByteBuffer segment = segments.get((int) (position >>> SEGMENT_SHIFT));
+            return segment == null ? 0 : segment.getInt((int) (position & SEGMENT_MASK));
+        }
+
+        /**
+         * Returns the long at the given position.
+         *
+         * @param position the position, a multiple of eight
+         * @return the long
+         */
+        long getLong(long position) {
+            return segments.get((int) (position >>> SEGMENT_SHIFT)).getLong((int) (position & SEGMENT_MASK));
+        }
+
+        /**
+         * Returns the double at the given position.
+         *
+         * @param position the position, a multiple of eight
+         * @return the double
+         */
+        double getDouble(long position) {
+            return Double.longBitsToDouble(getLong(position));
+        }
+
+        /**
+         * Returns the ints at the given position.
+         *
+         * @param position the position, a multiple of four
+         * @param count the number of ints
+         * @return the ints
+         */
+        int[] getInts(long position, int count) {
+            int[] result = new int[count];
+            int i = 0;
+            while (i < count) {
+                ByteBuffer segment = segments.get((int) (position >>> SEGMENT_SHIFT)).duplicate().order(ByteOrder.nativeOrder());
+                segment.position((int) (position & SEGMENT_MASK));
+                int n = Math.min(count - i, segment.remaining() / 4);
+                segment.asIntBuffer().get(result, i, n);
+                i += n;
+                position += 4L * n;
+            }
+            return result;
+        }
+
+        /**
+         * Reads bytes at the given position.
+         *
+         * @param position the position
+         * @param bytes the array to fill
+         */
+        void get(long position, byte[] bytes) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ByteBuffer segment = segments.get((int) (position >>> SEGMENT_SHIFT)).duplicate();
+                segment.position((int) (position & SEGMENT_MASK));
+                int n = Math.min(bytes.length - offset, segment.remaining());
+                segment.get(bytes, offset, n);
+                offset += n;
+                position += n;
+            }
+        }
+    }
+}
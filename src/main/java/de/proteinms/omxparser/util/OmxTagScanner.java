@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fast byte level scanner reporting the byte offsets of a given set of tags,
+ * e.g., "&lt;MSHitSet&gt;" and "&lt;/MSHitSet&gt;", in an omx file without
+ * parsing the XML. The tags of the omx files written by OMSSA are plain ASCII
+ * without attributes or namespace prefixes, which makes it possible to locate
+ * the elements by simple byte comparison.
+ */
+public class OmxTagScanner {
+
+    /**
+     * The size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * The number of bytes after a tag guaranteed to be in the buffer when the
+     * listener is notified, see readInt.
+     */
+    private static final int LOOKAHEAD = 64;
+    /**
+     * The tags to look for as bytes.
+     */
+    private final byte[][] tags;
+    /**
+     * The length of the longest tag.
+     */
+    private final int maxTagLength;
+    /**
+     * The buffer during the scan.
+     */
+    private byte[] buffer;
+    /**
+     * The number of valid bytes in the buffer during the scan.
+     */
+    private int bufferLength;
+    /**
+     * The position after the tag last found in the buffer.
+     */
+    private int tagEnd;
+
+    /**
+     * Listener notified of the tags found.
+     */
+    public interface TagListener {
+
+        /**
+         * Called for every tag found, in the order of the file.
+         *
+         * @param tagIndex the index of the tag in the tags given to the
+         * scanner
+         * @param offset the byte offset of the '&lt;' of the tag
+         * @throws IOException if the listener fails
+         * @see OmxTagScanner#readInt()
+         */
+        public void tagFound(int tagIndex, long offset) throws IOException;
+    }
+
+    /**
+     * Creates a scanner looking for the given tags.
+     *
+     * @param tags the complete tags to look for, including the angle brackets,
+     * e.g., "&lt;MSHitSet&gt;"
+     */
+    public OmxTagScanner(String... tags) {
+        this.tags = new byte[tags.length][];
+        int tempMax = 0;
+        for (int i = 0; i < tags.length; i++) {
+            if (!tags[i].startsWith("<")) {
+                throw new IllegalArgumentException("Tags have to start with '<': " + tags[i] + ".");
+            }
+            this.tags[i] = tags[i].getBytes(StandardCharsets.US_ASCII);
+            tempMax = Math.max(tempMax, this.tags[i].length);
+        }
+        this.maxTagLength = tempMax;
+    }
+
+    /**
+     * Scans the given file.
+     *
+     * @param file the file to scan
+     * @param listener the listener notified of the tags found
+     * @throws IOException if the file could not be read
+     */
+    public void scan(File file, TagListener listener) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            scan(inputStream, listener);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Scans the given stream until its end. The offsets are counted from the
+     * current position of the stream.
+     *
+     * @param inputStream the stream to scan
+     * @param listener the listener notified of the tags found
+     * @throws IOException if the stream could not be read
+     */
+    public void scan(InputStream inputStream, TagListener listener) throws IOException {
+
+        buffer = new byte[BUFFER_SIZE + maxTagLength + LOOKAHEAD];
+        long bufferOffset = 0; // file offset of buffer[0]
+        int length = 0;
+        boolean endOfStream = false;
+
+        while (!endOfStream || length > 0) {
+
+            // fill the buffer
+            while (!endOfStream && length < buffer.length) {
+                int read = inputStream.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    endOfStream = true;
+                } else {
+                    length += read;
+                }
+            }
+
+            // tags starting after this limit may be incomplete and are processed with the next block
+            int limit = endOfStream ? length : length - maxTagLength - LOOKAHEAD + 1;
+            bufferLength = length;
+
+            for (int i = 0; i < limit; i++) {
+                if (buffer[i] == '<') {
+                    for (int tagIndex = 0; tagIndex < tags.length; tagIndex++) {
+                        if (matches(buffer, i, length, tags[tagIndex])) {
+                            tagEnd = i + tags[tagIndex].length;
+                            listener.tagFound(tagIndex, bufferOffset + i);
+                            i += tags[tagIndex].length - 1;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            // keep the unprocessed tail
+            int processed = Math.min(limit, length);
+            if (processed <= 0) {
+                processed = length;
+            }
+            System.arraycopy(buffer, processed, buffer, 0, length - processed);
+            length -= processed;
+            bufferOffset += processed;
+        }
+
+        buffer = null;
+    }
+
+    /**
+     * Parses the integer written after the tag last found, e.g., the number
+     * in "&lt;MSHitSet_number&gt;12&lt;/MSHitSet_number&gt;". Can only be
+     * called from the listener during the scan.
+     *
+     * @return the integer written after the tag last found
+     * @throws NumberFormatException if no integer is found after the tag
+     */
+    public int readInt() {
+        int i = tagEnd;
+        int end = Math.min(bufferLength, tagEnd + LOOKAHEAD);
+        while (i < end && (buffer[i] == ' ' || buffer[i] == '\n' || buffer[i] == '\r' || buffer[i] == '\t')) {
+            i++;
+        }
+        boolean negative = false;
+        if (i < end && buffer[i] == '-') {
+            negative = true;
+            i++;
+        }
+        int start = i;
+        long result = 0;
+        while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+            result = 10 * result + (buffer[i] - '0');
+            if (result > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Integer too large after tag.");
+            }
+            i++;
+        }
+        if (i == start) {
+            throw new NumberFormatException("No integer found after tag.");
+        }
+        return (int) (negative ? -result : result);
+    }
+
+    /**
+     * Indicates whether the given tag is found at the given position of the
+     * buffer.
+     *
+     * @param buffer the buffer
+     * @param position the position in the buffer
+     * @param length the number of valid bytes in the buffer
+     * @param tag the tag
+     * @return true if the tag is found at the given position
+     */
+    private static boolean matches(byte[] buffer, int position, int length, byte[] tag) {
+        if (position + tag.length > length) {
+            return false;
+        }
+        for (int j = 1; j < tag.length; j++) {
+            if (buffer[position + j] != tag[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Source of the tokens of an omx document processed by OmxParser: start tags,
+ * end tags and text, with the same event types and semantics as
+ * XmlPullParser.next() with namespace processing, i.e., namespace
+ * declarations are not reported as attributes and entity references are
+ * resolved in the text.
+ * <br><br>
+ * Two implementations are available: OmxByteTokenizer, a scanner specialized
+ * for omx files, and XppOmxTokenizer, using the XPP3 pull parser, see
+ * OmxParser.createTokenizer.
+ */
+public interface OmxTokenizer extends Closeable {
+
+    /**
+     * Advances to the next token.
+     *
+     * @return the type of the token: XmlPullParser.START_TAG, END_TAG, TEXT or
+     * END_DOCUMENT
+     * @throws IOException if the document could not be read
+     * @throws XmlPullParserException if the document could not be parsed
+     */
+    public int next() throws IOException, XmlPullParserException;
+
+    /**
+     * Returns the name of the current start or end tag.
+     *
+     * @return the name of the current element
+     */
+    public String getName();
+
+    /**
+     * Returns the number of attributes of the current start tag.
+     *
+     * @return the number of attributes
+     */
+    public int getAttributeCount();
+
+    /**
+     * Returns the local name of the given attribute of the current start tag.
+     *
+     * @param index the index of the attribute
+     * @return the name of the attribute
+     */
+    public String getAttributeName(int index);
+
+    /**
+     * Returns the value of the given attribute of the current start tag.
+     *
+     * @param index the index of the attribute
+     * @return the value of the attribute
+     */
+    public String getAttributeValue(int index);
+
+    /**
+     * Indicates whether the current text only contains white space.
+     *
+     * @return true if the current text only contains white space
+     * @throws XmlPullParserException if the current token is not text
+     */
+    public boolean isWhitespace() throws XmlPullParserException;
+
+    /**
+     * Returns the current text.
+     *
+     * @return the current text
+     */
+    public String getText();
+}
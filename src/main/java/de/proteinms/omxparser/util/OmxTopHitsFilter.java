@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the hits of the hit set currently parsed with the lowest e-values,
+ * in a heap bounded to the number of hits kept. A hit is rejected as soon as
+ * its e-value is parsed if it cannot enter the heap. For equal e-values the
+ * first hits of the file are kept.
+ */
+class OmxTopHitsFilter extends OmxHitFilter {
+
+    /**
+     * Orders the hits from the worst to the best.
+     */
+    private static final Comparator<RankedHit> WORST_FIRST = new Comparator<RankedHit>() {
+        @Override
+        public int compare(RankedHit o1, RankedHit o2) {
+            int result = Double.compare(o2.msHits.MSHits_evalue, o1.msHits.MSHits_evalue);
+            if (result == 0) {
+                result = Integer.compare(o2.position, o1.position);
+            }
+            return result;
+        }
+    };
+    /**
+     * The maximal number of hits kept per hit set.
+     */
+    private final int maxHits;
+    /**
+     * The hits kept so far, the worst on top.
+     */
+    private final PriorityQueue<RankedHit> heap;
+    /**
+     * The number of hits offered for the current hit set.
+     */
+    private int position = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxHits the maximal number of hits kept per hit set
+     */
+    OmxTopHitsFilter(int maxHits) {
+        super("MSHits_evalue");
+        if (maxHits < 1) {
+            throw new IllegalArgumentException("The number of hits kept must be positive: " + maxHits);
+        }
+        this.maxHits = maxHits;
+        this.heap = new PriorityQueue<RankedHit>(maxHits + 1, WORST_FIRST);
+    }
+
+    /**
+     * Indicates whether the given hit can enter the heap.
+     *
+     * @param msHits the hit, with its e-value parsed
+     * @return true if the hit can enter the heap
+     */
+    @Override
+    public boolean accept(MSHits msHits) {
+        return heap.size() < maxHits || msHits.MSHits_evalue < heap.peek().msHits.MSHits_evalue;
+    }
+
+    /**
+     * Adds a parsed hit to the heap, removing the worst hit if the heap is
+     * full.
+     *
+     * @param msHits the hit
+     */
+    void offer(MSHits msHits) {
+        heap.add(new RankedHit(msHits, position++));
+        if (heap.size() > maxHits) {
+            heap.poll();
+        }
+    }
+
+    /**
+     * Moves the hits kept to the given list, in the order of the file, and
+     * starts a new hit set.
+     *
+     * @param hits the list of the hits of the hit set
+     */
+    void drainTo(List<MSHits> hits) {
+        ArrayList<RankedHit> rankedHits = new ArrayList<RankedHit>(heap);
+        Collections.sort(rankedHits, new Comparator<RankedHit>() {
+            @Override
+            public int compare(RankedHit o1, RankedHit o2) {
+                return Integer.compare(o1.position, o2.position);
+            }
+        });
+        for (RankedHit rankedHit : rankedHits) {
+            hits.add(rankedHit.msHits);
+        }
+        clear();
+    }
+
+    /**
+     * Drops the hits kept and starts a new hit set.
+     */
+    void clear() {
+        heap.clear();
+        position = 0;
+    }
+
+    /**
+     * A hit with its position in its hit set.
+     */
+    private static class RankedHit {
+
+        /**
+         * The hit.
+         */
+        private final MSHits msHits;
+        /**
+         * The position of the hit in its hit set in the file.
+         */
+        private final int position;
+
+        /**
+         * Constructor.
+         *
+         * @param msHits the hit
+         * @param position the position of the hit in its hit set in the file
+         */
+        RankedHit(MSHits msHits, int position) {
+            this.msHits = msHits;
+            this.position = position;
+        }
+    }
+}
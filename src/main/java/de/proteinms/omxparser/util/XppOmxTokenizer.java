@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Tokenizer using an XPP3 pull parser, handling any well formed XML.
+ */
+public class XppOmxTokenizer implements OmxTokenizer {
+
+    /**
+     * The pull parser.
+     */
+    private final XmlPullParser xpp;
+    /**
+     * The input of the parser, closed with the tokenizer, can be null.
+     */
+    private final Closeable input;
+
+    /**
+     * Creates a tokenizer reading the given reader. The encoding declared by
+     * the document is ignored.
+     *
+     * @param reader the reader on the omx document
+     * @throws XmlPullParserException if the pull parser could not be created
+     */
+    public XppOmxTokenizer(Reader reader) throws XmlPullParserException {
+        this.xpp = OmxParser.createPullParser();
+        this.input = reader;
+        xpp.setInput(reader);
+    }
+
+    /**
+     * Creates a tokenizer reading the given stream, decoded with the encoding
+     * declared by the document, UTF-8 if none.
+     *
+     * @param inputStream the stream on the omx document
+     * @throws XmlPullParserException if the pull parser could not be created
+     */
+    public XppOmxTokenizer(InputStream inputStream) throws XmlPullParserException {
+        this.xpp = OmxParser.createPullParser();
+        this.input = inputStream;
+        xpp.setInput(inputStream, null);
+    }
+
+    /**
+     * Creates a tokenizer on a pull parser already positioned on its input.
+     * Closing the tokenizer does not close the input of the parser.
+     *
+     * @param xpp the pull parser
+     */
+    public XppOmxTokenizer(XmlPullParser xpp) {
+        this.xpp = xpp;
+        this.input = null;
+    }
+
+    @Override
+    public int next() throws IOException, XmlPullParserException {
+        int eventType;
+        do {
+            eventType = xpp.next();
+        } while (eventType != XmlPullParser.START_TAG && eventType != XmlPullParser.END_TAG
+                && eventType != XmlPullParser.TEXT && eventType != XmlPullParser.END_DOCUMENT);
+        return eventType;
+    }
+
+    @Override
+    public String getName() {
+        return xpp.getName();
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return xpp.getAttributeCount();
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        return xpp.getAttributeName(index);
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        return xpp.getAttributeValue(index);
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        return xpp.isWhitespace();
+    }
+
+    @Override
+    public String getText() {
+        return xpp.getText();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.tools;
+
+import de.proteinms.omxparser.util.MSHitSet;
+import de.proteinms.omxparser.util.MSHits;
+import de.proteinms.omxparser.util.MSRequest;
+import de.proteinms.omxparser.util.MSResponse;
+import de.proteinms.omxparser.util.MSSearch;
+import de.proteinms.omxparser.util.MSSpectrum;
+import de.proteinms.omxparser.util.OmxParser;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks that the generated omx files parse back with the expected element
+ * counts.
+ */
+public class OmxGeneratorTest {
+
+    /**
+     * Parses a generated file and checks the number of requests, spectra,
+     * peaks, responses, hit sets, hits, MSPepHit and MSMZHit.
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertRoundTrip(".omx");
+    }
+
+    /**
+     * Parses a generated gzipped file and checks the element counts.
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Test
+    public void testGzippedRoundTrip() throws IOException {
+        assertRoundTrip(".omx.gz");
+    }
+
+    /**
+     * Checks that the output only depends on the settings.
+     *
+     * @throws IOException if the documents could not be written
+     */
+    @Test
+    public void testDeterministic() throws IOException {
+        StringWriter first = new StringWriter();
+        createGenerator().write(first);
+        StringWriter second = new StringWriter();
+        createGenerator().write(second);
+        assertEquals(first.toString(), second.toString());
+    }
+
+    /**
+     * Writes a file with the given extension, parses it and checks the
+     * element counts.
+     *
+     * @param extension the extension of the file
+     * @throws IOException if the file could not be written
+     */
+    private static void assertRoundTrip(String extension) throws IOException {
+        OmxGenerator generator = createGenerator();
+        File omxFile = File.createTempFile("generated", extension);
+        try {
+            generator.write(omxFile);
+            MSSearch msSearch = new OmxParser(omxFile.getPath(), null, null, true, true).parserResult;
+            assertNotNull(msSearch);
+
+            assertEquals(generator.getRequests(), msSearch.MSSearch_request.MSRequest.size());
+            for (MSRequest msRequest : msSearch.MSSearch_request.MSRequest) {
+                assertEquals(generator.getSpectra(), msRequest.MSRequest_spectra.MSSpectrumset.MSSpectrum.size());
+                for (MSSpectrum msSpectrum : msRequest.MSRequest_spectra.MSSpectrumset.MSSpectrum.values()) {
+                    assertEquals(generator.getPeaks(), msSpectrum.MSSpectrum_mz.MSSpectrum_mz_E.size());
+                    assertEquals(generator.getPeaks(), msSpectrum.MSSpectrum_abundance.MSSpectrum_abundance_E.size());
+                }
+            }
+
+            assertEquals(generator.getRequests(), msSearch.MSSearch_response.MSResponse.size());
+            for (MSResponse msResponse : msSearch.MSSearch_response.MSResponse) {
+                assertEquals(generator.getSpectra(), msResponse.MSResponse_hitsets.MSHitSet.size());
+                for (MSHitSet msHitSet : msResponse.MSResponse_hitsets.MSHitSet.values()) {
+                    assertEquals(generator.getHits(), msHitSet.MSHitSet_hits.MSHits.size());
+                    for (MSHits msHits : msHitSet.MSHitSet_hits.MSHits) {
+                        assertEquals(generator.getPepHits(), msHits.MSHits_pephits.MSPepHit.size());
+                        assertEquals(generator.getMzHits(), msHits.MSHits_mzhits.MSMZHit.size());
+                    }
+                }
+            }
+        } finally {
+            omxFile.delete();
+        }
+    }
+
+    /**
+     * Returns a generator of a small file with two requests.
+     *
+     * @return the generator
+     */
+    private static OmxGenerator createGenerator() {
+        OmxGenerator generator = new OmxGenerator();
+        generator.setRequests(2);
+        generator.setSpectra(25);
+        generator.setPeaks(30);
+        generator.setHits(3);
+        generator.setPepHits(2);
+        generator.setMzHits(6);
+        generator.setPeptides(200);
+        generator.setProteins(50);
+        generator.setSeed(7);
+        return generator;
+    }
+}
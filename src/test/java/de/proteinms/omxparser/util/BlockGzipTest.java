@@ -0,0 +1,342 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the writing, reading, seeking and indexing of block compressed gzip
+ * files.
+ */
+public class BlockGzipTest {
+
+    /**
+     * The directory of the files written by the test.
+     */
+    private File directory;
+    /**
+     * The uncompressed data, spanning several blocks.
+     */
+    private byte[] data;
+
+    /**
+     * Creates the test directory and the data.
+     *
+     * @throws IOException if the directory could not be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("blockgzip").toFile();
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 5 * BlockGzipOutputStream.MAX_BLOCK_CONTENT) {
+            text.append("<MSSpectrum_mz_E>").append(random.nextInt(2000000)).append("</MSSpectrum_mz_E>\n");
+        }
+        data = text.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Deletes the files written by the test.
+     */
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Checks that the written file reads back sequentially, with parallel
+     * inflation and as an ordinary gzip file.
+     *
+     * @throws Exception if the file could not be written or read
+     */
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File file = write();
+        assertTrue(BlockGzipIndex.isBlockGzip(file));
+        assertArrayEquals(data, readFully(new BlockGzipInputStream(file)));
+        assertArrayEquals(data, readFully(new GZIPInputStream(new FileInputStream(file))));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertArrayEquals(data, readFully(new BlockGzipInputStream(file, BlockGzipIndex.getIndex(file), executor, 3)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks that seeking gives the data at the offset, also at block
+     * boundaries and at the end of the data.
+     *
+     * @throws Exception if the file could not be written or read
+     */
+    @Test
+    public void testSeek() throws Exception {
+        File file = write();
+        BlockGzipIndex index = BlockGzipIndex.getIndex(file);
+        long[] offsets = new long[2 * index.size() + 20];
+        for (int i = 0; i < index.size(); i++) {
+            offsets[2 * i] = index.getUncompressedOffset(i);
+            offsets[2 * i + 1] = Math.max(index.getUncompressedOffset(i) - 1, 0);
+        }
+        Random random = new Random(2);
+        for (int i = 2 * index.size(); i < offsets.length; i++) {
+            offsets[i] = random.nextInt(data.length + 1);
+        }
+        BlockGzipInputStream in = new BlockGzipInputStream(file);
+        try {
+            byte[] buffer = new byte[100];
+            for (long offset : offsets) {
+                in.seek(offset);
+                int expected = (int) Math.min(buffer.length, data.length - offset);
+                int read = readFully(in, buffer);
+                assertEquals("Offset " + offset, expected, read);
+                assertArrayEquals("Offset " + offset, Arrays.copyOfRange(data, (int) offset, (int) offset + expected), Arrays.copyOf(buffer, read));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checks the index file written with the compressed file: the number of
+     * blocks but the first, then the compressed and uncompressed offset of
+     * each of them, as little endian 64 bit integers.
+     *
+     * @throws Exception if the file could not be written or read
+     */
+    @Test
+    public void testIndexFile() throws Exception {
+        File file = write();
+        File indexFile = BlockGzipIndex.getIndexFile(file);
+        assertTrue(indexFile.exists());
+
+        // the index built from the block headers also lists the empty end of file block
+        BlockGzipIndex built = BlockGzipIndex.build(file);
+        int blocks = built.size() - 1;
+        assertTrue(blocks > 5);
+
+        byte[] bytes = readFully(new FileInputStream(indexFile));
+        assertEquals(8 + 16 * (blocks - 1), bytes.length);
+        assertEquals(blocks - 1, readLong(bytes, 0));
+        for (int i = 1; i < blocks; i++) {
+            assertEquals(built.getCompressedOffset(i), readLong(bytes, 16 * i - 8));
+            assertEquals(built.getUncompressedOffset(i), readLong(bytes, 16 * i));
+        }
+
+        BlockGzipIndex read = BlockGzipIndex.read(indexFile);
+        assertEquals(blocks, read.size());
+        for (int i = 0; i < blocks; i++) {
+            assertEquals(built.getCompressedOffset(i), read.getCompressedOffset(i));
+            assertEquals(built.getUncompressedOffset(i), read.getUncompressedOffset(i));
+        }
+    }
+
+    /**
+     * Checks that the parser inflates block compressed files in parallel and
+     * other gzip files sequentially.
+     *
+     * @throws Exception if the files could not be written or read
+     */
+    @Test
+    public void testParserStream() throws Exception {
+        File file = write();
+        InputStream in = OmxParser.openStream(file);
+        try {
+            assertTrue(in instanceof BlockGzipInputStream);
+            assertArrayEquals(data, readFully(in));
+            assertEquals(file.length(), ((BlockGzipInputStream) in).getCompressedPosition());
+        } finally {
+            in.close();
+        }
+
+        File gzipFile = new File(directory, "gzip.omx.gz");
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile));
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        in = OmxParser.openStream(gzipFile);
+        try {
+            assertTrue(in instanceof GZIPInputStream);
+            assertArrayEquals(data, readFully(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checks the compatibility with bgzip, if installed: the index file
+     * written equals the one of bgzip -r, and files compressed by bgzip are
+     * read and indexed.
+     *
+     * @throws Exception if the files could not be written or read
+     */
+    @Test
+    public void testBgzipCompatibility() throws Exception {
+        Assume.assumeTrue("bgzip is not installed", run("bgzip", "--version"));
+
+        File file = write();
+        File bgzipIndexFile = new File(directory, "bgzip.gzi");
+        assertTrue(run("bgzip", "-r", "-I", bgzipIndexFile.getPath(), file.getPath()));
+        assertArrayEquals(readFully(new FileInputStream(BlockGzipIndex.getIndexFile(file))), readFully(new FileInputStream(bgzipIndexFile)));
+
+        File raw = new File(directory, "data.omx");
+        OutputStream out = new FileOutputStream(raw);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        assertTrue(run("bgzip", "-i", raw.getPath()));
+        File compressed = new File(directory, "data.omx.gz");
+        assertTrue(BlockGzipIndex.isBlockGzip(compressed));
+        assertArrayEquals(data, readFully(new BlockGzipInputStream(compressed)));
+        BlockGzipInputStream in = new BlockGzipInputStream(compressed);
+        try {
+            long offset = data.length / 3;
+            in.seek(offset);
+            byte[] buffer = new byte[100];
+            assertEquals(buffer.length, readFully(in, buffer));
+            assertArrayEquals(Arrays.copyOfRange(data, (int) offset, (int) offset + buffer.length), buffer);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the data to a block compressed file, flushing in the middle of
+     * a block to get a short block.
+     *
+     * @return the compressed file
+     * @throws IOException if the file could not be written
+     */
+    private File write() throws IOException {
+        File file = new File(directory, "test.omx.gz");
+        BlockGzipOutputStream out = new BlockGzipOutputStream(file);
+        try {
+            int middle = data.length / 2;
+            out.write(data, 0, middle);
+            out.flush();
+            for (int i = middle; i < data.length; i += 1000) {
+                out.write(data, i, Math.min(1000, data.length - i));
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param command the command and its arguments
+     * @return true if the command succeeded, false if it failed or could not
+     * be started
+     * @throws InterruptedException if interrupted while waiting for the
+     * command
+     */
+    private static boolean run(String... command) throws InterruptedException {
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            readFully(process.getInputStream());
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a stream to its end and closes it.
+     *
+     * @param in the stream
+     * @return the bytes read
+     * @throws IOException if the stream could not be read
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Fills the buffer from the stream, unless its end is reached.
+     *
+     * @param in the stream
+     * @param buffer the buffer
+     * @return the number of bytes read
+     * @throws IOException if the stream could not be read
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Reads a little endian long.
+     *
+     * @param bytes the bytes
+     * @param offset the offset of the long
+     * @return the long
+     */
+    private static long readLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result |= (bytes[offset + i] & 0xffL) << (8 * i);
+        }
+        return result;
+    }
+}
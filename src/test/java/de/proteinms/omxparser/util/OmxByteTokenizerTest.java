@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import de.proteinms.omxparser.tools.OmxGenerator;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that OmxByteTokenizer reports the same events as XppOmxTokenizer.
+ */
+public class OmxByteTokenizerTest {
+
+    /**
+     * Tokenizes generated omx documents with both tokenizers.
+     *
+     * @throws Exception if a document could not be tokenized
+     */
+    @Test
+    public void testGeneratedDocuments() throws Exception {
+        for (long seed = 1; seed <= 3; seed++) {
+            OmxGenerator generator = new OmxGenerator();
+            generator.setRequests(2);
+            generator.setSpectra(20);
+            generator.setPeaks(15);
+            generator.setHits(3);
+            generator.setMzHits(4);
+            generator.setPeptides(100);
+            generator.setProteins(50);
+            generator.setSeed(seed);
+            StringWriter writer = new StringWriter();
+            generator.write(writer);
+            assertSameEvents(writer.toString().getBytes("UTF-8"));
+        }
+    }
+
+    /**
+     * Tokenizes documents with CDATA sections, comments, processing
+     * instructions and references with both tokenizers.
+     *
+     * @throws Exception if a document could not be tokenized
+     */
+    @Test
+    public void testMarkup() throws Exception {
+        assertSameEvents(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<MSSearch xmlns=\"http://www.ncbi.nlm.nih.gov\">\n"
+                + "  <MSSpectrum_ids_E><![CDATA[a <b> & c]]></MSSpectrum_ids_E>\n"
+                + "  <!-- comment -->\n"
+                + "  <?pi data?>\n"
+                + "  <MSPepHit_defline>x &lt;&amp;&gt; &quot;y&apos; &#65;&#x42;é</MSPepHit_defline>\n"
+                + "  <MSSearchType value=\"a&amp;b\">0</MSSearchType>\n"
+                + "  <MSHits_libaccession/>\n"
+                + "</MSSearch>\n").getBytes("UTF-8"));
+    }
+
+    /**
+     * Checks that a document not encoded in UTF-8 is decoded with its
+     * declared encoding by the tokenizer of OmxParser.
+     *
+     * @throws Exception if the document could not be tokenized
+     */
+    @Test
+    public void testDeclaredEncoding() throws Exception {
+        String defline = "Prot\u00e9ine \u00e0 l'\u00e9tude \u00b5g \u00fc";
+        byte[] document = ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+                + "<MSSearch xmlns=\"http://www.ncbi.nlm.nih.gov\">\n"
+                + "  <MSPepHit_defline>" + defline + "</MSPepHit_defline>\n"
+                + "</MSSearch>\n").getBytes("ISO-8859-1");
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(document));
+        assertFalse(OmxByteTokenizer.isSupported(in));
+        List<String> events = getEvents(OmxParser.createTokenizer(new ByteArrayInputStream(document)));
+        assertEquals(5, events.size());
+        assertEquals(defline, events.get(2));
+    }
+
+    /**
+     * Checks that an invalid character reference is a parsing error.
+     *
+     * @throws Exception if the document could not be read
+     */
+    @Test(expected = XmlPullParserException.class)
+    public void testInvalidCharacterReference() throws Exception {
+        getEvents(new OmxByteTokenizer(new ByteArrayInputStream("<a>&#x110000;</a>".getBytes("UTF-8"))));
+    }
+
+    /**
+     * Checks that both tokenizers report the same events on the given
+     * document.
+     *
+     * @param document the UTF-8 encoded document
+     * @throws IOException if the document could not be read
+     * @throws XmlPullParserException if the document could not be parsed
+     */
+    private static void assertSameEvents(byte[] document) throws IOException, XmlPullParserException {
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(document));
+        assertTrue(OmxByteTokenizer.isSupported(in));
+        List<String> expected = getEvents(new XppOmxTokenizer(new InputStreamReader(new ByteArrayInputStream(document), "UTF-8")));
+        List<String> actual = getEvents(new OmxByteTokenizer(in));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Event " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Returns the start tags with their attributes, the end tags and the non
+     * whitespace texts of a document, and closes the tokenizer.
+     *
+     * @param tokenizer the tokenizer on the document
+     * @return the events of the document
+     * @throws IOException if the document could not be read
+     * @throws XmlPullParserException if the document could not be parsed
+     */
+    private static List<String> getEvents(OmxTokenizer tokenizer) throws IOException, XmlPullParserException {
+        List<String> events = new ArrayList<String>();
+        try {
+            int eventType = tokenizer.next();
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    StringBuilder event = new StringBuilder("<").append(tokenizer.getName());
+                    for (int i = 0; i < tokenizer.getAttributeCount(); i++) {
+                        event.append(' ').append(tokenizer.getAttributeName(i)).append("=\"")
+                                .append(tokenizer.getAttributeValue(i)).append('"');
+                    }
+                    events.add(event.append('>').toString());
+                } else if (eventType == XmlPullParser.END_TAG) {
+                    events.add("</" + tokenizer.getName() + ">");
+                } else if (eventType == XmlPullParser.TEXT && !tokenizer.isWhitespace()) {
+                    events.add(tokenizer.getText());
+                }
+                eventType = tokenizer.next();
+            }
+        } finally {
+            tokenizer.close();
+        }
+        return events;
+    }
+}
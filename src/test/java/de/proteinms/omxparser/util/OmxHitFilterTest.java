@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import de.proteinms.omxparser.tools.OmxGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the hits rejected by an OmxHitFilter are dropped while parsing
+ * and that the hits accepted are parsed as without filter.
+ */
+public class OmxHitFilterTest {
+
+    /**
+     * The generated omx file.
+     */
+    private File omxFile;
+    /**
+     * The result of the parsing of the file without filter.
+     */
+    private MSSearch unfiltered;
+
+    /**
+     * Generates the omx file and parses it without filter.
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Before
+    public void setUp() throws IOException {
+        omxFile = File.createTempFile("filter", ".omx");
+        OmxGenerator generator = new OmxGenerator();
+        generator.setRequests(2);
+        generator.setSpectra(40);
+        generator.setPeaks(10);
+        generator.setHits(4);
+        generator.setPepHits(2);
+        generator.setMzHits(6);
+        generator.setPeptides(200);
+        generator.setProteins(50);
+        generator.setSeed(11);
+        generator.write(omxFile);
+        unfiltered = new OmxParser(omxFile.getPath(), null, null, false, true).parserResult;
+    }
+
+    /**
+     * Deletes the omx file.
+     */
+    @After
+    public void tearDown() {
+        omxFile.delete();
+    }
+
+    /**
+     * Filters the hits on their e-value.
+     */
+    @Test
+    public void testEvalueFilter() {
+        assertFiltered(OmxHitFilter.maxEvalue(1e-4));
+    }
+
+    /**
+     * Filters the hits on the accessions of their proteins, parsed after the
+     * e-value and before the MSMZHit of the hit.
+     */
+    @Test
+    public void testAccessionFilter() {
+        assertFiltered(OmxHitFilter.accessionPrefix("SYN10001", "SYN10003"));
+    }
+
+    /**
+     * Filters the hits on their e-value and on the accessions of their
+     * proteins.
+     */
+    @Test
+    public void testCombinedFilter() {
+        assertFiltered(OmxHitFilter.and(OmxHitFilter.maxEvalue(1e-2), OmxHitFilter.not(OmxHitFilter.accessionPrefix("SYN10002"))));
+    }
+
+    /**
+     * Parses the omx file with the given filter and compares the hits with
+     * the hits of the parsing without filter accepted by the filter. The hit
+     * sets without accepted hits must be dropped.
+     *
+     * @param filter the filter
+     */
+    private void assertFiltered(OmxHitFilter filter) {
+        MSSearch filtered = new OmxParser(omxFile.getPath(), null, null, false, filter).parserResult;
+        assertNotNull(filtered);
+        List<MSResponse> expectedResponses = unfiltered.MSSearch_response.MSResponse;
+        List<MSResponse> actualResponses = filtered.MSSearch_response.MSResponse;
+        assertEquals(expectedResponses.size(), actualResponses.size());
+
+        int accepted = 0;
+        int rejected = 0;
+        for (int i = 0; i < expectedResponses.size(); i++) {
+            Map<Integer, MSHitSet> expectedHitSets = expectedResponses.get(i).MSResponse_hitsets.MSHitSet;
+            Map<Integer, MSHitSet> actualHitSets = actualResponses.get(i).MSResponse_hitsets.MSHitSet;
+            int keptHitSets = 0;
+            for (Map.Entry<Integer, MSHitSet> entry : expectedHitSets.entrySet()) {
+                String message = "Response " + i + ", hit set " + entry.getKey();
+                List<MSHits> expectedHits = new ArrayList<MSHits>();
+                for (MSHits msHits : entry.getValue().MSHitSet_hits.MSHits) {
+                    if (filter.accept(msHits)) {
+                        expectedHits.add(msHits);
+                    } else {
+                        rejected++;
+                    }
+                }
+                accepted += expectedHits.size();
+                MSHitSet actualHitSet = actualHitSets.get(entry.getKey());
+                if (expectedHits.isEmpty()) {
+                    assertNull(message, actualHitSet);
+                } else {
+                    assertNotNull(message, actualHitSet);
+                    keptHitSets++;
+                    assertSameHits(message, expectedHits, actualHitSet.MSHitSet_hits.MSHits);
+                }
+            }
+            assertEquals(keptHitSets, actualHitSets.size());
+        }
+        assertTrue(accepted > 0);
+        assertTrue(rejected > 0);
+    }
+
+    /**
+     * Checks that the hits parsed with a filter are the expected hits, with
+     * the same values, MSPepHit and MSMZHit.
+     *
+     * @param message the message of the failures
+     * @param expected the expected hits
+     * @param actual the hits parsed with a filter
+     */
+    static void assertSameHits(String message, List<MSHits> expected, List<MSHits> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String hitMessage = message + ", hit " + i;
+            MSHits expectedHit = expected.get(i);
+            MSHits actualHit = actual.get(i);
+            assertEquals(hitMessage, expectedHit.MSHits_pepstring, actualHit.MSHits_pepstring);
+            assertEquals(hitMessage, Double.doubleToLongBits(expectedHit.MSHits_evalue), Double.doubleToLongBits(actualHit.MSHits_evalue));
+            assertEquals(hitMessage, Double.doubleToLongBits(expectedHit.MSHits_pvalue), Double.doubleToLongBits(actualHit.MSHits_pvalue));
+            assertEquals(hitMessage, expectedHit.MSHits_charge, actualHit.MSHits_charge);
+            assertEquals(hitMessage, expectedHit.MSHits_mass, actualHit.MSHits_mass);
+            assertEquals(hitMessage, expectedHit.MSHits_mods.MSModHit.size(), actualHit.MSHits_mods.MSModHit.size());
+
+            List<MSPepHit> expectedPepHits = expectedHit.MSHits_pephits.MSPepHit;
+            List<MSPepHit> actualPepHits = actualHit.MSHits_pephits.MSPepHit;
+            assertEquals(hitMessage, expectedPepHits.size(), actualPepHits.size());
+            for (int j = 0; j < expectedPepHits.size(); j++) {
+                assertEquals(hitMessage, expectedPepHits.get(j).MSPepHit_accession, actualPepHits.get(j).MSPepHit_accession);
+                assertEquals(hitMessage, expectedPepHits.get(j).MSPepHit_start, actualPepHits.get(j).MSPepHit_start);
+            }
+
+            List<MSMZHit> expectedMzHits = expectedHit.MSHits_mzhits.MSMZHit;
+            List<MSMZHit> actualMzHits = actualHit.MSHits_mzhits.MSMZHit;
+            assertEquals(hitMessage, expectedMzHits.size(), actualMzHits.size());
+            for (int j = 0; j < expectedMzHits.size(); j++) {
+                assertEquals(hitMessage, expectedMzHits.get(j).MSMZHit_mz, actualMzHits.get(j).MSMZHit_mz);
+                assertEquals(hitMessage, expectedMzHits.get(j).MSMZHit_number, actualMzHits.get(j).MSMZHit_number);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks OmxIntMap against a HashMap.
+ */
+public class OmxIntMapTest {
+
+    /**
+     * Applies random puts and removes of dense, sparse and negative keys to
+     * an OmxIntMap and a HashMap and compares them after each operation.
+     */
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        for (int round = 0; round < 20; round++) {
+            OmxIntMap<String> map = round % 2 == 0 ? new OmxIntMap<String>() : new OmxIntMap<String>(random.nextInt(100));
+            HashMap<Integer, String> model = new HashMap<Integer, String>();
+            for (int i = 0; i < 5000; i++) {
+                int key = nextKey(random);
+                String message = "Round " + round + ", operation " + i + ", key " + key;
+                if (random.nextInt(3) == 0) {
+                    assertEquals(message, model.remove(key), map.remove(key));
+                } else {
+                    String value = Integer.toString(random.nextInt());
+                    assertEquals(message, model.put(key, value), map.put(key, value));
+                }
+                assertEquals(message, model.size(), map.size());
+                assertEquals(message, model.get(key), map.get(key));
+                assertEquals(message, model.containsKey(key), map.containsKey(key));
+            }
+            assertSameContent(model, map);
+        }
+    }
+
+    /**
+     * Checks that removing all the keys empties the map.
+     */
+    @Test
+    public void testRemoveAll() {
+        Random random = new Random(2);
+        OmxIntMap<Integer> map = new OmxIntMap<Integer>();
+        HashMap<Integer, Integer> model = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 10000; i++) {
+            int key = nextKey(random);
+            assertEquals(model.put(key, i), map.put(key, i));
+        }
+        List<Integer> keys = new ArrayList<Integer>(model.keySet());
+        Collections.shuffle(keys, random);
+        for (Integer key : keys) {
+            assertEquals(model.remove(key), map.remove(key));
+            assertEquals(model.size(), map.size());
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+        for (Integer key : keys) {
+            assertEquals(null, map.get(key));
+        }
+    }
+
+    /**
+     * Checks that null values are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValue() {
+        new OmxIntMap<String>().put(1, null);
+    }
+
+    /**
+     * Returns a random key: mostly small non negative keys as spectrum
+     * numbers, some large and negative keys stored in the sparse table.
+     *
+     * @param random the random numbers
+     * @return the key
+     */
+    private static int nextKey(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextInt();
+            case 1:
+                return -random.nextInt(1000);
+            default:
+                return random.nextInt(2000);
+        }
+    }
+
+    /**
+     * Checks that the map holds the same entries as the model.
+     *
+     * @param model the model
+     * @param map the map
+     */
+    private static <V> void assertSameContent(Map<Integer, V> model, OmxIntMap<V> map) {
+        List<Integer> modelKeys = new ArrayList<Integer>(model.keySet());
+        Collections.sort(modelKeys);
+        int[] expectedKeys = new int[modelKeys.size()];
+        for (int i = 0; i < expectedKeys.length; i++) {
+            expectedKeys[i] = modelKeys.get(i);
+        }
+        assertArrayEquals(expectedKeys, map.keys());
+        for (Map.Entry<Integer, V> entry : model.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the spectra packed in an OmxSpectrumStore unpack to the
+ * spectra put, also when their values span two segments of a column.
+ */
+public class OmxSpectrumStoreTest {
+
+    /**
+     * The size of the segments of the columns of the store.
+     */
+    private static final int SEGMENT_SIZE = 1 << 22;
+
+    /**
+     * Packs random spectra, with empty and missing values and numbers stored
+     * in the offset table and in the sparse table, replaces and removes some
+     * of them, and compares the store with a LinkedHashMap after each step.
+     */
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(1);
+        OmxSpectrumStore store = new OmxSpectrumStore();
+        Map<Integer, MSSpectrum> model = new LinkedHashMap<Integer, MSSpectrum>();
+        for (int i = 0; i < 2000; i++) {
+            int number;
+            switch (random.nextInt(10)) {
+                case 0:
+                    number = -random.nextInt(100000);
+                    break;
+                case 1:
+                    number = (1 << 24) + random.nextInt(100000);
+                    break;
+                default:
+                    number = random.nextInt(3000);
+            }
+            MSSpectrum spectrum = createSpectrum(random, number, random.nextInt(5) == 0 ? 0 : random.nextInt(300));
+            // a replaced spectrum moves to the end of the iteration order
+            MSSpectrum replaced = model.remove(number);
+            model.put(number, spectrum);
+            assertEquals("Spectrum " + number, replaced == null, store.put(number, spectrum) == null);
+        }
+        assertSameContent(model, store);
+
+        List<Integer> numbers = new ArrayList<Integer>(model.keySet());
+        for (int i = 0; i < numbers.size(); i += 3) {
+            assertTrue(store.remove(numbers.get(i)) != null);
+            model.remove(numbers.get(i));
+        }
+        assertNull(store.remove(numbers.get(0)));
+        assertSameContent(model, store);
+
+        MSSpectrum view = store.get(numbers.get(1));
+        assertSame(view, store.get(numbers.get(1)));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0L, store.getOffHeapSize());
+        assertTrue(store.keySet().isEmpty());
+        MSSpectrum spectrum = createSpectrum(random, 5, 10);
+        store.put(5, spectrum);
+        assertSameSpectrum("Spectrum 5", spectrum, store.get(5));
+    }
+
+    /**
+     * Packs spectra whose mz values, abundance values, ids and name values
+     * span two segments, and more records than a segment holds.
+     */
+    @Test
+    public void testSegmentBoundaries() {
+        Random random = new Random(2);
+        OmxSpectrumStore store = new OmxSpectrumStore();
+        Map<Integer, MSSpectrum> model = new LinkedHashMap<Integer, MSSpectrum>();
+
+        // the peaks of the second spectrum span the first two segments
+        int peaks = SEGMENT_SIZE / 4 * 2 / 3;
+        for (int number = 0; number < 3; number++) {
+            MSSpectrum spectrum = createSpectrum(random, number, peaks);
+            model.put(number, spectrum);
+            store.put(number, spectrum);
+        }
+
+        // ids and name values of about 60 KB each, the longest packed
+        char[] characters = new char[60000];
+        Arrays.fill(characters, 'x');
+        String longString = new String(characters);
+        for (int number = 3; number < 6; number++) {
+            MSSpectrum spectrum = createSpectrum(random, number, 0);
+            for (int i = 0; i < SEGMENT_SIZE / 2 / longString.length(); i++) {
+                spectrum.MSSpectrum_ids.MSSpectrum_ids_E.add(longString);
+                NameValue nameValue = new NameValue();
+                nameValue.NameValue_name = "name" + i;
+                nameValue.NameValue_value = longString;
+                spectrum.MSSpectrum_namevalue.nameValue.add(nameValue);
+            }
+            model.put(number, spectrum);
+            store.put(number, spectrum);
+        }
+
+        // the records of more spectra than a segment holds, one of them
+        // spanning two segments
+        for (int number = 6; number < SEGMENT_SIZE / 80 + 1000; number++) {
+            MSSpectrum spectrum = createSpectrum(random, number, random.nextInt(3));
+            model.put(number, spectrum);
+            store.put(number, spectrum);
+        }
+        assertSameContent(model, store);
+    }
+
+    /**
+     * Creates a random spectrum.
+     *
+     * @param random the random numbers
+     * @param number the number of the spectrum
+     * @param peaks the number of peaks
+     * @return the spectrum
+     */
+    private static MSSpectrum createSpectrum(Random random, int number, int peaks) {
+        MSSpectrum spectrum = new MSSpectrum();
+        spectrum.MSSpectrum_number = number;
+        spectrum.MSSpectrum_precursormz = random.nextInt(5000000);
+        spectrum.MSSpectrum_iscale = random.nextBoolean() ? null : random.nextDouble();
+        for (int i = 0; i < peaks; i++) {
+            spectrum.MSSpectrum_mz.MSSpectrum_mz_E.add(random.nextInt());
+        }
+        // the abundances may be missing
+        if (random.nextInt(4) > 0) {
+            for (int i = 0; i < peaks; i++) {
+                spectrum.MSSpectrum_abundance.MSSpectrum_abundance_E.add(random.nextInt(100000));
+            }
+        }
+        int charges = random.nextInt(3);
+        for (int i = 0; i < charges; i++) {
+            spectrum.MSSpectrum_charge.MSSpectrum_charge_E.add(i + 1);
+        }
+        int ids = random.nextInt(3);
+        for (int i = 0; i < ids; i++) {
+            spectrum.MSSpectrum_ids.MSSpectrum_ids_E.add("Spectrum " + number + " éµ " + i);
+        }
+        int nameValues = random.nextInt(3);
+        for (int i = 0; i < nameValues; i++) {
+            NameValue nameValue = new NameValue();
+            nameValue.NameValue_name = random.nextBoolean() ? null : "name" + i;
+            nameValue.NameValue_value = random.nextBoolean() ? null : "value" + random.nextInt();
+            spectrum.MSSpectrum_namevalue.nameValue.add(nameValue);
+        }
+        return spectrum;
+    }
+
+    /**
+     * Checks that the store holds the spectra of the model, in the same
+     * order.
+     *
+     * @param model the model
+     * @param store the store
+     */
+    private static void assertSameContent(Map<Integer, MSSpectrum> model, OmxSpectrumStore store) {
+        assertEquals(model.size(), store.size());
+        assertEquals(new ArrayList<Integer>(model.keySet()), new ArrayList<Integer>(store.keySet()));
+        for (Map.Entry<Integer, MSSpectrum> entry : model.entrySet()) {
+            assertTrue(store.containsKey(entry.getKey()));
+            assertSameSpectrum("Spectrum " + entry.getKey(), entry.getValue(), store.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Checks that a spectrum unpacked from the store equals the spectrum
+     * put.
+     *
+     * @param message the message of the failures
+     * @param expected the spectrum put
+     * @param actual the spectrum unpacked
+     */
+    private static void assertSameSpectrum(String message, MSSpectrum expected, MSSpectrum actual) {
+        assertEquals(message, expected.MSSpectrum_number, actual.MSSpectrum_number);
+        assertEquals(message, expected.MSSpectrum_precursormz, actual.MSSpectrum_precursormz);
+        assertEquals(message, expected.MSSpectrum_iscale, actual.MSSpectrum_iscale);
+        assertTrue(message, expected.MSSpectrum_mz.MSSpectrum_mz_E.equals(actual.MSSpectrum_mz.MSSpectrum_mz_E));
+        assertTrue(message, expected.MSSpectrum_abundance.MSSpectrum_abundance_E.equals(actual.MSSpectrum_abundance.MSSpectrum_abundance_E));
+        assertEquals(message, expected.MSSpectrum_charge.MSSpectrum_charge_E, actual.MSSpectrum_charge.MSSpectrum_charge_E);
+        assertEquals(message, expected.MSSpectrum_ids.MSSpectrum_ids_E, actual.MSSpectrum_ids.MSSpectrum_ids_E);
+        List<NameValue> expectedNameValues = expected.MSSpectrum_namevalue.nameValue;
+        List<NameValue> actualNameValues = actual.MSSpectrum_namevalue.nameValue;
+        assertEquals(message, expectedNameValues.size(), actualNameValues.size());
+        for (int i = 0; i < expectedNameValues.size(); i++) {
+            assertEquals(message, expectedNameValues.get(i).NameValue_name, actualNameValues.get(i).NameValue_name);
+            assertEquals(message, expectedNameValues.get(i).NameValue_value, actualNameValues.get(i).NameValue_value);
+        }
+    }
+}
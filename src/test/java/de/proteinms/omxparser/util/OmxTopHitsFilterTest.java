@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"),
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package de.proteinms.omxparser.util;
+
+import de.proteinms.omxparser.tools.OmxGenerator;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the hits kept by OmxTopHitsFilter are the ones of a stable sort
+ * on the e-value and truncation of the hits of an unfiltered parsing.
+ */
+public class OmxTopHitsFilterTest {
+
+    /**
+     * The e-values set in the generated file, few to get ties.
+     */
+    private static final String[] EVALUES = {"1.0E-6", "1.0E-4", "0.01", "1.0"};
+    /**
+     * The e-value of a hit in the generated file.
+     */
+    private static final Pattern EVALUE = Pattern.compile("<MSHits_evalue>[^<]*</MSHits_evalue>");
+    /**
+     * The generated omx file.
+     */
+    private File omxFile;
+    /**
+     * The result of the parsing of the file without filter.
+     */
+    private MSSearch unfiltered;
+
+    /**
+     * Generates the omx file, with the hits of a hit set in random order of
+     * e-value and many equal e-values, and parses it without filter.
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Before
+    public void setUp() throws IOException {
+        OmxGenerator generator = new OmxGenerator();
+        generator.setRequests(2);
+        generator.setSpectra(40);
+        generator.setPeaks(10);
+        generator.setHits(6);
+        generator.setPepHits(2);
+        generator.setMzHits(4);
+        generator.setPeptides(200);
+        generator.setProteins(50);
+        generator.setSeed(13);
+        StringWriter writer = new StringWriter();
+        generator.write(writer);
+
+        // the generator writes the hits by increasing e-value
+        Random random = new Random(13);
+        Matcher matcher = EVALUE.matcher(writer.toString());
+        StringBuffer document = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(document, "<MSHits_evalue>" + EVALUES[random.nextInt(EVALUES.length)] + "</MSHits_evalue>");
+        }
+        matcher.appendTail(document);
+
+        omxFile = File.createTempFile("tophits", ".omx");
+        OutputStream out = new FileOutputStream(omxFile);
+        try {
+            out.write(document.toString().getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        unfiltered = new OmxParser(omxFile.getPath(), null, null, false, true).parserResult;
+    }
+
+    /**
+     * Deletes the omx file.
+     */
+    @After
+    public void tearDown() {
+        omxFile.delete();
+    }
+
+    /**
+     * Keeps the best hit of each hit set.
+     */
+    @Test
+    public void testBestHit() {
+        assertTopHits(null, 1);
+    }
+
+    /**
+     * Keeps the three best hits of each hit set, with ties between the third
+     * and the fourth hits.
+     */
+    @Test
+    public void testBestHits() {
+        assertTopHits(null, 3);
+    }
+
+    /**
+     * Keeps more hits than the hit sets have.
+     */
+    @Test
+    public void testAllHits() {
+        assertTopHits(null, 10);
+    }
+
+    /**
+     * Keeps the two best hits of each hit set among the hits accepted by an
+     * accession filter, evaluated after the e-value.
+     */
+    @Test
+    public void testBestFilteredHits() {
+        assertTopHits(OmxHitFilter.accessionPrefix("SYN10001", "SYN10002", "SYN10003"), 2);
+    }
+
+    /**
+     * Parses the omx file keeping the given number of hits and compares the
+     * hits with the ones of a stable sort on the e-value and truncation of
+     * the hits of the parsing without filter accepted by the filter.
+     *
+     * @param filter the filter, null to keep the best hits whatever their
+     * content
+     * @param maxHits the number of hits kept per hit set
+     */
+    private void assertTopHits(OmxHitFilter filter, int maxHits) {
+        MSSearch filtered = new OmxParser(omxFile.getPath(), null, null, false, filter, maxHits).parserResult;
+        assertNotNull(filtered);
+        List<MSResponse> expectedResponses = unfiltered.MSSearch_response.MSResponse;
+        List<MSResponse> actualResponses = filtered.MSSearch_response.MSResponse;
+        assertEquals(expectedResponses.size(), actualResponses.size());
+
+        int rejected = 0;
+        int ties = 0;
+        for (int i = 0; i < expectedResponses.size(); i++) {
+            Map<Integer, MSHitSet> expectedHitSets = expectedResponses.get(i).MSResponse_hitsets.MSHitSet;
+            Map<Integer, MSHitSet> actualHitSets = actualResponses.get(i).MSResponse_hitsets.MSHitSet;
+            int keptHitSets = 0;
+            for (Map.Entry<Integer, MSHitSet> entry : expectedHitSets.entrySet()) {
+                String message = "Response " + i + ", hit set " + entry.getKey();
+                List<MSHits> hits = entry.getValue().MSHitSet_hits.MSHits;
+                List<MSHits> accepted = new ArrayList<MSHits>();
+                for (MSHits msHits : hits) {
+                    if (filter == null || filter.accept(msHits)) {
+                        accepted.add(msHits);
+                    }
+                }
+
+                List<MSHits> sorted = new ArrayList<MSHits>(accepted);
+                Collections.sort(sorted, new Comparator<MSHits>() {
+                    @Override
+                    public int compare(MSHits o1, MSHits o2) {
+                        return Double.compare(o1.MSHits_evalue, o2.MSHits_evalue);
+                    }
+                });
+                if (sorted.size() > maxHits && sorted.get(maxHits - 1).MSHits_evalue == sorted.get(maxHits).MSHits_evalue) {
+                    ties++;
+                }
+                List<MSHits> best = sorted.subList(0, Math.min(maxHits, sorted.size()));
+
+                // the hits kept stay in the order of the file
+                List<MSHits> expectedHits = new ArrayList<MSHits>();
+                for (MSHits msHits : accepted) {
+                    if (best.contains(msHits)) {
+                        expectedHits.add(msHits);
+                    }
+                }
+                rejected += hits.size() - expectedHits.size();
+
+                MSHitSet actualHitSet = actualHitSets.get(entry.getKey());
+                if (expectedHits.isEmpty()) {
+                    assertNull(message, actualHitSet);
+                } else {
+                    assertNotNull(message, actualHitSet);
+                    keptHitSets++;
+                    OmxHitFilterTest.assertSameHits(message, expectedHits, actualHitSet.MSHitSet_hits.MSHits);
+                }
+            }
+            assertEquals(keptHitSets, actualHitSets.size());
+        }
+        if (maxHits < 6) {
+            assertTrue(rejected > 0);
+            assertTrue(ties > 0);
+        }
+    }
+}